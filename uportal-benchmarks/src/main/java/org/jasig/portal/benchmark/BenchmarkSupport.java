@@ -0,0 +1,365 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.io.IOUtils;
+import org.jasig.portal.character.stream.CharacterEventBufferReader;
+import org.jasig.portal.character.stream.CharacterEventReader;
+import org.jasig.portal.character.stream.CharacterEventSource;
+import org.jasig.portal.character.stream.PortletContentPlaceholderEventSource;
+import org.jasig.portal.character.stream.PortletHeaderPlaceholderEventSource;
+import org.jasig.portal.character.stream.PortletNewItemCountPlaceholderEventSource;
+import org.jasig.portal.character.stream.PortletTitlePlaceholderEventSource;
+import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.character.stream.events.ChunkPointPlaceholderEventSource;
+import org.jasig.portal.layout.IUserLayoutManager;
+import org.jasig.portal.portlet.om.IPortletWindow;
+import org.jasig.portal.portlet.om.IPortletWindowId;
+import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
+import org.jasig.portal.rendering.CharacterPipelineComponent;
+import org.jasig.portal.rendering.PipelineEventReader;
+import org.jasig.portal.rendering.PipelineEventReaderImpl;
+import org.jasig.portal.rendering.StAXPipelineComponent;
+import org.jasig.portal.rendering.xslt.TransformerSource;
+import org.jasig.portal.rendering.xslt.XSLTComponent;
+import org.jasig.portal.utils.Tuple;
+import org.jasig.portal.utils.cache.CacheKey;
+import org.jasig.portal.xml.stream.XMLEventBufferReader;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+
+/**
+ * Fixtures and stubs shared by the rendering benchmarks. Stubs are simple dynamic proxies
+ * rather than mocks so that no invocations are recorded during a benchmark run.
+ */
+public final class BenchmarkSupport {
+    /**
+     * The structure stylesheet shipped in the uPortal WAR
+     */
+    public static final String STRUCTURE_STYLESHEET = "layout/structure/columns/columns.xsl";
+    /**
+     * Simplified theme stylesheet fixture, see theme.xsl
+     */
+    public static final String THEME_STYLESHEET = "org/jasig/portal/benchmark/theme.xsl";
+    
+    private static final String FIXTURE_PATH = "org/jasig/portal/benchmark/";
+    
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * @return A fixture from the benchmark resources
+     */
+    public static Resource getFixture(String name) {
+        return new ClassPathResource(FIXTURE_PATH + name);
+    }
+    
+    /**
+     * Parse the resource into a list of StAX events
+     */
+    public static List<XMLEvent> readEvents(Resource resource) throws IOException, XMLStreamException {
+        final XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        final InputStream inputStream = resource.getInputStream();
+        try {
+            final XMLEventReader eventReader = inputFactory.createXMLEventReader(inputStream);
+            final List<XMLEvent> events = new ArrayList<XMLEvent>();
+            while (eventReader.hasNext()) {
+                events.add(eventReader.nextEvent());
+            }
+            eventReader.close();
+            return events;
+        }
+        finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+    
+    /**
+     * Drain the events from a pipeline reader into a list
+     */
+    public static <E> List<E> toList(PipelineEventReader<?, E> pipelineEventReader) {
+        final List<E> events = new ArrayList<E>();
+        for (final E event : pipelineEventReader) {
+            events.add(event);
+        }
+        return events;
+    }
+    
+    /**
+     * Compile a stylesheet from the classpath
+     */
+    public static Templates compileStylesheet(String stylesheet) throws IOException, TransformerConfigurationException {
+        final Resource resource = new ClassPathResource(stylesheet);
+        final InputStream inputStream = resource.getInputStream();
+        try {
+            final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+            return transformerFactory.newTemplates(new StreamSource(inputStream, resource.getURL().toExternalForm()));
+        }
+        finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+    
+    /**
+     * Create an XSLT pipeline component for the stylesheet wrapping the specified component
+     */
+    public static XSLTComponent createXsltComponent(String beanName, StAXPipelineComponent wrappedComponent, String stylesheet) 
+            throws IOException, TransformerConfigurationException {
+        
+        final XSLTComponent xsltComponent = new XSLTComponent();
+        xsltComponent.setBeanName(beanName);
+        xsltComponent.setResourceLoader(new DefaultResourceLoader());
+        xsltComponent.setWrappedComponent(wrappedComponent);
+        xsltComponent.setTransformerSource(new TemplatesTransformerSource(compileStylesheet(stylesheet)));
+        return xsltComponent;
+    }
+    
+    /**
+     * Run the layout fixture through the structure and theme transforms
+     */
+    public static List<XMLEvent> renderThemedEvents(String layout, HttpServletRequest request, HttpServletResponse response) 
+            throws IOException, XMLStreamException, TransformerConfigurationException {
+        
+        final List<XMLEvent> layoutEvents = readEvents(getFixture(layout));
+        final XSLTComponent structureComponent = createXsltComponent("structureComponent", new StAXEventListComponent(layoutEvents), STRUCTURE_STYLESHEET);
+        final XSLTComponent themeComponent = createXsltComponent("themeComponent", structureComponent, THEME_STYLESHEET);
+        return toList(themeComponent.getEventReader(request, response));
+    }
+    
+    /**
+     * Create a stub of the interface. Methods return the value mapped to their name, or the
+     * default value of their return type if there is none.
+     */
+    public static <T> T stub(final Class<T> type, Map<String, ?> returnValues) {
+        final Map<String, ?> values = new LinkedHashMap<String, Object>(returnValues);
+        final Object stub = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                final String name = method.getName();
+                if ("equals".equals(name) && args != null && args.length == 1) {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(name) && args == null) {
+                    return System.identityHashCode(proxy);
+                }
+                if ("toString".equals(name) && args == null) {
+                    return "Stub " + type.getName();
+                }
+                
+                if (values.containsKey(name)) {
+                    return values.get(name);
+                }
+                return getDefaultValue(method.getReturnType());
+            }
+        });
+        return type.cast(stub);
+    }
+    
+    /**
+     * @return A portlet window registry that maps every portlet to the same stub window
+     */
+    public static IPortletWindowRegistry createPortletWindowRegistry() {
+        final IPortletWindowId portletWindowId = stub(IPortletWindowId.class, Collections.singletonMap("getStringId", "P.benchmark"));
+        final IPortletWindow portletWindow = stub(IPortletWindow.class, Collections.singletonMap("getPortletWindowId", portletWindowId));
+        
+        final Map<String, Object> registryValues = new LinkedHashMap<String, Object>();
+        registryValues.put("getPortletWindow", new Tuple<IPortletWindow, StartElement>(portletWindow, null));
+        registryValues.put("getOrCreateDefaultPortletWindowByLayoutNodeId", portletWindow);
+        return stub(IPortletWindowRegistry.class, registryValues);
+    }
+    
+    /**
+     * @return The chunking elements used by the HTML rendering pipeline
+     */
+    public static Map<String, CharacterEventSource> createChunkingElements(IPortletWindowRegistry portletWindowRegistry) {
+        final PortletContentPlaceholderEventSource contentPlaceholderEventSource = new PortletContentPlaceholderEventSource();
+        contentPlaceholderEventSource.setPortletWindowRegistry(portletWindowRegistry);
+        
+        final PortletHeaderPlaceholderEventSource headerPlaceholderEventSource = new PortletHeaderPlaceholderEventSource();
+        headerPlaceholderEventSource.setPortletWindowRegistry(portletWindowRegistry);
+        
+        final Map<String, CharacterEventSource> chunkingElements = new LinkedHashMap<String, CharacterEventSource>();
+        chunkingElements.put(IUserLayoutManager.CHANNEL, contentPlaceholderEventSource);
+        chunkingElements.put(IUserLayoutManager.CHANNEL_HEADER, headerPlaceholderEventSource);
+        chunkingElements.put(ChunkPointPlaceholderEventSource.CHUNK_POINT, new ChunkPointPlaceholderEventSource());
+        return chunkingElements;
+    }
+    
+    /**
+     * @return The chunking patterns used by the HTML rendering pipeline
+     */
+    public static Map<String, CharacterEventSource> createChunkingPatterns(IPortletWindowRegistry portletWindowRegistry) {
+        final PortletTitlePlaceholderEventSource titlePlaceholderEventSource = new PortletTitlePlaceholderEventSource();
+        titlePlaceholderEventSource.setPortletWindowRegistry(portletWindowRegistry);
+        
+        final PortletNewItemCountPlaceholderEventSource newItemCountPlaceholderEventSource = new PortletNewItemCountPlaceholderEventSource();
+        newItemCountPlaceholderEventSource.setPortletWindowRegistry(portletWindowRegistry);
+        
+        final Map<String, CharacterEventSource> chunkingPatterns = new LinkedHashMap<String, CharacterEventSource>();
+        chunkingPatterns.put("\\{up-portlet-title\\(([^\\)]+)\\)\\}", titlePlaceholderEventSource);
+        chunkingPatterns.put("\\{up-portlet-new-item-count\\(([^\\)]+)\\)\\}", newItemCountPlaceholderEventSource);
+        return chunkingPatterns;
+    }
+    
+    /**
+     * Compile chunking patterns the same way {@link org.jasig.portal.rendering.StAXSerializingComponent} does
+     */
+    public static Map<Pattern, CharacterEventSource> compileChunkingPatterns(Map<String, CharacterEventSource> chunkingPatterns) {
+        final Map<Pattern, CharacterEventSource> compiledChunkingPatterns = new LinkedHashMap<Pattern, CharacterEventSource>();
+        for (final Map.Entry<String, CharacterEventSource> chunkingPatternEntry : chunkingPatterns.entrySet()) {
+            compiledChunkingPatterns.put(Pattern.compile(chunkingPatternEntry.getKey()), chunkingPatternEntry.getValue());
+        }
+        return compiledChunkingPatterns;
+    }
+    
+    private static Object getDefaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == Void.TYPE) {
+            return null;
+        }
+        if (type == Boolean.TYPE) {
+            return Boolean.FALSE;
+        }
+        if (type == Character.TYPE) {
+            return Character.valueOf('\0');
+        }
+        if (type == Long.TYPE) {
+            return Long.valueOf(0);
+        }
+        if (type == Float.TYPE) {
+            return Float.valueOf(0);
+        }
+        if (type == Double.TYPE) {
+            return Double.valueOf(0);
+        }
+        if (type == Short.TYPE) {
+            return Short.valueOf((short)0);
+        }
+        if (type == Byte.TYPE) {
+            return Byte.valueOf((byte)0);
+        }
+        return Integer.valueOf(0);
+    }
+    
+    /**
+     * StAX pipeline source that replays a fixed list of events
+     */
+    public static final class StAXEventListComponent implements StAXPipelineComponent {
+        private final List<XMLEvent> events;
+        private final Map<String, String> outputProperties;
+        
+        public StAXEventListComponent(List<XMLEvent> events) {
+            this(events, Collections.<String, String>emptyMap());
+        }
+        
+        public StAXEventListComponent(List<XMLEvent> events, Map<String, String> outputProperties) {
+            this.events = events;
+            this.outputProperties = outputProperties;
+        }
+
+        @Override
+        public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+            return CacheKey.build(StAXEventListComponent.class.getName(), System.identityHashCode(this.events));
+        }
+
+        @Override
+        public PipelineEventReader<XMLEventReader, XMLEvent> getEventReader(HttpServletRequest request, HttpServletResponse response) {
+            final XMLEventReader eventReader = new XMLEventBufferReader(this.events.listIterator());
+            return new PipelineEventReaderImpl<XMLEventReader, XMLEvent>(eventReader, this.outputProperties);
+        }
+    }
+    
+    /**
+     * Character pipeline source that replays a fixed list of events
+     */
+    public static final class CharacterEventListComponent implements CharacterPipelineComponent {
+        private final List<CharacterEvent> events;
+        
+        public CharacterEventListComponent(List<CharacterEvent> events) {
+            this.events = events;
+        }
+
+        @Override
+        public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+            return CacheKey.build(CharacterEventListComponent.class.getName(), System.identityHashCode(this.events));
+        }
+
+        @Override
+        public PipelineEventReader<CharacterEventReader, CharacterEvent> getEventReader(HttpServletRequest request, HttpServletResponse response) {
+            final CharacterEventReader eventReader = new CharacterEventBufferReader(this.events.listIterator());
+            return new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(eventReader);
+        }
+    }
+    
+    /**
+     * Transformer source for a precompiled stylesheet
+     */
+    public static final class TemplatesTransformerSource implements TransformerSource {
+        private final Templates templates;
+        
+        public TemplatesTransformerSource(Templates templates) {
+            this.templates = templates;
+        }
+
+        @Override
+        public Transformer getTransformer(HttpServletRequest request, HttpServletResponse response) {
+            try {
+                return this.templates.newTransformer();
+            }
+            catch (TransformerConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void releaseTransformer(Transformer transformer, HttpServletRequest request, HttpServletResponse response) {
+        }
+
+        @Override
+        public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+            return CacheKey.build(TemplatesTransformerSource.class.getName(), System.identityHashCode(this.templates));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.events.XMLEvent;
+
+import org.apache.commons.lang.StringUtils;
+import org.jasig.portal.benchmark.BenchmarkSupport.CharacterEventListComponent;
+import org.jasig.portal.benchmark.BenchmarkSupport.StAXEventListComponent;
+import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
+import org.jasig.portal.portlet.rendering.IPortletExecutionManager;
+import org.jasig.portal.rendering.PortletRenderingIncorporationComponent;
+import org.jasig.portal.rendering.StAXSerializingComponent;
+import org.jasig.portal.xml.XmlUtilitiesImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Measures replacing portlet placeholder events with portlet output. Portlet rendering itself
+ * is stubbed out, every portlet has already completed with fixed output of the configured size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PortletRenderingIncorporationBenchmark {
+    @Param({ "guestLayout.xml", "adminLayout.xml" })
+    public String layout;
+    
+    @Param({ "1024", "16384" })
+    public int portletOutputSize;
+    
+    @Param({ "false", "true" })
+    public boolean streamingRender;
+    
+    private PortletRenderingIncorporationComponent incorporationComponent;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        this.request = new MockHttpServletRequest();
+        this.response = new MockHttpServletResponse();
+        
+        final List<XMLEvent> themedEvents = BenchmarkSupport.renderThemedEvents(this.layout, this.request, this.response);
+        
+        final IPortletWindowRegistry portletWindowRegistry = BenchmarkSupport.createPortletWindowRegistry();
+        final StAXSerializingComponent serializingComponent = new StAXSerializingComponent();
+        serializingComponent.setXmlUtilities(new XmlUtilitiesImpl());
+        serializingComponent.setWrappedComponent(new StAXEventListComponent(themedEvents));
+        serializingComponent.setChunkingElements(BenchmarkSupport.createChunkingElements(portletWindowRegistry));
+        serializingComponent.setChunkingPatterns(BenchmarkSupport.createChunkingPatterns(portletWindowRegistry));
+        
+        final List<CharacterEvent> characterEvents = BenchmarkSupport.toList(serializingComponent.getEventReader(this.request, this.response));
+        
+        final Map<String, Object> executionResults = new LinkedHashMap<String, Object>();
+        executionResults.put("isPortletRenderHeaderComplete", Boolean.TRUE);
+        executionResults.put("isPortletRenderComplete", Boolean.TRUE);
+        executionResults.put("getPortletHeadOutput", "<link rel=\"stylesheet\" href=\"/benchmark.css\"/>");
+        executionResults.put("getPortletOutput", "<div>" + StringUtils.repeat("x", this.portletOutputSize) + "</div>");
+        executionResults.put("getPortletTitle", "Benchmark Portlet");
+        executionResults.put("getPortletLink", "/uPortal/p/benchmark");
+        final IPortletExecutionManager portletExecutionManager = BenchmarkSupport.stub(IPortletExecutionManager.class, executionResults);
+        
+        this.incorporationComponent = new PortletRenderingIncorporationComponent();
+        this.incorporationComponent.setWrappedComponent(new CharacterEventListComponent(characterEvents));
+        this.incorporationComponent.setPortletExecutionManager(portletExecutionManager);
+        this.incorporationComponent.setPortletWindowRegistry(portletWindowRegistry);
+        this.incorporationComponent.setStreamingRender(this.streamingRender);
+    }
+    
+    @Benchmark
+    public List<CharacterEvent> incorporatePortlets() {
+        return BenchmarkSupport.toList(this.incorporationComponent.getEventReader(this.request, this.response));
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.benchmark;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.events.XMLEvent;
+
+import org.jasig.portal.benchmark.BenchmarkSupport.StAXEventListComponent;
+import org.jasig.portal.character.stream.CharacterEventSource;
+import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
+import org.jasig.portal.rendering.StAXSerializingComponent;
+import org.jasig.portal.xml.XmlUtilitiesImpl;
+import org.jasig.portal.xml.stream.ChunkingEventReader;
+import org.jasig.portal.xml.stream.XMLEventBufferReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Measures serialization of the themed StAX events into character events, both through
+ * {@link ChunkingEventReader} directly and through the full {@link StAXSerializingComponent}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StAXSerializingBenchmark {
+    @Param({ "guestLayout.xml", "adminLayout.xml" })
+    public String layout;
+    
+    private List<XMLEvent> themedEvents;
+    private Map<String, CharacterEventSource> chunkingElements;
+    private Map<Pattern, CharacterEventSource> chunkingPatternEventSources;
+    private Pattern[] chunkingPatterns;
+    private XMLOutputFactory htmlOutputFactory;
+    private StAXSerializingComponent serializingComponent;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        this.request = new MockHttpServletRequest();
+        this.response = new MockHttpServletResponse();
+        
+        this.themedEvents = BenchmarkSupport.renderThemedEvents(this.layout, this.request, this.response);
+        
+        final IPortletWindowRegistry portletWindowRegistry = BenchmarkSupport.createPortletWindowRegistry();
+        this.chunkingElements = BenchmarkSupport.createChunkingElements(portletWindowRegistry);
+        final Map<String, CharacterEventSource> chunkingPatternMap = BenchmarkSupport.createChunkingPatterns(portletWindowRegistry);
+        this.chunkingPatternEventSources = BenchmarkSupport.compileChunkingPatterns(chunkingPatternMap);
+        this.chunkingPatterns = this.chunkingPatternEventSources.keySet().toArray(new Pattern[this.chunkingPatternEventSources.size()]);
+        
+        final XmlUtilitiesImpl xmlUtilities = new XmlUtilitiesImpl();
+        this.htmlOutputFactory = xmlUtilities.getHtmlOutputFactory();
+        
+        this.serializingComponent = new StAXSerializingComponent();
+        this.serializingComponent.setXmlUtilities(xmlUtilities);
+        this.serializingComponent.setWrappedComponent(new StAXEventListComponent(this.themedEvents));
+        this.serializingComponent.setChunkingElements(this.chunkingElements);
+        this.serializingComponent.setChunkingPatterns(chunkingPatternMap);
+    }
+    
+    @Benchmark
+    public List<CharacterEvent> chunkingEventReader() throws Exception {
+        final StringWriter writer = new StringWriter();
+        final XMLEventWriter xmlEventWriter = this.htmlOutputFactory.createXMLEventWriter(writer);
+        final ChunkingEventReader chunkingEventReader = new ChunkingEventReader(this.request, 
+                this.chunkingElements, this.chunkingPatternEventSources, this.chunkingPatterns, 
+                new XMLEventBufferReader(this.themedEvents.listIterator()), xmlEventWriter, writer);
+        
+        xmlEventWriter.add(chunkingEventReader);
+        xmlEventWriter.flush();
+        xmlEventWriter.close();
+        chunkingEventReader.close();
+        
+        return chunkingEventReader.getCharacterEvents();
+    }
+    
+    @Benchmark
+    public List<CharacterEvent> serializingComponent() {
+        return BenchmarkSupport.toList(this.serializingComponent.getEventReader(this.request, this.response));
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.events.XMLEvent;
+
+import org.jasig.portal.benchmark.BenchmarkSupport.StAXEventListComponent;
+import org.jasig.portal.rendering.xslt.XSLTComponent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Measures the structure and theme XSLT transforms of the rendering pipeline against
+ * pre-parsed user layouts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class XsltBenchmark {
+    @Param({ "guestLayout.xml", "adminLayout.xml" })
+    public String layout;
+    
+    private XSLTComponent structureComponent;
+    private XSLTComponent themeComponent;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        this.request = new MockHttpServletRequest();
+        this.response = new MockHttpServletResponse();
+        
+        final List<XMLEvent> layoutEvents = BenchmarkSupport.readEvents(BenchmarkSupport.getFixture(this.layout));
+        this.structureComponent = BenchmarkSupport.createXsltComponent("structureComponent", 
+                new StAXEventListComponent(layoutEvents), BenchmarkSupport.STRUCTURE_STYLESHEET);
+        
+        //Theme transform replays the structure output so the two transforms are measured independently
+        final List<XMLEvent> structuredEvents = BenchmarkSupport.toList(this.structureComponent.getEventReader(this.request, this.response));
+        this.themeComponent = BenchmarkSupport.createXsltComponent("themeComponent", 
+                new StAXEventListComponent(structuredEvents), BenchmarkSupport.THEME_STYLESHEET);
+    }
+    
+    @Benchmark
+    public List<XMLEvent> structureTransform() {
+        return BenchmarkSupport.toList(this.structureComponent.getEventReader(this.request, this.response));
+    }
+    
+    @Benchmark
+    public List<XMLEvent> themeTransform() {
+        return BenchmarkSupport.toList(this.themeComponent.getEventReader(this.request, this.response));
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.rendering.cache;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.events.XMLEvent;
+
+import org.jasig.portal.benchmark.BenchmarkSupport;
+import org.jasig.portal.benchmark.BenchmarkSupport.StAXEventListComponent;
+import org.jasig.portal.character.stream.CharacterEventBufferReader;
+import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
+import org.jasig.portal.rendering.StAXSerializingComponent;
+import org.jasig.portal.xml.XmlUtilitiesImpl;
+import org.jasig.portal.xml.stream.XMLEventBufferReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Measures storing pipeline events in a {@link CachedEventReader} and replaying them the way
+ * the caching pipeline components do on a cache hit. Lives in the cache package because
+ * {@link CachedEventReader} is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CachedEventReaderBenchmark {
+    @Param({ "guestLayout.xml", "adminLayout.xml" })
+    public String layout;
+    
+    private List<XMLEvent> xmlEvents;
+    private List<CharacterEvent> characterEvents;
+    private CachedEventReader<XMLEvent> cachedXmlEvents;
+    private CachedEventReader<CharacterEvent> cachedCharacterEvents;
+
+    @Setup
+    public void setup() throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        this.xmlEvents = BenchmarkSupport.renderThemedEvents(this.layout, request, response);
+        
+        final IPortletWindowRegistry portletWindowRegistry = BenchmarkSupport.createPortletWindowRegistry();
+        final StAXSerializingComponent serializingComponent = new StAXSerializingComponent();
+        serializingComponent.setXmlUtilities(new XmlUtilitiesImpl());
+        serializingComponent.setWrappedComponent(new StAXEventListComponent(this.xmlEvents));
+        serializingComponent.setChunkingElements(BenchmarkSupport.createChunkingElements(portletWindowRegistry));
+        serializingComponent.setChunkingPatterns(BenchmarkSupport.createChunkingPatterns(portletWindowRegistry));
+        
+        this.characterEvents = BenchmarkSupport.toList(serializingComponent.getEventReader(request, response));
+        
+        final Map<String, String> outputProperties = Collections.emptyMap();
+        this.cachedXmlEvents = new CachedEventReader<XMLEvent>(this.xmlEvents, outputProperties);
+        this.cachedCharacterEvents = new CachedEventReader<CharacterEvent>(this.characterEvents, outputProperties);
+    }
+    
+    @Benchmark
+    public CachedEventReader<XMLEvent> storeXmlEvents() {
+        return new CachedEventReader<XMLEvent>(this.xmlEvents, Collections.<String, String>emptyMap());
+    }
+    
+    @Benchmark
+    public void replayXmlEvents(Blackhole blackhole) throws Exception {
+        final XMLEventBufferReader eventReader = new XMLEventBufferReader(this.cachedXmlEvents.getEventCache().listIterator());
+        while (eventReader.hasNext()) {
+            blackhole.consume(eventReader.nextEvent());
+        }
+    }
+    
+    @Benchmark
+    public CachedEventReader<CharacterEvent> storeCharacterEvents() {
+        return new CachedEventReader<CharacterEvent>(this.characterEvents, Collections.<String, String>emptyMap());
+    }
+    
+    @Benchmark
+    public void replayCharacterEvents(Blackhole blackhole) {
+        final CharacterEventBufferReader eventReader = new CharacterEventBufferReader(this.cachedCharacterEvents.getEventCache().listIterator());
+        while (eventReader.hasNext()) {
+            blackhole.consume(eventReader.next());
+        }
+    }
+}
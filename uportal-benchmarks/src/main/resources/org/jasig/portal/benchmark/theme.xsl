@@ -0,0 +1,95 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+
+    Licensed to Jasig under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Jasig licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License. You may obtain a
+    copy of the License at:
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on
+    an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied. See the License for the
+    specific language governing permissions and limitations
+    under the License.
+
+-->
+<!--
+ | Simplified theme used by the rendering benchmarks. Produces page markup with the same
+ | placeholder elements and patterns as the real themes (channel, channel-header, chunk-point
+ | and {up-portlet-*(...)} patterns) without depending on the Xalan extensions and Spring
+ | managed helpers the real themes use.
+ +-->
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+    <xsl:output method="xml" indent="no" omit-xml-declaration="yes" media-type="text/html"/>
+
+    <xsl:template match="/">
+        <html>
+            <head>
+                <title>uPortal Benchmark</title>
+                <meta http-equiv="Content-Type" content="text/html; charset=UTF-8"/>
+                <link rel="stylesheet" type="text/css" href="/ResourceServingWebapp/rs/fluid/1.4.0/css/fss-framework-1.4.0.min.css"/>
+                <link rel="stylesheet" type="text/css" href="/uPortal/media/skins/respondr/defaultSkin.css"/>
+                <script type="text/javascript" src="/ResourceServingWebapp/rs/jquery/1.10.2/jquery-1.10.2.min.js"></script>
+                <script type="text/javascript" src="/uPortal/scripts/uportal.min.js"></script>
+                <xsl:copy-of select="//header/channel-header"/>
+            </head>
+            <body class="up dashboard portal fl-theme-mist">
+                <div id="portalPageHeader" class="portal-page-header">
+                    <div class="portal-global">
+                        <div class="portal-user">Welcome <span class="user-name">Guest</span></div>
+                        <form class="portal-search" action="/uPortal/p/search/max/action.uP" method="post">
+                            <input type="text" name="query" value="" class="searchInput"/>
+                            <input type="submit" value="Search" class="searchSubmit"/>
+                        </form>
+                    </div>
+                </div>
+                <chunk-point/>
+                <ul id="portalNavigationList" class="portal-navigation fl-tabs">
+                    <xsl:for-each select="//navigation/tab">
+                        <li id="portalNavigation_{@ID}" class="portal-navigation-tab">
+                            <a href="/uPortal/f/{@ID}/normal/render.uP" title="{@name}"><span><xsl:value-of select="@name"/></span></a>
+                        </li>
+                    </xsl:for-each>
+                </ul>
+                <chunk-point/>
+                <div id="portalPageBody" class="portal-page-body fl-container-flex">
+                    <xsl:apply-templates select="//content/column"/>
+                </div>
+                <div id="portalPageFooter" class="portal-page-footer">
+                    <p>Powered by uPortal, an open-source project by Jasig.</p>
+                </div>
+            </body>
+        </html>
+    </xsl:template>
+
+    <xsl:template match="column">
+        <div id="column_{@ID}" class="portal-page-column" style="width:{@width}">
+            <div class="portal-page-column-inner">
+                <xsl:apply-templates select="channel"/>
+            </div>
+        </div>
+    </xsl:template>
+
+    <xsl:template match="channel">
+        <section id="portlet_{@ID}" class="up-portlet-wrapper {@fname}">
+            <div id="toolbar_{@ID}" class="fl-widget-titlebar up-portlet-titlebar round-top">
+                <h2 class="portlet-title round-top">
+                    <a id="{@ID}" href="/uPortal/p/{@fname}/max/render.uP"><xsl:value-of select="concat('{up-portlet-title(', @ID, ')}')"/></a>
+                    <span class="up-portlet-new-item-count"><xsl:value-of select="concat('{up-portlet-new-item-count(', @ID, ')}')"/></span>
+                </h2>
+            </div>
+            <div id="portletContent_{@ID}" class="fl-widget-content fl-fix up-portlet-content-wrapper round-bottom">
+                <div class="up-portlet-content-wrapper-inner">
+                    <xsl:copy-of select="."/>
+                </div>
+            </div>
+        </section>
+        <chunk-point/>
+    </xsl:template>
+</xsl:stylesheet>
@@ -18,13 +18,65 @@
  */
 package org.jasig.portal.character.stream.events;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
 import org.jasig.portal.jmx.GuavaCacheStatsBean;
+import org.jasig.portal.rendering.cache.CachedEventStats;
+import org.jasig.portal.rendering.cache.CachingPipelineComponent;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import com.google.common.cache.Cache;
 
+/**
+ * Exposes the stats of the {@link CharacterDataEventImpl} cache and the estimated memory used by each
+ * entry cached by the rendering pipeline's {@link CachingPipelineComponent}s, reported per component
+ * bean name.
+ */
 public class CharacterDataEventCacheStatsBean extends GuavaCacheStatsBean {
+    private Map<String, CachingPipelineComponent<?, ?>> cachingPipelineComponents = Collections.emptyMap();
+    
+    @Autowired(required=false)
+    public void setCachingPipelineComponents(Map<String, CachingPipelineComponent<?, ?>> cachingPipelineComponents) {
+        this.cachingPipelineComponents = new TreeMap<String, CachingPipelineComponent<?, ?>>(cachingPipelineComponents);
+    }
+
     @Override
     protected Cache<?, ?> getCache() {
         return CharacterDataEventImpl.getEventCache();
     }
+    
+    /**
+     * @see CachedEventStats#getAverageCachedEntrySize()
+     */
+    public Map<String, Long> getAverageCachedEntrySizes() {
+        final Map<String, Long> averageCachedEntrySizes = new TreeMap<String, Long>();
+        for (final Map.Entry<String, CachingPipelineComponent<?, ?>> componentEntry : this.cachingPipelineComponents.entrySet()) {
+            averageCachedEntrySizes.put(componentEntry.getKey(), componentEntry.getValue().getCachedEventStats().getAverageCachedEntrySize());
+        }
+        return averageCachedEntrySizes;
+    }
+    
+    /**
+     * @see CachedEventStats#getLastCachedEntrySize()
+     */
+    public Map<String, Long> getLastCachedEntrySizes() {
+        final Map<String, Long> lastCachedEntrySizes = new TreeMap<String, Long>();
+        for (final Map.Entry<String, CachingPipelineComponent<?, ?>> componentEntry : this.cachingPipelineComponents.entrySet()) {
+            lastCachedEntrySizes.put(componentEntry.getKey(), componentEntry.getValue().getCachedEventStats().getLastCachedEntrySize());
+        }
+        return lastCachedEntrySizes;
+    }
+    
+    /**
+     * @see CachedEventStats#getCachedEntryCount()
+     */
+    public Map<String, Long> getCachedEntryCounts() {
+        final Map<String, Long> cachedEntryCounts = new TreeMap<String, Long>();
+        for (final Map.Entry<String, CachingPipelineComponent<?, ?>> componentEntry : this.cachingPipelineComponents.entrySet()) {
+            cachedEntryCounts.put(componentEntry.getKey(), componentEntry.getValue().getCachedEventStats().getCachedEntryCount());
+        }
+        return cachedEntryCounts;
+    }
 }
@@ -63,5 +63,9 @@ public enum CharacterEventTypes {
     /**
      * @see PageAnalyticsDataPlaceholderEvent 
      */
-    PAGE_ANALYTICS_DATA;
+    PAGE_ANALYTICS_DATA,
+    /**
+     * @see DeferredPortletContentPlaceholderEvent
+     */
+    DEFERRED_PORTLET_CONTENT;
 }
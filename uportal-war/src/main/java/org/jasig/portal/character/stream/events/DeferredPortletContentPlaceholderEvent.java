@@ -0,0 +1,39 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.character.stream.events;
+
+/**
+ * Marks the location in the page where the output of portlets that were deferred by
+ * out-of-order rendering is written.
+ */
+public final class DeferredPortletContentPlaceholderEvent implements CharacterEvent {
+    public static final DeferredPortletContentPlaceholderEvent INSTANCE = new DeferredPortletContentPlaceholderEvent();
+    
+    private static final long serialVersionUID = 1L;
+    
+    private DeferredPortletContentPlaceholderEvent() {
+    }
+
+    @Override 
+    public CharacterEventTypes getEventType() {
+        return CharacterEventTypes.DEFERRED_PORTLET_CONTENT;
+    }
+}
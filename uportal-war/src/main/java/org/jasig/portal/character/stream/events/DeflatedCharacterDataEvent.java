@@ -0,0 +1,47 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.character.stream.events;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Checksum;
+
+/**
+ * {@link EncodedCharacterDataEvent} that also carries a pre-compressed form of its encoded
+ * data. The compressed data is a sequence of raw deflate blocks that ends on a byte boundary,
+ * contains no final block and does not reference any data outside of this event so it can be
+ * spliced into any deflate stream after a full flush.
+ */
+public interface DeflatedCharacterDataEvent extends EncodedCharacterDataEvent {
+    /**
+     * @return The length of the deflated data in bytes
+     */
+    public int getDeflatedLength();
+    
+    /**
+     * Write the pre-compressed data to the specified stream
+     */
+    public void writeDeflatedData(OutputStream out) throws IOException;
+    
+    /**
+     * Update the checksum with the encoded, uncompressed, data
+     */
+    public void updateChecksum(Checksum checksum);
+}
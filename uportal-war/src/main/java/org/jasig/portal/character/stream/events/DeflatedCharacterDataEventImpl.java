@@ -0,0 +1,212 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.character.stream.events;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+import org.springframework.util.Assert;
+
+/**
+ * Immutable {@link DeflatedCharacterDataEvent}, the encoded and deflated byte[]s are never
+ * exposed outside of this class.
+ */
+public final class DeflatedCharacterDataEventImpl implements DeflatedCharacterDataEvent {
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Create a deflated event for the specified character data. If the event is already
+     * deflated using the specified character set it is returned as-is
+     */
+    public static DeflatedCharacterDataEvent create(CharacterDataEvent event, String characterSet) {
+        if (event instanceof DeflatedCharacterDataEvent) {
+            final DeflatedCharacterDataEvent deflatedEvent = (DeflatedCharacterDataEvent)event;
+            if (characterSet.equals(deflatedEvent.getCharacterSet())) {
+                return deflatedEvent;
+            }
+        }
+        
+        return create(event.getData(), characterSet);
+    }
+    
+    /**
+     * Create a deflated event for the specified character data
+     */
+    public static DeflatedCharacterDataEvent create(String data, String characterSet) {
+        final byte[] encodedData;
+        try {
+            encodedData = data.getBytes(characterSet);
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException("Unsupported character set: " + characterSet, e);
+        }
+        
+        return new DeflatedCharacterDataEventImpl(data, characterSet, encodedData, deflate(encodedData));
+    }
+    
+    /**
+     * Compress the data with a new {@link Deflater} and end with a full flush, that results in
+     * byte aligned, non-final, blocks with no references to data outside of this event.
+     */
+    private static byte[] deflate(byte[] encodedData) {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(encodedData);
+            
+            final ByteArrayOutputStream deflatedData = new ByteArrayOutputStream(encodedData.length / 2 + 16);
+            final byte[] buffer = new byte[4096];
+            int length;
+            do {
+                length = deflater.deflate(buffer, 0, buffer.length, Deflater.FULL_FLUSH);
+                deflatedData.write(buffer, 0, length);
+            } while (length == buffer.length);
+            
+            return deflatedData.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+    
+    private final String data;
+    private final String characterSet;
+    private final byte[] encodedData;
+    private final byte[] deflatedData;
+    private int hash = 0;
+    
+    private DeflatedCharacterDataEventImpl(String data, String characterSet, byte[] encodedData, byte[] deflatedData) {
+        Assert.notNull(data);
+        Assert.notNull(characterSet);
+        Assert.notNull(encodedData);
+        Assert.notNull(deflatedData);
+        this.data = data;
+        this.characterSet = characterSet;
+        this.encodedData = encodedData;
+        this.deflatedData = deflatedData;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.CharacterDataEvent#getData()
+     */
+    @Override
+    public String getData() {
+        return this.data;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.EncodedCharacterDataEvent#getCharacterSet()
+     */
+    @Override
+    public String getCharacterSet() {
+        return this.characterSet;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.EncodedCharacterDataEvent#getEncodedLength()
+     */
+    @Override
+    public int getEncodedLength() {
+        return this.encodedData.length;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.EncodedCharacterDataEvent#writeEncodedData(java.io.OutputStream)
+     */
+    @Override
+    public void writeEncodedData(OutputStream out) throws IOException {
+        out.write(this.encodedData);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.DeflatedCharacterDataEvent#getDeflatedLength()
+     */
+    @Override
+    public int getDeflatedLength() {
+        return this.deflatedData.length;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.DeflatedCharacterDataEvent#writeDeflatedData(java.io.OutputStream)
+     */
+    @Override
+    public void writeDeflatedData(OutputStream out) throws IOException {
+        out.write(this.deflatedData);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.DeflatedCharacterDataEvent#updateChecksum(java.util.zip.Checksum)
+     */
+    @Override
+    public void updateChecksum(Checksum checksum) {
+        checksum.update(this.encodedData, 0, this.encodedData.length);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.CharacterEvent#getEventType()
+     */
+    @Override
+    public CharacterEventTypes getEventType() {
+        return CharacterEventTypes.CHARACTER;
+    }
+
+    @Override
+    public String toString() {
+        return "DeflatedCharacterDataEvent [characterSet=" + this.characterSet + ", data=" + this.data + "]";
+    }
+
+    /**
+     * Same hash as {@link CharacterDataEventImpl} so that deflated and plain events with the same data are equal
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            final int prime = 31;
+            h = 1;
+            h = prime * h + getEventType().hashCode();
+            h = prime * h + data.hashCode();
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (!(obj instanceof CharacterDataEvent))
+            return false;
+        CharacterDataEvent other = (CharacterDataEvent) obj;
+        
+        if (!data.equals(other.getData()))
+            return false;
+        
+        if (!getEventType().equals(other.getEventType()))
+            return false;
+        
+        return true;
+    }
+}
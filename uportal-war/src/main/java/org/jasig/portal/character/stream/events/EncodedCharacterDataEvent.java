@@ -0,0 +1,46 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.character.stream.events;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link CharacterDataEvent} that also carries an immutable, pre-encoded form of its
+ * character data. Allows the top level renderer to write the bytes directly to the
+ * response stream without re-encoding the same String on every request.
+ */
+public interface EncodedCharacterDataEvent extends CharacterDataEvent {
+    /**
+     * @return The name of the character set the data was encoded with
+     */
+    public String getCharacterSet();
+    
+    /**
+     * @return The length of the encoded data in bytes
+     */
+    public int getEncodedLength();
+    
+    /**
+     * Write the pre-encoded data to the specified stream
+     */
+    public void writeEncodedData(OutputStream out) throws IOException;
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.character.stream.events;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.springframework.util.Assert;
+
+/**
+ * Immutable {@link EncodedCharacterDataEvent}, the encoded byte[] is never exposed
+ * outside of this class.
+ */
+public final class EncodedCharacterDataEventImpl implements EncodedCharacterDataEvent {
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Create an encoded event for the specified character data. If the event is already
+     * encoded using the specified character set it is returned as-is
+     */
+    public static EncodedCharacterDataEvent create(CharacterDataEvent event, String characterSet) {
+        if (event instanceof EncodedCharacterDataEvent) {
+            final EncodedCharacterDataEvent encodedEvent = (EncodedCharacterDataEvent)event;
+            if (characterSet.equals(encodedEvent.getCharacterSet())) {
+                return encodedEvent;
+            }
+        }
+        
+        return create(event.getData(), characterSet);
+    }
+    
+    /**
+     * Create an encoded event for the specified character data
+     */
+    public static EncodedCharacterDataEvent create(String data, String characterSet) {
+        try {
+            return new EncodedCharacterDataEventImpl(data, characterSet, data.getBytes(characterSet));
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException("Unsupported character set: " + characterSet, e);
+        }
+    }
+    
+    private final String data;
+    private final String characterSet;
+    private final byte[] encodedData;
+    private int hash = 0;
+    
+    private EncodedCharacterDataEventImpl(String data, String characterSet, byte[] encodedData) {
+        Assert.notNull(data);
+        Assert.notNull(characterSet);
+        Assert.notNull(encodedData);
+        this.data = data;
+        this.characterSet = characterSet;
+        this.encodedData = encodedData;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.CharacterDataEvent#getData()
+     */
+    @Override
+    public String getData() {
+        return this.data;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.EncodedCharacterDataEvent#getCharacterSet()
+     */
+    @Override
+    public String getCharacterSet() {
+        return this.characterSet;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.EncodedCharacterDataEvent#getEncodedLength()
+     */
+    @Override
+    public int getEncodedLength() {
+        return this.encodedData.length;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.EncodedCharacterDataEvent#writeEncodedData(java.io.OutputStream)
+     */
+    @Override
+    public void writeEncodedData(OutputStream out) throws IOException {
+        out.write(this.encodedData);
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.character.stream.events.CharacterEvent#getEventType()
+     */
+    @Override
+    public CharacterEventTypes getEventType() {
+        return CharacterEventTypes.CHARACTER;
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedCharacterDataEvent [characterSet=" + this.characterSet + ", data=" + this.data + "]";
+    }
+
+    /**
+     * Same hash as {@link CharacterDataEventImpl} so that encoded and plain events with the same data are equal
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            final int prime = 31;
+            h = 1;
+            h = prime * h + getEventType().hashCode();
+            h = prime * h + data.hashCode();
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (!(obj instanceof CharacterDataEvent))
+            return false;
+        CharacterDataEvent other = (CharacterDataEvent) obj;
+        
+        if (!data.equals(other.getData()))
+            return false;
+        
+        if (!getEventType().equals(other.getEventType()))
+            return false;
+        
+        return true;
+    }
+}
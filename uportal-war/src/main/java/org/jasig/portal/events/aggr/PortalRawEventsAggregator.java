@@ -26,6 +26,11 @@ import org.jasig.portal.concurrency.locking.IClusterLockService;
 
 /**
  * Handles aggregation of portal raw events as well as cleanup of the generated aggregations
+ * <br/>
+ * Aggregation is done by a single node at a time. Events for every time range update the same
+ * aggregation rows for the longer intervals (hour, day, month ...) and for each group, interval
+ * boundaries are detected from the event order, and the aggregation statistics can't be merged
+ * after the fact, so disjoint ranges of raw events can't be aggregated concurrently.
  */
 public interface PortalRawEventsAggregator {
     /**
@@ -0,0 +1,214 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.events.handlers;
+
+import java.util.Date;
+
+import org.jasig.portal.events.aggr.AggregationInterval;
+import org.jasig.portal.events.aggr.portletexec.PortletExecutionAggregationKey.ExecutionType;
+import org.joda.time.DateTime;
+
+/**
+ * Partial aggregation of the portal events of one type seen by a single portal node during a single
+ * {@link AggregationInterval}. Only statistics that can be merged without the raw events are tracked:
+ * the event count and the total, minimum and maximum execution time.
+ * <p>
+ * Once {@link #close()} has been called no more events are added, {@link #add(long)} returns false
+ * and the caller has to start a new partial aggregation for the interval.
+ */
+public class PartialEventAggregation {
+    /**
+     * The type of portal event being aggregated
+     */
+    public enum AggregationType {
+        LOGIN,
+        PORTAL_RENDER,
+        PORTLET_EXECUTION;
+    }
+    
+    private final Key key;
+    private final DateTime end;
+    
+    private boolean closed = false;
+    private long count = 0;
+    private long totalTimeNano = 0;
+    private long minTimeNano = Long.MAX_VALUE;
+    private long maxTimeNano = Long.MIN_VALUE;
+    
+    PartialEventAggregation(Key key) {
+        this.key = key;
+        this.end = key.interval.determineEnd(key.start);
+    }
+    
+    /**
+     * @param executionTimeNano Execution time of the event in nanoseconds, negative if the event is not timed
+     * @return false if the aggregation has been closed and the event was not added
+     */
+    synchronized boolean add(long executionTimeNano) {
+        if (this.closed) {
+            return false;
+        }
+        
+        this.count++;
+        if (executionTimeNano >= 0) {
+            this.totalTimeNano += executionTimeNano;
+            this.minTimeNano = Math.min(this.minTimeNano, executionTimeNano);
+            this.maxTimeNano = Math.max(this.maxTimeNano, executionTimeNano);
+        }
+        return true;
+    }
+    
+    synchronized void close() {
+        this.closed = true;
+    }
+    
+    boolean isComplete(DateTime now) {
+        return !this.end.isAfter(now);
+    }
+    
+    public AggregationInterval getInterval() {
+        return this.key.interval;
+    }
+    
+    public AggregationType getAggregationType() {
+        return this.key.aggregationType;
+    }
+    
+    /**
+     * @return The portlet execution type, null if this is not a {@link AggregationType#PORTLET_EXECUTION} aggregation
+     */
+    public ExecutionType getExecutionType() {
+        return this.key.executionType;
+    }
+    
+    /**
+     * @return The portlet fname, null if this is not a {@link AggregationType#PORTLET_EXECUTION} aggregation
+     */
+    public String getFname() {
+        return this.key.fname;
+    }
+    
+    /**
+     * @return Start (inclusive) of the interval
+     */
+    public Date getStart() {
+        return this.key.start.toDate();
+    }
+    
+    /**
+     * @return End (exclusive) of the interval
+     */
+    public Date getEnd() {
+        return this.end.toDate();
+    }
+    
+    public synchronized long getCount() {
+        return this.count;
+    }
+    
+    public synchronized long getTotalTimeNano() {
+        return this.totalTimeNano;
+    }
+    
+    /**
+     * @return Minimum execution time in nanoseconds, 0 if no timed events were aggregated
+     */
+    public synchronized long getMinTimeNano() {
+        return this.minTimeNano == Long.MAX_VALUE ? 0 : this.minTimeNano;
+    }
+    
+    /**
+     * @return Maximum execution time in nanoseconds, 0 if no timed events were aggregated
+     */
+    public synchronized long getMaxTimeNano() {
+        return this.maxTimeNano == Long.MIN_VALUE ? 0 : this.maxTimeNano;
+    }
+    
+    /**
+     * @return Mean execution time in nanoseconds, 0 if no timed events were aggregated
+     */
+    public synchronized double getMeanTimeNano() {
+        if (this.minTimeNano == Long.MAX_VALUE) {
+            return 0;
+        }
+        return (double) this.totalTimeNano / this.count;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PartialEventAggregation [interval=" + this.key.interval + ", start=" + this.key.start
+                + ", aggregationType=" + this.key.aggregationType + ", executionType=" + this.key.executionType
+                + ", fname=" + this.key.fname + ", count=" + this.count + ", totalTimeNano=" + this.totalTimeNano
+                + ", minTimeNano=" + this.getMinTimeNano() + ", maxTimeNano=" + this.getMaxTimeNano() + "]";
+    }
+
+    /**
+     * Identifies a partial aggregation, mirrors the interval, date/time and portlet parts of the
+     * persisted aggregation keys. Group is not included as event to group mappings are only available
+     * to the raw event aggregation.
+     */
+    static final class Key {
+        private final AggregationInterval interval;
+        private final DateTime start;
+        private final AggregationType aggregationType;
+        private final ExecutionType executionType;
+        private final String fname;
+        private final int hash;
+        
+        Key(AggregationInterval interval, DateTime start, AggregationType aggregationType,
+                ExecutionType executionType, String fname) {
+            this.interval = interval;
+            this.start = start;
+            this.aggregationType = aggregationType;
+            this.executionType = executionType;
+            this.fname = fname;
+            
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + interval.hashCode();
+            result = prime * result + (int) (start.getMillis() ^ (start.getMillis() >>> 32));
+            result = prime * result + aggregationType.hashCode();
+            result = prime * result + ((executionType == null) ? 0 : executionType.hashCode());
+            result = prime * result + ((fname == null) ? 0 : fname.hashCode());
+            this.hash = result;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return this.hash == other.hash
+                    && this.interval == other.interval
+                    && this.start.getMillis() == other.start.getMillis()
+                    && this.aggregationType == other.aggregationType
+                    && this.executionType == other.executionType
+                    && (this.fname == null ? other.fname == null : this.fname.equals(other.fname));
+        }
+    }
+}
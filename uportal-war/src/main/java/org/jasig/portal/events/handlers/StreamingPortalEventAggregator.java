@@ -0,0 +1,197 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.events.handlers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.jasig.portal.events.LoginEvent;
+import org.jasig.portal.events.PortalEvent;
+import org.jasig.portal.events.PortalRenderEvent;
+import org.jasig.portal.events.PortletExecutionEvent;
+import org.jasig.portal.events.aggr.AggregationInterval;
+import org.jasig.portal.events.aggr.portletexec.PortletExecutionAggregationKey.ExecutionType;
+import org.jasig.portal.events.handlers.PartialEventAggregation.AggregationType;
+import org.jasig.portal.spring.context.FilteringApplicationListener;
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Aggregates {@link LoginEvent}s, {@link PortalRenderEvent}s and {@link PortletExecutionEvent}s in memory
+ * as they are fired on this portal node. Events are counted into a {@link PartialEventAggregation} per
+ * {@link AggregationInterval}, interval start, event type and, for portlet executions, {@link ExecutionType}
+ * and fname. Once an interval has ended {@link #flushCompletedAggregations()} moves its partial aggregations
+ * into a bounded list of flushed aggregations, both are available through JMX for near-real-time statistics.
+ * <p>
+ * This does not replace raw event storage and aggregation. Group membership, tab names and statistics such
+ * as unique users and percentiles can only be computed from the raw events, so the aggregations here are
+ * node local and never written to the aggregation tables.
+ */
+@ManagedResource("uPortal:section=Framework,name=StreamingPortalEventAggregator")
+public class StreamingPortalEventAggregator extends FilteringApplicationListener<PortalEvent> implements StreamingPortalEventAggregatorMXBean {
+    private final ConcurrentMap<PartialEventAggregation.Key, PartialEventAggregation> openAggregations = 
+            new ConcurrentHashMap<PartialEventAggregation.Key, PartialEventAggregation>();
+    private final Deque<PartialEventAggregation> flushedAggregations = new ArrayDeque<PartialEventAggregation>();
+    
+    private volatile boolean enabled = false;
+    private volatile Set<AggregationInterval> intervals = EnumSet.of(AggregationInterval.MINUTE, AggregationInterval.FIVE_MINUTE, AggregationInterval.HOUR);
+    private int flushedAggregationsSize = 1000;
+
+    @Value("${org.jasig.portal.events.handlers.StreamingPortalEventAggregator.enabled:false}")
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @param intervals Comma separated list of {@link AggregationInterval}s to aggregate events for, only intervals
+     *  that support start and end determination can be used. Defaults to MINUTE,FIVE_MINUTE,HOUR
+     */
+    @Value("${org.jasig.portal.events.handlers.StreamingPortalEventAggregator.intervals:MINUTE,FIVE_MINUTE,HOUR}")
+    public void setIntervals(String intervals) {
+        final Set<AggregationInterval> parsedIntervals = EnumSet.noneOf(AggregationInterval.class);
+        for (final String interval : StringUtils.split(intervals, ", ")) {
+            final AggregationInterval aggregationInterval = AggregationInterval.valueOf(interval);
+            if (!aggregationInterval.isSupportsDetermination()) {
+                throw new IllegalArgumentException("AggregationInterval " + aggregationInterval + " does not support start and end determination and cannot be aggregated in memory");
+            }
+            parsedIntervals.add(aggregationInterval);
+        }
+        this.intervals = parsedIntervals;
+    }
+
+    /**
+     * @param flushedAggregationsSize Number of flushed partial aggregations to keep in memory. Defaults to 1000
+     */
+    @Value("${org.jasig.portal.events.handlers.StreamingPortalEventAggregator.flushedAggregationsSize:1000}")
+    public void setFlushedAggregationsSize(int flushedAggregationsSize) {
+        this.flushedAggregationsSize = flushedAggregationsSize;
+    }
+
+    @Override
+    public List<PartialEventAggregation> getOpenAggregations() {
+        return new ArrayList<PartialEventAggregation>(this.openAggregations.values());
+    }
+
+    @Override
+    public List<PartialEventAggregation> getFlushedAggregations() {
+        synchronized (this.flushedAggregations) {
+            return new ArrayList<PartialEventAggregation>(this.flushedAggregations);
+        }
+    }
+
+    @Override
+    protected void onFilteredApplicationEvent(PortalEvent event) {
+        if (!this.enabled) {
+            return;
+        }
+        
+        if (event instanceof PortletExecutionEvent) {
+            final PortletExecutionEvent portletExecutionEvent = (PortletExecutionEvent) event;
+            final String fname = portletExecutionEvent.getFname();
+            final long executionTimeNano = portletExecutionEvent.getExecutionTimeNano();
+            for (final ExecutionType executionType : ExecutionType.values()) {
+                if (executionType.supports(event.getClass())) {
+                    this.aggregate(event, AggregationType.PORTLET_EXECUTION, executionType, fname, executionTimeNano);
+                }
+            }
+        }
+        else if (event instanceof PortalRenderEvent) {
+            this.aggregate(event, AggregationType.PORTAL_RENDER, null, null, ((PortalRenderEvent) event).getExecutionTimeNano());
+        }
+        else if (event instanceof LoginEvent) {
+            this.aggregate(event, AggregationType.LOGIN, null, null, -1);
+        }
+    }
+
+    /**
+     * Flush the partial aggregations for all intervals that have ended. Events that arrive for an interval
+     * after it was flushed are aggregated into a new partial aggregation which is flushed on the next call.
+     */
+    public void flushCompletedAggregations() {
+        this.flushCompletedAggregations(DateTime.now());
+    }
+    
+    /**
+     * @param now Aggregations for intervals that end at or before this time are flushed
+     */
+    void flushCompletedAggregations(DateTime now) {
+        final List<PartialEventAggregation> completedAggregations = new ArrayList<PartialEventAggregation>();
+        for (final Iterator<PartialEventAggregation> aggregationItr = this.openAggregations.values().iterator(); aggregationItr.hasNext(); ) {
+            final PartialEventAggregation aggregation = aggregationItr.next();
+            if (aggregation.isComplete(now)) {
+                aggregationItr.remove();
+                aggregation.close();
+                completedAggregations.add(aggregation);
+            }
+        }
+        
+        if (completedAggregations.isEmpty()) {
+            return;
+        }
+        
+        synchronized (this.flushedAggregations) {
+            for (final PartialEventAggregation aggregation : completedAggregations) {
+                this.flushedAggregations.addLast(aggregation);
+                logger.debug("Flushed {}", aggregation);
+            }
+            
+            while (this.flushedAggregations.size() > this.flushedAggregationsSize) {
+                this.flushedAggregations.removeFirst();
+            }
+        }
+    }
+
+    private void aggregate(PortalEvent event, AggregationType aggregationType, ExecutionType executionType, String fname, long executionTimeNano) {
+        final DateTime timestamp = event.getTimestampAsDate();
+        for (final AggregationInterval interval : this.intervals) {
+            final PartialEventAggregation.Key key = 
+                    new PartialEventAggregation.Key(interval, interval.determineStart(timestamp), aggregationType, executionType, fname);
+            
+            //Retry if the aggregation was flushed between the lookup and the add
+            PartialEventAggregation aggregation;
+            do {
+                aggregation = this.openAggregations.get(key);
+                if (aggregation == null) {
+                    aggregation = new PartialEventAggregation(key);
+                    final PartialEventAggregation existing = this.openAggregations.putIfAbsent(key, aggregation);
+                    if (existing != null) {
+                        aggregation = existing;
+                    }
+                }
+            } while (!aggregation.add(executionTimeNano));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.events.handlers;
+
+import java.util.List;
+
+/**
+ * JMX stats and settings for StreamingPortalEventAggregator
+ */
+public interface StreamingPortalEventAggregatorMXBean {
+    
+    /**
+     * @param enabled If events should be aggregated as they are fired
+     */
+    void setEnabled(boolean enabled);
+    
+    /**
+     * @return If events are aggregated as they are fired
+     */
+    boolean isEnabled();
+    
+    /**
+     * @return Partial aggregations for intervals that have not yet ended
+     */
+    List<PartialEventAggregation> getOpenAggregations();
+    
+    /**
+     * @return The most recently flushed partial aggregations for completed intervals, oldest first
+     */
+    List<PartialEventAggregation> getFlushedAggregations();
+}
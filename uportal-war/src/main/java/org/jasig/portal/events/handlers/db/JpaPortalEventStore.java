@@ -20,7 +20,10 @@
 package org.jasig.portal.events.handlers.db;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
@@ -37,6 +40,7 @@ import org.jasig.portal.concurrency.FunctionWithoutResult;
 import org.jasig.portal.events.PortalEvent;
 import org.jasig.portal.jpa.BaseRawEventsJpaDao;
 import org.joda.time.DateTime;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.support.DataAccessUtils;
@@ -56,13 +60,21 @@ import com.google.common.base.Function;
  * @version $Revision$
  */
 @Repository
-public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalEventDao {
+public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalEventDao, DisposableBean {
+    /**
+     * Number of raw events read ahead and decoded together during aggregation
+     */
+    private static final int DECODE_BATCH_SIZE = 250;
 
     private ObjectMapper mapper;
+    private PortalEventDataCodec eventDataCodec;
+    private boolean encodeEventData = false;
     private String deleteQuery;
     private String selectQuery;
     private String selectUnaggregatedQuery;
     private int flushPeriod = 1000;
+    private int decodeThreads = 0;
+    private volatile ForkJoinPool decodePool;
     private CriteriaQuery<DateTime> findNewestPersistentPortalEventTimestampQuery;
     private CriteriaQuery<DateTime> findOldestPersistentPortalEventTimestampQuery;
     private ParameterExpression<DateTime> startTimeParameter;
@@ -72,6 +84,17 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
     @Autowired
     public void setMapper(ObjectMapper mapper) {
         this.mapper = mapper;
+        this.eventDataCodec = new PortalEventDataCodec(mapper);
+    }
+    
+    /**
+     * If event data should be stored using the compact binary encoding instead of JSON, defaults to false.
+     * Existing JSON event data can always be read. Only enable once all portal instances writing to or
+     * aggregating the raw events database support the encoding.
+     */
+    @Value("${org.jasig.portal.events.handlers.db.JpaPortalEventStore.encodeEventData:false}")
+    public void setEncodeEventData(boolean encodeEventData) {
+        this.encodeEventData = encodeEventData;
     }
 
     /**
@@ -82,6 +105,15 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
         this.flushPeriod = flushPeriod;
     }
     
+    /**
+     * Number of threads used to decode raw events during {@link #aggregatePortalEvents(DateTime, DateTime, int, Function)},
+     * defaults to 0 which uses one thread per processor. 1 decodes events on the aggregating thread.
+     */
+    @Value("${org.jasig.portal.events.handlers.db.JpaPortalEventStore.aggregationDecodeThreads:0}")
+    public void setAggregationDecodeThreads(int decodeThreads) {
+        this.decodeThreads = decodeThreads;
+    }
+    
     @Override
     public void afterPropertiesSet() throws Exception {
         this.startTimeParameter = this.createParameterExpression(DateTime.class, "startTime");
@@ -197,14 +229,47 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
             query.setMaxResults(maxEvents);
         }
 
+        //Events are read ahead and decoded in parallel, then handled one at a time in timestamp order
+        final List<PersistentPortalEvent> persistentPortalEvents = new ArrayList<PersistentPortalEvent>(DECODE_BATCH_SIZE);
         int resultCount = 0;
+        int lastFlushCount = 0;
         for (final ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY); results.next(); ) {
-            final PersistentPortalEvent persistentPortalEvent = (PersistentPortalEvent)results.get(0);
-            final PortalEvent portalEvent;
-            try {
-                portalEvent = this.toPortalEvent(persistentPortalEvent.getEventData(), persistentPortalEvent.getEventType());
+            persistentPortalEvents.add((PersistentPortalEvent)results.get(0));
+            if (persistentPortalEvents.size() < DECODE_BATCH_SIZE) {
+                continue;
+            }
+            
+            if (!this.aggregatePortalEvents(session, persistentPortalEvents, handler)) {
+                return false;
+            }
+            resultCount += persistentPortalEvents.size();
+            persistentPortalEvents.clear();
+            
+            //periodic flush and clear of session to manage memory demands, only between batches so no
+            //read ahead events are detached
+            if (resultCount - lastFlushCount >= this.flushPeriod) {
+                this.logger.debug("Aggregated {} events, flush and clear {} EntityManager.", resultCount, PERSISTENCE_UNIT_NAME);
+                session.flush();
+                session.clear();
+                lastFlushCount = resultCount;
             }
-            catch (RuntimeException e) {
+        }
+        
+        return this.aggregatePortalEvents(session, persistentPortalEvents, handler);
+    }
+    
+    /**
+     * Decode the batch of events and pass each to the handler in order, marking it as aggregated
+     * 
+     * @return false if the handler requested aggregation stop
+     */
+    private boolean aggregatePortalEvents(Session session, List<PersistentPortalEvent> persistentPortalEvents, Function<PortalEvent, Boolean> handler) {
+        final Object[] decodedEvents = this.decodePortalEvents(persistentPortalEvents);
+        
+        for (int i = 0; i < decodedEvents.length; i++) {
+            final PersistentPortalEvent persistentPortalEvent = persistentPortalEvents.get(i);
+            if (decodedEvents[i] instanceof RuntimeException) {
+                final RuntimeException e = (RuntimeException)decodedEvents[i];
                 this.logger.warn("Failed to convert PersistentPortalEvent to PortalEvent: " + persistentPortalEvent, e);
                 
                 //Mark the event as error and store the mark to prevent trying to reprocess the broken event data
@@ -214,6 +279,7 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
                 continue;
             }
             
+            final PortalEvent portalEvent = (PortalEvent)decodedEvents[i];
             try {
             
                 final Boolean eventHandled = handler.apply(portalEvent);
@@ -225,13 +291,6 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
                 //Mark the event as aggregated and store the mark
                 persistentPortalEvent.setAggregated(true);
                 session.persist(persistentPortalEvent);
-                
-                //periodic flush and clear of session to manage memory demands
-                if (++resultCount % this.flushPeriod == 0) {
-                    this.logger.debug("Aggregated {} events, flush and clear {} EntityManager.", resultCount, PERSISTENCE_UNIT_NAME);
-                    session.flush();
-                    session.clear();
-                }
             
             } catch (Exception e) {
                 this.logger.warn("Failed to aggregate portal event: " + persistentPortalEvent, e);
@@ -244,6 +303,93 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
         return true;
     }
     
+    /**
+     * @return The decoded {@link PortalEvent} or the {@link RuntimeException} thrown while decoding for each event
+     */
+    private Object[] decodePortalEvents(List<PersistentPortalEvent> persistentPortalEvents) {
+        final Object[] decodedEvents = new Object[persistentPortalEvents.size()];
+        final DecodePortalEventsTask decodeTask = new DecodePortalEventsTask(persistentPortalEvents, decodedEvents, 0, decodedEvents.length);
+        
+        final ForkJoinPool decodePool = this.getDecodePool();
+        if (decodePool == null) {
+            decodeTask.compute();
+        }
+        else {
+            decodePool.invoke(decodeTask);
+        }
+        
+        return decodedEvents;
+    }
+    
+    private ForkJoinPool getDecodePool() {
+        final int threads = this.decodeThreads > 0 ? this.decodeThreads : Runtime.getRuntime().availableProcessors();
+        if (threads <= 1) {
+            return null;
+        }
+        
+        ForkJoinPool decodePool = this.decodePool;
+        if (decodePool == null) {
+            synchronized (this) {
+                decodePool = this.decodePool;
+                if (decodePool == null) {
+                    decodePool = new ForkJoinPool(threads);
+                    this.decodePool = decodePool;
+                }
+            }
+        }
+        return decodePool;
+    }
+    
+    @Override
+    public void destroy() throws Exception {
+        final ForkJoinPool decodePool = this.decodePool;
+        if (decodePool != null) {
+            decodePool.shutdown();
+        }
+    }
+    
+    /**
+     * Decodes a range of events, splitting the range across the pool. Decoding only uses the thread safe
+     * ObjectMapper so it is safe outside of the thread that owns the Hibernate session.
+     */
+    private final class DecodePortalEventsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int DECODE_THRESHOLD = 32;
+        
+        private final List<PersistentPortalEvent> persistentPortalEvents;
+        private final Object[] decodedEvents;
+        private final int start;
+        private final int end;
+        
+        public DecodePortalEventsTask(List<PersistentPortalEvent> persistentPortalEvents, Object[] decodedEvents, int start, int end) {
+            this.persistentPortalEvents = persistentPortalEvents;
+            this.decodedEvents = decodedEvents;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.end - this.start > DECODE_THRESHOLD && getPool() != null) {
+                final int middle = (this.start + this.end) >>> 1;
+                invokeAll(
+                        new DecodePortalEventsTask(this.persistentPortalEvents, this.decodedEvents, this.start, middle),
+                        new DecodePortalEventsTask(this.persistentPortalEvents, this.decodedEvents, middle, this.end));
+                return;
+            }
+            
+            for (int i = this.start; i < this.end; i++) {
+                final PersistentPortalEvent persistentPortalEvent = this.persistentPortalEvents.get(i);
+                try {
+                    this.decodedEvents[i] = toPortalEvent(persistentPortalEvent.getEventData(), persistentPortalEvent.getEventType());
+                }
+                catch (RuntimeException e) {
+                    this.decodedEvents[i] = e;
+                }
+            }
+        }
+    }
+    
     @Override
     public void getPortalEvents(DateTime startTime, DateTime endTime, FunctionWithoutResult<PortalEvent> handler) {
         this.getPortalEvents(startTime, endTime, -1, handler);
@@ -283,6 +429,10 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
 
     protected <E extends PortalEvent> E toPortalEvent(final String eventData, Class<E> eventType) {
         try {
+            if (PortalEventDataCodec.isEncoded(eventData)) {
+                return this.eventDataCodec.decode(eventData, eventType);
+            }
+            
             return mapper.readValue(eventData, eventType);
         }
         catch (JsonParseException e) {
@@ -297,6 +447,15 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
     }
     
     protected String toString(PortalEvent event) {
+        if (this.encodeEventData) {
+            try {
+                return this.eventDataCodec.encode(event);
+            }
+            catch (IOException e) {
+                this.logger.warn("Failed to encode " + event.getClass().getName() + ", it will be stored as JSON", e);
+            }
+        }
+        
         try {
             return mapper.writeValueAsString(event);
         }
@@ -19,18 +19,53 @@
 
 package org.jasig.portal.events.handlers.db;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.jasig.portal.events.PortalEvent;
 import org.jasig.portal.events.handlers.QueueingEventHandler;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
- * Hands off queued portal events for storage by the IPortalEventDao
+ * Hands off queued portal events for storage by the IPortalEventDao. If the segment log is enabled
+ * queued events are first appended to a local {@link PortalEventSegmentLog} and {@link #shipSegments()}
+ * bulk loads sealed segments into the IPortalEventDao, events written to the log survive a restart of
+ * the portal.
+ * <p>
+ * A segment that fails to be stored is retried on the following runs. After {@link #setMaxShipAttempts(int)}
+ * failures its events are stored one at a time and those that still fail are written to a dead letter file
+ * so one bad event can't block the segments after it. A segment is deleted after its events are committed,
+ * if the portal stops between the two the segment is shipped again and its events are stored twice.
  * 
  * @author Eric Dalquist
  * @version $Revision$
  */
-public class PortalEventDaoQueuingEventHandler extends QueueingEventHandler<PortalEvent> {
+public class PortalEventDaoQueuingEventHandler extends QueueingEventHandler<PortalEvent> implements InitializingBean {
     private IPortalEventDao portalEventDao;
+    private ObjectMapper mapper;
+    private boolean segmentLogEnabled = false;
+    private String segmentLogDirectory;
+    private int segmentSize = 1024 * 1024;
+    private long maxSegmentAge = 15000;
+    private int maxShipAttempts = 10;
+    private PortalEventSegmentLog segmentLog;
+    
+    // segment -> failed ship attempts, only used by shipSegments()
+    private final Map<File, Integer> shipFailures = new HashMap<File, Integer>();
     
     /**
      * @param portalEventDao the portalEventDao to set
@@ -40,8 +75,249 @@ public class PortalEventDaoQueuingEventHandler extends QueueingEventHandler<Port
         this.portalEventDao = portalEventDao;
     }
 
+    @Autowired
+    public void setMapper(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * If queued events should be written to a local segment log before being stored, defaults to false
+     */
+    @Value("${org.jasig.portal.events.handlers.db.PortalEventDaoQueuingEventHandler.segmentLogEnabled:false}")
+    public void setSegmentLogEnabled(boolean segmentLogEnabled) {
+        this.segmentLogEnabled = segmentLogEnabled;
+    }
+
+    /**
+     * Directory segments are written to, defaults to a directory in java.io.tmpdir
+     */
+    @Value("${org.jasig.portal.events.handlers.db.PortalEventDaoQueuingEventHandler.segmentLogDirectory:}")
+    public void setSegmentLogDirectory(String segmentLogDirectory) {
+        this.segmentLogDirectory = segmentLogDirectory;
+    }
+
+    /**
+     * Size of each segment in bytes, defaults to 1MB
+     */
+    @Value("${org.jasig.portal.events.handlers.db.PortalEventDaoQueuingEventHandler.segmentSize:1048576}")
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Milliseconds after which a segment is sealed and shipped even if it isn't full, defaults to 15000
+     */
+    @Value("${org.jasig.portal.events.handlers.db.PortalEventDaoQueuingEventHandler.maxSegmentAge:15000}")
+    public void setMaxSegmentAge(long maxSegmentAge) {
+        this.maxSegmentAge = maxSegmentAge;
+    }
+
+    /**
+     * Number of times storing a segment may fail before its events are stored individually and the ones
+     * that fail are moved to a dead letter file, defaults to 10
+     */
+    @Value("${org.jasig.portal.events.handlers.db.PortalEventDaoQueuingEventHandler.maxShipAttempts:10}")
+    public void setMaxShipAttempts(int maxShipAttempts) {
+        this.maxShipAttempts = maxShipAttempts;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (!this.segmentLogEnabled) {
+            return;
+        }
+        
+        final File directory;
+        if (StringUtils.isBlank(this.segmentLogDirectory)) {
+            directory = new File(FileUtils.getTempDirectory(), "uPortal-eventLog");
+        }
+        else {
+            directory = new File(this.segmentLogDirectory);
+        }
+        
+        this.segmentLog = new PortalEventSegmentLog(directory, this.segmentSize, this.maxSegmentAge);
+        this.logger.info("Queued portal events will be written to {}", this.segmentLog);
+    }
+
     @Override
     protected void onApplicationEvents(Iterable<PortalEvent> events) {
-        this.portalEventDao.storePortalEvents(events);
+        if (this.segmentLog == null) {
+            this.portalEventDao.storePortalEvents(events);
+            return;
+        }
+        
+        final List<byte[]> records = new ArrayList<byte[]>();
+        for (final PortalEvent event : events) {
+            try {
+                records.add(this.toRecord(event));
+            }
+            catch (IOException e) {
+                this.logger.warn("Failed to serialize " + event + ", it will not be stored", e);
+            }
+        }
+        
+        try {
+            this.segmentLog.append(records);
+        }
+        catch (IOException e) {
+            //Don't lose the events if the log can't be written
+            this.logger.error("Failed to append " + records.size() + " events to " + this.segmentLog + ", they will be stored directly", e);
+            this.portalEventDao.storePortalEvents(events);
+        }
+    }
+    
+    /**
+     * Bulk loads each sealed segment of the segment log into the IPortalEventDao, deleting segments once
+     * they are stored. Does nothing if the segment log is not enabled. This method must be called at regular
+     * intervals by some external timer.
+     */
+    public synchronized void shipSegments() {
+        if (this.segmentLog == null) {
+            return;
+        }
+        
+        this.segmentLog.sealExpiredSegment();
+        
+        for (final File segment : this.segmentLog.getSealedSegments()) {
+            final List<PortalEvent> events;
+            try {
+                events = this.readEvents(segment);
+            }
+            catch (IOException e) {
+                if (!this.isShipAttemptsExceeded(segment)) {
+                    this.logger.error("Failed to read events from " + segment + ", it will be retried", e);
+                    return;
+                }
+                
+                this.logger.error("Failed to read events from " + segment + " " + this.maxShipAttempts + " times, moving it to a dead letter file", e);
+                this.quarantineSegment(segment);
+                continue;
+            }
+            
+            if (!events.isEmpty()) {
+                try {
+                    this.portalEventDao.storePortalEvents(events);
+                }
+                catch (RuntimeException e) {
+                    if (!this.isShipAttemptsExceeded(segment)) {
+                        this.logger.error("Failed to store " + events.size() + " events from " + segment + ", it will be retried", e);
+                        return;
+                    }
+                    
+                    this.logger.error("Failed to store " + events.size() + " events from " + segment + " " + this.maxShipAttempts + " times, storing them individually", e);
+                    if (!this.storeIndividually(segment, events)) {
+                        continue;
+                    }
+                }
+            }
+            
+            this.logger.debug("Stored {} events from {}", events.size(), segment);
+            this.shipFailures.remove(segment);
+            this.segmentLog.deleteSegment(segment);
+        }
+    }
+    
+    /**
+     * Record a failed attempt to ship the segment
+     * 
+     * @return true if the segment has failed {@link #setMaxShipAttempts(int)} times
+     */
+    protected boolean isShipAttemptsExceeded(File segment) {
+        final Integer previousFailures = this.shipFailures.get(segment);
+        final int failures = previousFailures == null ? 1 : previousFailures + 1;
+        if (failures < this.maxShipAttempts) {
+            this.shipFailures.put(segment, failures);
+            return false;
+        }
+        
+        this.shipFailures.remove(segment);
+        return true;
+    }
+    
+    /**
+     * Store each event on its own, events that fail are written to a dead letter file
+     * 
+     * @return false if the failed events could not be written and the whole segment was quarantined instead
+     */
+    protected boolean storeIndividually(File segment, List<PortalEvent> events) {
+        final List<byte[]> failedRecords = new ArrayList<byte[]>();
+        for (final PortalEvent event : events) {
+            try {
+                this.portalEventDao.storePortalEvent(event);
+            }
+            catch (RuntimeException e) {
+                this.logger.warn("Failed to store " + event + " from " + segment, e);
+                try {
+                    failedRecords.add(this.toRecord(event));
+                }
+                catch (IOException ioe) {
+                    this.logger.error("Failed to serialize " + event + ", it will not be stored", ioe);
+                }
+            }
+        }
+        
+        if (failedRecords.isEmpty()) {
+            return true;
+        }
+        
+        try {
+            final File deadLetter = this.segmentLog.writeDeadLetter(segment, failedRecords);
+            this.logger.error("{} of {} events from {} could not be stored, they were written to {}", 
+                    new Object[] { failedRecords.size(), events.size(), segment, deadLetter });
+            return true;
+        }
+        catch (IOException e) {
+            //Keep the whole segment, events that were stored will be duplicated if it is reloaded
+            this.logger.error("Failed to write " + failedRecords.size() + " events from " + segment + " to a dead letter file, moving the segment to a dead letter file", e);
+            this.quarantineSegment(segment);
+            return false;
+        }
+    }
+    
+    private void quarantineSegment(File segment) {
+        try {
+            final File deadLetter = this.segmentLog.quarantineSegment(segment);
+            this.logger.error("Moved {} to dead letter file {}", segment, deadLetter);
+        }
+        catch (IOException e) {
+            this.logger.error("Failed to move " + segment + " to a dead letter file, it will be retried", e);
+        }
+    }
+    
+    protected List<PortalEvent> readEvents(File segment) throws IOException {
+        final List<byte[]> records = this.segmentLog.readSegment(segment);
+        final List<PortalEvent> events = new ArrayList<PortalEvent>(records.size());
+        for (final byte[] record : records) {
+            try {
+                events.add(this.toPortalEvent(record));
+            }
+            catch (IOException e) {
+                this.logger.warn("Failed to deserialize an event from " + segment + ", it will not be stored", e);
+            }
+            catch (ClassNotFoundException e) {
+                this.logger.warn("Failed to deserialize an event from " + segment + ", it will not be stored", e);
+            }
+            catch (ClassCastException e) {
+                this.logger.warn("Failed to deserialize an event from " + segment + ", it will not be stored", e);
+            }
+        }
+        return events;
+    }
+    
+    /**
+     * Records are the event's class name followed by its JSON representation
+     */
+    protected byte[] toRecord(PortalEvent event) throws IOException {
+        final ByteArrayOutputStream recordStream = new ByteArrayOutputStream(512);
+        final DataOutputStream dataStream = new DataOutputStream(recordStream);
+        dataStream.writeUTF(event.getClass().getName());
+        this.mapper.writeValue(dataStream, event);
+        return recordStream.toByteArray();
+    }
+    
+    protected PortalEvent toPortalEvent(byte[] record) throws IOException, ClassNotFoundException {
+        final DataInputStream dataStream = new DataInputStream(new ByteArrayInputStream(record));
+        final Class<? extends PortalEvent> eventType = Class.forName(dataStream.readUTF()).asSubclass(PortalEvent.class);
+        return this.mapper.readValue(dataStream, eventType);
     }
 }
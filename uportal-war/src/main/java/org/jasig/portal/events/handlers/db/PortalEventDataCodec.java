@@ -0,0 +1,377 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.events.handlers.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.jasig.portal.events.PortalEvent;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Compact, versioned binary encoding of the JSON token stream Jackson produces for a {@link PortalEvent}.
+ * Field names and string values are written once per event and referenced by index after that, strings
+ * in the version's shared dictionary (event field names, type ids and common values) are never written.
+ * Numbers are written as variable length integers or raw doubles. Decoding replays the tokens into the
+ * {@link ObjectMapper} without parsing JSON text.
+ * <p>
+ * The encoded data is stored as text: {@link #ENCODED_PREFIX}, the encoding version, a colon and the
+ * Base64 encoded bytes. Data that doesn't start with the prefix is JSON written before this encoding
+ * existed. The dictionary for a version MUST NOT be changed once data has been written with it, add
+ * a new version instead.
+ */
+public class PortalEventDataCodec {
+    /**
+     * Prefix of encoded data, JSON event data always starts with '{'
+     */
+    public static final String ENCODED_PREFIX = "$";
+    
+    private static final int CURRENT_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private static final List<String> DICTIONARY_V1 = ImmutableList.of(
+            //PortalEvent
+            "@c", "timestamp", "serverId", "eventSessionId", "userName",
+            //Portlet execution events
+            "fname", "windowState", "portletMode", "executionTime", "executionTimeNano", "parameters",
+            "targeted", "cached", "usedPortalCache", "usedBrowserCache", "resourceId", "eventName",
+            //Render and login events
+            "requestPathInfo", "urlState", "urlType", "targetedLayoutNodeId", "groups", "attributes",
+            //Layout events
+            "layoutId", "layoutOwner", "parentFolderId", "oldParentFolderId", "newParentFolderId", 
+            "newFolderId", "deletedFolderId", "deletedFolderName", "movedFolderId", "tenant",
+            //Type ids
+            ".PortalRenderEvent", ".PortletRenderExecutionEvent", ".PortletRenderHeaderExecutionEvent",
+            ".PortletActionExecutionEvent", ".PortletEventExecutionEvent", ".PortletResourceExecutionEvent",
+            ".LoginEvent", ".LogoutEvent", ".PortletAddedToLayoutPortalEvent", ".PortletDeletedFromLayoutPortalEvent",
+            ".PortletMovedInLayoutPortalEvent", ".FolderAddedToLayoutPortalEvent", ".FolderDeletedFromLayoutPortalEvent",
+            ".FolderMovedInLayoutPortalEvent", ".PortletHungEvent", ".PortletHungCompleteEvent",
+            ".TenantCreatedTenantEvent", ".TenantUpdatedTenantEvent", ".TenantRemovedTenantEvent",
+            //Common values
+            "normal", "maximized", "minimized", "exclusive", "detached", "view", "edit", "help", "config",
+            "NORMAL", "MAX", "DETACHED", "EXCLUSIVE", "RENDER", "ACTION", "RESOURCE", "guest");
+    
+    private static final Map<String, Integer> DICTIONARY_V1_INDEX;
+    static {
+        final Map<String, Integer> dictionaryIndex = new HashMap<String, Integer>();
+        for (int i = 0; i < DICTIONARY_V1.size(); i++) {
+            dictionaryIndex.put(DICTIONARY_V1.get(i), i);
+        }
+        DICTIONARY_V1_INDEX = dictionaryIndex;
+    }
+    
+    //Opcodes for each token type
+    private static final int OP_END = 0;
+    private static final int OP_START_OBJECT = 1;
+    private static final int OP_END_OBJECT = 2;
+    private static final int OP_START_ARRAY = 3;
+    private static final int OP_END_ARRAY = 4;
+    private static final int OP_FIELD_NAME = 5;
+    private static final int OP_VALUE_STRING = 6;
+    private static final int OP_VALUE_LONG = 7;
+    private static final int OP_VALUE_BIG_INTEGER = 8;
+    private static final int OP_VALUE_DOUBLE = 9;
+    private static final int OP_VALUE_BIG_DECIMAL = 10;
+    private static final int OP_VALUE_TRUE = 11;
+    private static final int OP_VALUE_FALSE = 12;
+    private static final int OP_VALUE_NULL = 13;
+    
+    private final ObjectMapper mapper;
+    
+    public PortalEventDataCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+    
+    /**
+     * @return true if the event data was written by {@link #encode(PortalEvent)}, false if it is JSON
+     */
+    public static boolean isEncoded(String eventData) {
+        return eventData.startsWith(ENCODED_PREFIX);
+    }
+    
+    /**
+     * Encode the event using the current encoding version
+     */
+    public String encode(PortalEvent event) throws IOException {
+        final TokenBuffer tokenBuffer = new TokenBuffer(this.mapper, false);
+        this.mapper.writeValue(tokenBuffer, event);
+        
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        final Map<String, Integer> strings = new HashMap<String, Integer>(DICTIONARY_V1_INDEX);
+        
+        final JsonParser parser = tokenBuffer.asParser();
+        try {
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                switch (token) {
+                    case START_OBJECT: {
+                        out.write(OP_START_OBJECT);
+                        break;
+                    }
+                    case END_OBJECT: {
+                        out.write(OP_END_OBJECT);
+                        break;
+                    }
+                    case START_ARRAY: {
+                        out.write(OP_START_ARRAY);
+                        break;
+                    }
+                    case END_ARRAY: {
+                        out.write(OP_END_ARRAY);
+                        break;
+                    }
+                    case FIELD_NAME: {
+                        out.write(OP_FIELD_NAME);
+                        writeString(out, strings, parser.getCurrentName());
+                        break;
+                    }
+                    case VALUE_STRING: {
+                        out.write(OP_VALUE_STRING);
+                        writeString(out, strings, parser.getText());
+                        break;
+                    }
+                    case VALUE_NUMBER_INT: {
+                        if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                            out.write(OP_VALUE_BIG_INTEGER);
+                            writeString(out, strings, parser.getBigIntegerValue().toString());
+                        }
+                        else {
+                            out.write(OP_VALUE_LONG);
+                            writeVarLong(out, zigZag(parser.getLongValue()));
+                        }
+                        break;
+                    }
+                    case VALUE_NUMBER_FLOAT: {
+                        if (parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL) {
+                            out.write(OP_VALUE_BIG_DECIMAL);
+                            writeString(out, strings, parser.getDecimalValue().toString());
+                        }
+                        else {
+                            out.write(OP_VALUE_DOUBLE);
+                            writeLong(out, Double.doubleToLongBits(parser.getDoubleValue()));
+                        }
+                        break;
+                    }
+                    case VALUE_TRUE: {
+                        out.write(OP_VALUE_TRUE);
+                        break;
+                    }
+                    case VALUE_FALSE: {
+                        out.write(OP_VALUE_FALSE);
+                        break;
+                    }
+                    case VALUE_NULL: {
+                        out.write(OP_VALUE_NULL);
+                        break;
+                    }
+                    default: {
+                        throw new IOException("Token " + token + " is not supported by the event data encoding");
+                    }
+                }
+            }
+        }
+        finally {
+            parser.close();
+        }
+        out.write(OP_END);
+        
+        return ENCODED_PREFIX + CURRENT_VERSION + ":" + Base64.encodeBase64String(out.toByteArray());
+    }
+    
+    /**
+     * Decode event data written by {@link #encode(PortalEvent)}
+     */
+    public <E extends PortalEvent> E decode(String eventData, Class<E> eventType) throws IOException {
+        final int separator = eventData.indexOf(':');
+        if (separator < 0) {
+            throw new IOException("Event data is missing the encoding version");
+        }
+        
+        final String version = eventData.substring(ENCODED_PREFIX.length(), separator);
+        if (!Integer.toString(CURRENT_VERSION).equals(version)) {
+            throw new IOException("Unsupported event data encoding version: " + version);
+        }
+        
+        final ByteBuffer in = ByteBuffer.wrap(Base64.decodeBase64(eventData.substring(separator + 1)));
+        final List<String> strings = new ArrayList<String>(DICTIONARY_V1);
+        
+        final TokenBuffer tokenBuffer = new TokenBuffer(this.mapper, false);
+        try {
+            for (int opcode = in.get(); opcode != OP_END; opcode = in.get()) {
+                switch (opcode) {
+                    case OP_START_OBJECT: {
+                        tokenBuffer.writeStartObject();
+                        break;
+                    }
+                    case OP_END_OBJECT: {
+                        tokenBuffer.writeEndObject();
+                        break;
+                    }
+                    case OP_START_ARRAY: {
+                        tokenBuffer.writeStartArray();
+                        break;
+                    }
+                    case OP_END_ARRAY: {
+                        tokenBuffer.writeEndArray();
+                        break;
+                    }
+                    case OP_FIELD_NAME: {
+                        tokenBuffer.writeFieldName(readString(in, strings));
+                        break;
+                    }
+                    case OP_VALUE_STRING: {
+                        tokenBuffer.writeString(readString(in, strings));
+                        break;
+                    }
+                    case OP_VALUE_LONG: {
+                        tokenBuffer.writeNumber(unZigZag(readVarLong(in)));
+                        break;
+                    }
+                    case OP_VALUE_BIG_INTEGER: {
+                        tokenBuffer.writeNumber(new BigInteger(readString(in, strings)));
+                        break;
+                    }
+                    case OP_VALUE_DOUBLE: {
+                        tokenBuffer.writeNumber(Double.longBitsToDouble(in.getLong()));
+                        break;
+                    }
+                    case OP_VALUE_BIG_DECIMAL: {
+                        tokenBuffer.writeNumber(new BigDecimal(readString(in, strings)));
+                        break;
+                    }
+                    case OP_VALUE_TRUE: {
+                        tokenBuffer.writeBoolean(true);
+                        break;
+                    }
+                    case OP_VALUE_FALSE: {
+                        tokenBuffer.writeBoolean(false);
+                        break;
+                    }
+                    case OP_VALUE_NULL: {
+                        tokenBuffer.writeNull();
+                        break;
+                    }
+                    default: {
+                        throw new IOException("Unknown opcode " + opcode + " in event data");
+                    }
+                }
+            }
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Event data is truncated", e);
+        }
+        
+        final JsonParser parser = tokenBuffer.asParser(this.mapper);
+        try {
+            return this.mapper.readValue(parser, eventType);
+        }
+        finally {
+            parser.close();
+        }
+    }
+    
+    /**
+     * Strings are written as a reference: 0 followed by the UTF-8 bytes for a string not seen before in the
+     * event, otherwise the index of the string plus one.
+     */
+    private static void writeString(ByteArrayOutputStream out, Map<String, Integer> strings, String value) {
+        final Integer index = strings.get(value);
+        if (index != null) {
+            writeVarLong(out, index + 1);
+            return;
+        }
+        
+        strings.put(value, strings.size());
+        
+        final byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(out, 0);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+    
+    private static String readString(ByteBuffer in, List<String> strings) throws IOException {
+        final int reference = (int)readVarLong(in);
+        if (reference > 0) {
+            if (reference > strings.size()) {
+                throw new IOException("Invalid string reference " + reference + " in event data");
+            }
+            return strings.get(reference - 1);
+        }
+        
+        final int length = (int)readVarLong(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Invalid string length " + length + " in event data");
+        }
+        final String value = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+        in.position(in.position() + length);
+        
+        strings.add(value);
+        return value;
+    }
+    
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+    
+    private static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = in.get();
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer in event data");
+    }
+    
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int)(value >>> shift));
+        }
+    }
+}
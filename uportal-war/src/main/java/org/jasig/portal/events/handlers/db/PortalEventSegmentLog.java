@@ -0,0 +1,347 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.events.handlers.db;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable, append-only log of raw event records kept in a local directory. Records are appended to a
+ * memory-mapped active segment which is rotated once it is full or older than the maximum segment age.
+ * Rotated segments are sealed and never written again, they are read back by {@link #readSegment(File)}
+ * and deleted with {@link #deleteSegment(File)} once their records have been persisted elsewhere.
+ * <p>
+ * Each segment starts with a magic number followed by records of the form [length][crc32][data], a
+ * zero length marks the end of the written records. Segments left over from a previous run are treated
+ * as sealed, a record torn by an unclean shutdown fails its checksum and ends the segment.
+ * <p>
+ * Records that can't be persisted are moved to dead letter files, see {@link #quarantineSegment(File)} and
+ * {@link #writeDeadLetter(File, List)}. These use the segment format with a {@value #DEAD_LETTER_SUFFIX}
+ * suffix, are never shipped and can be read back with {@link #readSegment(File)}.
+ * <p>
+ * All methods that touch the active segment are synchronized.
+ */
+public class PortalEventSegmentLog {
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String DEAD_LETTER_SUFFIX = ".dead";
+    private static final int SEGMENT_MAGIC = 0x55504556;
+    private static final int SEGMENT_HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int TERMINATOR_SIZE = 4;
+    
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+    
+    private final File directory;
+    private final int segmentSize;
+    private final long maxSegmentAge;
+    
+    private long nextSegmentSequence = 0;
+    private File activeSegment;
+    private MappedByteBuffer activeSegmentBuffer;
+    private long activeSegmentCreated;
+    
+    /**
+     * @param directory Directory to write segments to, created if it doesn't exist
+     * @param segmentSize Size in bytes of each segment, a segment is rotated when the next record doesn't fit
+     * @param maxSegmentAge Milliseconds after which the active segment is rotated even if it isn't full
+     */
+    public PortalEventSegmentLog(File directory, int segmentSize, long maxSegmentAge) {
+        if (segmentSize < SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE + TERMINATOR_SIZE) {
+            throw new IllegalArgumentException("segmentSize is too small: " + segmentSize);
+        }
+        
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegmentAge = maxSegmentAge;
+        
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IllegalArgumentException("Failed to create segment log directory: " + directory);
+        }
+        
+        //Segments from a previous run are sealed, new records go into a new segment
+        //Dead letter files keep their segment's sequence, don't reuse it
+        final List<File> segments = this.listSegments(SEGMENT_SUFFIX);
+        segments.addAll(this.listSegments(DEAD_LETTER_SUFFIX));
+        for (final File segment : segments) {
+            this.nextSegmentSequence = Math.max(this.nextSegmentSequence, getSegmentSequence(segment) + 1);
+        }
+    }
+    
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    public int getSegmentSize() {
+        return this.segmentSize;
+    }
+
+    public long getMaxSegmentAge() {
+        return this.maxSegmentAge;
+    }
+
+    /**
+     * Append the records to the log and force them to disk. Records larger than the segment size are
+     * written to a segment of their own.
+     */
+    public synchronized void append(List<byte[]> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        
+        this.sealExpiredSegmentInternal();
+        
+        final CRC32 crc = new CRC32();
+        for (final byte[] record : records) {
+            final int requiredSpace = RECORD_HEADER_SIZE + record.length + TERMINATOR_SIZE;
+            if (this.activeSegmentBuffer == null || this.activeSegmentBuffer.remaining() < requiredSpace) {
+                this.sealActiveSegment();
+                this.openSegment(Math.max(this.segmentSize, SEGMENT_HEADER_SIZE + requiredSpace));
+            }
+            
+            crc.reset();
+            crc.update(record);
+            
+            this.activeSegmentBuffer.putInt(record.length);
+            this.activeSegmentBuffer.putInt((int)crc.getValue());
+            this.activeSegmentBuffer.put(record);
+        }
+        
+        //Mark the end of the written records and force the segment to disk
+        this.activeSegmentBuffer.putInt(this.activeSegmentBuffer.position(), 0);
+        this.activeSegmentBuffer.force();
+    }
+    
+    /**
+     * Seal the active segment if it is older than the maximum segment age
+     */
+    public synchronized void sealExpiredSegment() {
+        this.sealExpiredSegmentInternal();
+    }
+    
+    /**
+     * @return Sealed segments in the order they were written
+     */
+    public synchronized List<File> getSealedSegments() {
+        final List<File> segments = this.listSegments();
+        segments.remove(this.activeSegment);
+        return segments;
+    }
+    
+    /**
+     * Read the records from a sealed segment. Reading stops at the first record that is incomplete or
+     * fails its checksum.
+     */
+    public List<byte[]> readSegment(File segment) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(FileUtils.readFileToByteArray(segment));
+        final List<byte[]> records = new ArrayList<byte[]>();
+        
+        try {
+            if (buffer.getInt() != SEGMENT_MAGIC) {
+                this.logger.warn("{} is not an event segment, it will be ignored", segment);
+                return records;
+            }
+            
+            final CRC32 crc = new CRC32();
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                final int length = buffer.getInt();
+                if (length == 0) {
+                    break;
+                }
+                
+                final int checksum = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    this.logger.warn("{} contains an incomplete record at offset {}, {} records were read", segment, buffer.position() - RECORD_HEADER_SIZE, records.size());
+                    break;
+                }
+                
+                final byte[] record = new byte[length];
+                buffer.get(record);
+                
+                crc.reset();
+                crc.update(record);
+                if ((int)crc.getValue() != checksum) {
+                    this.logger.warn("{} contains a corrupt record at offset {}, {} records were read", segment, buffer.position() - length - RECORD_HEADER_SIZE, records.size());
+                    break;
+                }
+                
+                records.add(record);
+            }
+        }
+        catch (BufferUnderflowException e) {
+            this.logger.warn("{} is truncated, {} records were read", segment, records.size());
+        }
+        
+        return records;
+    }
+    
+    /**
+     * Delete a sealed segment once its records have been persisted
+     */
+    public synchronized void deleteSegment(File segment) {
+        if (segment.equals(this.activeSegment)) {
+            throw new IllegalArgumentException("The active segment cannot be deleted: " + segment);
+        }
+        if (segment.exists() && !segment.delete()) {
+            this.logger.warn("Failed to delete event segment {}", segment);
+        }
+    }
+    
+    /**
+     * Move a sealed segment that can't be shipped to a dead letter file
+     * 
+     * @return The dead letter file
+     */
+    public synchronized File quarantineSegment(File segment) throws IOException {
+        if (segment.equals(this.activeSegment)) {
+            throw new IllegalArgumentException("The active segment cannot be quarantined: " + segment);
+        }
+        
+        final File deadLetter = getDeadLetterFile(segment);
+        FileUtils.moveFile(segment, deadLetter);
+        return deadLetter;
+    }
+    
+    /**
+     * Write records from a sealed segment that could not be persisted to a dead letter file
+     * 
+     * @return The dead letter file
+     */
+    public File writeDeadLetter(File segment, List<byte[]> records) throws IOException {
+        int size = SEGMENT_HEADER_SIZE + TERMINATOR_SIZE;
+        for (final byte[] record : records) {
+            size += RECORD_HEADER_SIZE + record.length;
+        }
+        
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(SEGMENT_MAGIC);
+        final CRC32 crc = new CRC32();
+        for (final byte[] record : records) {
+            crc.reset();
+            crc.update(record);
+            buffer.putInt(record.length);
+            buffer.putInt((int)crc.getValue());
+            buffer.put(record);
+        }
+        buffer.putInt(0);
+        
+        final File deadLetter = getDeadLetterFile(segment);
+        FileUtils.writeByteArrayToFile(deadLetter, buffer.array());
+        return deadLetter;
+    }
+    
+    private void sealExpiredSegmentInternal() {
+        if (this.activeSegmentBuffer != null && System.currentTimeMillis() - this.activeSegmentCreated >= this.maxSegmentAge) {
+            this.sealActiveSegment();
+        }
+    }
+    
+    private void sealActiveSegment() {
+        if (this.activeSegmentBuffer == null) {
+            return;
+        }
+        
+        this.activeSegmentBuffer.force();
+        this.logger.debug("Sealed event segment {} with {} bytes", this.activeSegment, this.activeSegmentBuffer.position());
+        
+        //The mapping is released when the buffer is garbage collected
+        this.activeSegmentBuffer = null;
+        this.activeSegment = null;
+    }
+    
+    private void openSegment(int size) throws IOException {
+        final File segment = new File(this.directory, SEGMENT_PREFIX + String.format("%019d", this.nextSegmentSequence++) + SEGMENT_SUFFIX);
+        
+        final RandomAccessFile segmentFile = new RandomAccessFile(segment, "rw");
+        try {
+            this.activeSegmentBuffer = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        finally {
+            //The mapping remains valid after the file is closed
+            segmentFile.close();
+        }
+        
+        this.activeSegmentBuffer.putInt(SEGMENT_MAGIC);
+        this.activeSegmentBuffer.putInt(this.activeSegmentBuffer.position(), 0);
+        this.activeSegment = segment;
+        this.activeSegmentCreated = System.currentTimeMillis();
+        
+        this.logger.debug("Opened event segment {}", segment);
+    }
+    
+    private List<File> listSegments() {
+        return this.listSegments(SEGMENT_SUFFIX);
+    }
+    
+    private List<File> listSegments(final String suffix) {
+        final File[] segments = this.directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                final String name = file.getName();
+                return file.isFile() && name.startsWith(SEGMENT_PREFIX) && name.endsWith(suffix);
+            }
+        });
+        
+        if (segments == null) {
+            return new ArrayList<File>();
+        }
+        
+        //Sequence numbers are zero padded so name order is write order
+        final List<File> segmentList = new ArrayList<File>(Arrays.asList(segments));
+        Collections.sort(segmentList);
+        return segmentList;
+    }
+    
+    private static long getSegmentSequence(File segment) {
+        final String name = segment.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.lastIndexOf('.')));
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static File getDeadLetterFile(File segment) {
+        final String name = segment.getName();
+        return new File(segment.getParentFile(), name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + DEAD_LETTER_SUFFIX);
+    }
+
+    @Override
+    public String toString() {
+        return "PortalEventSegmentLog [directory=" + this.directory + ", segmentSize=" + this.segmentSize + ", maxSegmentAge=" + this.maxSegmentAge + "]";
+    }
+}
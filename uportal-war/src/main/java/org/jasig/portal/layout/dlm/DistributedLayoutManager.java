@@ -19,6 +19,7 @@
 
 package org.jasig.portal.layout.dlm;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -28,7 +29,6 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
 
@@ -106,8 +106,11 @@ public class DistributedLayoutManager implements IUserLayoutManager, IFolderLoca
      */
     static final String FOLDER_LABEL_POLICY = "FolderLabelPolicy";
     
-    protected final static Random rnd=new Random();
-    protected String cacheKey="initialKey";
+    /*
+     * Revision hash of the layout and the document it was computed from, cleared
+     * whenever the layout is modified.
+     */
+    private volatile LayoutRevision layoutRevision;
     protected String rootNodeId = null;
 
     private boolean channelsAdded = false;
@@ -1270,20 +1273,29 @@ public class DistributedLayoutManager implements IUserLayoutManager, IFolderLoca
         return v.elements();
     }
 
+    /**
+     * Returns a content based hash of the user layout, see {@link LayoutRevisionHasher}.
+     * Users with the same fragments and no personal edits get the same key which
+     * allows the structure transform output to be shared between them. The hash is
+     * recomputed after the layout is modified or reloaded from the layout store.
+     */
     public String getCacheKey() {
-        return this.cacheKey;
+        final Document userLayout = this.getUserLayoutDOM();
+        
+        LayoutRevision revision = this.layoutRevision;
+        if (revision == null || revision.layout.get() != userLayout) {
+            revision = new LayoutRevision(userLayout, LayoutRevisionHasher.hash(userLayout));
+            this.layoutRevision = revision;
+        }
+        
+        return revision.hash;
     }
 
     /**
-     * This is outright cheating ! We're supposed to analyze the user layout tree
-     * and return a key that corresponds uniqly to the composition and the sturcture of the tree.
-     * Here we just return a different key wheneever anything changes. So if one was to move a
-     * node back and forth, the key would always never (almost) come back to the original value,
-     * even though the changes to the user layout are cyclic.
-     *
+     * Clear the layout revision, called whenever the layout is modified
      */
     private void updateCacheKey() {
-        this.cacheKey=Long.toString(rnd.nextLong());
+        this.layoutRevision = null;
     }
 
     public int getLayoutId() {
@@ -1322,7 +1334,7 @@ public class DistributedLayoutManager implements IUserLayoutManager, IFolderLoca
     {
         // Copied from SimpleLayoutManager since our layouts are regular
         // simple layouts, ie Documents.
-        return new SimpleLayout(this.getDistributedUserLayout(), String.valueOf(profile.getLayoutId()), this.cacheKey);
+        return new SimpleLayout(this.getDistributedUserLayout(), String.valueOf(profile.getLayoutId()), this.getCacheKey());
     }
 
     /* Returns the ID attribute of the root folder of the layout. This folder 
@@ -1599,4 +1611,18 @@ public class DistributedLayoutManager implements IUserLayoutManager, IFolderLoca
     
         return label;
     }
+
+    /**
+     * Revision hash of a layout document. Only weakly references the document so
+     * layouts evicted from the layout cache are not kept alive by the session.
+     */
+    private static final class LayoutRevision {
+        private final WeakReference<Document> layout;
+        private final String hash;
+        
+        public LayoutRevision(Document layout, String hash) {
+            this.layout = new WeakReference<Document>(layout);
+            this.hash = hash;
+        }
+    }
 }
@@ -0,0 +1,149 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.layout.dlm;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Hex;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Computes a content based revision hash of a user layout document. Two layouts
+ * with the same elements, attributes and text produce the same hash regardless of
+ * which user they belong to, attribute order or the {@link Document} instance. Since
+ * the incorporated layout is built from the fragment layouts and the user's PLF this
+ * changes whenever a fragment is updated or the user edits their layout.
+ */
+public final class LayoutRevisionHasher {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    
+    private static final Comparator<Attr> ATTRIBUTE_COMPARATOR = new Comparator<Attr>() {
+        @Override
+        public int compare(Attr a1, Attr a2) {
+            final int result = nullToEmpty(a1.getNamespaceURI()).compareTo(nullToEmpty(a2.getNamespaceURI()));
+            if (result != 0) {
+                return result;
+            }
+            return getName(a1).compareTo(getName(a2));
+        }
+    };
+    
+    private LayoutRevisionHasher() {
+    }
+
+    /**
+     * @return Hex encoded revision hash of the layout document
+     */
+    public static String hash(Document layout) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not supported by this JVM", e);
+        }
+        
+        for (Node node = layout.getFirstChild(); node != null; node = node.getNextSibling()) {
+            update(digest, node);
+        }
+        
+        return Hex.encodeHexString(digest.digest());
+    }
+    
+    private static void update(MessageDigest digest, Node node) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE: {
+                digest.update((byte) 'E');
+                update(digest, node.getNamespaceURI());
+                update(digest, getName(node));
+                
+                final NamedNodeMap attributes = node.getAttributes();
+                final List<Attr> sortedAttributes = new ArrayList<Attr>(attributes.getLength());
+                for (int index = 0; index < attributes.getLength(); index++) {
+                    sortedAttributes.add((Attr) attributes.item(index));
+                }
+                Collections.sort(sortedAttributes, ATTRIBUTE_COMPARATOR);
+                
+                for (final Attr attribute : sortedAttributes) {
+                    digest.update((byte) 'A');
+                    update(digest, attribute.getNamespaceURI());
+                    update(digest, getName(attribute));
+                    update(digest, attribute.getValue());
+                }
+                
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    update(digest, child);
+                }
+                
+                //Mark the end of the element so siblings and children can't be confused
+                digest.update((byte) '/');
+                break;
+            }
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE: {
+                digest.update((byte) 'T');
+                update(digest, node.getNodeValue());
+                break;
+            }
+            default: {
+                //Comments and processing instructions don't affect rendering
+                break;
+            }
+        }
+    }
+    
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+            return;
+        }
+        
+        //Length prefix so adjacent values can't run together
+        final byte[] bytes = value.getBytes(UTF_8);
+        digest.update((byte) 1);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+    
+    private static String getName(Node node) {
+        final String localName = node.getLocalName();
+        if (localName != null) {
+            return localName;
+        }
+        return node.getNodeName();
+    }
+    
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
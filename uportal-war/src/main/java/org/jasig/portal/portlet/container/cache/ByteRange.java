@@ -0,0 +1,132 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.portlet.container.cache;
+
+/**
+ * A single byte range from an HTTP Range request header, resolved against the length of the content.
+ * Only single ranges are supported, requests for multiple ranges are answered with the full content.
+ */
+public final class ByteRange {
+    /**
+     * Returned by {@link #parse(String, long)} when the requested range doesn't overlap the content
+     */
+    public static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+    
+    private static final String BYTES_UNIT = "bytes=";
+    
+    private final long start;
+    private final long end;
+    
+    private ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+    
+    /**
+     * @param rangeHeader The Range header value, may be null
+     * @param length The length of the content in bytes
+     * @return The range to send, null if the full content should be sent, {@link #UNSATISFIABLE} if no part of the content was requested
+     */
+    public static ByteRange parse(String rangeHeader, long length) {
+        if (rangeHeader == null) {
+            return null;
+        }
+        
+        rangeHeader = rangeHeader.trim();
+        if (!rangeHeader.startsWith(BYTES_UNIT)) {
+            return null;
+        }
+        
+        final String rangeSpec = rangeHeader.substring(BYTES_UNIT.length()).trim();
+        final int dashIndex = rangeSpec.indexOf('-');
+        if (dashIndex < 0 || rangeSpec.indexOf(',') >= 0) {
+            return null;
+        }
+        
+        final String firstByte = rangeSpec.substring(0, dashIndex).trim();
+        final String lastByte = rangeSpec.substring(dashIndex + 1).trim();
+        try {
+            //bytes=-N is the last N bytes
+            if (firstByte.length() == 0) {
+                if (lastByte.length() == 0) {
+                    return null;
+                }
+                
+                final long suffixLength = Long.parseLong(lastByte);
+                if (suffixLength <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0, length - suffixLength), length - 1);
+            }
+            
+            final long start = Long.parseLong(firstByte);
+            final long end = lastByte.length() == 0 ? length - 1 : Long.parseLong(lastByte);
+            if (start < 0 || end < start) {
+                //Syntactically invalid ranges are ignored
+                return null;
+            }
+            if (start >= length) {
+                return UNSATISFIABLE;
+            }
+            
+            return new ByteRange(start, Math.min(end, length - 1));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * @return Offset of the first byte in the range
+     */
+    public long getStart() {
+        return this.start;
+    }
+
+    /**
+     * @return Offset of the last byte in the range, inclusive
+     */
+    public long getEnd() {
+        return this.end;
+    }
+    
+    /**
+     * @return Number of bytes in the range
+     */
+    public long getLength() {
+        return this.end - this.start + 1;
+    }
+    
+    /**
+     * @return The Content-Range header value for the range of content with the specified length
+     */
+    public String getContentRange(long length) {
+        if (this == UNSATISFIABLE) {
+            return "bytes */" + length;
+        }
+        return "bytes " + this.start + "-" + this.end + "/" + length;
+    }
+
+    @Override
+    public String toString() {
+        return "ByteRange [start=" + this.start + ", end=" + this.end + "]";
+    }
+}
@@ -34,6 +34,7 @@ public class CacheState<D extends CachedPortletResultHolder<T>, T extends Serial
     private boolean browserSetEtag = false;
     private PublicPortletCacheKey publicPortletCacheKey;
     private PrivatePortletCacheKey privatePortletCacheKey;
+    private PublicPortletCacheLoad publicCacheLoad;
     
     protected CacheState() {
     }
@@ -109,4 +110,13 @@ public class CacheState<D extends CachedPortletResultHolder<T>, T extends Serial
     protected void setPrivatePortletCacheKey(PrivatePortletCacheKey privatePortletCacheKey) {
         this.privatePortletCacheKey = privatePortletCacheKey;
     }
+    /**
+     * @return The public cache load claimed by this request, null if no load was claimed
+     */
+    PublicPortletCacheLoad getPublicCacheLoad() {
+        return publicCacheLoad;
+    }
+    void setPublicCacheLoad(PublicPortletCacheLoad publicCacheLoad) {
+        this.publicCacheLoad = publicCacheLoad;
+    }
 }
\ No newline at end of file
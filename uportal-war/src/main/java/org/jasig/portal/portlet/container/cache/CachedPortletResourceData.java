@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import javax.portlet.CacheControl;
+import javax.servlet.http.HttpServletResponse;
 
 import org.jasig.portal.portlet.rendering.PortletResourceOutputHandler;
 
@@ -72,8 +73,43 @@ public class CachedPortletResourceData<T extends Serializable> implements Cached
     }
 
     public final void replay(PortletResourceOutputHandler portletOutputHandler) throws IOException {
+        this.replay(portletOutputHandler, null);
+    }
+    
+    /**
+     * Replay the response, if a range is specified and the output was spooled to a file only that
+     * range of the output is written with a 206 status.
+     * 
+     * @param byteRange The satisfiable range to write, null to write the full output
+     */
+    public final void replay(PortletResourceOutputHandler portletOutputHandler, ByteRange byteRange) throws IOException {
+        final boolean partialContent = this.replayHeaders(portletOutputHandler, byteRange);
+        
+        if (partialContent) {
+            ((FileCachedPortletData<T>) this.cachedPortletData).replay(portletOutputHandler, byteRange.getStart(), byteRange.getLength());
+        }
+        else {
+            this.cachedPortletData.replay(portletOutputHandler);
+        }
+    }
+    
+    /**
+     * Replay the status, headers and content type of the response without the output. For output
+     * spooled to a file the Content-Length and Accept-Ranges headers are set and if a range is
+     * specified the response is set up as a 206 for the range.
+     * 
+     * @param byteRange The satisfiable range that will be written, null for the full output
+     * @return true if the response was set up for the range
+     */
+    public final boolean replayHeaders(PortletResourceOutputHandler portletOutputHandler, ByteRange byteRange) {
+        final FileCachedPortletData<T> fileCachedPortletData = this.cachedPortletData instanceof FileCachedPortletData ? (FileCachedPortletData<T>) this.cachedPortletData : null;
+        final boolean partialContent = byteRange != null && fileCachedPortletData != null;
+        
         //Write status
-        if (status != null) {
+        if (partialContent) {
+            portletOutputHandler.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        }
+        else if (status != null) {
             portletOutputHandler.setStatus(status);
         }
 
@@ -97,17 +133,33 @@ public class CachedPortletResourceData<T extends Serializable> implements Cached
         if (characterEncoding != null) {
             portletOutputHandler.setCharacterEncoding(characterEncoding);
         }
-        if (contentLength != null) {
-            portletOutputHandler.setContentLength(contentLength);
-        }
         if (locale != null) {
             portletOutputHandler.setLocale(locale);
         }
+        if (fileCachedPortletData != null) {
+            final long length = fileCachedPortletData.getLength();
+            portletOutputHandler.setHeader("Accept-Ranges", "bytes");
+            if (partialContent) {
+                portletOutputHandler.setHeader("Content-Range", byteRange.getContentRange(length));
+                portletOutputHandler.setHeader("Content-Length", Long.toString(byteRange.getLength()));
+            }
+            else {
+                portletOutputHandler.setHeader("Content-Length", Long.toString(length));
+            }
+        }
+        else if (contentLength != null) {
+            portletOutputHandler.setContentLength(contentLength);
+        }
+        
+        final String contentType = this.cachedPortletData.getContentType();
+        if (contentType != null) {
+            portletOutputHandler.setContentType(contentType);
+        }
         
         //Set the caching related headers
         PortletCachingHeaderUtils.setCachingHeaders(cachedPortletData, portletOutputHandler);
         
-        this.cachedPortletData.replay(portletOutputHandler);
+        return partialContent;
     }
 
     @Override
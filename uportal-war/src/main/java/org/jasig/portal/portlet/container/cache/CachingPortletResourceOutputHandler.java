@@ -18,6 +18,9 @@
  */
 package org.jasig.portal.portlet.container.cache;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -28,8 +31,12 @@ import java.util.Map;
 import javax.portlet.CacheControl;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.jasig.portal.portlet.rendering.PortletResourceOutputHandler;
 
+import com.google.common.base.Function;
+
 /**
  * Extention of {@link CachingPortletOutputHandler} that adds support for resource requests
  * 
@@ -39,6 +46,9 @@ public class CachingPortletResourceOutputHandler extends CachingPortletOutputHan
         PortletResourceOutputHandler {
 
     private final PortletResourceOutputHandler portletResourceOutputHandler;
+    private final int maximumSize;
+    private final PortletResourceFileCache portletResourceFileCache;
+    private final CacheControl cacheControl;
 
     private final Map<String, List<Serializable>> headers = new LinkedHashMap<String, List<Serializable>>();
     private Integer status;
@@ -46,10 +56,34 @@ public class CachingPortletResourceOutputHandler extends CachingPortletOutputHan
     private Integer contentLength;
     private Locale locale;
     
+    private LimitingTeeOutputStream spoolingTeeStream;
+    private DeferredFileOutputStream spoolOutputStream;
+    private boolean spoolFileCached = false;
+    
     
     public CachingPortletResourceOutputHandler(PortletResourceOutputHandler portletResourceOutputHandler, int maximumSize) {
+        this(portletResourceOutputHandler, maximumSize, null);
+    }
+    
+    /**
+     * @param portletResourceFileCache If not null stream output larger than maximumSize is spooled to a file in the cache directory
+     */
+    public CachingPortletResourceOutputHandler(PortletResourceOutputHandler portletResourceOutputHandler, int maximumSize, 
+            PortletResourceFileCache portletResourceFileCache) {
+        this(portletResourceOutputHandler, maximumSize, portletResourceFileCache, null);
+    }
+    
+    /**
+     * @param portletResourceFileCache If not null stream output larger than maximumSize is spooled to a file in the cache directory
+     * @param cacheControl If not null output is only spooled if the expiration time is not 0 when the output stream is requested
+     */
+    public CachingPortletResourceOutputHandler(PortletResourceOutputHandler portletResourceOutputHandler, int maximumSize, 
+            PortletResourceFileCache portletResourceFileCache, CacheControl cacheControl) {
         super(portletResourceOutputHandler, maximumSize);
         this.portletResourceOutputHandler = portletResourceOutputHandler;
+        this.maximumSize = maximumSize;
+        this.portletResourceFileCache = portletResourceFileCache;
+        this.cacheControl = cacheControl;
     }
     
     public <T extends Serializable> CachedPortletResourceData<T> getCachedPortletResourceData(T portletResult, CacheControl cacheControl) {
@@ -58,7 +92,14 @@ public class CachingPortletResourceOutputHandler extends CachingPortletOutputHan
             return null;
         }
         
-        final CachedPortletData<T> cachedPortletData = super.getCachedPortletData(portletResult, cacheControl);
+        final CachedPortletData<T> cachedPortletData;
+        if (this.spoolingTeeStream != null) {
+            cachedPortletData = this.getSpooledPortletData(portletResult, cacheControl);
+        }
+        else {
+            cachedPortletData = super.getCachedPortletData(portletResult, cacheControl);
+        }
+        
         if (cachedPortletData == null) {
             //Hit the caching limit, nothing to return 
             return null;
@@ -66,6 +107,142 @@ public class CachingPortletResourceOutputHandler extends CachingPortletOutputHan
         
         return new CachedPortletResourceData<T>(cachedPortletData, headers, status, characterEncoding, contentLength, locale);
     }
+    
+    /**
+     * Delete the file output was spooled to unless it was returned by {@link #getCachedPortletResourceData(Serializable, CacheControl)}.
+     * Must be called once the handler is no longer used.
+     */
+    public void discardSpoolFile() {
+        if (this.spoolOutputStream != null && !this.spoolFileCached) {
+            this.discardSpoolOutputStream();
+        }
+    }
+    
+    protected <T extends Serializable> CachedPortletData<T> getSpooledPortletData(T portletResult, CacheControl cacheControl) {
+        if (this.spoolingTeeStream.isLimitReached()) {
+            return null;
+        }
+        
+        try {
+            this.spoolOutputStream.close();
+        }
+        catch (IOException e) {
+            //Spooled output is incomplete, nothing to return
+            return null;
+        }
+        
+        //Output that fit under maximumSize never left memory
+        if (this.spoolOutputStream.isInMemory()) {
+            return new CachedPortletData<T>(
+                    portletResult, 
+                    null, 
+                    this.spoolOutputStream.getData(), 
+                    this.getContentType(), 
+                    cacheControl.isPublicScope(), 
+                    cacheControl.getETag(), 
+                    cacheControl.getExpirationTime());
+        }
+        
+        this.spoolFileCached = true;
+        return new FileCachedPortletData<T>(
+                portletResult, 
+                this.spoolOutputStream.getFile(), 
+                this.getContentType(), 
+                cacheControl.isPublicScope(), 
+                cacheControl.getETag(), 
+                cacheControl.getExpirationTime());
+    }
+
+    @Override
+    public PrintWriter getPrintWriter() throws IOException {
+        if (this.spoolingTeeStream != null) {
+            throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        
+        return super.getPrintWriter();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        if (this.portletResourceFileCache == null || (this.spoolingTeeStream == null && !this.isOutputCacheable())) {
+            //Output won't be cached, don't pay for writing it to disk
+            return super.getOutputStream();
+        }
+        
+        if (this.getCachedWriterOutput() != null) {
+            throw new IllegalStateException("getPrintWriter() has already been called");
+        }
+        
+        if (this.spoolingTeeStream == null) {
+            final OutputStream delegateOutputStream = this.portletResourceOutputHandler.getOutputStream();
+            this.spoolOutputStream = this.createSpoolOutputStream();
+            
+            //Tee to the spool stream through a fixed branch so the spool stream can be replaced on reset
+            final OutputStream spoolBranch = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    spoolOutputStream.write(b);
+                }
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    spoolOutputStream.write(b, off, len);
+                }
+            };
+            
+            //Stop spooling once the output is larger than the file cache
+            this.spoolingTeeStream = new LimitingTeeOutputStream(this.portletResourceFileCache.getMaxSize(), delegateOutputStream,
+                    spoolBranch, new Function<LimitingTeeOutputStream, Object>() {
+                        @Override
+                        public Object apply(LimitingTeeOutputStream input) {
+                            //Limit hit, drop the spooled output
+                            discardSpoolOutputStream();
+                            return null;
+                        }
+                    });
+        }
+        
+        return this.spoolingTeeStream;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        this.resetSpool();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        this.resetSpool();
+    }
+    
+    /**
+     * Mirrors {@link IPortletCacheControlService#shouldOutputBeCached(CacheControl)}, the portlet must set
+     * the expiration time before getting the output stream for the output to be spooled.
+     */
+    private boolean isOutputCacheable() {
+        return this.cacheControl == null || this.cacheControl.getExpirationTime() != 0;
+    }
+    
+    private void resetSpool() {
+        if (this.spoolingTeeStream != null) {
+            this.discardSpoolOutputStream();
+            this.spoolOutputStream = this.createSpoolOutputStream();
+            this.spoolingTeeStream.resetByteCount();
+        }
+    }
+    
+    private DeferredFileOutputStream createSpoolOutputStream() {
+        return new DeferredFileOutputStream(this.maximumSize, this.portletResourceFileCache.getSpoolFilePrefix(),
+                this.portletResourceFileCache.getSpoolFileSuffix(), this.portletResourceFileCache.getDirectory());
+    }
+    
+    private void discardSpoolOutputStream() {
+        IOUtils.closeQuietly(this.spoolOutputStream);
+        if (!this.spoolOutputStream.isInMemory()) {
+            this.portletResourceFileCache.discard(this.spoolOutputStream.getFile());
+        }
+    }
 
     public Map<String, List<Serializable>> getHeaders() {
         return headers;
@@ -0,0 +1,107 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.portlet.container.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.jasig.portal.portlet.rendering.PortletOutputHandler;
+
+/**
+ * {@link CachedPortletData} for stream output that was spooled to a file in the
+ * {@link PortletResourceFileCache} instead of being held on the heap.
+ */
+public class FileCachedPortletData<T extends Serializable> extends CachedPortletData<T> {
+    private static final long serialVersionUID = 1L;
+    
+    private final File file;
+    private final long length;
+
+    /**
+     * @param expirationTime Time in seconds the content is valid for (from now)
+     */
+    public FileCachedPortletData(T portletResult, File file, String contentType, boolean publicScope, String etag,
+            int expirationTime) {
+        super(portletResult, null, null, contentType, publicScope, etag, expirationTime);
+        
+        this.file = file;
+        this.length = file.length();
+    }
+
+    @Override
+    public void replay(PortletOutputHandler portletOutputHandler) throws IOException {
+        this.replay(portletOutputHandler, 0, this.length);
+    }
+
+    /**
+     * Replay part of the spooled output
+     * 
+     * @param start Offset of the first byte to write
+     * @param count Number of bytes to write
+     */
+    public void replay(PortletOutputHandler portletOutputHandler, long start, long count) throws IOException {
+        final String contentType = this.getContentType();
+        if (contentType != null) {
+            portletOutputHandler.setContentType(contentType);
+        }
+        
+        final OutputStream outputStream = portletOutputHandler.getOutputStream();
+        final WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+        
+        final FileInputStream fileInputStream = new FileInputStream(this.file);
+        try {
+            //Let the file channel move the bytes instead of copying through a heap array
+            final FileChannel fileChannel = fileInputStream.getChannel();
+            long position = start;
+            final long end = start + count;
+            while (position < end) {
+                final long transferred = fileChannel.transferTo(position, end - position, outputChannel);
+                if (transferred <= 0) {
+                    throw new IOException("Spooled output " + this.file + " ended at " + position + " of " + end + " bytes");
+                }
+                position += transferred;
+            }
+        }
+        finally {
+            fileInputStream.close();
+        }
+    }
+
+    /**
+     * @return The file holding the output
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * @return Number of bytes of output
+     */
+    public long getLength() {
+        return this.length;
+    }
+}
@@ -39,6 +39,11 @@ public interface IPortletCacheControlService {
 	 */
 	int getCacheSizeThreshold();
 
+    /**
+     * @return The file cache resource output larger than {@link #getCacheSizeThreshold()} is spooled to, null if disabled
+     */
+    PortletResourceFileCache getPortletResourceFileCache();
+
     /**
      * Get the resource request cache state for the specified portlet
      */
@@ -83,6 +88,21 @@ public interface IPortletCacheControlService {
     void cachePortletResourceOutput(IPortletWindowId portletWindowId, HttpServletRequest httpRequest,
             CacheState<CachedPortletResourceData<Long>, Long> cacheState, CachedPortletResourceData<Long> cachedPortletResourceData);
 	
+    /**
+     * Claim the re-render of a portlet that replayed stale cached output for its render or render-header
+     * request. Stale output is only replayed for portlets with the {@link PortletCacheControlServiceImpl#STALE_WHILE_REVALIDATE_PARAMETER}
+     * parameter. Returns true at most once per portlet window and request, the caller must then re-render
+     * the portlet in the same request so the cached output is refreshed.
+     */
+    boolean claimPortletRevalidation(HttpServletRequest request, IPortletWindowId portletWindowId, boolean renderHeader);
+    
+    /**
+     * Release the public cache population claimed for the request, if any. Concurrent requests for
+     * the same publicly scoped portlet wait for the claiming request to populate the cache instead
+     * of rendering the portlet themselves. Must be called once the portlet request completes.
+     */
+    void releasePublicCacheLoad(CacheState<?, ?> cacheState);
+	
 	/**
 	 * Purge any {@link CachedPortletRenderData} for the portlet.
 	 * 
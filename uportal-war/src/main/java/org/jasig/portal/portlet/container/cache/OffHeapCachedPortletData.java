@@ -0,0 +1,80 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.portlet.container.cache;
+
+import java.io.Serializable;
+
+/**
+ * Placeholder stored in the portlet output caches when the serialized {@link CachedPortletResultHolder}
+ * has been moved to an off-heap store. Only the metadata needed to evaluate the cache entry is kept
+ * on the heap, {@link PortletCacheControlServiceImpl} resolves the full data from the off-heap store
+ * using the element's key.
+ */
+class OffHeapCachedPortletData<T extends Serializable> implements CachedPortletResultHolder<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String etag;
+    private final long timeStored;
+    private final long expirationTime;
+    private final int storedLength;
+    
+    public OffHeapCachedPortletData(CachedPortletResultHolder<T> cachedPortletData, int storedLength) {
+        this.etag = cachedPortletData.getEtag();
+        this.timeStored = cachedPortletData.getTimeStored();
+        this.expirationTime = cachedPortletData.getExpirationTime();
+        this.storedLength = storedLength;
+    }
+
+    /**
+     * Not available, the result is held in the off-heap store
+     */
+    @Override
+    public T getPortletResult() {
+        throw new UnsupportedOperationException("Portlet result is stored off-heap, it must be resolved through PortletCacheControlServiceImpl");
+    }
+
+    @Override
+    public String getEtag() {
+        return this.etag;
+    }
+
+    @Override
+    public long getExpirationTime() {
+        return this.expirationTime;
+    }
+
+    @Override
+    public long getTimeStored() {
+        return this.timeStored;
+    }
+
+    /**
+     * @return Number of bytes of serialized data held in the off-heap store
+     */
+    public int getStoredLength() {
+        return this.storedLength;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapCachedPortletData [etag=" + this.etag + ", timeStored=" + this.timeStored
+                + ", expirationTime=" + this.expirationTime + ", storedLength=" + this.storedLength + "]";
+    }
+}
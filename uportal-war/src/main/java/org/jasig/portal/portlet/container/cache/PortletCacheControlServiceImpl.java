@@ -18,9 +18,15 @@
  */
 package org.jasig.portal.portlet.container.cache;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.portlet.CacheControl;
 import javax.portlet.MimeResponse;
@@ -31,8 +37,13 @@ import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.pluto.container.om.portlet.PortletDefinition;
+import org.jasig.portal.portlet.om.IPortletDefinition;
 import org.jasig.portal.portlet.om.IPortletDefinitionId;
+import org.jasig.portal.portlet.om.IPortletDefinitionParameter;
 import org.jasig.portal.portlet.om.IPortletEntity;
 import org.jasig.portal.portlet.om.IPortletEntityId;
 import org.jasig.portal.portlet.om.IPortletWindow;
@@ -40,14 +51,22 @@ import org.jasig.portal.portlet.om.IPortletWindowId;
 import org.jasig.portal.portlet.registry.IPortletDefinitionRegistry;
 import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
 import org.jasig.portal.portlet.rendering.PortletRenderResult;
+import org.jasig.portal.portlet.rendering.worker.IPortletExecutionContext;
+import org.jasig.portal.portlet.rendering.worker.PortletExecutionContextHolder;
+import org.jasig.portal.portlet.rendering.worker.PortletExecutionDeniedException;
 import org.jasig.portal.url.IPortalRequestInfo;
 import org.jasig.portal.url.IUrlSyntaxProvider;
+import org.jasig.portal.utils.cache.OffHeapByteStore;
+import org.jasig.portal.utils.cache.OffHeapByteStoreCacheEventListener;
+import org.jasig.portal.utils.cache.OffHeapByteStoreStatistics;
 import org.jasig.portal.utils.cache.TaggedCacheEntryPurger;
+import org.jasig.portal.utils.web.PortalWebUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.support.RequestContextUtils;
 
@@ -60,10 +79,20 @@ import org.springframework.web.servlet.support.RequestContextUtils;
  * @version $Id$
  */
 @Service
-public class PortletCacheControlServiceImpl implements IPortletCacheControlService {
+@ManagedResource("uPortal:section=Framework,name=PortletCacheControlService")
+public class PortletCacheControlServiceImpl implements IPortletCacheControlService, PortletCacheControlServiceMXBean {
     private static final String IF_NONE_MATCH = "If-None-Match";
     private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
     
+    /**
+     * Portlet definition parameter, the number of seconds after expiration that cached render output
+     * may be replayed while the portlet is re-rendered in the background
+     */
+    public static final String STALE_WHILE_REVALIDATE_PARAMETER = "staleWhileRevalidate";
+    
+    private static final String PORTLET_HEADER_REVALIDATION_MAP = PortletCacheControlServiceImpl.class.getName() + ".PORTLET_HEADER_REVALIDATION_MAP";
+    private static final String PORTLET_REVALIDATION_MAP = PortletCacheControlServiceImpl.class.getName() + ".PORTLET_REVALIDATION_MAP";
+    
 	protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 
 	private TaggedCacheEntryPurger taggedCacheEntryPurger;
@@ -84,6 +113,19 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
     // default to 100 KB
     private int cacheSizeThreshold = 102400;
     
+    private final ConcurrentMap<PublicPortletCacheKey, PublicPortletCacheLoad> publicCacheLoads = new ConcurrentHashMap<PublicPortletCacheKey, PublicPortletCacheLoad>();
+    private boolean coalescePublicRenders = false;
+    private long publicRenderWaitTime = 5000;
+    
+    // cache name -> off-heap store, populated as each cache is first written to
+    private final ConcurrentMap<String, OffHeapByteStore<Object>> offHeapStores = new ConcurrentHashMap<String, OffHeapByteStore<Object>>();
+    private long offHeapStoreSize = 0;
+    private int offHeapThreshold = 8192;
+    
+    private long resourceFileCacheSize = 0;
+    private String resourceFileCacheDirectory;
+    private volatile PortletResourceFileCache portletResourceFileCache;
+    
     @Autowired
     public void setTaggedCacheEntryPurger(TaggedCacheEntryPurger taggedCacheEntryPurger) {
         this.taggedCacheEntryPurger = taggedCacheEntryPurger;
@@ -134,6 +176,103 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
 		this.cacheSizeThreshold = cacheSizeThreshold;
 	}
     
+    /**
+     * If concurrent renders of a publicly scoped portlet with no usable cached data should be coalesced
+     * so that only one request renders the portlet. Defaults to false.
+     */
+    @Value("${org.jasig.portal.portlet.container.cache.PortletCacheControlServiceImpl.coalescePublicRenders:false}")
+    public void setCoalescePublicRenders(boolean coalescePublicRenders) {
+        this.coalescePublicRenders = coalescePublicRenders;
+    }
+
+    /**
+     * Maximum time in milliseconds a request will wait for another request to populate the public
+     * cache before rendering the portlet itself, never longer than the rest of the waiting worker's
+     * render timeout. Defaults to 5000.
+     */
+    @Value("${org.jasig.portal.portlet.container.cache.PortletCacheControlServiceImpl.publicRenderWaitTime:5000}")
+    public void setPublicRenderWaitTime(long publicRenderWaitTime) {
+        this.publicRenderWaitTime = publicRenderWaitTime;
+    }
+    
+    /**
+     * Number of bytes of direct memory each portlet output cache may use to hold cached output off
+     * of the heap. Defaults to 0 which disables the off-heap tier.
+     */
+    @Value("${org.jasig.portal.portlet.container.cache.PortletCacheControlServiceImpl.offHeapStoreSize:0}")
+    public void setOffHeapStoreSize(long offHeapStoreSize) {
+        this.offHeapStoreSize = offHeapStoreSize;
+    }
+
+    /**
+     * Minimum serialized size in bytes of cached output for it to be held off-heap, smaller output
+     * stays on the heap where it can be replayed without deserialization. Defaults to 8192.
+     */
+    @Value("${org.jasig.portal.portlet.container.cache.PortletCacheControlServiceImpl.offHeapThreshold:8192}")
+    public void setOffHeapThreshold(int offHeapThreshold) {
+        this.offHeapThreshold = offHeapThreshold;
+    }
+    
+    /**
+     * Number of bytes of disk space used to cache resource output larger than the cacheSizeThreshold.
+     * Defaults to 0 which disables spooling resource output to disk.
+     */
+    @Value("${org.jasig.portal.portlet.container.cache.PortletCacheControlServiceImpl.resourceFileCacheSize:0}")
+    public void setResourceFileCacheSize(long resourceFileCacheSize) {
+        this.resourceFileCacheSize = resourceFileCacheSize;
+    }
+
+    /**
+     * Directory spooled resource output is written to. Defaults to a directory in java.io.tmpdir.
+     */
+    @Value("${org.jasig.portal.portlet.container.cache.PortletCacheControlServiceImpl.resourceFileCacheDirectory:}")
+    public void setResourceFileCacheDirectory(String resourceFileCacheDirectory) {
+        this.resourceFileCacheDirectory = resourceFileCacheDirectory;
+    }
+    
+    @Override
+    public PortletResourceFileCache getPortletResourceFileCache() {
+        if (this.resourceFileCacheSize <= 0) {
+            return null;
+        }
+        
+        PortletResourceFileCache fileCache = this.portletResourceFileCache;
+        if (fileCache == null) {
+            synchronized (this) {
+                fileCache = this.portletResourceFileCache;
+                if (fileCache == null) {
+                    final File directory;
+                    if (StringUtils.isBlank(this.resourceFileCacheDirectory)) {
+                        directory = new File(FileUtils.getTempDirectory(), "uPortal-portletResourceCache");
+                    }
+                    else {
+                        directory = new File(this.resourceFileCacheDirectory);
+                    }
+                    fileCache = new PortletResourceFileCache(directory, this.resourceFileCacheSize);
+                    
+                    //Delete spooled output as elements leave the resource caches
+                    final PortletResourceFileCacheEventListener listener = new PortletResourceFileCacheEventListener(fileCache);
+                    this.publicScopePortletResourceOutputCache.getCacheEventNotificationService().registerListener(listener);
+                    this.privateScopePortletResourceOutputCache.getCacheEventNotificationService().registerListener(listener);
+                    
+                    logger.info("Created {} for portlet resource output", fileCache);
+                    this.portletResourceFileCache = fileCache;
+                }
+            }
+        }
+        
+        return fileCache;
+    }
+    
+    @Override
+    public Map<String, OffHeapByteStoreStatistics> getOffHeapStoreStatistics() {
+        final Map<String, OffHeapByteStoreStatistics> statistics = new TreeMap<String, OffHeapByteStoreStatistics>();
+        for (final Map.Entry<String, OffHeapByteStore<Object>> offHeapStoreEntry : this.offHeapStores.entrySet()) {
+            statistics.put(offHeapStoreEntry.getKey(), offHeapStoreEntry.getValue().getStatistics());
+        }
+        return statistics;
+    }
+    
 	@Override
 	public int getCacheSizeThreshold() {
 		return cacheSizeThreshold;
@@ -173,7 +312,8 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
                 publicCacheKey,
                 this.publicScopePortletRenderHeaderOutputCache,
                 this.privateScopePortletRenderHeaderOutputCache,
-                false);
+                false,
+                true);
     }
     
     @Override
@@ -196,7 +336,8 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
                 publicCacheKey,
                 this.publicScopePortletRenderOutputCache,
                 this.privateScopePortletRenderOutputCache,
-                false);
+                false,
+                true);
     }
     
     @Override
@@ -219,7 +360,8 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
                 publicCacheKey,
                 this.publicScopePortletResourceOutputCache,
                 this.privateScopePortletResourceOutputCache,
-                true);
+                true,
+                false);
     }
     
     private <D extends CachedPortletResultHolder<T>, T extends Serializable> CacheState<D, T> getPortletState(
@@ -228,7 +370,8 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
             PublicPortletCacheKey publicCacheKey, 
             Ehcache publicOutputCache, 
             Ehcache privateOutputCache, 
-            boolean useHttpHeaders) {
+            boolean useHttpHeaders,
+            boolean renderRequest) {
         
         //See if there is any cached data for the portlet header request
         final CacheState<D, T> cacheState = this.<D, T> getPortletCacheState(request,
@@ -269,6 +412,11 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
                 //No browser side data to be used, return the cached data for replay
                 return cacheState;
             }
+            
+            //Expired data, replay it while the portlet re-renders if the portlet allows stale output
+            if (renderRequest && this.<D, T> useStaleData(request, portletWindow, cacheState, publicCacheKey)) {
+                return cacheState;
+            }
         }
         
         //Build CacheControl structure
@@ -282,6 +430,12 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
         //Set the default scope
         final String cacheScopeValue = portletDescriptor.getCacheScope();
         if (MimeResponse.PUBLIC_SCOPE.equalsIgnoreCase(cacheScopeValue)) {
+            //Wait for or serve stale data while another request populates the public cache
+            if (renderRequest && this.coalescePublicRenders && portletDescriptor.getExpirationCache() != 0
+                    && this.<D, T> coalescePublicRender(cacheState, portletWindow, publicCacheKey, publicOutputCache)) {
+                return cacheState;
+            }
+            
             cacheControl.setPublicScope(true);
         }
         
@@ -301,6 +455,175 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
         return cacheState;
     }
     
+    /**
+     * Coalesces concurrent renders of a publicly scoped portlet that has no usable cached data. The first
+     * request claims the load and renders the portlet. Later requests are given the stale publicly cached
+     * data if there is any, otherwise they wait for the first request to populate the public cache. The
+     * wait is capped at the time left before the waiting worker's render timeout, a worker with no time
+     * left after the wait fails instead of starting a render that could not complete in time.
+     * 
+     * @return true if the cache state was updated with cached data that should be replayed
+     */
+    @SuppressWarnings("unchecked")
+    protected <D extends CachedPortletResultHolder<T>, T extends Serializable> boolean coalescePublicRender(
+            CacheState<D, T> cacheState, IPortletWindow portletWindow, PublicPortletCacheKey publicCacheKey, Ehcache publicOutputCache) {
+        
+        final PublicPortletCacheLoad newCacheLoad = new PublicPortletCacheLoad(publicCacheKey);
+        final PublicPortletCacheLoad cacheLoad = this.publicCacheLoads.putIfAbsent(publicCacheKey, newCacheLoad);
+        if (cacheLoad == null) {
+            logger.debug("Claimed public cache load of {} for {}", publicCacheKey, portletWindow);
+            cacheState.setPublicCacheLoad(newCacheLoad);
+            return false;
+        }
+        
+        if (cacheLoad.isOwnedByCurrentThread()) {
+            return false;
+        }
+        
+        //Public data without a private key came from the public cache, serve it while the other request renders
+        final D stalePortletData = cacheState.getCachedPortletData();
+        if (stalePortletData != null && cacheState.getPrivatePortletCacheKey() == null) {
+            logger.debug("Serving stale public data for {} while {} renders", portletWindow, cacheLoad);
+            cacheState.setUseCachedData(true);
+            return true;
+        }
+        
+        final IPortletExecutionContext executionContext = PortletExecutionContextHolder.getExecutionContext();
+        final long renderDeadline;
+        if (executionContext != null) {
+            renderDeadline = executionContext.getStartedTime() + executionContext.getApplicableTimeout();
+        }
+        else {
+            renderDeadline = Long.MAX_VALUE;
+        }
+        final long waitTime = Math.max(0, Math.min(this.publicRenderWaitTime, renderDeadline - System.currentTimeMillis()));
+        
+        logger.debug("Waiting up to {}ms on {} for {}", waitTime, cacheLoad, portletWindow);
+        if (!cacheLoad.await(waitTime)) {
+            if (System.currentTimeMillis() >= renderDeadline) {
+                throw new PortletExecutionDeniedException("Render timeout reached waiting on " + cacheLoad + " for " + portletWindow);
+            }
+            
+            logger.debug("Gave up waiting on {} after {}ms, rendering {}", cacheLoad, waitTime, portletWindow);
+            return false;
+        }
+        
+        final D cachedPortletData = (D)this.getCachedPortletData(publicCacheKey, publicOutputCache, portletWindow);
+        if (cachedPortletData == null) {
+            //The other request did not publicly cache its output
+            return false;
+        }
+        
+        final long expirationTime = cachedPortletData.getExpirationTime();
+        if (expirationTime != -1 && expirationTime <= System.currentTimeMillis()) {
+            return false;
+        }
+        
+        cacheState.setCachedPortletData(cachedPortletData);
+        cacheState.setUseCachedData(true);
+        return true;
+    }
+    
+    /**
+     * Determine if expired cached data can be replayed while the portlet is re-rendered. The data is
+     * used if it expired less than {@link #STALE_WHILE_REVALIDATE_PARAMETER} seconds ago and the
+     * current request is not the one re-rendering the portlet. A revalidation is requested unless
+     * another request is already populating the public cache for the data.
+     * 
+     * @return true if the cache state was updated to replay the stale data
+     */
+    protected <D extends CachedPortletResultHolder<T>, T extends Serializable> boolean useStaleData(
+            HttpServletRequest request, IPortletWindow portletWindow, CacheState<D, T> cacheState, PublicPortletCacheKey publicCacheKey) {
+        
+        final int staleTime = this.getStaleWhileRevalidateTime(portletWindow);
+        if (staleTime <= 0) {
+            return false;
+        }
+        
+        final D cachedPortletData = cacheState.getCachedPortletData();
+        if (cachedPortletData.getExpirationTime() + TimeUnit.SECONDS.toMillis(staleTime) <= System.currentTimeMillis()) {
+            return false;
+        }
+        
+        final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
+        final ConcurrentMap<IPortletWindowId, AtomicBoolean> revalidationMap = this.getRevalidationMap(request, publicCacheKey.isRenderHeader());
+        final AtomicBoolean revalidationClaimed = revalidationMap.get(portletWindowId);
+        if (revalidationClaimed != null && revalidationClaimed.get()) {
+            //This is the re-render
+            return false;
+        }
+        
+        //Public data without a private key came from the public cache, only revalidate if no other request is populating it
+        if (cacheState.getPrivatePortletCacheKey() != null || !this.publicCacheLoads.containsKey(publicCacheKey)) {
+            revalidationMap.putIfAbsent(portletWindowId, new AtomicBoolean(false));
+        }
+        
+        logger.debug("Replaying stale cached output for {}", portletWindow);
+        cacheState.setUseCachedData(true);
+        return true;
+    }
+    
+    /**
+     * @return The number of seconds stale cached output can be used for while the portlet re-renders, 0 if disabled
+     */
+    protected int getStaleWhileRevalidateTime(IPortletWindow portletWindow) {
+        final IPortletDefinition portletDefinition = portletWindow.getPortletEntity().getPortletDefinition();
+        if (portletDefinition == null) {
+            return 0;
+        }
+        
+        final IPortletDefinitionParameter staleWhileRevalidate = portletDefinition.getParameter(STALE_WHILE_REVALIDATE_PARAMETER);
+        if (staleWhileRevalidate == null || staleWhileRevalidate.getValue() == null) {
+            return 0;
+        }
+        
+        try {
+            return Math.max(0, Integer.parseInt(staleWhileRevalidate.getValue().trim()));
+        }
+        catch (NumberFormatException e) {
+            logger.warn("Invalid {} parameter value '{}' on portlet {}, stale output will not be used", 
+                    STALE_WHILE_REVALIDATE_PARAMETER, staleWhileRevalidate.getValue(), portletDefinition.getFName());
+            return 0;
+        }
+    }
+    
+    @Override
+    public boolean claimPortletRevalidation(HttpServletRequest request, IPortletWindowId portletWindowId, boolean renderHeader) {
+        final ConcurrentMap<IPortletWindowId, AtomicBoolean> revalidationMap = this.getRevalidationMap(request, renderHeader);
+        final AtomicBoolean revalidationClaimed = revalidationMap.get(portletWindowId);
+        return revalidationClaimed != null && revalidationClaimed.compareAndSet(false, true);
+    }
+    
+    /**
+     * Returns a request attribute scoped Map of portlets that replayed stale output in the current request.
+     * The value is true once the re-render of the portlet has been claimed.
+     */
+    @SuppressWarnings("unchecked")
+    protected ConcurrentMap<IPortletWindowId, AtomicBoolean> getRevalidationMap(HttpServletRequest request, boolean renderHeader) {
+        final String attributeName = renderHeader ? PORTLET_HEADER_REVALIDATION_MAP : PORTLET_REVALIDATION_MAP;
+        synchronized (PortalWebUtils.getRequestAttributeMutex(request)) {
+            ConcurrentMap<IPortletWindowId, AtomicBoolean> revalidationMap = (ConcurrentMap<IPortletWindowId, AtomicBoolean>)request.getAttribute(attributeName);
+            if (revalidationMap == null) {
+                revalidationMap = new ConcurrentHashMap<IPortletWindowId, AtomicBoolean>();
+                request.setAttribute(attributeName, revalidationMap);
+            }
+            return revalidationMap;
+        }
+    }
+    
+    @Override
+    public void releasePublicCacheLoad(CacheState<?, ?> cacheState) {
+        final PublicPortletCacheLoad cacheLoad = cacheState.getPublicCacheLoad();
+        if (cacheLoad == null) {
+            return;
+        }
+        
+        cacheState.setPublicCacheLoad(null);
+        this.publicCacheLoads.remove(cacheLoad.getPublicCacheKey(), cacheLoad);
+        cacheLoad.release();
+        logger.debug("Released {}", cacheLoad);
+    }
+    
     /**
      * Get the cached portlet data looking in both the public and then private caches returning the first found
      * 
@@ -369,9 +692,61 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
             outputCache.remove(cacheKey);
             return null;
         }
+        
+        if (cachedPortletData instanceof OffHeapCachedPortletData) {
+            final OffHeapByteStore<Object> offHeapStore = this.offHeapStores.get(outputCache.getName());
+            final byte[] data = offHeapStore != null ? offHeapStore.get(cacheKey) : null;
+            if (data == null) {
+                logger.debug("Off-heap output for key {} has been evicted", cacheKey);
+                outputCache.remove(cacheKey);
+                return null;
+            }
+            
+            logger.debug("Returning off-heap cached output with key {} for {}", cacheKey, portletWindow);
+            final CachedPortletResultHolder<T> offHeapPortletData = (CachedPortletResultHolder<T>) SerializationUtils.deserialize(data);
+            return this.isSpooledOutputAvailable(outputCache, cacheKey, offHeapPortletData) ? offHeapPortletData : null;
+        }
+
+        if (!this.isSpooledOutputAvailable(outputCache, cacheKey, cachedPortletData)) {
+            return null;
+        }
 
         logger.debug("Returning cached output with key {} for {}", cacheKey, portletWindow);
-        return (CachedPortletResultHolder<T>) publicCacheElement.getObjectValue();
+        return cachedPortletData;
+    }
+    
+    /**
+     * Verifies output spooled to a file is still in the file cache, if it isn't the element is removed
+     * 
+     * @return false if the data references spooled output that is no longer available
+     */
+    protected boolean isSpooledOutputAvailable(Ehcache outputCache, Serializable cacheKey, CachedPortletResultHolder<?> cachedPortletData) {
+        final FileCachedPortletData<?> fileCachedPortletData = getFileCachedPortletData(cachedPortletData);
+        if (fileCachedPortletData == null) {
+            return true;
+        }
+        
+        final PortletResourceFileCache fileCache = this.getPortletResourceFileCache();
+        if (fileCache != null && fileCache.contains(outputCache.getName(), cacheKey, fileCachedPortletData.getFile())) {
+            return true;
+        }
+        
+        logger.debug("Spooled output {} for key {} is no longer available", fileCachedPortletData.getFile(), cacheKey);
+        outputCache.remove(cacheKey);
+        return false;
+    }
+    
+    /**
+     * @return The file backed data of a resource response, null if the data isn't file backed
+     */
+    protected static FileCachedPortletData<?> getFileCachedPortletData(CachedPortletResultHolder<?> cachedPortletData) {
+        if (cachedPortletData instanceof CachedPortletResourceData) {
+            final CachedPortletData<?> resourceData = ((CachedPortletResourceData<?>) cachedPortletData).getCachedPortletData();
+            if (resourceData instanceof FileCachedPortletData) {
+                return (FileCachedPortletData<?>) resourceData;
+            }
+        }
+        return null;
     }
     
     @Override
@@ -429,10 +804,16 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
         final IPortletWindow portletWindow = this.portletWindowRegistry.getPortletWindow(httpRequest, portletWindowId);
         final CacheControl cacheControl = cacheState.getCacheControl();
         
+        //Keep the element around long enough to be replayed while stale
+        final int staleTime = this.getStaleWhileRevalidateTime(portletWindow);
+        
         if (cacheControl.isPublicScope()) {
             final PublicPortletCacheKey publicCacheKey = cacheState.getPublicPortletCacheKey();
-            this.cacheElement(publicOutputCache, publicCacheKey, cachedPortletData, cacheControl);
+            this.cacheElement(publicOutputCache, publicCacheKey, cachedPortletData, cacheControl, staleTime);
             logger.debug("Cached public data under key {} for {}", publicCacheKey, portletWindow);
+            
+            //Requests waiting on the public data can replay it now
+            this.releasePublicCacheLoad(cacheState);
         }
         else {
             PrivatePortletCacheKey privateCacheKey = cacheState.getPrivatePortletCacheKey();
@@ -446,7 +827,7 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
                 privateCacheKey = new PrivatePortletCacheKey(sessionId, portletWindowId, entityId, publicCacheKey);
             }
             
-            this.cacheElement(privateOutputCache, privateCacheKey, cachedPortletData, cacheControl);
+            this.cacheElement(privateOutputCache, privateCacheKey, cachedPortletData, cacheControl, staleTime);
             logger.debug("Cached private data under key {} for {}", privateCacheKey, portletWindow);
         }
     }
@@ -454,8 +835,24 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
 	/**
 	 * Construct an appropriate Cache {@link Element} for the cacheKey and data.
 	 * The element's ttl will be set depending on whether expiration or validation method is indicated from the CacheControl and the cache's configuration.
+	 * The staleTime in seconds is added to a positive expiration time so the element can be replayed while stale.
 	 */
-	protected void cacheElement(Ehcache cache, Serializable cacheKey, CachedPortletResultHolder<?> data, CacheControl cacheControl) {
+	protected void cacheElement(Ehcache cache, Serializable cacheKey, CachedPortletResultHolder<?> cachedPortletData, CacheControl cacheControl, int staleTime) {
+	    //Spooled output must be registered with the file cache to be used
+	    final FileCachedPortletData<?> fileCachedPortletData = getFileCachedPortletData(cachedPortletData);
+	    if (fileCachedPortletData != null) {
+	        final PortletResourceFileCache fileCache = this.getPortletResourceFileCache();
+	        if (fileCache == null) {
+	            return;
+	        }
+	        if (!fileCache.store(cache.getName(), cacheKey, fileCachedPortletData.getFile())) {
+	            logger.debug("Spooled output {} is too large for {}, not caching key {}", fileCachedPortletData.getFile(), fileCache, cacheKey);
+	            return;
+	        }
+	    }
+	    
+	    final CachedPortletResultHolder<?> data = this.moveOffHeap(cache, cacheKey, cachedPortletData);
+	    
 		// using validation method, ignore expirationTime and defer to cache configuration
         if (cacheControl.getETag() != null) {
             final Element element = new Element(cacheKey, data);
@@ -475,12 +872,61 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
 		final CacheConfiguration cacheConfiguration = cache.getCacheConfiguration();
 		final Element element = new Element(cacheKey, data);
         final long cacheTTL = cacheConfiguration.getTimeToLiveSeconds();
-        if (expirationTime < cacheTTL) {
-            element.setTimeToLive(expirationTime);
+        final int timeToLive = expirationTime + Math.max(0, staleTime);
+        if (timeToLive < cacheTTL) {
+            element.setTimeToLive(timeToLive);
         }
 		cache.put(element);
 	}
 	
+	/**
+	 * Moves the serialized data into the cache's off-heap store if the off-heap tier is enabled and the
+	 * data is at least {@link #setOffHeapThreshold(int)} bytes.
+	 * 
+	 * @return The value to put in the cache, either a placeholder for off-heap data or the data itself
+	 */
+	protected <T extends Serializable> CachedPortletResultHolder<T> moveOffHeap(Ehcache cache, Serializable cacheKey, CachedPortletResultHolder<T> cachedPortletData) {
+	    final OffHeapByteStore<Object> offHeapStore = this.getOffHeapStore(cache);
+	    if (offHeapStore == null || !(cachedPortletData instanceof Serializable)) {
+	        return cachedPortletData;
+	    }
+	    
+	    final byte[] data = SerializationUtils.serialize((Serializable) cachedPortletData);
+	    if (data.length >= this.offHeapThreshold && offHeapStore.put(cacheKey, data)) {
+	        logger.debug("Moved {} bytes of output for key {} off-heap", data.length, cacheKey);
+	        return new OffHeapCachedPortletData<T>(cachedPortletData, data.length);
+	    }
+	    
+	    //Data stays on heap, drop any off-heap data previously stored for the key
+	    offHeapStore.remove(cacheKey);
+	    return cachedPortletData;
+	}
+	
+	/**
+	 * @return The off-heap store for the cache, null if the off-heap tier is disabled
+	 */
+	protected OffHeapByteStore<Object> getOffHeapStore(Ehcache cache) {
+	    if (this.offHeapStoreSize <= 0) {
+	        return null;
+	    }
+	    
+	    final String cacheName = cache.getName();
+	    OffHeapByteStore<Object> offHeapStore = this.offHeapStores.get(cacheName);
+	    if (offHeapStore == null) {
+	        offHeapStore = new OffHeapByteStore<Object>(cacheName, this.offHeapStoreSize);
+	        final OffHeapByteStore<Object> existingStore = this.offHeapStores.putIfAbsent(cacheName, offHeapStore);
+	        if (existingStore != null) {
+	            return existingStore;
+	        }
+	        
+	        //Free off-heap data as elements leave the cache
+	        cache.getCacheEventNotificationService().registerListener(new OffHeapByteStoreCacheEventListener(offHeapStore));
+	        logger.info("Created {} for portlet output cache {}", offHeapStore, cacheName);
+	    }
+	    
+	    return offHeapStore;
+	}
+	
 	@Override
 	public boolean purgeCachedPortletData(IPortletWindowId portletWindowId,
 			HttpServletRequest httpRequest) {
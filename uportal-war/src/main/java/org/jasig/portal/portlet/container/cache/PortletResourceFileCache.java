@@ -0,0 +1,298 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.portlet.container.cache;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jasig.portal.utils.Tuple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local disk store for portlet resource output that is too large to cache on the heap. Output is
+ * spooled to a file in the cache directory while the portlet writes it, the file is then registered
+ * under the portlet output cache's name and element key. The total size of the registered files is
+ * limited, when the limit is reached the least recently used files are deleted.
+ * <p>
+ * Files are only valid on the node that wrote them, entries in the portlet output caches that
+ * reference a file not registered here are treated as cache misses.
+ * <p>
+ * Files that are replaced, evicted or removed are not deleted right away, a request may still be
+ * replaying them. Readers {@link #acquire(File)} a file before replaying it and {@link #release(File)}
+ * it when done, a retired file is deleted once it has no readers and has been retired for at least
+ * the delete delay. The delay covers container sendfile support which opens the file after the
+ * request has completed and so can't hold a reference.
+ */
+public class PortletResourceFileCache {
+    private static final String SPOOL_FILE_PREFIX = "resource-";
+    private static final String SPOOL_FILE_SUFFIX = ".spool";
+    private static final long DEFAULT_DELETE_DELAY = TimeUnit.MINUTES.toMillis(1);
+    
+    protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+    
+    private final File directory;
+    private final long maxSize;
+    private final long deleteDelay;
+    private final LinkedHashMap<Tuple<String, Serializable>, File> files = new LinkedHashMap<Tuple<String, Serializable>, File>(16, .75f, true);
+    private final Map<File, Integer> readers = new HashMap<File, Integer>();
+    private final LinkedHashMap<File, Long> retiredFiles = new LinkedHashMap<File, Long>();
+    private long size = 0;
+    
+    public PortletResourceFileCache(File directory, long maxSize) {
+        this(directory, maxSize, DEFAULT_DELETE_DELAY);
+    }
+    
+    /**
+     * @param deleteDelay Minimum number of milliseconds a replaced, evicted or removed file is kept before it is deleted
+     */
+    public PortletResourceFileCache(File directory, long maxSize, long deleteDelay) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0: " + maxSize);
+        }
+        if (deleteDelay < 0) {
+            throw new IllegalArgumentException("deleteDelay must be greater than or equal to 0: " + deleteDelay);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Resource file cache directory cannot be created: " + directory);
+        }
+        
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.deleteDelay = deleteDelay;
+        
+        //Files left by a previous run aren't referenced by anything
+        final File[] existingFiles = directory.listFiles();
+        if (existingFiles != null) {
+            for (final File existingFile : existingFiles) {
+                final String name = existingFile.getName();
+                if (name.startsWith(SPOOL_FILE_PREFIX) && name.endsWith(SPOOL_FILE_SUFFIX)) {
+                    this.deleteFile(existingFile);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return The directory spool files should be created in
+     */
+    public File getDirectory() {
+        return this.directory;
+    }
+    
+    /**
+     * @return Prefix to use for spool files
+     */
+    public String getSpoolFilePrefix() {
+        return SPOOL_FILE_PREFIX;
+    }
+    
+    /**
+     * @return Suffix to use for spool files
+     */
+    public String getSpoolFileSuffix() {
+        return SPOOL_FILE_SUFFIX;
+    }
+    
+    /**
+     * @return Maximum number of bytes of files kept in the cache, also the largest file that can be cached
+     */
+    public long getMaxSize() {
+        return this.maxSize;
+    }
+    
+    /**
+     * @return Number of bytes of files currently in the cache
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+    
+    /**
+     * @return Number of files currently in the cache
+     */
+    public synchronized int getFileCount() {
+        return this.files.size();
+    }
+    
+    /**
+     * @return Number of files no longer in the cache that are waiting to be deleted
+     */
+    public synchronized int getRetiredFileCount() {
+        return this.retiredFiles.size();
+    }
+    
+    /**
+     * Register a spooled file for a cache element, replacing and retiring any other file registered for
+     * the element. Least recently used files are retired as needed to make room.
+     * 
+     * @return true if the file was registered, false if it is larger than the entire cache in which case it is deleted
+     */
+    public synchronized boolean store(String cacheName, Serializable key, File file) {
+        final Tuple<String, Serializable> fileKey = new Tuple<String, Serializable>(cacheName, key);
+        
+        //Re-storing the same element, just update the access order
+        final File existingFile = this.files.get(fileKey);
+        if (file.equals(existingFile)) {
+            return true;
+        }
+        this.remove(cacheName, key);
+        
+        final long length = file.length();
+        if (length > this.maxSize) {
+            this.deleteFile(file);
+            return false;
+        }
+        
+        final Iterator<File> fileItr = this.files.values().iterator();
+        while (this.size + length > this.maxSize && fileItr.hasNext()) {
+            final File evictedFile = fileItr.next();
+            fileItr.remove();
+            this.size -= evictedFile.length();
+            this.retireFile(evictedFile);
+        }
+        
+        this.retiredFiles.remove(file);
+        this.files.put(fileKey, file);
+        this.size += length;
+        this.purgeRetiredFiles();
+        return true;
+    }
+    
+    /**
+     * @return true if the file is the one registered for the cache element and it still exists
+     */
+    public synchronized boolean contains(String cacheName, Serializable key, File file) {
+        final File existingFile = this.files.get(new Tuple<String, Serializable>(cacheName, key));
+        return file.equals(existingFile) && file.exists();
+    }
+    
+    /**
+     * Acquire a file for reading, the file will not be deleted until {@link #release(File)} is called.
+     * 
+     * @return true if the file exists and was acquired, false if it has already been deleted
+     */
+    public synchronized boolean acquire(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+        
+        final Integer count = this.readers.get(file);
+        this.readers.put(file, count == null ? 1 : count + 1);
+        return true;
+    }
+    
+    /**
+     * Release a file acquired by {@link #acquire(File)}
+     */
+    public synchronized void release(File file) {
+        final Integer count = this.readers.get(file);
+        if (count == null) {
+            return;
+        }
+        
+        if (count > 1) {
+            this.readers.put(file, count - 1);
+        }
+        else {
+            this.readers.remove(file);
+        }
+        this.purgeRetiredFiles();
+    }
+    
+    /**
+     * Remove and retire the file registered for the cache element
+     */
+    public synchronized void remove(String cacheName, Serializable key) {
+        final File file = this.files.remove(new Tuple<String, Serializable>(cacheName, key));
+        if (file != null) {
+            this.size -= file.length();
+            this.retireFile(file);
+        }
+    }
+    
+    /**
+     * Remove and retire all files registered for the cache
+     */
+    public synchronized void clear(String cacheName) {
+        //Iterate over entries, a get on the access ordered map would break the iterator
+        for (final Iterator<Map.Entry<Tuple<String, Serializable>, File>> fileItr = this.files.entrySet().iterator(); fileItr.hasNext();) {
+            final Map.Entry<Tuple<String, Serializable>, File> fileEntry = fileItr.next();
+            if (cacheName.equals(fileEntry.getKey().first)) {
+                final File file = fileEntry.getValue();
+                fileItr.remove();
+                this.size -= file.length();
+                this.retireFile(file);
+            }
+        }
+        this.purgeRetiredFiles();
+    }
+    
+    /**
+     * Delete a spool file that was never registered
+     */
+    public void discard(File file) {
+        this.deleteFile(file);
+    }
+    
+    /**
+     * Delete retired files that have no readers and have been retired for at least the delete delay,
+     * files that fail to delete are kept and retried on the next purge.
+     */
+    public synchronized void purgeRetiredFiles() {
+        final long now = System.currentTimeMillis();
+        for (final Iterator<Map.Entry<File, Long>> retiredItr = this.retiredFiles.entrySet().iterator(); retiredItr.hasNext();) {
+            final Map.Entry<File, Long> retiredEntry = retiredItr.next();
+            if (now - retiredEntry.getValue() < this.deleteDelay) {
+                //Retired in order, everything after this is newer
+                break;
+            }
+            
+            final File file = retiredEntry.getKey();
+            if (!this.readers.containsKey(file) && this.deleteFile(file)) {
+                retiredItr.remove();
+            }
+        }
+    }
+    
+    private void retireFile(File file) {
+        this.retiredFiles.remove(file);
+        this.retiredFiles.put(file, System.currentTimeMillis());
+    }
+    
+    private boolean deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            this.logger.warn("Failed to delete resource cache file {}", file);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "PortletResourceFileCache [directory=" + this.directory + ", maxSize=" + this.maxSize + ", deleteDelay=" + this.deleteDelay + "]";
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.portlet.container.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the request that is populating the public cache for a {@link PublicPortletCacheKey}, other
+ * requests for the same key wait on it instead of rendering the portlet themselves.
+ */
+class PublicPortletCacheLoad {
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final Thread owner = Thread.currentThread();
+    private final PublicPortletCacheKey publicCacheKey;
+    
+    PublicPortletCacheLoad(PublicPortletCacheKey publicCacheKey) {
+        this.publicCacheKey = publicCacheKey;
+    }
+
+    /**
+     * @return The key being loaded
+     */
+    public PublicPortletCacheKey getPublicCacheKey() {
+        return this.publicCacheKey;
+    }
+    
+    /**
+     * @return true if the current thread is the one populating the cache
+     */
+    public boolean isOwnedByCurrentThread() {
+        return this.owner == Thread.currentThread();
+    }
+    
+    /**
+     * Wait up to the specified time for the load to be released
+     * 
+     * @return true if the load was released, false if the wait timed out or was interrupted
+     */
+    public boolean await(long timeout) {
+        try {
+            return this.latch.await(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    /**
+     * Release all requests waiting on the load
+     */
+    public void release() {
+        this.latch.countDown();
+    }
+
+    @Override
+    public String toString() {
+        return "PublicPortletCacheLoad [publicCacheKey=" + this.publicCacheKey + ", owner=" + this.owner.getName() + "]";
+    }
+}
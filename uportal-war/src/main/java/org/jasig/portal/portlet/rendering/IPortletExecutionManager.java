@@ -20,6 +20,7 @@
 package org.jasig.portal.portlet.rendering;
 
 import java.io.Writer;
+import java.util.Collection;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -81,6 +82,19 @@ public interface IPortletExecutionManager {
      */
     public void startPortletRender(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response);
     
+    /**
+     * Initiates rendering workers for the BODY output of portlets ahead of the request that displays them.
+     * The workers render against a detached copy of the request targeted at the specified URL, so this
+     * request does not need to wait for them. The results are kept in the session, the first request
+     * after this one that renders portlets uses the results for the portlet windows it renders and
+     * discards the rest.
+     * 
+     * @param subscribeIds Layout node ids of the portlets to render
+     * @param targetUrl Server relative URL of the page the portlets are rendered for
+     * @param request
+     */
+    public void startPortletPrefetch(Collection<String> subscribeIds, String targetUrl, HttpServletRequest request);
+    
     /**
      * 
      * @param portletWindowId
@@ -108,6 +122,31 @@ public interface IPortletExecutionManager {
      * @return true if the specified portlet been requested to render it's output for the BODY during this request.
      */
     public boolean isPortletRenderRequested(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response);
+    
+    /**
+     * @return true if the HEAD output for the specified portlet is available without blocking. Also returns true if the portlet does not produce HEAD output.
+     */
+    public boolean isPortletRenderHeaderComplete(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response);
+    
+    /**
+     * @return true if the BODY output for the specified portlet is available without blocking.
+     */
+    public boolean isPortletRenderComplete(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response);
+    
+    /**
+     * Waits for any one of the specified portlets to complete rendering its BODY output. A portlet that
+     * has run past its render timeout is also returned, {@link #getPortletOutput(IPortletWindowId, HttpServletRequest, HttpServletResponse)}
+     * will then immediately return the error output for it.
+     * 
+     * @return The first portlet found to be complete or timed out
+     */
+    public IPortletWindowId waitForPortletRender(Collection<IPortletWindowId> portletWindowIds, HttpServletRequest request, HttpServletResponse response);
+    
+    /**
+     * @return true if every portlet HEADER and BODY render started for the request has completed or run
+     * past its render timeout, retrieving the output of these portlets will not block.
+     */
+    public boolean isPortletRenderingComplete(HttpServletRequest request, HttpServletResponse response);
 
     /**
      * @see #getPortletHeadOutput(IPortletWindowId, HttpServletRequest, HttpServletResponse)
@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 import javax.portlet.Event;
 import javax.servlet.http.HttpServletRequest;
@@ -84,6 +85,9 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Function;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 
 /**
@@ -108,6 +112,20 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
     
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
     
+    /*
+     * Keys are weak and values soft so event types from a redeployed portlet application
+     * don't keep its ClassLoader around
+     */
+    private final LoadingCache<Class<? extends Serializable>, JAXBContext> jaxbContexts = CacheBuilder.newBuilder()
+            .weakKeys()
+            .softValues()
+            .build(new CacheLoader<Class<? extends Serializable>, JAXBContext>() {
+                @Override
+                public JAXBContext load(Class<? extends Serializable> key) throws Exception {
+                    return JAXBContext.newInstance(key);
+                }
+            });
+    
     private IPortletWindowRegistry portletWindowRegistry;
     private IPortletEntityRegistry portletEntityRegistry;
     private IPortletDefinitionRegistry portletDefinitionRegistry;
@@ -216,6 +234,7 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
         final Set<String> allLayoutNodeIds = new LinkedHashSet<String>(userLayoutManager.getAllSubscribedChannels());
         
         final Map<String, IPortletEntity> portletEntityCache = new LinkedHashMap<String, IPortletEntity>();
+        final Map<Tuple<QName, Boolean>, Set<IPortletWindow>> resolvedEventTargets = new LinkedHashMap<Tuple<QName, Boolean>, Set<IPortletWindow>>();
         
         while (!events.isEmpty()) {
             final QueuedEvent queuedEvent = events.poll();
@@ -229,74 +248,97 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
             
         	final boolean globalEvent = isGlobalEvent(request, sourceWindowId, event);
         	
-        	final Set<IPortletDefinition> portletDefinitions = new LinkedHashSet<IPortletDefinition>();
-        	if (globalEvent) {
-        		portletDefinitions.addAll(this.portletDefinitionRegistry.getAllPortletDefinitions());
-        	}
+            //Events with the same name and scope resolve to the same windows, only look them up once per pass
+            final Tuple<QName, Boolean> targetKey = new Tuple<QName, Boolean>(event.getQName(), globalEvent);
+            Set<IPortletWindow> targetWindows = resolvedEventTargets.get(targetKey);
+            if (targetWindows == null) {
+                targetWindows = this.getEventTargets(request, userInstance, allLayoutNodeIds, portletEntityCache, event, globalEvent);
+                resolvedEventTargets.put(targetKey, targetWindows);
+            }
+            
+            for (final IPortletWindow portletWindow : targetWindows) {
+                this.logger.debug("{} resolved target {}", event, portletWindow);
+                final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
+                final Event unmarshalledEvent = this.unmarshall(portletWindow, event);
+                portletEventQueue.offerEvent(portletWindowId, new QueuedEvent(sourceWindowId, unmarshalledEvent) );
+            }
+        }
+    }
+    
+    /**
+     * Determine the portlet windows the event should be delivered to
+     * 
+     * @param allLayoutNodeIds Layout nodes to check, nodes for portlets that don't handle events are removed
+     * @param portletEntityCache Cache of the portlet entities for the layout nodes
+     */
+    protected Set<IPortletWindow> getEventTargets(HttpServletRequest request, IUserInstance userInstance, 
+            Set<String> allLayoutNodeIds, Map<String, IPortletEntity> portletEntityCache, Event event, boolean globalEvent) {
+        
+        final Set<IPortletWindow> targetWindows = new LinkedHashSet<IPortletWindow>();
+        
+    	final Set<IPortletDefinition> portletDefinitions = new LinkedHashSet<IPortletDefinition>();
+    	if (globalEvent) {
+    		portletDefinitions.addAll(this.portletDefinitionRegistry.getAllPortletDefinitions());
+    	}
+        
+        //Check each subscription to see what events it is registered to see
+        for (final Iterator<String> layoutNodeIdItr = allLayoutNodeIds.iterator(); layoutNodeIdItr.hasNext(); ) {
+            final String layoutNodeId = layoutNodeIdItr.next();
             
-            //Check each subscription to see what events it is registered to see
-            for (final Iterator<String> layoutNodeIdItr = allLayoutNodeIds.iterator(); layoutNodeIdItr.hasNext(); ) {
-                final String layoutNodeId = layoutNodeIdItr.next();
+            IPortletEntity portletEntity = portletEntityCache.get(layoutNodeId);
+            if (portletEntity == null) {
+                portletEntity = this.portletEntityRegistry.getOrCreatePortletEntity(request, userInstance, layoutNodeId);
                 
-                IPortletEntity portletEntity = portletEntityCache.get(layoutNodeId);
+                // if portlet entity registry returned null, then portlet has been deleted - remove it (see UP-3378)
                 if (portletEntity == null) {
-                    portletEntity = this.portletEntityRegistry.getOrCreatePortletEntity(request, userInstance, layoutNodeId);
-                    
-                    // if portlet entity registry returned null, then portlet has been deleted - remove it (see UP-3378)
-                    if (portletEntity == null) {
-                    	layoutNodeIdItr.remove();
-                    	continue;
-                    }
-                    
-                    final IPortletDefinitionId portletDefinitionId = portletEntity.getPortletDefinitionId();
-                    final PortletDefinition portletDescriptor = this.portletDefinitionRegistry.getParentPortletDescriptor(portletDefinitionId);
-                    if (portletDescriptor == null) {
-                        //Missconfigured portlet, remove it from the list so we don't check again and ignore it
-                        layoutNodeIdItr.remove();
-                        continue;
-                    }
-                    
-                    final List<? extends EventDefinitionReference> supportedProcessingEvents = portletDescriptor.getSupportedProcessingEvents();
-                    //Skip portlets that don't handle any events and remove them from the set so they are not checked again
-                    if (supportedProcessingEvents == null || supportedProcessingEvents.size() == 0) {
-                        layoutNodeIdItr.remove();
-                        continue;
-                    }
-                    
-                    portletEntityCache.put(layoutNodeId, portletEntity);
+                	layoutNodeIdItr.remove();
+                	continue;
                 }
                 
-                final IPortletDefinition portletDefinition = portletEntity.getPortletDefinition();
-                final IPortletDefinitionId portletDefinitionId = portletDefinition.getPortletDefinitionId();
-                if (this.supportsEvent(event, portletDefinitionId)) {
-                	this.logger.debug("{} supports event {}", portletDefinition, event);
-                	
-                	//If this is the default portlet entity remove the definition from the all defs set to avoid duplicate processing
-                	final IPortletEntity defaultPortletEntity = this.portletEntityRegistry.getOrCreateDefaultPortletEntity(request, portletDefinitionId);
-                	if (defaultPortletEntity.equals(portletEntity)) {
-                		portletDefinitions.remove(portletDefinition);
-                	}
-                	
-                    final IPortletEntityId portletEntityId = portletEntity.getPortletEntityId();
-                    final Set<IPortletWindow> portletWindows = this.portletWindowRegistry.getAllPortletWindowsForEntity(request, portletEntityId);
-                    
-                    for (final IPortletWindow portletWindow : portletWindows) {
-                        this.logger.debug("{} resolved target {}", event, portletWindow);
-                        final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
-                        final Event unmarshalledEvent = this.unmarshall(portletWindow, event);
-                        portletEventQueue.offerEvent(portletWindowId, new QueuedEvent(sourceWindowId, unmarshalledEvent) );
-                    }
+                final IPortletDefinitionId portletDefinitionId = portletEntity.getPortletDefinitionId();
+                final PortletDefinition portletDescriptor = this.portletDefinitionRegistry.getParentPortletDescriptor(portletDefinitionId);
+                if (portletDescriptor == null) {
+                    //Missconfigured portlet, remove it from the list so we don't check again and ignore it
+                    layoutNodeIdItr.remove();
+                    continue;
                 }
-                else {
-                	portletDefinitions.remove(portletDefinition);
+                
+                final List<? extends EventDefinitionReference> supportedProcessingEvents = portletDescriptor.getSupportedProcessingEvents();
+                //Skip portlets that don't handle any events and remove them from the set so they are not checked again
+                if (supportedProcessingEvents == null || supportedProcessingEvents.size() == 0) {
+                    layoutNodeIdItr.remove();
+                    continue;
                 }
+                
+                portletEntityCache.put(layoutNodeId, portletEntity);
             }
             
-            if (!portletDefinitions.isEmpty()) {
-            	final IPerson user = userInstance.getPerson();
-        		final EntityIdentifier ei = user.getEntityIdentifier();
-        		final IAuthorizationPrincipal ap = AuthorizationService.instance().newPrincipal(ei.getKey(), ei.getType());
+            final IPortletDefinition portletDefinition = portletEntity.getPortletDefinition();
+            final IPortletDefinitionId portletDefinitionId = portletDefinition.getPortletDefinitionId();
+            if (this.supportsEvent(event, portletDefinitionId)) {
+            	this.logger.debug("{} supports event {}", portletDefinition, event);
+            	
+            	//If this is the default portlet entity remove the definition from the all defs set to avoid duplicate processing
+            	final IPortletEntity defaultPortletEntity = this.portletEntityRegistry.getOrCreateDefaultPortletEntity(request, portletDefinitionId);
+            	if (defaultPortletEntity.equals(portletEntity)) {
+            		portletDefinitions.remove(portletDefinition);
+            	}
             	
+                final IPortletEntityId portletEntityId = portletEntity.getPortletEntityId();
+                final Set<IPortletWindow> portletWindows = this.portletWindowRegistry.getAllPortletWindowsForEntity(request, portletEntityId);
+                
+                targetWindows.addAll(portletWindows);
+            }
+            else {
+            	portletDefinitions.remove(portletDefinition);
+            }
+        }
+        
+        if (!portletDefinitions.isEmpty()) {
+        	final IPerson user = userInstance.getPerson();
+    		final EntityIdentifier ei = user.getEntityIdentifier();
+    		final IAuthorizationPrincipal ap = AuthorizationService.instance().newPrincipal(ei.getKey(), ei.getType());
+        	
 	            //If the event is global there might still be portlet definitions that need targeting
 	            for (final IPortletDefinition portletDefinition : portletDefinitions) {
 	            	final IPortletDefinitionId portletDefinitionId = portletDefinition.getPortletDefinitionId();
@@ -309,17 +351,13 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
 		                    final IPortletEntityId portletEntityId = portletEntity.getPortletEntityId();
 		                    final Set<IPortletWindow> portletWindows = this.portletWindowRegistry.getAllPortletWindowsForEntity(request, portletEntityId);
 		                    
-		                    for (final IPortletWindow portletWindow : portletWindows) {
-		                        this.logger.debug("{} resolved target {}", event, portletWindow);
-		                        final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
-		                        final Event unmarshalledEvent = this.unmarshall(portletWindow, event);
-		                        portletEventQueue.offerEvent(portletWindowId, new QueuedEvent(sourceWindowId, unmarshalledEvent) );
-		                    }
+		                    targetWindows.addAll(portletWindows);
 		            	}
 	            	}
 	            }
-            }
         }
+    
+        return targetWindows;
     }
 
 	protected boolean isGlobalEvent(HttpServletRequest request, IPortletWindowId sourceWindowId, Event event) {
@@ -380,10 +418,9 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
             throw new IllegalArgumentException("Declared event type '" + eventType + "' cannot be found in portlet application: " + portletApplicationName, e);
         }
     
-        //TODO cache JAXBContext in registered portlet application
         final JAXBElement<? extends Serializable> result;
         try {
-            final JAXBContext jc = JAXBContext.newInstance(clazz);
+            final JAXBContext jc = this.getJAXBContext(clazz);
             final Unmarshaller unmarshaller = jc.createUnmarshaller();
             result = unmarshaller.unmarshal(xml, clazz);
         }
@@ -394,6 +431,23 @@ public class PortletEventCoordinatationService implements IPortletEventCoordinat
         return new EventImpl(event.getQName(), result.getValue());
     }
 
+    /**
+     * Creating a JAXBContext is far more expensive than the unmarshalling, they are thread safe
+     * so one is kept per event value type
+     */
+    protected JAXBContext getJAXBContext(Class<? extends Serializable> clazz) throws JAXBException {
+        try {
+            return this.jaxbContexts.get(clazz);
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof JAXBException) {
+                throw (JAXBException)cause;
+            }
+            throw new IllegalStateException("Failed to create JAXBContext for event type: " + clazz, cause);
+        }
+    }
+
     //TODO cache this resolution
     protected EventDefinition getEventDefintion(IPortletWindow portletWindow, QName name) {
         PortletApplicationDefinition appDD = portletWindow.getPlutoPortletWindow().getPortletDefinition().getApplication();
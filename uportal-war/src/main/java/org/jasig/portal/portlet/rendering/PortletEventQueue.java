@@ -19,8 +19,11 @@
 
 package org.jasig.portal.portlet.rendering;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -91,6 +94,37 @@ public class PortletEventQueue implements Iterable<IPortletWindowId> {
         return queue != null ? queue.poll() : null;
     }
 
+    /**
+     * Remove up to maxEvents of the oldest {@link Event}s from the Queue for the specified {@link IPortletWindowId}
+     * 
+     * @return The removed events, oldest first, empty if there are no queued events
+     */
+    public List<QueuedEvent> pollEvents(IPortletWindowId portletWindowId, int maxEvents) {
+        final Queue<QueuedEvent> queue = this.resolvedEventQueues.get(portletWindowId);
+        if (queue == null) {
+            return Collections.emptyList();
+        }
+        
+        final List<QueuedEvent> events = new ArrayList<QueuedEvent>();
+        QueuedEvent event;
+        while (events.size() < maxEvents && (event = queue.poll()) != null) {
+            events.add(event);
+        }
+        return events;
+    }
+
+    /**
+     * @return true if there are {@link Event}s queued for any {@link IPortletWindowId}
+     */
+    public boolean hasEvents() {
+        for (final Queue<QueuedEvent> queue : this.resolvedEventQueues.values()) {
+            if (!queue.isEmpty()) {
+                return true;
+            }
+        }
+        return !this.rawEventQueue.isEmpty();
+    }
+
     /**
      * Get an {@link Iterator} of all {@link IPortletWindowId}s that have {@link Event}s queued.
      */
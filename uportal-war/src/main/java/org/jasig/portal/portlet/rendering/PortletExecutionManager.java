@@ -20,8 +20,11 @@
 package org.jasig.portal.portlet.rendering;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
@@ -30,10 +33,15 @@ import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.portlet.Event;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
@@ -42,6 +50,9 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.pluto.container.om.portlet.ContainerRuntimeOption;
 import org.apache.pluto.container.om.portlet.PortletDefinition;
 import org.jasig.portal.events.IPortletExecutionEventFactory;
+import org.jasig.portal.portlet.container.cache.CacheState;
+import org.jasig.portal.portlet.container.cache.CachedPortletData;
+import org.jasig.portal.portlet.container.cache.IPortletCacheControlService;
 import org.jasig.portal.portlet.om.IPortletDefinition;
 import org.jasig.portal.portlet.om.IPortletDefinitionParameter;
 import org.jasig.portal.portlet.om.IPortletDescriptorKey;
@@ -50,13 +61,22 @@ import org.jasig.portal.portlet.om.IPortletEntityId;
 import org.jasig.portal.portlet.om.IPortletWindow;
 import org.jasig.portal.portlet.om.IPortletWindowId;
 import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
+import org.jasig.portal.portlet.rendering.worker.AdaptiveConcurrencyLimit;
 import org.jasig.portal.portlet.rendering.worker.IPortletExecutionContext;
+import org.jasig.portal.portlet.rendering.worker.IPortletExecutionContext.ExecutionType;
+import org.jasig.portal.portlet.rendering.worker.IPortletEventExecutionWorker;
 import org.jasig.portal.portlet.rendering.worker.IPortletExecutionInterceptor;
 import org.jasig.portal.portlet.rendering.worker.IPortletExecutionWorker;
 import org.jasig.portal.portlet.rendering.worker.IPortletFailureExecutionWorker;
 import org.jasig.portal.portlet.rendering.worker.IPortletRenderExecutionWorker;
 import org.jasig.portal.portlet.rendering.worker.IPortletWorkerFactory;
+import org.jasig.portal.portlet.rendering.worker.PortletExecutionDeniedException;
+import org.jasig.portal.url.IPortalRequestUtils;
+import org.jasig.portal.url.PortalHttpServletRequestWrapper;
+import org.jasig.portal.user.IUserInstanceManager;
 import org.jasig.portal.utils.ConcurrentMapUtils;
+import org.jasig.portal.utils.web.DetachedHttpServletRequest;
+import org.jasig.portal.utils.web.DetachedHttpServletResponse;
 import org.jasig.portal.utils.web.PortalWebUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -86,6 +106,9 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
     private static final long DEBUG_TIMEOUT = TimeUnit.HOURS.toMillis(1);
     private static final String PORTLET_HEADER_RENDERING_MAP = PortletExecutionManager.class.getName() + ".PORTLET_HEADER_RENDERING_MAP";
 	private static final String PORTLET_RENDERING_MAP = PortletExecutionManager.class.getName() + ".PORTLET_RENDERING_MAP";
+    private static final String CONCURRENCY_LIMIT_ATTRIBUTE = PortletExecutionManager.class.getName() + ".CONCURRENCY_LIMIT";
+    private static final String SESSION_ATTRIBUTE__PORTLET_PREFETCH_MAP = PortletExecutionManager.class.getName() + ".PORTLET_PREFETCH_MAP";
+    private static final String PORTLET_PREFETCH_MAP = PortletExecutionManager.class.getName() + ".PORTLET_PREFETCH_MAP";
 
     protected static final String SESSION_ATTRIBUTE__PORTLET_FAILURE_CAUSE_MAP = PortletExecutionManager.class.getName() + ".PORTLET_FAILURE_CAUSE_MAP";
     
@@ -100,6 +123,12 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
      * Queue used to track workers that did not complete in their alloted time. 
      */
     private final Queue<IPortletExecutionWorker<?>> hungWorkers = new ConcurrentLinkedQueue<IPortletExecutionWorker<?>>();
+    
+    /**
+     * Workers running against a detached copy of a request, mapped to that copy. No client request
+     * waits on them so they are cancelled here once they exceed their timeout.
+     */
+    private final ConcurrentMap<IPortletExecutionWorker<?>, HttpServletRequest> detachedWorkers = new ConcurrentHashMap<IPortletExecutionWorker<?>, HttpServletRequest>();
 
     private final ConcurrentMap<IPortletDescriptorKey, AtomicInteger> executionCount = ConcurrentMapUtils.makeDefaultsMap(new Function<IPortletDescriptorKey, AtomicInteger>(){
         public AtomicInteger apply(IPortletDescriptorKey key) {
@@ -107,17 +136,31 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         }
     });
     
+    // fname -> adaptive concurrency limit for the portlet's workers
+    private final ConcurrentMap<String, AdaptiveConcurrencyLimit> concurrencyLimits = new ConcurrentHashMap<String, AdaptiveConcurrencyLimit>();
+    
+    private boolean concurrencyLimitEnabled = false;
+    private int minConcurrencyLimit = 2;
+    private int maxConcurrencyLimit = 150;
+    private double concurrencyLimitBackoffRatio = .75;
+    private double congestionTimeoutRatio = .5;
+    private boolean speculativeRender = false;
     private boolean ignoreTimeouts = false;
     private int extendedTimeoutExecutions = 5;
     private long extendedTimeoutMultiplier = 20;
     private int maxEventIterations = 100;
+    private int maxEventBatchSize = 10;
+    private long maxEventBatchExtraTime = 10000;
     private IPortletWindowRegistry portletWindowRegistry;
     private IPortletEventCoordinationService eventCoordinationService;
     private IPortletWorkerFactory portletWorkerFactory;
     private IPortletExecutionEventFactory portletExecutionEventFactory;
+    private IPortletCacheControlService portletCacheControlService;
+    private IUserInstanceManager userInstanceManager;
+    private IPortalRequestUtils portalRequestUtils;
     
     /**
-     * @param maxEventIterations The maximum number of iterations to spend dispatching events. Defaults to 100
+     * @param maxEventIterations The maximum number of events to dispatch for a single request, each event in a batch is counted. Defaults to 100
      */
     @Override
     @Value("${org.jasig.portal.portlet.maxEventIterations:100}")
@@ -129,6 +172,30 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
     public int getMaxEventIterations() {
         return this.maxEventIterations;
     }
+    
+    /**
+     * @param maxEventBatchSize The maximum number of queued events delivered to a portlet window by a single worker, 1 delivers each event separately. Defaults to 10
+     */
+    @Override
+    @Value("${org.jasig.portal.portlet.maxEventBatchSize:10}")
+    public void setMaxEventBatchSize(int maxEventBatchSize) {
+        Assert.isTrue(maxEventBatchSize > 0, "maxEventBatchSize must be greater than 0");
+        this.maxEventBatchSize = maxEventBatchSize;
+    }
+    
+    @Override
+    public int getMaxEventBatchSize() {
+        return this.maxEventBatchSize;
+    }
+    
+    /**
+     * @param maxEventBatchExtraTime Maximum milliseconds a batch of events gets beyond the portlet's event timeout. Defaults to 10000
+     */
+    @Value("${org.jasig.portal.portlet.maxEventBatchExtraTime:10000}")
+    public void setMaxEventBatchExtraTime(long maxEventBatchExtraTime) {
+        Assert.isTrue(maxEventBatchExtraTime >= 0, "maxEventBatchExtraTime must not be negative");
+        this.maxEventBatchExtraTime = maxEventBatchExtraTime;
+    }
 
     @Override
     @Value("${org.jasig.portal.portlet.ignoreTimeout}")
@@ -163,6 +230,67 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         return this.extendedTimeoutMultiplier;
     }
     
+    /**
+     * @param concurrencyLimitEnabled If the number of concurrent workers for each portlet should be limited. Defaults to false
+     */
+    @Value("${org.jasig.portal.portlet.concurrencyLimit.enabled:false}")
+    @Override
+    public void setConcurrencyLimitEnabled(boolean concurrencyLimitEnabled) {
+        this.concurrencyLimitEnabled = concurrencyLimitEnabled;
+    }
+    
+    @Override
+    public boolean isConcurrencyLimitEnabled() {
+        return this.concurrencyLimitEnabled;
+    }
+
+    /**
+     * @param minConcurrencyLimit The lowest the concurrency limit of a portlet can be reduced to. Defaults to 2
+     */
+    @Value("${org.jasig.portal.portlet.concurrencyLimit.min:2}")
+    public void setMinConcurrencyLimit(int minConcurrencyLimit) {
+        this.minConcurrencyLimit = minConcurrencyLimit;
+    }
+
+    /**
+     * @param maxConcurrencyLimit The starting and highest concurrency limit of a portlet. Defaults to 150
+     */
+    @Value("${org.jasig.portal.portlet.concurrencyLimit.max:150}")
+    public void setMaxConcurrencyLimit(int maxConcurrencyLimit) {
+        this.maxConcurrencyLimit = maxConcurrencyLimit;
+    }
+
+    /**
+     * @param concurrencyLimitBackoffRatio Multiplier applied to a portlet's concurrency limit on congestion. Defaults to .75
+     */
+    @Value("${org.jasig.portal.portlet.concurrencyLimit.backoffRatio:.75}")
+    public void setConcurrencyLimitBackoffRatio(double concurrencyLimitBackoffRatio) {
+        this.concurrencyLimitBackoffRatio = concurrencyLimitBackoffRatio;
+    }
+
+    /**
+     * @param congestionTimeoutRatio Fraction of the portlet's timeout an execution can take before it is considered congested. Defaults to .5
+     */
+    @Value("${org.jasig.portal.portlet.concurrencyLimit.congestionTimeoutRatio:.5}")
+    public void setCongestionTimeoutRatio(double congestionTimeoutRatio) {
+        this.congestionTimeoutRatio = congestionTimeoutRatio;
+    }
+    
+    /**
+     * @param speculativeRender If starting the header or body render of a portlet that renders headers should also start the other.
+     *  JSR-286 expects the header render to complete before the body render starts, only enable this if the
+     *  portlets that render headers don't depend on that ordering. Defaults to false
+     */
+    @Value("${org.jasig.portal.portlet.speculativeRender:false}")
+    public void setSpeculativeRender(boolean speculativeRender) {
+        this.speculativeRender = speculativeRender;
+    }
+    
+    @Override
+    public Map<String, AdaptiveConcurrencyLimit> getPortletConcurrencyLimits() {
+        return new TreeMap<String, AdaptiveConcurrencyLimit>(this.concurrencyLimits);
+    }
+    
     @Override
     public Map<String, Integer> getPortletExecutionCounts() {
         final Map<String, Integer> counts = new TreeMap<String, Integer>();
@@ -196,10 +324,60 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         this.portletExecutionEventFactory = portletExecutionEventFactory;
     }
 
+    @Autowired
+    public void setPortletCacheControlService(IPortletCacheControlService portletCacheControlService) {
+        this.portletCacheControlService = portletCacheControlService;
+    }
+
+    @Autowired
+    public void setUserInstanceManager(IUserInstanceManager userInstanceManager) {
+        this.userInstanceManager = userInstanceManager;
+    }
+
+    @Autowired
+    public void setPortalRequestUtils(IPortalRequestUtils portalRequestUtils) {
+        this.portalRequestUtils = portalRequestUtils;
+    }
+
     @Override
-    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
+    public void afterCompletion(final HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
             throws Exception {
+        
+        //The response is still being rendered asynchronously, check the workers once it is complete, times out or fails
+        if (request.isAsyncStarted()) {
+            final AtomicBoolean checked = new AtomicBoolean();
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) throws IOException {
+                    checkWorkers();
+                }
+                @Override
+                public void onTimeout(AsyncEvent event) throws IOException {
+                    checkWorkers();
+                }
+                @Override
+                public void onError(AsyncEvent event) throws IOException {
+                    checkWorkers();
+                }
+                @Override
+                public void onStartAsync(AsyncEvent event) throws IOException {
+                }
+                private void checkWorkers() {
+                    if (checked.compareAndSet(false, true)) {
+                        checkAllWorkersCompletion(request);
+                    }
+                }
+            });
+            return;
+        }
+        
+        this.checkAllWorkersCompletion(request);
+    }
 
+    /**
+     * Checks all header and render workers for the request for completion
+     */
+    protected void checkAllWorkersCompletion(HttpServletRequest request) {
         final Map<IPortletWindowId, IPortletRenderExecutionWorker> portletHeaderRenderingMap = this.getPortletHeaderRenderingMap(request);
         for (final IPortletRenderExecutionWorker portletRenderExecutionWorker : portletHeaderRenderingMap.values()) {
             checkWorkerCompletion(request, portletRenderExecutionWorker);
@@ -246,6 +424,12 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
 
         portletExecutionWorker.cancel();
         
+        //Release the permit as congested now, a hung worker must not hold it until it eventually completes
+        final AdaptiveConcurrencyLimit concurrencyLimit = (AdaptiveConcurrencyLimit) portletExecutionWorker.setExecutionAttribute(CONCURRENCY_LIMIT_ATTRIBUTE, null);
+        if (concurrencyLimit != null) {
+            concurrencyLimit.release(Math.max(portletExecutionWorker.getSubmittedTime(), portletExecutionWorker.getStartedTime()), true);
+        }
+        
         this.portletExecutionEventFactory.publishPortletHungEvent(request, this, portletExecutionWorker);
         hungWorkers.offer(portletExecutionWorker);
     }
@@ -282,9 +466,52 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         }
         
     }
+    
+    @Scheduled(fixedRate=1000)
+    public void checkDetachedWorkers() {
+        if (this.detachedWorkers.isEmpty()) {
+            return;
+        }
+        
+        final long now = System.currentTimeMillis();
+        for (final Iterator<Entry<IPortletExecutionWorker<?>, HttpServletRequest>> workerItr = this.detachedWorkers.entrySet().iterator(); workerItr.hasNext(); ) {
+            final Entry<IPortletExecutionWorker<?>, HttpServletRequest> workerEntry = workerItr.next();
+            final IPortletExecutionWorker<?> worker = workerEntry.getKey();
+            
+            if (worker.isComplete()) {
+                workerItr.remove();
+            }
+            else if (now - Math.max(worker.getSubmittedTime(), worker.getStartedTime()) > worker.getApplicableTimeout()) {
+                workerItr.remove();
+                cancelWorker(workerEntry.getValue(), worker);
+            }
+        }
+    }
 
     @Override
     public void preSubmit(HttpServletRequest request, HttpServletResponse response, IPortletExecutionContext context) {
+        //The error portlet must always be able to render
+        if (!this.concurrencyLimitEnabled || context.getExecutionType() == ExecutionType.FAILURE) {
+            return;
+        }
+        
+        final AdaptiveConcurrencyLimit concurrencyLimit = this.getConcurrencyLimit(context.getPortletFname());
+        if (!concurrencyLimit.tryAcquire()) {
+            final String msg = "Denying worker execution for " + context.getPortletFname() + " that is over its concurrency limit: " + concurrencyLimit;
+            this.logger.info(msg);
+            throw new PortletExecutionDeniedException(msg);
+        }
+        
+        context.setExecutionAttribute(CONCURRENCY_LIMIT_ATTRIBUTE, concurrencyLimit);
+    }
+    
+    protected AdaptiveConcurrencyLimit getConcurrencyLimit(String portletFname) {
+        AdaptiveConcurrencyLimit concurrencyLimit = this.concurrencyLimits.get(portletFname);
+        if (concurrencyLimit == null) {
+            concurrencyLimit = ConcurrentMapUtils.putIfAbsent(this.concurrencyLimits, portletFname, 
+                    new AdaptiveConcurrencyLimit(this.minConcurrencyLimit, this.maxConcurrencyLimit, this.concurrencyLimitBackoffRatio));
+        }
+        return concurrencyLimit;
     }
 
     @Override
@@ -293,6 +520,14 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
 
     @Override
     public void postExecution(HttpServletRequest request, HttpServletResponse response, IPortletExecutionContext context, Exception e) {
+        //The permit of a timed out worker was already released by cancelWorker
+        final AdaptiveConcurrencyLimit concurrencyLimit = (AdaptiveConcurrencyLimit) context.setExecutionAttribute(CONCURRENCY_LIMIT_ATTRIBUTE, null);
+        if (concurrencyLimit != null) {
+            final long started = context.getStartedTime();
+            final long duration = System.currentTimeMillis() - started;
+            concurrencyLimit.release(started, duration > context.getApplicableTimeout() * this.congestionTimeoutRatio);
+        }
+        
         final IPortletWindowId portletWindowId = context.getPortletWindowId();
         final IPortletWindow portletWindow = this.portletWindowRegistry.getPortletWindow(request, portletWindowId);
         final IPortletEntity portletEntity = portletWindow.getPortletEntity();
@@ -301,6 +536,46 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         
         final AtomicInteger counter = this.executionCount.get(portletDescriptorKey);
         counter.incrementAndGet();
+        
+        if (e == null) {
+            this.startPortletRevalidation(request, response, context);
+        }
+    }
+    
+    /**
+     * Starts a re-render of the portlet if the execution replayed stale cached output. The re-render
+     * refreshes the cached output, its markup is not used by the current request. It runs against a
+     * detached copy of the request so the current request can complete without waiting on it.
+     */
+    protected void startPortletRevalidation(HttpServletRequest request, HttpServletResponse response, IPortletExecutionContext context) {
+        final ExecutionType executionType = context.getExecutionType();
+        final boolean renderHeader = executionType == ExecutionType.RENDER_HEADER;
+        if (!renderHeader && executionType != ExecutionType.RENDER) {
+            return;
+        }
+        
+        final IPortletWindowId portletWindowId = context.getPortletWindowId();
+        if (!this.portletCacheControlService.claimPortletRevalidation(request, portletWindowId, renderHeader)) {
+            return;
+        }
+        
+        this.logger.debug("Starting revalidation of stale {} output for {}", executionType, portletWindowId);
+        
+        //The copy shares the request's attributes, including the claimed revalidation, so the re-render does not replay stale output again
+        final HttpServletRequest portalRequest = this.portalRequestUtils.getOriginalPortalRequest(request);
+        final HttpServletResponse detachedResponse = new DetachedHttpServletResponse();
+        final HttpServletRequest detachedRequest = new PortalHttpServletRequestWrapper(new DetachedHttpServletRequest(portalRequest), detachedResponse, this.userInstanceManager);
+        
+        final IPortletRenderExecutionWorker portletRevalidationWorker;
+        if (renderHeader) {
+            portletRevalidationWorker = this.portletWorkerFactory.createRenderHeaderWorker(detachedRequest, detachedResponse, portletWindowId);
+        }
+        else {
+            portletRevalidationWorker = this.portletWorkerFactory.createRenderWorker(detachedRequest, detachedResponse, portletWindowId);
+        }
+        
+        portletRevalidationWorker.submit();
+        this.detachedWorkers.put(portletRevalidationWorker, detachedRequest);
     }
 
     /* (non-Javadoc)
@@ -344,17 +619,21 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
             return;
         }
         
-        final Map<IPortletWindowId, IPortletExecutionWorker<Long>> eventWorkers = new LinkedHashMap<IPortletWindowId, IPortletExecutionWorker<Long>>();
+        final Map<IPortletWindowId, IPortletEventExecutionWorker> eventWorkers = new LinkedHashMap<IPortletWindowId, IPortletEventExecutionWorker>();
         
 
-        //TODO what to do if we hit the max iterations?
-        int iteration = 0;
-        for (; iteration < this.maxEventIterations; iteration++) {
+        //Limit the total number of events delivered, each event in a batch counts against the limit
+        int dispatchedEvents = 0;
+        while (true) {
             //Make sure all queued events have been resolved
             this.eventCoordinationService.resolvePortletEvents(request, eventQueue);
             
             //Create and submit an event worker for each window with a queued event
             for (final IPortletWindowId eventWindowId : eventQueue) {
+                if (dispatchedEvents >= this.maxEventIterations) {
+                    break;
+                }
+                
                 if (eventWorkers.containsKey(eventWindowId)) {
                     /* 
                      * PLT.15.2.5 says that event processing per window must be serialized, if there
@@ -363,28 +642,35 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
                     continue;
                 }
                 
-                final QueuedEvent queuedEvent = eventQueue.pollEvent(eventWindowId);
+                //Deliver all of the window's queued events, up to the batch size, with one worker
+                final int maxEvents = Math.min(this.maxEventBatchSize, this.maxEventIterations - dispatchedEvents);
+                final List<QueuedEvent> queuedEvents = eventQueue.pollEvents(eventWindowId, maxEvents);
                 
-                if (queuedEvent != null) {
-                	final Event event = queuedEvent.getEvent();
-                    final IPortletExecutionWorker<Long> portletEventExecutionWorker = this.portletWorkerFactory.createEventWorker(request, response, eventWindowId, event);
+                if (!queuedEvents.isEmpty()) {
+                    final List<Event> events = new ArrayList<Event>(queuedEvents.size());
+                    for (final QueuedEvent queuedEvent : queuedEvents) {
+                        events.add(queuedEvent.getEvent());
+                    }
+                    
+                    final IPortletEventExecutionWorker portletEventExecutionWorker = this.portletWorkerFactory.createEventWorker(request, response, eventWindowId, events);
                     eventWorkers.put(eventWindowId, portletEventExecutionWorker);
                     portletEventExecutionWorker.submit();
+                    dispatchedEvents += events.size();
                 }
             }
             
             //If no event workers exist we're done with event processing!
             if (eventWorkers.isEmpty()) {
-                return;
+                break;
             }
             
             //See if any of the events have completed
             int completedEventWorkers = 0;
-            final Set<Entry<IPortletWindowId, IPortletExecutionWorker<Long>>> entrySet = eventWorkers.entrySet();
-            for (final Iterator<Entry<IPortletWindowId, IPortletExecutionWorker<Long>>> eventWorkerEntryItr = entrySet.iterator(); eventWorkerEntryItr.hasNext();) {
-                final Entry<IPortletWindowId, IPortletExecutionWorker<Long>> eventWorkerEntry = eventWorkerEntryItr.next();
+            final Set<Entry<IPortletWindowId, IPortletEventExecutionWorker>> entrySet = eventWorkers.entrySet();
+            for (final Iterator<Entry<IPortletWindowId, IPortletEventExecutionWorker>> eventWorkerEntryItr = entrySet.iterator(); eventWorkerEntryItr.hasNext();) {
+                final Entry<IPortletWindowId, IPortletEventExecutionWorker> eventWorkerEntry = eventWorkerEntryItr.next();
                 
-                final IPortletExecutionWorker<Long> eventWorker = eventWorkerEntry.getValue();
+                final IPortletEventExecutionWorker eventWorker = eventWorkerEntry.getValue();
                 if (eventWorker.isComplete()) {
                     final IPortletWindowId portletWindowId = eventWorkerEntry.getKey();
                     //TODO return number of new queued events, use to break the loop earlier
@@ -396,31 +682,91 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
             }
             
             /*
-             * If no event workers have completed without waiting wait for the first one and then loop again
+             * If no event workers have completed without waiting wait for whichever finishes first and then loop again
              * Not waiting for all events since each event may spawn more events and we want to start them
              * processing as soon as possible
              */
             if (completedEventWorkers == 0) {
-                final Iterator<Entry<IPortletWindowId, IPortletExecutionWorker<Long>>> eventWorkerEntryItr = entrySet.iterator();
-                final Entry<IPortletWindowId, IPortletExecutionWorker<Long>> eventWorkerEntry = eventWorkerEntryItr.next();
-                eventWorkerEntryItr.remove();
-                
-                final IPortletWindowId portletWindowId = eventWorkerEntry.getKey();
-                final IPortletExecutionWorker<Long> eventWorker = eventWorkerEntry.getValue();
+                final IPortletWindowId portletWindowId = waitForFirstEventWorker(request, eventWorkers);
+                final IPortletEventExecutionWorker eventWorker = eventWorkers.remove(portletWindowId);
                 waitForEventWorker(request, eventQueue, eventWorker, portletWindowId);
             }
         }
         
-        if (iteration == this.maxEventIterations) {
-            this.logger.error("The Event dispatching iteration maximum of " + this.maxEventIterations + " was hit, consider either raising this limit or reviewing the portlets that use events to reduce the number of events spawned");
+        if (dispatchedEvents >= this.maxEventIterations && eventQueue.hasEvents()) {
+            this.logger.error("The Event dispatching maximum of " + this.maxEventIterations + " events was hit, consider either raising this limit or reviewing the portlets that use events to reduce the number of events spawned");
+        }
+    }
+
+    /**
+     * Waits for the first of the event workers to complete or exceed its timeout
+     * 
+     * @return The window id of the event worker that is done
+     */
+    protected IPortletWindowId waitForFirstEventWorker(HttpServletRequest request, Map<IPortletWindowId, IPortletEventExecutionWorker> eventWorkers) {
+        while (true) {
+            final long now = System.currentTimeMillis();
+            long nextDeadline = Long.MAX_VALUE;
+            for (final Map.Entry<IPortletWindowId, IPortletEventExecutionWorker> eventWorkerEntry : eventWorkers.entrySet()) {
+                final IPortletWindowId portletWindowId = eventWorkerEntry.getKey();
+                final IPortletEventExecutionWorker eventWorker = eventWorkerEntry.getValue();
+                
+                if (eventWorker.isComplete()) {
+                    return portletWindowId;
+                }
+                
+                final long timeout = getPortletEventBatchTimeout(portletWindowId, request, eventWorker.getEvents().size());
+                final long startTime = eventWorker.isStarted() ? eventWorker.getStartedTime() : eventWorker.getSubmittedTime();
+                if (now - startTime >= timeout) {
+                    return portletWindowId;
+                }
+                
+                nextDeadline = Math.min(nextDeadline, startTime + timeout);
+            }
+            
+            try {
+                awaitFirstCompletion(eventWorkers.values(), nextDeadline - now);
+            }
+            catch (InterruptedException e) {
+                //Let the caller block on the first worker, it will handle the interrupt
+                Thread.currentThread().interrupt();
+                return eventWorkers.keySet().iterator().next();
+            }
+        }
+    }
+    
+    /**
+     * Blocks until one of the workers completes or the wait time passes
+     */
+    protected void awaitFirstCompletion(Collection<? extends IPortletExecutionWorker<?>> workers, long waitTime) throws InterruptedException {
+        final CountDownLatch completionLatch = new CountDownLatch(1);
+        final Runnable completionListener = new Runnable() {
+            @Override
+            public void run() {
+                completionLatch.countDown();
+            }
+        };
+        
+        for (final IPortletExecutionWorker<?> worker : workers) {
+            worker.addCompletionListener(completionListener);
+        }
+        
+        try {
+            completionLatch.await(waitTime, TimeUnit.MILLISECONDS);
+        }
+        finally {
+            //Hung workers may never complete, don't leave a listener on them for every wait
+            for (final IPortletExecutionWorker<?> worker : workers) {
+                worker.removeCompletionListener(completionListener);
+            }
         }
     }
 
     protected void waitForEventWorker(
             HttpServletRequest request, PortletEventQueue eventQueue, 
-            IPortletExecutionWorker<Long> eventWorker, IPortletWindowId portletWindowId) {
+            IPortletEventExecutionWorker eventWorker, IPortletWindowId portletWindowId) {
 
-        final long timeout = getPortletEventTimeout(portletWindowId, request);
+        final long timeout = getPortletEventBatchTimeout(portletWindowId, request, eventWorker.getEvents().size());
         
         try {
             eventWorker.get(timeout);
@@ -468,6 +814,12 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
 			HttpServletRequest request, HttpServletResponse response) {
 		if(doesPortletNeedHeaderWorker(portletWindowId, request)) {
 			this.startPortletHeaderRenderInternal(portletWindowId, request, response);
+			
+			//Start the body render now instead of when the pipeline reaches the portlet's content
+			if (this.speculativeRender && !this.isPortletRenderRequested(portletWindowId, request, response)) {
+			    this.logger.debug("Speculatively starting body render with header render for {}", portletWindowId);
+			    this.startPortletRenderInternal(portletWindowId, request, response);
+			}
 		} else {
 			this.logger.debug("ignoring startPortletHeadRender request since containerRuntimeOption is not present for portletWindowId " + portletWindowId);
 		}
@@ -513,99 +865,69 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
     @Override
     public void startPortletRender(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response) {
         this.startPortletRenderInternal(portletWindowId, request, response);
+        
+        //Start the header render now instead of when the pipeline reaches the portlet's header
+        if (this.speculativeRender && !this.isPortletRenderHeaderRequested(portletWindowId, request, response)
+                && this.doesPortletNeedHeaderWorker(portletWindowId, request)) {
+            this.logger.debug("Speculatively starting header render with body render for {}", portletWindowId);
+            this.startPortletHeaderRenderInternal(portletWindowId, request, response);
+        }
     }
     
-    
-
     /* (non-Javadoc)
-	 * @see org.jasig.portal.portlet.rendering.IPortletExecutionManager#serveResource(org.jasig.portal.portlet.om.IPortletWindowId, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
-	 */
-	@Override
-	public void doPortletServeResource(IPortletWindowId portletWindowId,
-			HttpServletRequest request, HttpServletResponse response) {
-		final long timeout = getPortletResourceTimeout(portletWindowId, request);
-		
-		final IPortletExecutionWorker<Long> resourceWorker = this.portletWorkerFactory.createResourceWorker(request, response, portletWindowId);
-		resourceWorker.submit();
+     * @see org.jasig.portal.portlet.rendering.IPortletExecutionManager#startPortletPrefetch(java.util.Collection, java.lang.String, javax.servlet.http.HttpServletRequest)
+     */
+    @Override
+    public void startPortletPrefetch(Collection<String> subscribeIds, String targetUrl, HttpServletRequest request) {
+        final HttpServletRequest portalRequest = this.portalRequestUtils.getOriginalPortalRequest(request);
+        final HttpServletResponse detachedResponse = new DetachedHttpServletResponse();
+        final HttpServletRequest detachedRequest = new PortalHttpServletRequestWrapper(new DetachedHttpServletRequest(portalRequest, targetUrl), detachedResponse, this.userInstanceManager);
         
-        try {
-            resourceWorker.get(timeout);
-		} catch (Exception e) {
-			//log the exception
-			this.logger.error("resource worker failed with exception", e);
-			// render generic serveResource error
-			try {
-				if(!response.isCommitted()) {
-					response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "resource unavailable");
-				}
-			} catch (IOException e1) {
-				logger.error("caught IOException trying to send error response for failed resource worker", e);
-			}
-		}
+        final HttpSession session = request.getSession();
+        final Map<IPortletWindowId, IPortletRenderExecutionWorker> portletPrefetchMap = PortalWebUtils.getMapSessionAttribute(session, SESSION_ATTRIBUTE__PORTLET_PREFETCH_MAP);
         
-        //If the worker is still running add it to the hung-workers queue
-        if (!resourceWorker.isComplete()) {
-            cancelWorker(request, resourceWorker);
+        for (final String subscribeId : subscribeIds) {
+            final IPortletWindow portletWindow = this.portletWindowRegistry.getOrCreateDefaultPortletWindowByLayoutNodeId(detachedRequest, subscribeId);
+            if (portletWindow == null) {
+                this.logger.debug("skipping prefetch due to null result from getDefaultPortletWindow for subscribeId " + subscribeId);
+                continue;
+            }
+            
+            final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
+            if (portletPrefetchMap.containsKey(portletWindowId)) {
+                continue;
+            }
+            
+            final IPortletRenderExecutionWorker portletRenderExecutionWorker = this.portletWorkerFactory.createRenderWorker(detachedRequest, detachedResponse, portletWindowId);
+            portletRenderExecutionWorker.submit();
+            this.detachedWorkers.put(portletRenderExecutionWorker, detachedRequest);
+            
+            portletPrefetchMap.put(portletWindowId, portletRenderExecutionWorker);
         }
-	}
-	
-
-	
-
-	/* (non-Javadoc)
-	 * @see org.jasig.portal.portlet.rendering.IPortletExecutionManager#isPortletHeaderRenderRequested(org.jasig.portal.portlet.om.IPortletWindowId, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
-	 */
-	@Override
-	public boolean isPortletRenderHeaderRequested(
-			IPortletWindowId portletWindowId, HttpServletRequest request,
-			HttpServletResponse response) {
-		final Map<IPortletWindowId, IPortletRenderExecutionWorker> portletRenderingMap = this.getPortletHeaderRenderingMap(request);
-        final IPortletRenderExecutionWorker tracker = portletRenderingMap.get(portletWindowId);
-        
-        return tracker != null;
-	}
-
-	/* (non-Javadoc)
-	 * @see org.jasig.portal.portlet.rendering.IPortletExecutionManager#isPortletHeaderRenderRequested(java.lang.String, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
-	 */
-	@Override
-	public boolean isPortletRenderHeaderRequested(String subscribeId,
-			HttpServletRequest request, HttpServletResponse response) {
-	    final IPortletWindow portletWindow = this.portletWindowRegistry.getOrCreateDefaultPortletWindowByLayoutNodeId(request, subscribeId);
-
-		if(portletWindow == null) {
-			this.logger.debug("returning false since getDefaultPortletWindow returned null for subscribeId " + subscribeId); 
-			return false;
-		}
-		return this.isPortletRenderHeaderRequested(portletWindow.getPortletWindowId(), request, response);
-	}
-
-	/* (non-Javadoc)
-     * @see org.jasig.portal.portlet.rendering.IPortletExecutionManager#isPortletRenderRequested(java.lang.String, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+    }
+    
+    /**
+     * @return true if the render worker is complete or has run past its render timeout
      */
-    @Override
-    public boolean isPortletRenderRequested(String subscribeId, HttpServletRequest request, HttpServletResponse response) {
-        final IPortletWindow portletWindow = this.portletWindowRegistry.getOrCreateDefaultPortletWindowByLayoutNodeId(request, subscribeId);
-        
-        if (portletWindow == null) {
-        	this.logger.warn("returning false for isPortletRenderRequested due to null result for getDefaultPortletWindow on subscribeId " + subscribeId);
-        	return false;
+    protected boolean isRenderDone(IPortletRenderExecutionWorker tracker, HttpServletRequest request, long now) {
+        //The error portlet is rendered by the thread that asks for its output
+        if (tracker instanceof IPortletFailureExecutionWorker) {
+            return true;
         }
         
-        final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
-        return this.isPortletRenderRequested(portletWindowId, request, response);
+        if (tracker.isStarted() && tracker.isComplete()) {
+            return true;
+        }
         
+        return now >= getRenderDeadline(tracker, request);
     }
     
-    /* (non-Javadoc)
-     * @see org.jasig.portal.portlet.rendering.IPortletExecutionManager#isPortletRenderRequested(org.jasig.portal.portlet.om.IPortletWindowId, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+    /**
+     * @return The time the render worker runs past its render timeout
      */
-    @Override
-    public boolean isPortletRenderRequested(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response) {
-        final Map<IPortletWindowId, IPortletRenderExecutionWorker> portletRenderingMap = this.getPortletRenderingMap(request);
-        final IPortletRenderExecutionWorker tracker = portletRenderingMap.get(portletWindowId);
-        
-        return tracker != null;
+    protected long getRenderDeadline(IPortletRenderExecutionWorker tracker, HttpServletRequest request) {
+        final long timeout = getPortletRenderTimeout(tracker.getPortletWindowId(), request);
+        return (tracker.isStarted() ? tracker.getStartedTime() : tracker.getSubmittedTime()) + timeout;
     }
     
     /* (non-Javadoc)
@@ -678,6 +1000,14 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
 			final String output = tracker.getOutput(timeout);
 			return output == null ? "" : output;
 		} catch (Exception e) {
+		    //The portlet was denied execution (open circuit or load shedding), replay whatever output is still cached before falling back to the error portlet
+		    if (e instanceof ExecutionException && e.getCause() instanceof PortletExecutionDeniedException) {
+		        final String cachedOutput = this.getCachedPortletOutput(portletWindowId, request, response);
+		        if (cachedOutput != null) {
+		            return cachedOutput;
+		        }
+		    }
+		    
 		    final IPortletFailureExecutionWorker failureWorker = this.portletWorkerFactory.createFailureWorker(request, response, portletWindowId, e);
 		    // TODO publish portlet error event?
 		    try {
@@ -691,6 +1021,33 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
 		}
     }
 
+    /**
+     * Replays the cached render output for the portlet in the calling thread, ignoring the output's expiration.
+     * 
+     * @return The cached output, null if the portlet has no cached output
+     */
+    protected String getCachedPortletOutput(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response) {
+        final CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult> cacheState = this.portletCacheControlService.getPortletRenderState(request, portletWindowId);
+        try {
+            final CachedPortletData<PortletRenderResult> cachedPortletData = cacheState.getCachedPortletData();
+            if (cachedPortletData == null) {
+                return null;
+            }
+            
+            final RenderPortletOutputHandler renderPortletOutputHandler = new RenderPortletOutputHandler(response.getCharacterEncoding());
+            cachedPortletData.replay(renderPortletOutputHandler);
+            this.logger.debug("Replayed cached output for {} while its circuit is open", portletWindowId);
+            return renderPortletOutputHandler.getOutput();
+        }
+        catch (IOException e) {
+            this.logger.warn("Failed to replay cached output for " + portletWindowId, e);
+            return null;
+        }
+        finally {
+            this.portletCacheControlService.releasePublicCacheLoad(cacheState);
+        }
+    }
+
     @Override
     public long getPortletRenderTime(IPortletWindowId portletWindowId, HttpServletRequest request, HttpServletResponse response) {
         try {
@@ -841,6 +1198,14 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         return getModifiedTimeout(portletDefinition, request, portletDefinition.getTimeout());
     }
     
+    /**
+     * Each event in a batch gets the full event timeout, up to {@link #setMaxEventBatchExtraTime(long)} beyond the single event timeout
+     */
+    protected long getPortletEventBatchTimeout(IPortletWindowId portletWindowId, HttpServletRequest request, int eventCount) {
+        final long eventTimeout = getPortletEventTimeout(portletWindowId, request);
+        return Math.min(eventTimeout * eventCount, eventTimeout + this.maxEventBatchExtraTime);
+    }
+    
     protected long getPortletRenderTimeout(IPortletWindowId portletWindowId, HttpServletRequest request) {
         if (this.ignoreTimeouts) {
             return DEBUG_TIMEOUT;
@@ -933,16 +1298,22 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
     	final Map<IPortletWindowId, Exception> portletFailureMap = getPortletErrorMap(request);
     	final Exception cause = portletFailureMap.remove(portletWindowId);
     	
-    	final IPortletRenderExecutionWorker portletRenderExecutionWorker;
+    	IPortletRenderExecutionWorker portletRenderExecutionWorker;
     	if (null != cause) {
     		// previous action failed, dispatch to errorPortlet immediately
     		portletRenderExecutionWorker = this.portletWorkerFactory.createFailureWorker(request, response, portletWindowId, cause);
+    		portletRenderExecutionWorker.submit();
     	} else {
-    		portletRenderExecutionWorker = this.portletWorkerFactory.createRenderWorker(request, response, portletWindowId);
+    		// use the result if the portlet was rendered ahead of this request
+    		portletRenderExecutionWorker = this.removePrefetchedWorker(portletWindowId, request);
+    		if (null == portletRenderExecutionWorker) {
+    			portletRenderExecutionWorker = this.portletWorkerFactory.createRenderWorker(request, response, portletWindowId);
+    			portletRenderExecutionWorker.submit();
+    		} else {
+    			this.logger.debug("Using prefetched render for {}", portletWindowId);
+    		}
     	}
     	
-    	portletRenderExecutionWorker.submit();
-    	
         final Map<IPortletWindowId, IPortletRenderExecutionWorker> portletRenderingMap = this.getPortletRenderingMap(request);
         portletRenderingMap.put(portletWindowId, portletRenderExecutionWorker);
         
@@ -978,6 +1349,47 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         }
     }
     
+    /**
+     * Removes and returns the worker prefetching the portlet window for the session, null if there isn't one.
+     * The worker is handed off to the request, it is no longer tracked as a detached worker.
+     */
+    protected IPortletRenderExecutionWorker removePrefetchedWorker(IPortletWindowId portletWindowId, HttpServletRequest request) {
+        final Map<IPortletWindowId, IPortletRenderExecutionWorker> portletPrefetchMap = this.getPortletPrefetchMap(request);
+        final IPortletRenderExecutionWorker portletRenderExecutionWorker = portletPrefetchMap.remove(portletWindowId);
+        if (portletRenderExecutionWorker != null) {
+            this.detachedWorkers.remove(portletRenderExecutionWorker);
+        }
+        return portletRenderExecutionWorker;
+    }
+    
+    /**
+     * Returns a request attribute scoped Map of portlets that were rendered ahead of the request. The
+     * first request that renders portlets after a prefetch takes the prefetched workers out of the session,
+     * prefetched workers it doesn't use are left to complete or time out as detached workers.
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<IPortletWindowId, IPortletRenderExecutionWorker> getPortletPrefetchMap(HttpServletRequest request) {
+        synchronized (PortalWebUtils.getRequestAttributeMutex(request)) {
+            Map<IPortletWindowId, IPortletRenderExecutionWorker> portletPrefetchMap = (Map<IPortletWindowId, IPortletRenderExecutionWorker>)request.getAttribute(PORTLET_PREFETCH_MAP);
+            if (portletPrefetchMap == null) {
+                final HttpSession session = request.getSession(false);
+                if (session != null) {
+                    synchronized (WebUtils.getSessionMutex(session)) {
+                        portletPrefetchMap = (Map<IPortletWindowId, IPortletRenderExecutionWorker>)session.getAttribute(SESSION_ATTRIBUTE__PORTLET_PREFETCH_MAP);
+                        if (portletPrefetchMap != null) {
+                            session.removeAttribute(SESSION_ATTRIBUTE__PORTLET_PREFETCH_MAP);
+                        }
+                    }
+                }
+                if (portletPrefetchMap == null) {
+                    portletPrefetchMap = new ConcurrentHashMap<IPortletWindowId, IPortletRenderExecutionWorker>();
+                }
+                request.setAttribute(PORTLET_PREFETCH_MAP, portletPrefetchMap);
+            }
+            return portletPrefetchMap;
+        }
+    }
+    
     /**
      * Null safe means for retrieving the {@link Map} from the specified session
      * keyed by {@link #SESSION_ATTRIBUTE__PORTLET_FAILURE_CAUSE_MAP}.
@@ -20,18 +20,29 @@ package org.jasig.portal.portlet.rendering;
 
 import java.util.Map;
 
+import org.jasig.portal.portlet.rendering.worker.AdaptiveConcurrencyLimit;
 
 public interface PortletExecutionManagerMXBean {
 
     /**
-     * @param maxEventIterations The maximum number of iterations to spend dispatching events for a single event request.
+     * @param maxEventIterations The maximum number of events to dispatch for a single event request.
      */
     void setMaxEventIterations(int maxEventIterations);
     
     /**
-     * @return The maximum number of iterations to spend dispatching events for a single event request.
+     * @return The maximum number of events to dispatch for a single event request.
      */
     int getMaxEventIterations();
+    
+    /**
+     * @param maxEventBatchSize The maximum number of queued events delivered to a portlet window by a single worker.
+     */
+    void setMaxEventBatchSize(int maxEventBatchSize);
+    
+    /**
+     * @return The maximum number of queued events delivered to a portlet window by a single worker.
+     */
+    int getMaxEventBatchSize();
 
     /**
      * @param ignoreTimeouts If true timeouts will be ignored
@@ -68,4 +79,19 @@ public interface PortletExecutionManagerMXBean {
      */
     Map<String, Integer> getPortletExecutionCounts();
     
+    /**
+     * @param concurrencyLimitEnabled If the number of concurrent workers for each portlet should be limited
+     */
+    void setConcurrencyLimitEnabled(boolean concurrencyLimitEnabled);
+    
+    /**
+     * @return If the number of concurrent workers for each portlet is limited
+     */
+    boolean isConcurrencyLimitEnabled();
+    
+    /**
+     * @return Current concurrency limit, in-flight and rejected worker counts for each portlet, keyed by fname
+     */
+    Map<String, AdaptiveConcurrencyLimit> getPortletConcurrencyLimits();
+    
 }
\ No newline at end of file
@@ -19,6 +19,7 @@
 
 package org.jasig.portal.portlet.rendering;
 
+import java.io.File;
 import java.io.IOException;
 
 import javax.portlet.CacheControl;
@@ -39,6 +40,7 @@ import org.jasig.portal.EntityIdentifier;
 import org.jasig.portal.api.portlet.PortletDelegationLocator;
 import org.jasig.portal.events.IPortletExecutionEventFactory;
 import org.jasig.portal.portlet.PortletDispatchException;
+import org.jasig.portal.portlet.container.cache.ByteRange;
 import org.jasig.portal.portlet.container.cache.CacheControlImpl;
 import org.jasig.portal.portlet.container.cache.CacheState;
 import org.jasig.portal.portlet.container.cache.CachedPortletData;
@@ -46,8 +48,10 @@ import org.jasig.portal.portlet.container.cache.CachedPortletResourceData;
 import org.jasig.portal.portlet.container.cache.CachingPortletOutputHandler;
 import org.jasig.portal.portlet.container.cache.CachingPortletResourceOutputHandler;
 import org.jasig.portal.portlet.container.cache.HeaderSettingCacheControl;
+import org.jasig.portal.portlet.container.cache.FileCachedPortletData;
 import org.jasig.portal.portlet.container.cache.IPortletCacheControlService;
 import org.jasig.portal.portlet.container.cache.PortletCachingHeaderUtils;
+import org.jasig.portal.portlet.container.cache.PortletResourceFileCache;
 import org.jasig.portal.portlet.container.services.AdministrativeRequestListenerController;
 import org.jasig.portal.portlet.om.IPortletDefinition;
 import org.jasig.portal.portlet.om.IPortletEntity;
@@ -79,6 +83,14 @@ import org.springframework.stereotype.Service;
  */
 @Service
 public class PortletRendererImpl implements IPortletRenderer {
+    /*
+     * Request attributes used by Tomcat to write a file directly to the socket once the request completes
+     */
+    private static final String ATTRIBUTE__SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String ATTRIBUTE__SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String ATTRIBUTE__SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String ATTRIBUTE__SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
     
     private IPersonManager personManager;
@@ -368,6 +380,19 @@ public class PortletRendererImpl implements IPortletRenderer {
         
         final CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult> cacheState = renderPart
                 .getCacheState(this.portletCacheControlService, httpServletRequest, portletWindowId);
+        
+        try {
+            return doRender(portletWindowId, httpServletRequest, httpServletResponse, portletOutputHandler, renderPart, cacheState);
+        }
+        finally {
+            //Let requests waiting on this render to populate the public cache continue
+            this.portletCacheControlService.releasePublicCacheLoad(cacheState);
+        }
+    }
+        
+    protected PortletRenderResult doRender(IPortletWindowId portletWindowId, HttpServletRequest httpServletRequest,
+            HttpServletResponse httpServletResponse, PortletOutputHandler portletOutputHandler, RenderPart renderPart,
+            CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult> cacheState) throws IOException {
 
         final IPortletWindow portletWindow = this.portletWindowRegistry.getPortletWindow(httpServletRequest, portletWindowId);
 
@@ -551,7 +576,27 @@ public class PortletRendererImpl implements IPortletRenderer {
         }
         
         final int cacheSizeThreshold = this.portletCacheControlService.getCacheSizeThreshold();
-        final CachingPortletResourceOutputHandler cachingPortletOutputHandler = new CachingPortletResourceOutputHandler(portletOutputHandler, cacheSizeThreshold);
+        final PortletResourceFileCache portletResourceFileCache = this.portletCacheControlService.getPortletResourceFileCache();
+        final CachingPortletResourceOutputHandler cachingPortletOutputHandler = new CachingPortletResourceOutputHandler(portletOutputHandler, cacheSizeThreshold, 
+                portletResourceFileCache, cacheState.getCacheControl());
+        try {
+            return this.doServeResource(portletWindow, httpServletRequest, httpServletResponse, portletOutputHandler, cacheState, cachingPortletOutputHandler);
+        }
+        finally {
+            //Delete output spooled to disk if it was not handed off to the cache
+            cachingPortletOutputHandler.discardSpoolFile();
+        }
+    }
+    
+    /**
+     * Execute the resource request for the portlet, capturing the output for caching
+     */
+    protected long doServeResource(IPortletWindow portletWindow, HttpServletRequest httpServletRequest,
+            HttpServletResponse httpServletResponse, PortletResourceOutputHandler portletOutputHandler,
+            CacheState<CachedPortletResourceData<Long>, Long> cacheState,
+            CachingPortletResourceOutputHandler cachingPortletOutputHandler) throws IOException {
+        
+        final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
 
         CacheControl cacheControl = cacheState.getCacheControl();
         //Wrap the cache control so it immediately sets the caching related response headers
@@ -674,7 +719,29 @@ public class PortletRendererImpl implements IPortletRenderer {
                     portletWindow);
         }
         
-        cachedPortletResourceData.replay(portletOutputHandler);
+        //Hold the spooled file so it isn't deleted out from under the replay if the cache entry is replaced
+        final File spoolFile;
+        final PortletResourceFileCache portletResourceFileCache = this.portletCacheControlService.getPortletResourceFileCache();
+        if (portletResourceFileCache != null && cachedPortletResourceData.getCachedPortletData() instanceof FileCachedPortletData) {
+            spoolFile = ((FileCachedPortletData<Long>) cachedPortletResourceData.getCachedPortletData()).getFile();
+            if (!portletResourceFileCache.acquire(spoolFile)) {
+                throw new PortletDispatchException(
+                        "The cached output for portlet window '" + portletWindow + "' was spooled to '" + spoolFile + 
+                        "' which no longer exists.", portletWindow);
+            }
+        }
+        else {
+            spoolFile = null;
+        }
+        
+        try {
+            this.replayCachedResource(httpServletRequest, cachedPortletResourceData, portletOutputHandler);
+        }
+        finally {
+            if (spoolFile != null) {
+                portletResourceFileCache.release(spoolFile);
+            }
+        }
         
         final long executionTime = baseExecutionTime + (System.nanoTime() - renderStartTime);
 
@@ -682,6 +749,61 @@ public class PortletRendererImpl implements IPortletRenderer {
         
         return executionTime;
     }
+    
+    /**
+     * Write the cached resource output, honoring the requested byte range and container sendfile support
+     */
+    protected void replayCachedResource(HttpServletRequest httpServletRequest, 
+            CachedPortletResourceData<Long> cachedPortletResourceData, 
+            PortletResourceOutputHandler portletOutputHandler) throws IOException {
+        
+        final ByteRange byteRange = this.getRequestedByteRange(httpServletRequest, cachedPortletResourceData);
+        if (byteRange == ByteRange.UNSATISFIABLE) {
+            final FileCachedPortletData<Long> fileCachedPortletData = (FileCachedPortletData<Long>) cachedPortletResourceData.getCachedPortletData();
+            portletOutputHandler.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            portletOutputHandler.setHeader("Content-Range", byteRange.getContentRange(fileCachedPortletData.getLength()));
+        }
+        else if (Boolean.TRUE.equals(httpServletRequest.getAttribute(ATTRIBUTE__SENDFILE_SUPPORT))
+                && cachedPortletResourceData.getCachedPortletData() instanceof FileCachedPortletData) {
+            //Let the container write the spooled output directly from the file
+            final FileCachedPortletData<Long> fileCachedPortletData = (FileCachedPortletData<Long>) cachedPortletResourceData.getCachedPortletData();
+            cachedPortletResourceData.replayHeaders(portletOutputHandler, byteRange);
+            
+            final long start = byteRange != null ? byteRange.getStart() : 0;
+            final long end = byteRange != null ? byteRange.getEnd() + 1 : fileCachedPortletData.getLength();
+            httpServletRequest.setAttribute(ATTRIBUTE__SENDFILE_FILENAME, fileCachedPortletData.getFile().getAbsolutePath());
+            httpServletRequest.setAttribute(ATTRIBUTE__SENDFILE_START, start);
+            httpServletRequest.setAttribute(ATTRIBUTE__SENDFILE_END, end);
+        }
+        else {
+            cachedPortletResourceData.replay(portletOutputHandler, byteRange);
+        }
+    }
+
+    /**
+     * Determine the byte range requested by the Range header. Ranges are only honored for output spooled
+     * to a file and, if an If-Range header is specified, only when it matches the ETag of the cached output.
+     * 
+     * @return The requested range, {@link ByteRange#UNSATISFIABLE} if it can't be satisfied, null to send the full output
+     */
+    protected ByteRange getRequestedByteRange(HttpServletRequest httpServletRequest, CachedPortletResourceData<Long> cachedPortletResourceData) {
+        final CachedPortletData<Long> cachedPortletData = cachedPortletResourceData.getCachedPortletData();
+        if (!(cachedPortletData instanceof FileCachedPortletData)) {
+            return null;
+        }
+        
+        final String range = httpServletRequest.getHeader("Range");
+        if (range == null) {
+            return null;
+        }
+        
+        final String ifRange = httpServletRequest.getHeader("If-Range");
+        if (ifRange != null && !ifRange.equals(cachedPortletData.getEtag())) {
+            return null;
+        }
+        
+        return ByteRange.parse(range, ((FileCachedPortletData<Long>) cachedPortletData).getLength());
+    }
 
     /**
      * Publish the portlet resource event
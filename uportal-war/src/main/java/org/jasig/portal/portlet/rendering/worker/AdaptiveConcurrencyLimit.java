@@ -0,0 +1,148 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.portlet.rendering.worker;
+
+/**
+ * Concurrency limit for the workers of a single portlet that adapts using additive-increase/multiplicative-decrease.
+ * Every execution that completes without congestion raises the limit by 1/limit, so the limit grows by about
+ * one for each limit's worth of executions. A congested execution, one that was too slow or timed out, multiplies
+ * the limit by the backoff ratio. Only one decrease is applied for executions that were already running when the
+ * limit was last decreased, so a burst of slow executions does not collapse the limit.
+ * <p>
+ * Executions that are still running count against the limit until they complete or, for hung workers,
+ * until they are cancelled as timed out. A cancelled worker that keeps running no longer counts against the limit.
+ */
+public class AdaptiveConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    
+    private double limit;
+    private int inFlight = 0;
+    private long lastDecrease = 0;
+    private long acquiredCount = 0;
+    private long rejectedCount = 0;
+    private long congestedCount = 0;
+    
+    public AdaptiveConcurrencyLimit(int minLimit, int maxLimit, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("minLimit must be at least 1 and no greater than maxLimit: " + minLimit + ", " + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be between 0 and 1: " + backoffRatio);
+        }
+        
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.limit = maxLimit;
+    }
+    
+    /**
+     * @return true if the execution may proceed, {@link #release(long, boolean)} must then be called once it completes
+     */
+    public synchronized boolean tryAcquire() {
+        if (this.inFlight >= (int) this.limit) {
+            this.rejectedCount++;
+            return false;
+        }
+        
+        this.inFlight++;
+        this.acquiredCount++;
+        return true;
+    }
+    
+    /**
+     * Release a permit from {@link #tryAcquire()} and adjust the limit
+     * 
+     * @param started When the execution started
+     * @param congested If the execution was too slow
+     */
+    public synchronized void release(long started, boolean congested) {
+        this.inFlight = Math.max(0, this.inFlight - 1);
+        
+        if (congested) {
+            this.congested(started);
+        }
+        else {
+            this.limit = Math.min(this.maxLimit, this.limit + 1 / this.limit);
+        }
+    }
+    
+    /**
+     * Record congestion for an execution that has not completed, such as a timed out worker.
+     * 
+     * @param started When the execution started
+     */
+    public synchronized void congested(long started) {
+        this.congestedCount++;
+        
+        if (started >= this.lastDecrease) {
+            this.limit = Math.max(this.minLimit, this.limit * this.backoffRatio);
+            this.lastDecrease = System.currentTimeMillis();
+        }
+    }
+    
+    /**
+     * @return The current number of concurrent executions allowed
+     */
+    public synchronized int getLimit() {
+        return (int) this.limit;
+    }
+    
+    /**
+     * @return The number of executions currently holding a permit
+     */
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+    
+    public int getMinLimit() {
+        return this.minLimit;
+    }
+    
+    public int getMaxLimit() {
+        return this.maxLimit;
+    }
+    
+    public synchronized long getAcquiredCount() {
+        return this.acquiredCount;
+    }
+    
+    /**
+     * @return Number of executions rejected because the limit was reached
+     */
+    public synchronized long getRejectedCount() {
+        return this.rejectedCount;
+    }
+    
+    /**
+     * @return Number of executions that were too slow or timed out
+     */
+    public synchronized long getCongestedCount() {
+        return this.congestedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveConcurrencyLimit [limit=" + (int) this.limit + ", inFlight=" + this.inFlight + ", minLimit="
+                + this.minLimit + ", maxLimit=" + this.maxLimit + ", rejectedCount=" + this.rejectedCount + "]";
+    }
+}
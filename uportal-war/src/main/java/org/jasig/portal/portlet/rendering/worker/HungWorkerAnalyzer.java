@@ -209,7 +209,7 @@ public class HungWorkerAnalyzer implements ApplicationListener<PortalEvent>, Ini
         
         final String msg = "Denying worker execution for " + portletFname + " that has " + hungWorkers + " hung threads over limit of " + hungWorkerLimit + " with " + availableWorkers + " threads of " + maximumPoolSize + " available";
         logger.info(msg);
-        throw new IllegalStateException(msg);
+        throw new PortletExecutionDeniedException(msg);
     }
 
     @Override
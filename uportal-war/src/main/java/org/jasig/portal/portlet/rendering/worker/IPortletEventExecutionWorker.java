@@ -19,6 +19,8 @@
 
 package org.jasig.portal.portlet.rendering.worker;
 
+import java.util.List;
+
 import javax.portlet.Event;
 
 
@@ -30,7 +32,12 @@ import javax.portlet.Event;
  */
 public interface IPortletEventExecutionWorker extends IPortletExecutionWorker<Long> {
     /**
-     * @return The event that will be executed
+     * @return The first event that will be executed
      */
     public Event getEvent();
+    
+    /**
+     * @return The events that will be executed, in order
+     */
+    public List<Event> getEvents();
 }
\ No newline at end of file
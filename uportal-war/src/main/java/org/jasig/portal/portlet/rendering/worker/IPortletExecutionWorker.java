@@ -65,4 +65,15 @@ public interface IPortletExecutionWorker<V> extends IPortletExecutionContext {
      * @return true If {@link #get(long)} has been called
      */
     public boolean isRetrieved();
+    
+    /**
+     * Register a callback that is run once when the worker completes, it is run immediately if the worker
+     * is already complete. Callbacks may run on the worker's thread and must not block.
+     */
+    public void addCompletionListener(Runnable listener);
+    
+    /**
+     * Remove a callback registered with {@link #addCompletionListener(Runnable)} that is no longer needed
+     */
+    public void removeCompletionListener(Runnable listener);
 }
\ No newline at end of file
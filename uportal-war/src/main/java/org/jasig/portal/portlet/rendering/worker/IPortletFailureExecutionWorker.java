@@ -26,4 +26,8 @@ package org.jasig.portal.portlet.rendering.worker;
  */
 public interface IPortletFailureExecutionWorker extends IPortletRenderExecutionWorker {
     
+    /**
+     * @return The exception that caused the failed portlet's execution to fail
+     */
+    public Exception getCause();
 }
@@ -19,6 +19,8 @@
 
 package org.jasig.portal.portlet.rendering.worker;
 
+import java.util.List;
+
 import javax.portlet.Event;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -41,6 +43,10 @@ public interface IPortletWorkerFactory {
      * Create a worker that will execute an event request on the specified portlet window 
      */
     public IPortletEventExecutionWorker createEventWorker(HttpServletRequest request, HttpServletResponse response, IPortletWindowId portletWindowId, Event event);
+    /**
+     * Create a worker that will execute a batch of event requests, in order, on the specified portlet window 
+     */
+    public IPortletEventExecutionWorker createEventWorker(HttpServletRequest request, HttpServletResponse response, IPortletWindowId portletWindowId, List<Event> events);
     /**
      * Create a worker that will execute a render request on the specified portlet window
      */
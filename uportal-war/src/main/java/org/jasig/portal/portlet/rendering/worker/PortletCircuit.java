@@ -0,0 +1,168 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.portlet.rendering.worker;
+
+/**
+ * Circuit breaker state for a single portlet. The circuit opens after a number of consecutive failures,
+ * while open executions are rejected. Once the open time has passed a single probe execution is allowed
+ * through (half-open), if it succeeds the circuit closes, if it fails the circuit opens again. A probe
+ * that does not report back within the open time is replaced by a new probe.
+ */
+public class PortletCircuit {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN;
+    }
+    
+    private final int failureThreshold;
+    private final long openTime;
+    
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedTime = 0;
+    private long probeTime = 0;
+    private long failureCount = 0;
+    private long rejectedCount = 0;
+    private long openCount = 0;
+    
+    /**
+     * @param failureThreshold Number of consecutive failures that open the circuit
+     * @param openTime Time in milliseconds the circuit stays open before a probe execution is allowed
+     */
+    public PortletCircuit(int failureThreshold, long openTime) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1: " + failureThreshold);
+        }
+        
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+    }
+    
+    /**
+     * @return true if the execution may proceed
+     */
+    public synchronized boolean allowExecution() {
+        final long now = System.currentTimeMillis();
+        switch (this.state) {
+            case OPEN: {
+                if (now - this.openedTime < this.openTime) {
+                    break;
+                }
+                
+                this.state = State.HALF_OPEN;
+                this.probeTime = now;
+                return true;
+            }
+            case HALF_OPEN: {
+                if (now - this.probeTime < this.openTime) {
+                    break;
+                }
+                
+                this.probeTime = now;
+                return true;
+            }
+            default: {
+                return true;
+            }
+        }
+        
+        this.rejectedCount++;
+        return false;
+    }
+    
+    /**
+     * @param started When the successful execution was started, only executions started at or after the probe close the circuit
+     */
+    public synchronized void recordSuccess(long started) {
+        switch (this.state) {
+            case CLOSED: {
+                this.consecutiveFailures = 0;
+                break;
+            }
+            case HALF_OPEN: {
+                if (started >= this.probeTime) {
+                    this.state = State.CLOSED;
+                    this.consecutiveFailures = 0;
+                }
+                break;
+            }
+            default: {
+                //Executions started before the circuit opened do not affect it
+            }
+        }
+    }
+    
+    /**
+     * @return true if the failure opened the circuit
+     */
+    public synchronized boolean recordFailure() {
+        this.failureCount++;
+        this.consecutiveFailures++;
+        
+        if (this.state == State.HALF_OPEN || (this.state == State.CLOSED && this.consecutiveFailures >= this.failureThreshold)) {
+            this.state = State.OPEN;
+            this.openedTime = System.currentTimeMillis();
+            this.openCount++;
+            return true;
+        }
+        
+        return false;
+    }
+    
+    public synchronized String getState() {
+        return this.state.name();
+    }
+    
+    public synchronized int getConsecutiveFailures() {
+        return this.consecutiveFailures;
+    }
+    
+    /**
+     * @return When the circuit was last opened
+     */
+    public synchronized long getOpenedTime() {
+        return this.openedTime;
+    }
+    
+    public synchronized long getFailureCount() {
+        return this.failureCount;
+    }
+    
+    /**
+     * @return Number of executions rejected while the circuit was open
+     */
+    public synchronized long getRejectedCount() {
+        return this.rejectedCount;
+    }
+    
+    /**
+     * @return Number of times the circuit has opened
+     */
+    public synchronized long getOpenCount() {
+        return this.openCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PortletCircuit [state=" + this.state + ", consecutiveFailures=" + this.consecutiveFailures
+                + ", openedTime=" + this.openedTime + ", rejectedCount=" + this.rejectedCount + "]";
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.portlet.rendering.worker;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jasig.portal.events.PortalEvent;
+import org.jasig.portal.events.PortletHungEvent;
+import org.jasig.portal.portlet.om.IPortletWindow;
+import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
+import org.jasig.portal.portlet.rendering.worker.IPortletExecutionContext.ExecutionType;
+import org.jasig.portal.utils.ConcurrentMapUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Tracks a {@link PortletCircuit} for each portlet fname. Failures are counted from the
+ * {@link IPortletFailureExecutionWorker}s submitted for a portlet and from the {@link PortletHungEvent}s
+ * that {@link HungWorkerAnalyzer} also tracks, executions that complete without an exception are counted
+ * as successes. While a portlet's circuit is open its workers are denied in
+ * {@link #preSubmit(HttpServletRequest, HttpServletResponse, IPortletExecutionContext)} with a
+ * {@link PortletCircuitOpenException} so they never take a thread from the portlet thread pool.
+ * <p>
+ * Workers denied by load shedding interceptors, such as {@link HungWorkerAnalyzer} and the adaptive concurrency
+ * limits, throw a {@link PortletExecutionDeniedException}. Their failure workers are not counted, the portlet
+ * never ran, so throttling alone never opens a portlet's circuit.
+ * <p>
+ * Circuits are per portlet fname, not per user. Failures are counted across all users, so a portlet that
+ * only fails for some users, for example because of their preferences or a downstream service they use,
+ * can open the circuit and deny the portlet to every user.
+ */
+@ManagedResource("uPortal:section=Framework,name=PortletCircuitBreaker")
+@Service("portletCircuitBreaker")
+public class PortletCircuitBreaker implements ApplicationListener<PortalEvent>, IPortletExecutionInterceptor, PortletCircuitBreakerMXBean {
+    protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+    
+    // fname -> circuit, created on the first failure of a portlet
+    private final ConcurrentMap<String, PortletCircuit> portletCircuits = new ConcurrentHashMap<String, PortletCircuit>();
+    
+    private IPortletWindowRegistry portletWindowRegistry;
+    
+    private boolean enabled = false;
+    private int failureThreshold = 5;
+    private long openTime = 30000;
+    
+    @Autowired
+    public void setPortletWindowRegistry(IPortletWindowRegistry portletWindowRegistry) {
+        this.portletWindowRegistry = portletWindowRegistry;
+    }
+
+    @Value("${org.jasig.portal.portlet.circuitBreaker.enabled:false}")
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @param failureThreshold Number of consecutive failures that open a portlet's circuit. Defaults to 5
+     */
+    @Value("${org.jasig.portal.portlet.circuitBreaker.failureThreshold:5}")
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * @param openTime Milliseconds a portlet's circuit stays open before a probe execution is allowed. Defaults to 30000
+     */
+    @Value("${org.jasig.portal.portlet.circuitBreaker.openTime:30000}")
+    public void setOpenTime(long openTime) {
+        this.openTime = openTime;
+    }
+    
+    @Override
+    public Map<String, PortletCircuit> getPortletCircuits() {
+        return new TreeMap<String, PortletCircuit>(this.portletCircuits);
+    }
+    
+    @Override
+    public boolean resetCircuit(String portletFname) {
+        return this.portletCircuits.remove(portletFname) != null;
+    }
+
+    @Override
+    public void onApplicationEvent(PortalEvent event) {
+        if (this.enabled && event instanceof PortletHungEvent) {
+            final IPortletExecutionWorker<?> worker = ((PortletHungEvent) event).getWorker();
+            this.recordFailure(worker.getPortletFname());
+        }
+    }
+
+    @Override
+    public void preSubmit(HttpServletRequest request, HttpServletResponse response, IPortletExecutionContext context) {
+        if (!this.enabled) {
+            return;
+        }
+        
+        //The error portlet always renders, the failure it renders counts against the failed portlet
+        if (context.getExecutionType() == ExecutionType.FAILURE) {
+            this.recordFailure(request, (IPortletFailureExecutionWorker) context);
+            return;
+        }
+        
+        final String portletFname = context.getPortletFname();
+        final PortletCircuit portletCircuit = this.portletCircuits.get(portletFname);
+        if (portletCircuit != null && !portletCircuit.allowExecution()) {
+            final String msg = "Denying worker execution for " + portletFname + " that has an open circuit: " + portletCircuit;
+            logger.debug(msg);
+            throw new PortletCircuitOpenException(msg);
+        }
+    }
+
+    @Override
+    public void preExecution(HttpServletRequest request, HttpServletResponse response, IPortletExecutionContext context) {
+    }
+
+    @Override
+    public void postExecution(HttpServletRequest request, HttpServletResponse response,
+            IPortletExecutionContext context, Exception e) {
+        
+        if (e != null || context.getExecutionType() == ExecutionType.FAILURE) {
+            return;
+        }
+        
+        final PortletCircuit portletCircuit = this.portletCircuits.get(context.getPortletFname());
+        if (portletCircuit != null) {
+            portletCircuit.recordSuccess(context.getStartedTime());
+        }
+    }
+    
+    protected void recordFailure(HttpServletRequest request, IPortletFailureExecutionWorker failureWorker) {
+        Throwable cause = failureWorker.getCause();
+        if (cause instanceof ExecutionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        
+        //Only failures of the portlet's own execution count. Load shedding denials (including those by this
+        //class) and a saturated thread pool never ran the portlet, timeouts are counted by the PortletHungEvent
+        if (cause instanceof PortletExecutionDeniedException || cause instanceof RejectedExecutionException
+                || cause instanceof TimeoutException) {
+            return;
+        }
+        
+        final IPortletWindow portletWindow = this.portletWindowRegistry.getPortletWindow(request, failureWorker.getPortletWindowId());
+        if (portletWindow == null) {
+            return;
+        }
+        
+        this.recordFailure(portletWindow.getPortletEntity().getPortletDefinition().getFName());
+    }
+    
+    protected void recordFailure(String portletFname) {
+        PortletCircuit portletCircuit = this.portletCircuits.get(portletFname);
+        if (portletCircuit == null) {
+            portletCircuit = ConcurrentMapUtils.putIfAbsent(this.portletCircuits, portletFname, new PortletCircuit(this.failureThreshold, this.openTime));
+        }
+        
+        if (portletCircuit.recordFailure()) {
+            logger.warn("Opened circuit for {}, workers will be denied for {}ms: {}", new Object[] { portletFname, this.openTime, portletCircuit });
+        }
+        else {
+            logger.debug("Recorded failure for {}: {}", portletFname, portletCircuit);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.portlet.rendering.worker;
+
+import java.util.Map;
+
+/**
+ * JMX stats and settings for PortletCircuitBreaker
+ */
+public interface PortletCircuitBreakerMXBean {
+    
+    /**
+     * @param enabled If portlet circuits should be tracked and enforced, defaults to false
+     */
+    void setEnabled(boolean enabled);
+    
+    /**
+     * @return If portlet circuits are tracked and enforced
+     */
+    boolean isEnabled();
+    
+    /**
+     * @return Circuit state for each portlet that has failed, keyed by fname
+     */
+    Map<String, PortletCircuit> getPortletCircuits();
+    
+    /**
+     * Close the circuit for the portlet, allowing it to execute immediately
+     * 
+     * @param portletFname The fname of the portlet
+     * @return true if the portlet had a circuit
+     */
+    boolean resetCircuit(String portletFname);
+}
@@ -0,0 +1,33 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.portlet.rendering.worker;
+
+/**
+ * Thrown when a portlet worker is not executed because the portlet's circuit is open
+ * 
+ * @see PortletCircuitBreaker
+ */
+public class PortletCircuitOpenException extends PortletExecutionDeniedException {
+    private static final long serialVersionUID = 1L;
+
+    public PortletCircuitOpenException(String message) {
+        super(message);
+    }
+}
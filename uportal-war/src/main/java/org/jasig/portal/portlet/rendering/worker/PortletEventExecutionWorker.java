@@ -30,17 +30,25 @@ import org.jasig.portal.portlet.om.IPortletWindow;
 import org.jasig.portal.portlet.rendering.IPortletRenderer;
 
 class PortletEventExecutionWorker extends PortletExecutionWorker<Long> implements IPortletEventExecutionWorker {
-    private final Event event;
+    private final List<Event> events;
     
     public PortletEventExecutionWorker(
             ExecutorService executorService, List<IPortletExecutionInterceptor> interceptors, IPortletRenderer portletRenderer, 
-            HttpServletRequest request, HttpServletResponse response, IPortletWindow portletWindow, Event event) {
+            HttpServletRequest request, HttpServletResponse response, IPortletWindow portletWindow, List<Event> events,
+            long maxEventBatchExtraTime) {
         
+        //Each event gets the full event timeout, up to maxEventBatchExtraTime beyond a single event
         super(executorService, interceptors, portletRenderer, request, response, portletWindow, 
-                portletWindow.getPortletEntity().getPortletDefinition().getEventTimeout() != null
-                        ? portletWindow.getPortletEntity().getPortletDefinition().getEventTimeout()
-                        : portletWindow.getPortletEntity().getPortletDefinition().getTimeout());
-        this.event = event;
+                getBatchTimeout(
+                        portletWindow.getPortletEntity().getPortletDefinition().getEventTimeout() != null
+                            ? portletWindow.getPortletEntity().getPortletDefinition().getEventTimeout()
+                            : portletWindow.getPortletEntity().getPortletDefinition().getTimeout(),
+                        events.size(), maxEventBatchExtraTime));
+        this.events = events;
+    }
+    
+    private static long getBatchTimeout(long eventTimeout, int eventCount, long maxEventBatchExtraTime) {
+        return Math.min(eventTimeout * eventCount, eventTimeout + maxEventBatchExtraTime);
     }
 
     @Override
@@ -50,11 +58,42 @@ class PortletEventExecutionWorker extends PortletExecutionWorker<Long> implement
 
     @Override
     public Event getEvent() {
-        return this.event;
+        return this.events.get(0);
+    }
+
+    @Override
+    public List<Event> getEvents() {
+        return this.events;
     }
 
     @Override
     protected Long callInternal() throws Exception {
-        return portletRenderer.doEvent(portletWindowId, request, response, event);
+        //PLT.15.2.5 events for a window are processed serially, in the order they were queued
+        long executionTime = 0;
+        Exception failure = null;
+        for (final Event event : this.events) {
+            try {
+                executionTime += portletRenderer.doEvent(portletWindowId, request, response, event);
+            }
+            catch (Exception e) {
+                //A failed event doesn't stop the rest of the batch, just as it wouldn't if each event had its own worker
+                if (failure == null) {
+                    failure = e;
+                }
+                else {
+                    failure.addSuppressed(e);
+                }
+                
+                //The worker was canceled, the remaining events are dropped
+                if (e instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+            }
+        }
+        
+        if (failure != null) {
+            throw failure;
+        }
+        return executionTime;
     }
 }
\ No newline at end of file
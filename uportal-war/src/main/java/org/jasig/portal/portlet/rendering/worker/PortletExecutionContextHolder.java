@@ -0,0 +1,46 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.portlet.rendering.worker;
+
+/**
+ * Exposes the {@link IPortletExecutionContext} of the portlet worker running on the current thread, for
+ * code called by the portlet that has to stay within the worker's timeout.
+ */
+public final class PortletExecutionContextHolder {
+    private static final ThreadLocal<IPortletExecutionContext> executionContextHolder = new ThreadLocal<IPortletExecutionContext>();
+    
+    private PortletExecutionContextHolder() {
+    }
+    
+    /**
+     * @return The execution context of the worker running on the current thread, null if the current thread is not running a worker
+     */
+    public static IPortletExecutionContext getExecutionContext() {
+        return executionContextHolder.get();
+    }
+    
+    static void setExecutionContext(IPortletExecutionContext executionContext) {
+        if (executionContext == null) {
+            executionContextHolder.remove();
+        }
+        else {
+            executionContextHolder.set(executionContext);
+        }
+    }
+}
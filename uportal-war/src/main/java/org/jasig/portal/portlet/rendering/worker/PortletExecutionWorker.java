@@ -20,6 +20,7 @@
 package org.jasig.portal.portlet.rendering.worker;
 
 import java.lang.Thread.State;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -71,6 +72,7 @@ abstract class PortletExecutionWorker<V> implements IPortletExecutionWorker<V> {
     private final AtomicInteger cancelCount = new AtomicInteger();
     private final AtomicBoolean canceled = new AtomicBoolean();
     private volatile boolean retrieved = false;
+    private final List<Runnable> completionListeners = new ArrayList<Runnable>();
         
     public PortletExecutionWorker(
             ExecutorService executorService, List<IPortletExecutionInterceptor> interceptors, IPortletRenderer portletRenderer, 
@@ -142,20 +144,22 @@ abstract class PortletExecutionWorker<V> implements IPortletExecutionWorker<V> {
             this.future = this.executorService.submit(callable);
         }
         catch (final Exception e) {
-            //All is not well do the basic portlet execution lifecycle and then, return a Future that simply rethrows the exception
+            //All is not well do the basic portlet execution lifecycle, passing the exception to the post-execution
+            //interceptors, and then return a Future that simply rethrows the exception
             
-            final Callable<Future<V>> callable = new ExecutionLifecycleCallable<Future<V>>(new Callable<Future<V>>() {
+            final Callable<V> callable = new ExecutionLifecycleCallable<V>(new Callable<V>() {
                 @Override
-                public Future<V> call() throws Exception {
-                    return Futures.immediateFailedFuture(e);
+                public V call() throws Exception {
+                    throw e;
                 }
             });
             
             try {
-                this.future = callable.call();
+                callable.call();
             }
             catch (Exception e1) {
-                //We know this will never throw
+                //We know this will always throw e
+                this.future = Futures.immediateFailedFuture(e1);
             }
         }
     }
@@ -194,6 +198,7 @@ abstract class PortletExecutionWorker<V> implements IPortletExecutionWorker<V> {
         
         //signal any threads waiting for the worker to start
         started = System.currentTimeMillis();
+        PortletExecutionContextHolder.setExecutionContext(this);
         startLatch.countDown();
     }
     
@@ -211,6 +216,25 @@ abstract class PortletExecutionWorker<V> implements IPortletExecutionWorker<V> {
         }
         
         workerThread = null;
+        PortletExecutionContextHolder.setExecutionContext(null);
+        
+        final List<Runnable> listeners;
+        synchronized (this.completionListeners) {
+            listeners = new ArrayList<Runnable>(this.completionListeners);
+            this.completionListeners.clear();
+        }
+        for (final Runnable listener : listeners) {
+            runCompletionListener(listener);
+        }
+    }
+    
+    private void runCompletionListener(Runnable listener) {
+        try {
+            listener.run();
+        }
+        catch (RuntimeException e) {
+            logger.error("Completion listener for portlet " + portletWindowId + " threw exception", e);
+        }
     }
     
     private void doPostExecution(Exception e) {
@@ -252,6 +276,25 @@ abstract class PortletExecutionWorker<V> implements IPortletExecutionWorker<V> {
         return this.retrieved;
     }
     
+    @Override
+    public final void addCompletionListener(Runnable listener) {
+        synchronized (this.completionListeners) {
+            if (this.complete == 0) {
+                this.completionListeners.add(listener);
+                return;
+            }
+        }
+        
+        runCompletionListener(listener);
+    }
+    
+    @Override
+    public final void removeCompletionListener(Runnable listener) {
+        synchronized (this.completionListeners) {
+            this.completionListeners.remove(listener);
+        }
+    }
+    
     @Override
     public final long waitForStart(long timeout) throws InterruptedException {
         //Wait for start Callable to start
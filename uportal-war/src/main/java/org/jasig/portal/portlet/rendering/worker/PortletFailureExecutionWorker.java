@@ -88,6 +88,11 @@ final class PortletFailureExecutionWorker implements IPortletFailureExecutionWor
         return ExecutionType.FAILURE;
     }
 
+    @Override
+    public Exception getCause() {
+        return this.cause;
+    }
+
     @Override
     public void submit() {
         if (this.submitted > 0) {
@@ -143,6 +148,15 @@ final class PortletFailureExecutionWorker implements IPortletFailureExecutionWor
         //NOOP
     }
     
+    /* (non-Javadoc)
+     * @see org.jasig.portal.portlet.rendering.worker.IPortletExecutionWorker#addCompletionListener(java.lang.Runnable)
+     */
+    @Override
+    public void addCompletionListener(Runnable listener) {
+        //The error is rendered by the thread that calls get, there is nothing to wait for
+        listener.run();
+    }
+    
     /* (non-Javadoc)
      * @see org.jasig.portal.portlet.rendering.worker.IPortletExecutionWorker#getCancelCount()
      */
@@ -19,8 +19,11 @@
 
 package org.jasig.portal.portlet.rendering.worker;
 
+import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.portlet.Event;
 import javax.servlet.http.HttpServletRequest;
@@ -37,22 +40,39 @@ import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
 import org.jasig.portal.portlet.rendering.IPortletRenderer;
 import org.jasig.portal.user.IUserInstance;
 import org.jasig.portal.user.IUserInstanceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
 
 /**
  * Factory for creating {@link IPortletExecutionWorker}s that handle the asynchronous execution of
  * portlet requests
+ * <p>
+ * Workers run on the portletThreadPool unless virtual threads are enabled and the JVM provides
+ * {@code Executors.newVirtualThreadPerTaskExecutor()}, in which case each worker runs on its own
+ * virtual thread. The execution interceptors, timeouts and cancellation work the same either way
+ * since they run on, and interrupt, whichever thread executes the worker.
  * 
  * @author Eric Dalquist
  * @version $Revision$
  */
 @Service
-public class PortletWorkerFactoryImpl implements IPortletWorkerFactory {
+public class PortletWorkerFactoryImpl implements IPortletWorkerFactory, InitializingBean, DisposableBean {
     public static final String DEFAULT_ERROR_PORTLET_FNAME = "error";
     
+    protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+    
     private ExecutorService portletThreadPool;
+    private ExecutorService virtualThreadExecutor;
+    private ExecutorService workerExecutor;
+    private boolean useVirtualThreads = false;
+    private long maxEventBatchExtraTime = 10000;
     private IPortletRenderer portletRenderer;
     private List<IPortletExecutionInterceptor> executionInterceptors;
     private String errorPortletFName = DEFAULT_ERROR_PORTLET_FNAME;
@@ -84,6 +104,22 @@ public class PortletWorkerFactoryImpl implements IPortletWorkerFactory {
         this.portletThreadPool = portletThreadPool;
     }
 
+    /**
+     * @param useVirtualThreads If workers should run on virtual threads instead of the portletThreadPool when the JVM supports them. Defaults to false
+     */
+    @Value("${org.jasig.portal.portlet.worker.useVirtualThreads:false}")
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    /**
+     * @param maxEventBatchExtraTime Maximum milliseconds a batch of events gets beyond the portlet's event timeout. Defaults to 10000
+     */
+    @Value("${org.jasig.portal.portlet.maxEventBatchExtraTime:10000}")
+    public void setMaxEventBatchExtraTime(long maxEventBatchExtraTime) {
+        this.maxEventBatchExtraTime = maxEventBatchExtraTime;
+    }
+
     @Autowired
     public void setPortletRenderer(IPortletRenderer portletRenderer) {
         this.portletRenderer = portletRenderer;
@@ -94,20 +130,89 @@ public class PortletWorkerFactoryImpl implements IPortletWorkerFactory {
         this.executionInterceptors = executionInterceptors;
     }
 
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        this.workerExecutor = this.portletThreadPool;
+        
+        if (this.useVirtualThreads) {
+            this.virtualThreadExecutor = createVirtualThreadExecutor();
+            if (this.virtualThreadExecutor != null) {
+                this.logger.info("Portlet workers will run on virtual threads");
+                this.workerExecutor = this.virtualThreadExecutor;
+            }
+            else {
+                this.logger.warn("Virtual threads are not supported by this JVM, portlet workers will run on the portletThreadPool");
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (this.virtualThreadExecutor != null) {
+            this.virtualThreadExecutor.shutdownNow();
+        }
+    }
+    
+    /**
+     * @return The executor workers are created with
+     */
+    ExecutorService getWorkerExecutor() {
+        return this.workerExecutor;
+    }
+    
+    /**
+     * Looked up reflectively as virtual threads are only available on Java 21 and later JVMs
+     * 
+     * @return A virtual thread per task executor, null if the JVM does not support virtual threads
+     */
+    protected ExecutorService createVirtualThreadExecutor() {
+        return createVirtualThreadExecutor(Executors.class);
+    }
+    
+    /**
+     * @param factoryClass Class to call the static newVirtualThreadPerTaskExecutor method on
+     * @return The created executor, null if the class has no newVirtualThreadPerTaskExecutor method
+     */
+    static ExecutorService createVirtualThreadExecutor(Class<?> factoryClass) {
+        final Method factoryMethod;
+        try {
+            factoryMethod = factoryClass.getMethod("newVirtualThreadPerTaskExecutor");
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+        
+        try {
+            return (ExecutorService) factoryMethod.invoke(null);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.jasig.portal.portlet.rendering.worker.IPortletWorkerFactory#getActionWorker()
      */
     @Override
     public IPortletActionExecutionWorker createActionWorker(HttpServletRequest request, HttpServletResponse response, IPortletWindowId portletWindowId) {
         final IPortletWindow portletWindow = this.portletWindowRegistry.getPortletWindow(request, portletWindowId);
-        return new PortletActionExecutionWorker(portletThreadPool, executionInterceptors, portletRenderer, request, response, portletWindow);
+        return new PortletActionExecutionWorker(workerExecutor, executionInterceptors, portletRenderer, request, response, portletWindow);
     }
     
 
     @Override
     public IPortletEventExecutionWorker createEventWorker(HttpServletRequest request, HttpServletResponse response, IPortletWindowId portletWindowId, Event event) {
+        return this.createEventWorker(request, response, portletWindowId, Collections.singletonList(event));
+    }
+
+    /* (non-Javadoc)
+     * @see org.jasig.portal.portlet.rendering.worker.IPortletWorkerFactory#createEventWorker(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse, org.jasig.portal.portlet.om.IPortletWindowId, java.util.List)
+     */
+    @Override
+    public IPortletEventExecutionWorker createEventWorker(HttpServletRequest request, HttpServletResponse response, IPortletWindowId portletWindowId, List<Event> events) {
+        Assert.notEmpty(events, "events cannot be empty");
         final IPortletWindow portletWindow = this.portletWindowRegistry.getPortletWindow(request, portletWindowId);
-        return new PortletEventExecutionWorker(portletThreadPool, executionInterceptors, portletRenderer, request, response, portletWindow, event);
+        return new PortletEventExecutionWorker(workerExecutor, executionInterceptors, portletRenderer, request, response, portletWindow, events, this.maxEventBatchExtraTime);
     }
 
 
@@ -120,7 +225,7 @@ public class PortletWorkerFactoryImpl implements IPortletWorkerFactory {
 			HttpServletRequest request, HttpServletResponse response,
 			IPortletWindowId portletWindowId) {
         final IPortletWindow portletWindow = this.portletWindowRegistry.getPortletWindow(request, portletWindowId);
-		return new PortletRenderHeaderExecutionWorker(portletThreadPool,executionInterceptors, portletRenderer, request, response, portletWindow);
+		return new PortletRenderHeaderExecutionWorker(workerExecutor, executionInterceptors, portletRenderer, request, response, portletWindow);
 	}
 
 	@Override
@@ -129,13 +234,13 @@ public class PortletWorkerFactoryImpl implements IPortletWorkerFactory {
         if (portletWindow == null) {
             throw new RuntimeException("Failed to retrieve the specified PortletWindow:  " + portletWindowId);
         }
-        return new PortletRenderExecutionWorker(portletThreadPool, executionInterceptors, portletRenderer, request, response, portletWindow);
+        return new PortletRenderExecutionWorker(workerExecutor, executionInterceptors, portletRenderer, request, response, portletWindow);
     }
 
     @Override
     public IPortletResourceExecutionWorker createResourceWorker(HttpServletRequest request, HttpServletResponse response, IPortletWindowId portletWindowId) {
         final IPortletWindow portletWindow = this.portletWindowRegistry.getPortletWindow(request, portletWindowId);
-        return new PortletResourceExecutionWorker(portletThreadPool, executionInterceptors, portletRenderer, request, response, portletWindow);
+        return new PortletResourceExecutionWorker(workerExecutor, executionInterceptors, portletRenderer, request, response, portletWindow);
     }
     
     @Override
@@ -21,8 +21,13 @@ package org.jasig.portal.rendering;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.transform.OutputKeys;
@@ -31,12 +36,25 @@ import org.jasig.portal.character.stream.CharacterEventReader;
 import org.jasig.portal.character.stream.events.CharacterDataEvent;
 import org.jasig.portal.character.stream.events.CharacterEvent;
 import org.jasig.portal.character.stream.events.CharacterEventTypes;
+import org.jasig.portal.character.stream.events.DeflatedCharacterDataEvent;
+import org.jasig.portal.character.stream.events.EncodedCharacterDataEvent;
 import org.jasig.portal.events.IPortletExecutionEventFactory;
+import org.jasig.portal.portlet.rendering.IPortletExecutionManager;
 import org.jasig.portal.url.IPortalRequestInfo;
 import org.jasig.portal.url.IUrlSyntaxProvider;
+import org.jasig.portal.web.AsyncOpenEntityManagerInViewFilter;
+import org.jasig.portal.web.AsyncOpenEntityManagerInViewFilter.EntityManagerHandoff;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 /**
  * Top level class that initiates rendering via a {@link CharacterPipelineComponent}
@@ -53,6 +71,13 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
     private CharacterPipelineComponent pipeline;
     private IPortletExecutionEventFactory portalEventFactory;
     private IUrlSyntaxProvider urlSyntaxProvider;
+    private IPortletExecutionManager portletExecutionManager;
+    private PortletRenderCompletionMonitor portletRenderCompletionMonitor;
+    private boolean writeEncodedCharacterData = false;
+    private boolean streamingRender = false;
+    private boolean asyncRender = false;
+    private long asyncRenderTimeout = 60000;
+    private boolean gzipResponse = false;
     
 
     @Autowired
@@ -65,6 +90,71 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
         this.portalEventFactory = portalEventFactory;
     }
 
+    @Autowired
+    public void setPortletExecutionManager(IPortletExecutionManager portletExecutionManager) {
+        this.portletExecutionManager = portletExecutionManager;
+    }
+
+    @Autowired
+    public void setPortletRenderCompletionMonitor(PortletRenderCompletionMonitor portletRenderCompletionMonitor) {
+        this.portletRenderCompletionMonitor = portletRenderCompletionMonitor;
+    }
+
+    /**
+     * If true and the request supports asynchronous processing the request thread is released
+     * while portlets render. The response is written from a container thread once every portlet
+     * on the page has completed or timed out. Requires the servlet and all filters in the chain
+     * to be marked async-supported, the response is rendered synchronously if they are not.
+     * Defaults to false.
+     */
+    @Value("${org.jasig.portal.rendering.asyncRender:false}")
+    public void setAsyncRender(boolean asyncRender) {
+        this.asyncRender = asyncRender;
+    }
+
+    /**
+     * Milliseconds an asynchronous request may wait for its portlets and be written before the container
+     * times it out, should be longer than the longest portlet render timeout. Defaults to 60000.
+     */
+    @Value("${org.jasig.portal.rendering.asyncRenderTimeout:60000}")
+    public void setAsyncRenderTimeout(long asyncRenderTimeout) {
+        this.asyncRenderTimeout = asyncRenderTimeout;
+    }
+
+    /**
+     * If true the response is written via {@link HttpServletResponse#getOutputStream()} and
+     * {@link EncodedCharacterDataEvent}s are copied directly to the stream, avoiding re-encoding
+     * character data that was already encoded when it was cached. Defaults to false.
+     */
+    @Value("${org.jasig.portal.rendering.DynamicRenderingPipeline.writeEncodedCharacterData:false}")
+    public void setWriteEncodedCharacterData(boolean writeEncodedCharacterData) {
+        this.writeEncodedCharacterData = writeEncodedCharacterData;
+    }
+
+    /**
+     * If true and the client accepts gzip content encoding the response is gzip compressed. The
+     * pre-compressed form of {@link DeflatedCharacterDataEvent}s, see the deflateCharacterData option
+     * of {@link org.jasig.portal.rendering.cache.CachingCharacterPipelineComponent}, is copied directly
+     * into the compressed stream so only the dynamic portions of the page are compressed per request.
+     * Works best along with {@link #setStreamingRender(boolean)} as every flush ends the current
+     * compressed block. Defaults to false.
+     */
+    @Value("${org.jasig.portal.rendering.DynamicRenderingPipeline.gzipResponse:false}")
+    public void setGzipResponse(boolean gzipResponse) {
+        this.gzipResponse = gzipResponse;
+    }
+
+    /**
+     * If true the response is only flushed at chunk points (empty {@link CharacterDataEvent}s) and
+     * at the end of the page instead of after every event. Should be used along with the streaming
+     * mode of {@link PortletRenderingIncorporationComponent}, which injects a chunk point before each
+     * portlet that has not finished rendering. Defaults to false.
+     */
+    @Value("${org.jasig.portal.rendering.streamingRender:false}")
+    public void setStreamingRender(boolean streamingRender) {
+        this.streamingRender = streamingRender;
+    }
+
     /**
      * The root element in the rendering pipeline. This element MUST only return {@link CharacterEventTypes#CHARACTER}
      * type events.
@@ -82,29 +172,285 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
         
         final long startTime = System.nanoTime();
 
+        //Builds the page and starts all portlets rendering, only writing the events blocks on portlets
         final PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader = this.pipeline.getEventReader(req, res);
+        
+        if (this.asyncRender && req.isAsyncSupported() && !this.portletExecutionManager.isPortletRenderingComplete(req, res)) {
+            this.renderStateAsync(req, res, pipelineEventReader, startTime);
+            return;
+        }
+        
+        this.writeResponse(req, res, pipelineEventReader, startTime);
+    }
+    
+    /**
+     * Put the request into asynchronous mode and write the response once all portlets are done rendering.
+     * The EntityManager, security, locale and request context of the request thread are carried over to
+     * the thread that writes the response.
+     */
+    protected void renderStateAsync(final HttpServletRequest req, final HttpServletResponse res,
+            final PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader, final long startTime) {
+        
+        //Thread bound state of the request thread is cleared when it returns
+        final EntityManagerHandoff entityManagerHandoff = AsyncOpenEntityManagerInViewFilter.getEntityManagerHandoff(req);
+        final SecurityContext securityContext = SecurityContextHolder.getContext();
+        final LocaleContext localeContext = LocaleContextHolder.getLocaleContext();
+        
+        if (entityManagerHandoff != null) {
+            entityManagerHandoff.startAsync();
+        }
+        final AsyncContext asyncContext;
+        try {
+            asyncContext = req.startAsync(req, res);
+        }
+        catch (RuntimeException e) {
+            if (entityManagerHandoff != null) {
+                entityManagerHandoff.cancelAsync();
+            }
+            throw e;
+        }
+        asyncContext.setTimeout(this.asyncRenderTimeout);
+        
+        //Only one of the response writer, the timeout or the error handler finishes the request
+        final AtomicBoolean finished = new AtomicBoolean();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (finished.compareAndSet(false, true)) {
+                    logger.warn("Asynchronous rendering of {} timed out after {}ms", req.getRequestURI(), asyncRenderTimeout);
+                    portletRenderCompletionMonitor.cancel(asyncContext);
+                    if (!res.isCommitted()) {
+                        res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    }
+                    asyncContext.complete();
+                }
+            }
+            @Override
+            public void onError(AsyncEvent event) throws IOException {
+                if (finished.compareAndSet(false, true)) {
+                    logger.debug("Asynchronous rendering of " + req.getRequestURI() + " failed", event.getThrowable());
+                    portletRenderCompletionMonitor.cancel(asyncContext);
+                    asyncContext.complete();
+                }
+            }
+            @Override
+            public void onComplete(AsyncEvent event) throws IOException {
+                if (entityManagerHandoff != null) {
+                    entityManagerHandoff.release();
+                }
+            }
+            @Override
+            public void onStartAsync(AsyncEvent event) throws IOException {
+            }
+        });
+        
+        this.portletRenderCompletionMonitor.resumeOnCompletion(req, res, asyncContext, new Runnable() {
+            @Override
+            public void run() {
+                if (!finished.compareAndSet(false, true)) {
+                    return;
+                }
+                
+                final ServletRequestAttributes requestAttributes = new ServletRequestAttributes(req);
+                RequestContextHolder.setRequestAttributes(requestAttributes);
+                LocaleContextHolder.setLocaleContext(localeContext);
+                SecurityContextHolder.setContext(securityContext);
+                try {
+                    if (entityManagerHandoff != null && !entityManagerHandoff.bind(asyncRenderTimeout)) {
+                        throw new IllegalStateException("Request thread did not release the EntityManager within " + asyncRenderTimeout + "ms");
+                    }
+                    
+                    writeResponse(req, res, pipelineEventReader, startTime);
+                }
+                catch (Exception e) {
+                    logger.error("Failed to write asynchronously rendered response for: " + req.getRequestURI(), e);
+                    if (!res.isCommitted()) {
+                        try {
+                            res.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                        }
+                        catch (IOException ioe) {
+                            logger.debug("Failed to send error response for: " + req.getRequestURI(), ioe);
+                        }
+                    }
+                }
+                finally {
+                    if (entityManagerHandoff != null) {
+                        entityManagerHandoff.release();
+                    }
+                    requestAttributes.requestCompleted();
+                    RequestContextHolder.resetRequestAttributes();
+                    LocaleContextHolder.resetLocaleContext();
+                    SecurityContextHolder.clearContext();
+                    asyncContext.complete();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Write the pipeline events to the response and publish the render event
+     */
+    protected void writeResponse(HttpServletRequest req, HttpServletResponse res, 
+            PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader, long startTime) throws IOException {
+        
         final String mediaType = getMediaType(req, res, pipelineEventReader);
 
         // set the response mime type
         final String contentType = mediaType + "; charset=" + CHARACTER_SET;
         res.setContentType(contentType);
         
+        if (this.gzipResponse) {
+            res.addHeader("Vary", "Accept-Encoding");
+        }
+        
+        if (this.gzipResponse && this.acceptsGzip(req)) {
+            res.setHeader("Content-Encoding", "gzip");
+            this.writeGzippedEvents(res, pipelineEventReader);
+        }
+        else if (this.writeEncodedCharacterData) {
+            this.writeEncodedEvents(res, pipelineEventReader);
+        }
+        else {
+            this.writeEvents(res, pipelineEventReader);
+        }
+        
+        final long executionTime = System.nanoTime() - startTime;
+        final IPortalRequestInfo portalRequestInfo = this.urlSyntaxProvider.getPortalRequestInfo(req);
+        this.portalEventFactory.publishPortalRenderEvent(req, this, req.getPathInfo(), executionTime, portalRequestInfo);
+    }
+
+    /**
+     * Write the character events to the response {@link PrintWriter}
+     */
+    protected void writeEvents(HttpServletResponse res, PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader) throws IOException {
         final PrintWriter writer = res.getWriter();
         
         for (final CharacterEvent event : pipelineEventReader) {
-            if (CharacterEventTypes.CHARACTER != event.getEventType()) {
-                throw new RenderingPipelineConfigurationException("Only " + CharacterEventTypes.CHARACTER + " events are supported in the top level renderer. " + event.getEventType() + " is not supported.");
+            final CharacterDataEvent characterDataEvent = getCharacterData(event);
+            writer.print(characterDataEvent.getData());
+            if (this.isFlushPoint(characterDataEvent)) {
+                writer.flush();
+                res.flushBuffer();
+            }
+        }
+        
+        writer.flush();
+    }
+    
+    /**
+     * Write the character events to the response {@link ServletOutputStream}, pre-encoded
+     * events are written directly and all other events are encoded using {@link #CHARACTER_SET}
+     */
+    protected void writeEncodedEvents(HttpServletResponse res, PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader) throws IOException {
+        final ServletOutputStream outputStream = res.getOutputStream();
+        
+        for (final CharacterEvent event : pipelineEventReader) {
+            final CharacterDataEvent characterDataEvent = getCharacterData(event);
+            if (characterDataEvent instanceof EncodedCharacterDataEvent && CHARACTER_SET.equals(((EncodedCharacterDataEvent) characterDataEvent).getCharacterSet())) {
+                ((EncodedCharacterDataEvent) characterDataEvent).writeEncodedData(outputStream);
+            }
+            else {
+                outputStream.write(characterDataEvent.getData().getBytes(CHARACTER_SET));
+            }
+            if (this.isFlushPoint(characterDataEvent)) {
+                outputStream.flush();
+                res.flushBuffer();
+            }
+        }
+        
+        outputStream.flush();
+    }
+    
+    /**
+     * Write the character events to a gzip compressed {@link ServletOutputStream}, the pre-compressed
+     * data of {@link DeflatedCharacterDataEvent}s is written directly, pre-encoded events are compressed
+     * and all other events are encoded using {@link #CHARACTER_SET} and compressed.
+     */
+    protected void writeGzippedEvents(HttpServletResponse res, PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader) throws IOException {
+        final PrecompressedGzipOutputStream outputStream = new PrecompressedGzipOutputStream(res.getOutputStream());
+        
+        try {
+            for (final CharacterEvent event : pipelineEventReader) {
+                final CharacterDataEvent characterDataEvent = getCharacterData(event);
+                if (characterDataEvent instanceof EncodedCharacterDataEvent && CHARACTER_SET.equals(((EncodedCharacterDataEvent) characterDataEvent).getCharacterSet())) {
+                    if (characterDataEvent instanceof DeflatedCharacterDataEvent) {
+                        outputStream.writeDeflated((DeflatedCharacterDataEvent) characterDataEvent);
+                    }
+                    else {
+                        ((EncodedCharacterDataEvent) characterDataEvent).writeEncodedData(outputStream);
+                    }
+                }
+                else {
+                    outputStream.write(characterDataEvent.getData().getBytes(CHARACTER_SET));
+                }
+                
+                //Each sync flush ends a deflate block, only flush at chunk points so the rest compresses as one stream
+                if (this.isChunkPoint(characterDataEvent)) {
+                    outputStream.flush();
+                    res.flushBuffer();
+                }
             }
             
-            final String data = ((CharacterDataEvent)event).getData();
-            writer.print(data);
-            writer.flush();
-            res.flushBuffer();
+            outputStream.finish();
+            outputStream.flush();
+        }
+        finally {
+            //Release the native deflater if rendering failed before the stream was finished
+            outputStream.end();
+        }
+    }
+    
+    /**
+     * @return true if the Accept-Encoding header of the request allows gzip content encoding
+     */
+    protected boolean acceptsGzip(HttpServletRequest req) {
+        final String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
         }
         
-        final long executionTime = System.nanoTime() - startTime;
-        final IPortalRequestInfo portalRequestInfo = this.urlSyntaxProvider.getPortalRequestInfo(req);
-        this.portalEventFactory.publishPortalRenderEvent(req, this, req.getPathInfo(), executionTime, portalRequestInfo);
+        for (final String encoding : StringUtils.tokenizeToStringArray(acceptEncoding, ",")) {
+            final String[] parts = StringUtils.tokenizeToStringArray(encoding, ";");
+            if (parts.length == 0 || !("gzip".equalsIgnoreCase(parts[0]) || "x-gzip".equalsIgnoreCase(parts[0]))) {
+                continue;
+            }
+            
+            //Only q=0 disables the encoding
+            for (int i = 1; i < parts.length; i++) {
+                final String parameter = parts[i].replace(" ", "");
+                if (parameter.matches("[qQ]=0(\\.0*)?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * @return true if the response should be flushed after writing the event
+     */
+    protected boolean isFlushPoint(CharacterDataEvent event) {
+        return !this.streamingRender || this.isChunkPoint(event);
+    }
+    
+    /**
+     * @return true if the event is a chunk point, an empty event injected by the streaming render mode
+     */
+    protected boolean isChunkPoint(CharacterDataEvent event) {
+        return event.getData().length() == 0;
+    }
+    
+    /**
+     * Verify the event is a {@link CharacterEventTypes#CHARACTER} event
+     */
+    protected final CharacterDataEvent getCharacterData(CharacterEvent event) {
+        if (CharacterEventTypes.CHARACTER != event.getEventType()) {
+            throw new RenderingPipelineConfigurationException("Only " + CharacterEventTypes.CHARACTER + " events are supported in the top level renderer. " + event.getEventType() + " is not supported.");
+        }
+        
+        return (CharacterDataEvent)event;
     }
 
     /**
@@ -0,0 +1,171 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.rendering;
+
+import org.jasig.portal.rendering.cache.CachedEventStats;
+import org.jasig.portal.rendering.cache.CachingPipelineComponent;
+import org.jasig.portal.utils.Histogram;
+
+/**
+ * Statistics for a single rendering pipeline component. Times are the time spent in the component
+ * itself, excluding time spent in the components it wraps, and are reported in microseconds.
+ * 
+ * @see RenderingPipelineStatistics
+ */
+public class PipelineComponentStatistics {
+    private final String name;
+    private final PipelineComponent<?, ?> component;
+    private final Histogram cacheKeyTime = new Histogram();
+    private final Histogram renderTime = new Histogram();
+    private final Histogram eventCount = new Histogram();
+    private final Histogram outputLength = new Histogram();
+    
+    public PipelineComponentStatistics(String name, PipelineComponent<?, ?> component) {
+        this.name = name;
+        this.component = component;
+    }
+    
+    /**
+     * @return Name of the component
+     */
+    public String getName() {
+        return this.name;
+    }
+    
+    /**
+     * @return Time spent generating the cache key for each request
+     */
+    public Histogram.Snapshot getCacheKeyTime() {
+        return this.cacheKeyTime.getSnapshot();
+    }
+    
+    /**
+     * @return Time spent creating and reading the event reader for each request
+     */
+    public Histogram.Snapshot getRenderTime() {
+        return this.renderTime.getSnapshot();
+    }
+    
+    /**
+     * @return Number of events produced for each request
+     */
+    public Histogram.Snapshot getEventCount() {
+        return this.eventCount.getSnapshot();
+    }
+    
+    /**
+     * @return Number of characters of character data produced for each request, not the encoded size
+     *  in bytes. 0 for StAX components
+     */
+    public Histogram.Snapshot getOutputLength() {
+        return this.outputLength.getSnapshot();
+    }
+    
+    /**
+     * @return If the component is a {@link CachingPipelineComponent}
+     */
+    public boolean isCaching() {
+        return this.component instanceof CachingPipelineComponent;
+    }
+    
+    /**
+     * @see CachingPipelineComponent#getCacheHits()
+     */
+    public long getCacheHits() {
+        if (this.component instanceof CachingPipelineComponent) {
+            return ((CachingPipelineComponent<?, ?>)this.component).getCacheHits();
+        }
+        return 0;
+    }
+    
+    /**
+     * @see CachingPipelineComponent#getCacheMisses()
+     */
+    public long getCacheMisses() {
+        if (this.component instanceof CachingPipelineComponent) {
+            return ((CachingPipelineComponent<?, ?>)this.component).getCacheMisses();
+        }
+        return 0;
+    }
+    
+    /**
+     * @see CachedEventStats#getCachedEntryCount()
+     */
+    public long getCachedEntryCount() {
+        final CachedEventStats cachedEventStats = this.getCachedEventStats();
+        return cachedEventStats != null ? cachedEventStats.getCachedEntryCount() : 0;
+    }
+    
+    /**
+     * @see CachedEventStats#getSourceEventCount()
+     */
+    public long getSourceEventCount() {
+        final CachedEventStats cachedEventStats = this.getCachedEventStats();
+        return cachedEventStats != null ? cachedEventStats.getSourceEventCount() : 0;
+    }
+    
+    /**
+     * @see CachedEventStats#getCachedEventCount()
+     */
+    public long getCachedEventCount() {
+        final CachedEventStats cachedEventStats = this.getCachedEventStats();
+        return cachedEventStats != null ? cachedEventStats.getCachedEventCount() : 0;
+    }
+    
+    /**
+     * @see CachedEventStats#getInternedEventCount()
+     */
+    public long getInternedEventCount() {
+        final CachedEventStats cachedEventStats = this.getCachedEventStats();
+        return cachedEventStats != null ? cachedEventStats.getInternedEventCount() : 0;
+    }
+    
+    /**
+     * @see CachedEventStats#getAverageCachedEntrySize()
+     */
+    public long getAverageCachedEntrySize() {
+        final CachedEventStats cachedEventStats = this.getCachedEventStats();
+        return cachedEventStats != null ? cachedEventStats.getAverageCachedEntrySize() : 0;
+    }
+    
+    private CachedEventStats getCachedEventStats() {
+        if (this.component instanceof CachingPipelineComponent) {
+            return ((CachingPipelineComponent<?, ?>)this.component).getCachedEventStats();
+        }
+        return null;
+    }
+    
+    void recordCacheKey(long nanos) {
+        this.cacheKeyTime.record(nanos / 1000);
+    }
+    
+    void recordRender(long nanos, long events, long length) {
+        this.renderTime.record(nanos / 1000);
+        this.eventCount.record(events);
+        this.outputLength.record(length);
+    }
+    
+    void reset() {
+        this.cacheKeyTime.reset();
+        this.renderTime.reset();
+        this.eventCount.reset();
+        this.outputLength.reset();
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.rendering;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jasig.portal.portlet.rendering.IPortletExecutionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Tracks requests that have been put into asynchronous mode while waiting for their portlets
+ * to render. A single thread polls the tracked requests and hands each one back to the container
+ * via {@link AsyncContext#start(Runnable)} once {@link IPortletExecutionManager#isPortletRenderingComplete(HttpServletRequest, HttpServletResponse)}
+ * is true. Since portlets that run past their timeout count as complete no request waits longer
+ * than its slowest portlet's timeout.
+ */
+public class PortletRenderCompletionMonitor implements DisposableBean {
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+    
+    private final Queue<PendingRender> pendingRenders = new ConcurrentLinkedQueue<PendingRender>();
+    
+    private IPortletExecutionManager portletExecutionManager;
+    private long pollInterval = 10;
+    private ScheduledExecutorService pollingExecutor;
+    
+    @Autowired
+    public void setPortletExecutionManager(IPortletExecutionManager portletExecutionManager) {
+        this.portletExecutionManager = portletExecutionManager;
+    }
+
+    /**
+     * Milliseconds between checks for portlet completion, defaults to 10
+     */
+    @Value("${org.jasig.portal.rendering.PortletRenderCompletionMonitor.pollInterval:10}")
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        if (this.pollingExecutor != null) {
+            this.pollingExecutor.shutdownNow();
+            this.pollingExecutor = null;
+        }
+    }
+    
+    /**
+     * Run the task via the {@link AsyncContext} once all portlets rendering for the request have
+     * completed or timed out.
+     */
+    public void resumeOnCompletion(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext, Runnable task) {
+        this.startPolling();
+        this.pendingRenders.offer(new PendingRender(request, response, asyncContext, task));
+    }
+    
+    /**
+     * Stop tracking the request, used when the asynchronous request times out or fails before its
+     * portlets complete
+     */
+    public void cancel(AsyncContext asyncContext) {
+        for (final Iterator<PendingRender> pendingRenderItr = this.pendingRenders.iterator(); pendingRenderItr.hasNext();) {
+            if (pendingRenderItr.next().asyncContext == asyncContext) {
+                pendingRenderItr.remove();
+            }
+        }
+    }
+    
+    /**
+     * @return The number of requests waiting on portlets
+     */
+    public int getPendingRenderCount() {
+        return this.pendingRenders.size();
+    }
+    
+    /**
+     * Resume all tracked requests whose portlets are done rendering
+     */
+    protected void checkPendingRenders() {
+        for (final Iterator<PendingRender> pendingRenderItr = this.pendingRenders.iterator(); pendingRenderItr.hasNext();) {
+            final PendingRender pendingRender = pendingRenderItr.next();
+            
+            try {
+                if (!this.portletExecutionManager.isPortletRenderingComplete(pendingRender.request, pendingRender.response)) {
+                    continue;
+                }
+            }
+            catch (RuntimeException e) {
+                this.logger.warn("Failed to check portlet rendering completion for " + pendingRender.request.getRequestURI() + ", resuming the request", e);
+            }
+            
+            pendingRenderItr.remove();
+            try {
+                pendingRender.asyncContext.start(pendingRender.task);
+            }
+            catch (RuntimeException e) {
+                this.logger.error("Failed to resume asynchronous rendering of " + pendingRender.request.getRequestURI(), e);
+                pendingRender.asyncContext.complete();
+            }
+        }
+    }
+    
+    private synchronized void startPolling() {
+        if (this.pollingExecutor != null) {
+            return;
+        }
+        
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("uP-AsyncRenderMonitor-");
+        threadFactory.setDaemon(true);
+        this.pollingExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.pollingExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    checkPendingRenders();
+                }
+                catch (Throwable t) {
+                    //Never let an exception stop the polling
+                    logger.error("Failed to check pending asynchronous renders", t);
+                }
+            }
+        }, this.pollInterval, this.pollInterval, TimeUnit.MILLISECONDS);
+    }
+    
+    private static final class PendingRender {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final AsyncContext asyncContext;
+        private final Runnable task;
+        
+        public PendingRender(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext, Runnable task) {
+            this.request = request;
+            this.response = response;
+            this.asyncContext = asyncContext;
+            this.task = task;
+        }
+    }
+}
@@ -19,21 +19,34 @@
 
 package org.jasig.portal.rendering;
 
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.jasig.portal.character.stream.CharacterEventReader;
+import org.jasig.portal.character.stream.CharacterEventReaderDelegate;
 import org.jasig.portal.character.stream.FilteringCharacterEventReader;
+import org.jasig.portal.character.stream.InjectingCharacterEventReader;
 import org.jasig.portal.character.stream.events.CharacterDataEventImpl;
 import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.character.stream.events.CharacterEventTypes;
 import org.jasig.portal.character.stream.events.PortletContentPlaceholderEvent;
 import org.jasig.portal.character.stream.events.PortletHeaderPlaceholderEvent;
 import org.jasig.portal.character.stream.events.PortletLinkPlaceholderEvent;
 import org.jasig.portal.character.stream.events.PortletNewItemCountPlaceholderEvent;
+import org.jasig.portal.character.stream.events.PortletPlaceholderEvent;
 import org.jasig.portal.character.stream.events.PortletTitlePlaceholderEvent;
+import org.jasig.portal.portlet.om.IPortletDefinition;
+import org.jasig.portal.portlet.om.IPortletWindow;
 import org.jasig.portal.portlet.om.IPortletWindowId;
+import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
 import org.jasig.portal.portlet.rendering.IPortletExecutionManager;
 import org.jasig.portal.utils.cache.CacheKey;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -46,12 +59,46 @@ import org.springframework.beans.factory.annotation.Autowired;
  */
 public class PortletRenderingIncorporationComponent extends CharacterPipelineComponentWrapper {
     private IPortletExecutionManager portletExecutionManager;
+    private IPortletWindowRegistry portletWindowRegistry;
+    private boolean streamingRender = false;
+    private boolean outOfOrderRender = false;
     
     @Autowired
     public void setPortletExecutionManager(IPortletExecutionManager portletExecutionManager) {
         this.portletExecutionManager = portletExecutionManager;
     }
 
+    @Autowired
+    public void setPortletWindowRegistry(IPortletWindowRegistry portletWindowRegistry) {
+        this.portletWindowRegistry = portletWindowRegistry;
+    }
+
+    /**
+     * If true the content of portlets that have not completed rendering when their placeholder is reached
+     * is deferred. An empty container element is written in place of the portlet and the portlet's
+     * output is written, in completion order, at the {@link CharacterEventTypes#DEFERRED_PORTLET_CONTENT}
+     * placeholder (or the end of the page if there is none) along with a script that moves it into the
+     * container. Only useful for HTML output. Defaults to false.
+     * <p>
+     * Title, new item count and link placeholders of a portlet that has not completed rendering are
+     * replaced with the portlet definition's title, 0 and the default portlet URL. These placeholders can
+     * appear in attribute values, where markup can't be injected, so the deferred content does not patch
+     * them. Values the portlet sets while rendering are not reflected on that page view.
+     */
+    public void setOutOfOrderRender(boolean outOfOrderRender) {
+        this.outOfOrderRender = outOfOrderRender;
+    }
+
+    /**
+     * If true a chunk point ({@link CharacterDataEventImpl#EMPTY_CHARACTER_DATA}) is injected before
+     * each placeholder whose portlet has not yet completed rendering. When used with the streaming
+     * mode of {@link DynamicRenderingPipeline} everything before the placeholder is flushed to the
+     * client before waiting on the portlet. Defaults to false.
+     */
+    public void setStreamingRender(boolean streamingRender) {
+        this.streamingRender = streamingRender;
+    }
+
     /* (non-Javadoc)
      * @see org.jasig.portal.rendering.PipelineComponent#getCacheKey(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
      */
@@ -71,13 +118,231 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
     public PipelineEventReader<CharacterEventReader, CharacterEvent> getEventReader(HttpServletRequest request, HttpServletResponse response) {
         final PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader = this.wrappedComponent.getEventReader(request, response);
         
-        final CharacterEventReader eventReader = pipelineEventReader.getEventReader();
+        CharacterEventReader eventReader = pipelineEventReader.getEventReader();
+        if (this.outOfOrderRender) {
+            eventReader = new DeferringPortletEventReader(eventReader, request, response);
+        }
+        if (this.streamingRender) {
+            eventReader = new FlushPointInjectingEventReader(eventReader, request, response);
+        }
+        
         final PortletIncorporatingEventReader portletIncorporatingEventReader = new PortletIncorporatingEventReader(eventReader, request, response);
         
         final Map<String, String> outputProperties = pipelineEventReader.getOutputProperties();
         return new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(portletIncorporatingEventReader, outputProperties);
     }
 
+    /**
+     * @return The id of the container element a deferred portlet's content is moved into
+     */
+    protected String getDeferredContainerId(IPortletWindowId portletWindowId) {
+        return "up-deferred-portlet_" + portletWindowId.getStringId();
+    }
+    
+    /**
+     * @return Markup for the empty container written in place of a deferred portlet
+     */
+    protected String getDeferredContainer(IPortletWindowId portletWindowId) {
+        final String containerId = StringEscapeUtils.escapeHtml(getDeferredContainerId(portletWindowId));
+        return "<div id=\"" + containerId + "\" class=\"up-deferred-portlet\"></div>";
+    }
+    
+    /**
+     * @return Markup that contains the portlet's output and moves it into the deferred container
+     */
+    protected String getDeferredContent(IPortletWindowId portletWindowId, String output) {
+        final String containerId = getDeferredContainerId(portletWindowId);
+        final String contentId = containerId + "_content";
+        
+        final StringBuilder content = new StringBuilder(output.length() + 512);
+        content.append("<div id=\"").append(StringEscapeUtils.escapeHtml(contentId)).append("\" style=\"display:none\">");
+        content.append(output);
+        content.append("</div><script type=\"text/javascript\">(function(){");
+        content.append("var t=document.getElementById('").append(StringEscapeUtils.escapeJavaScript(containerId)).append("'),");
+        content.append("s=document.getElementById('").append(StringEscapeUtils.escapeJavaScript(contentId)).append("');");
+        content.append("if(t&&s){while(s.firstChild){t.appendChild(s.firstChild);}s.parentNode.removeChild(s);}");
+        content.append("})();</script>");
+        return content.toString();
+    }
+    
+    /**
+     * Replaces placeholders for portlets that have not completed rendering with a container element
+     * or default value, see {@link PortletRenderingIncorporationComponent#setOutOfOrderRender(boolean)}, and then writes the deferred portlet output in completion order once the
+     * {@link CharacterEventTypes#DEFERRED_PORTLET_CONTENT} placeholder or the end of the stream is reached.
+     */
+    private class DeferringPortletEventReader extends CharacterEventReaderDelegate {
+        private final Set<IPortletWindowId> deferredPortlets = new LinkedHashSet<IPortletWindowId>();
+        private final Deque<CharacterEvent> readyEvents = new LinkedList<CharacterEvent>();
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private boolean renderingDeferred = false;
+        
+        public DeferringPortletEventReader(CharacterEventReader delegate, HttpServletRequest request, HttpServletResponse response) {
+            super(delegate);
+            this.request = request;
+            this.response = response;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.readyEvents.isEmpty() || !this.deferredPortlets.isEmpty() || super.hasNext();
+        }
+
+        @Override
+        public CharacterEvent peek() {
+            if (this.readyEvents.isEmpty()) {
+                this.readNextEvents();
+            }
+            
+            final CharacterEvent event = this.readyEvents.peek();
+            if (event == null) {
+                throw new NoSuchElementException();
+            }
+            return event;
+        }
+
+        @Override
+        public CharacterEvent next() {
+            if (this.readyEvents.isEmpty()) {
+                this.readNextEvents();
+            }
+            
+            final CharacterEvent event = this.readyEvents.poll();
+            if (event == null) {
+                throw new NoSuchElementException();
+            }
+            return event;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+        private void readNextEvents() {
+            if (this.renderingDeferred || !super.hasNext()) {
+                if (!this.deferredPortlets.isEmpty()) {
+                    final IPortletWindowId portletWindowId = portletExecutionManager.waitForPortletRender(this.deferredPortlets, this.request, this.response);
+                    this.deferredPortlets.remove(portletWindowId);
+                    
+                    final String output = portletExecutionManager.getPortletOutput(portletWindowId, this.request, this.response);
+                    this.readyEvents.add(CharacterDataEventImpl.create(getDeferredContent(portletWindowId, output)));
+                    //Chunk point after each deferred portlet so it is flushed to the client immediately
+                    this.readyEvents.add(CharacterDataEventImpl.EMPTY_CHARACTER_DATA);
+                    return;
+                }
+                
+                this.renderingDeferred = false;
+                if (!super.hasNext()) {
+                    return;
+                }
+            }
+            
+            final CharacterEvent event = super.next();
+            switch (event.getEventType()) {
+                case PORTLET_CONTENT: {
+                    final IPortletWindowId portletWindowId = ((PortletContentPlaceholderEvent)event).getPortletWindowId();
+                    if (portletExecutionManager.isPortletRenderComplete(portletWindowId, this.request, this.response)) {
+                        this.readyEvents.add(event);
+                    }
+                    else {
+                        this.deferredPortlets.add(portletWindowId);
+                        this.readyEvents.add(CharacterDataEventImpl.create(getDeferredContainer(portletWindowId)));
+                    }
+                    break;
+                }
+                case PORTLET_TITLE: {
+                    final IPortletWindowId portletWindowId = ((PortletTitlePlaceholderEvent)event).getPortletWindowId();
+                    if (portletExecutionManager.isPortletRenderComplete(portletWindowId, this.request, this.response)) {
+                        this.readyEvents.add(event);
+                    }
+                    else {
+                        final IPortletWindow portletWindow = portletWindowRegistry.getPortletWindow(this.request, portletWindowId);
+                        final IPortletDefinition portletDefinition = portletWindow.getPortletEntity().getPortletDefinition();
+                        final String title = portletDefinition.getTitle(this.response.getLocale().toString());
+                        this.readyEvents.add(CharacterDataEventImpl.create(title));
+                    }
+                    break;
+                }
+                case PORTLET_NEW_ITEM_COUNT: {
+                    final IPortletWindowId portletWindowId = ((PortletNewItemCountPlaceholderEvent)event).getPortletWindowId();
+                    if (portletExecutionManager.isPortletRenderComplete(portletWindowId, this.request, this.response)) {
+                        this.readyEvents.add(event);
+                    }
+                    else {
+                        this.readyEvents.add(CharacterDataEventImpl.create("0"));
+                    }
+                    break;
+                }
+                case PORTLET_LINK: {
+                    final PortletLinkPlaceholderEvent linkPlaceholderEvent = (PortletLinkPlaceholderEvent)event;
+                    final IPortletWindowId portletWindowId = linkPlaceholderEvent.getPortletWindowId();
+                    if (portletExecutionManager.isPortletRenderComplete(portletWindowId, this.request, this.response)) {
+                        this.readyEvents.add(event);
+                    }
+                    else {
+                        this.readyEvents.add(CharacterDataEventImpl.create(linkPlaceholderEvent.getDefaultPortletUrl()));
+                    }
+                    break;
+                }
+                case DEFERRED_PORTLET_CONTENT: {
+                    this.renderingDeferred = true;
+                    //Chunk point so everything before the deferred content is flushed before waiting on portlets
+                    this.readyEvents.add(CharacterDataEventImpl.EMPTY_CHARACTER_DATA);
+                    break;
+                }
+                default: {
+                    this.readyEvents.add(event);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Injects a chunk point before any portlet placeholder that would block waiting on a portlet
+     */
+    private class FlushPointInjectingEventReader extends InjectingCharacterEventReader {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        
+        public FlushPointInjectingEventReader(CharacterEventReader delegate, HttpServletRequest request, HttpServletResponse response) {
+            super(delegate);
+            this.request = request;
+            this.response = response;
+        }
+
+        @Override
+        protected CharacterEvent getAdditionalEvent(CharacterEvent event) {
+            final boolean complete;
+            switch (event.getEventType()) {
+                case PORTLET_HEADER: {
+                    final IPortletWindowId portletWindowId = ((PortletPlaceholderEvent)event).getPortletWindowId();
+                    complete = portletExecutionManager.isPortletRenderHeaderComplete(portletWindowId, this.request, this.response);
+                    break;
+                }
+                case PORTLET_CONTENT:
+                case PORTLET_TITLE:
+                case PORTLET_NEW_ITEM_COUNT:
+                case PORTLET_LINK: {
+                    final IPortletWindowId portletWindowId = ((PortletPlaceholderEvent)event).getPortletWindowId();
+                    complete = portletExecutionManager.isPortletRenderComplete(portletWindowId, this.request, this.response);
+                    break;
+                }
+                default: {
+                    complete = true;
+                }
+            }
+            
+            return complete ? null : CharacterDataEventImpl.EMPTY_CHARACTER_DATA;
+        }
+
+        @Override
+        protected CharacterEvent getPeekEvent(CharacterEvent event) {
+            //Only injected before blocking on next(), peek returns the placeholder
+            return null;
+        }
+    }
+
     private class PortletIncorporatingEventReader extends FilteringCharacterEventReader {
         private final HttpServletRequest request;
         private final HttpServletResponse response;
@@ -132,6 +397,10 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                     
                     return CharacterDataEventImpl.create(link);
                 }
+                case DEFERRED_PORTLET_CONTENT: {
+                    //Only used by out-of-order rendering, drop the placeholder
+                    return null;
+                }
                 default: {
                     return event;
                 }
@@ -34,8 +34,8 @@ import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.StartElement;
 
 import org.jasig.portal.layout.IUserLayoutManager;
+import org.jasig.portal.portlet.om.IPortletEntity;
 import org.jasig.portal.portlet.om.IPortletWindow;
-import org.jasig.portal.portlet.om.IPortletWindowId;
 import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
 import org.jasig.portal.utils.Tuple;
 import org.jasig.portal.utils.cache.CacheKey;
@@ -112,10 +112,13 @@ public class PortletWindowAttributeSource implements AttributeSource, BeanNameAw
         
         for (final IPortletWindow portletWindow : portletWindows) {
         	if(portletWindow != null) {
-        		final IPortletWindowId portletWindowId = portletWindow.getPortletWindowId();
+        		//Key on the layout node instead of the window id, window ids are user specific and the
+        		//attributes only depend on the node, this lets users with the same layout share cache entries
+        		final IPortletEntity portletEntity = portletWindow.getPortletEntity();
+        		final String layoutNodeId = portletEntity.getLayoutNodeId();
         		final WindowState windowState = portletWindow.getWindowState();
         		final PortletMode portletMode = portletWindow.getPortletMode();
-        		cacheKeyBuilder.addAll(portletWindowId, windowState.toString(), portletMode.toString());
+        		cacheKeyBuilder.addAll(layoutNodeId, windowState.toString(), portletMode.toString());
         	} else {
         		this.logger.warn("portletWindowRegistry#getAllLayoutPortletWindows() returned a null portletWindow"); 
         	}
@@ -0,0 +1,204 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.rendering;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.jasig.portal.character.stream.events.DeflatedCharacterDataEvent;
+
+/**
+ * GZIP output stream that can splice pre-compressed {@link DeflatedCharacterDataEvent} data
+ * into the compressed stream. Data written through the normal {@link OutputStream} methods is
+ * compressed by a per-stream {@link Deflater}, before pre-compressed data is written the
+ * deflater is fully flushed so that the following blocks do not reference earlier data. Only
+ * the dynamic portions of the response are compressed per request.
+ * <p>
+ * {@link #flush()} performs a sync flush so all data written so far can be decompressed by the
+ * client. {@link #finish()} must be called to write the final block and the GZIP trailer,
+ * {@link #end()} must be called to release the deflater if the stream is abandoned before then.
+ */
+public class PrecompressedGzipOutputStream extends OutputStream {
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte)0x8b,   // Magic number
+        Deflater.DEFLATED,  // Compression method
+        0,                  // Flags
+        0, 0, 0, 0,         // Modification time
+        0,                  // Extra flags
+        0                   // Operating system
+    };
+    
+    private final OutputStream out;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[8192];
+    private long size = 0;
+    private boolean headerWritten = false;
+    private boolean unflushedInput = false;
+    private boolean dictionaryInUse = false;
+    private boolean finished = false;
+    
+    public PrecompressedGzipOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+    
+    public PrecompressedGzipOutputStream(OutputStream out, int level) {
+        this.out = out;
+        this.deflater = new Deflater(level, true);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.write(new byte[] { (byte)b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        this.ensureOpen();
+        if (len == 0) {
+            return;
+        }
+        
+        this.crc.update(b, off, len);
+        this.size += len;
+        
+        this.deflater.setInput(b, off, len);
+        while (!this.deflater.needsInput()) {
+            final int length = this.deflater.deflate(this.buffer, 0, this.buffer.length, Deflater.NO_FLUSH);
+            this.out.write(this.buffer, 0, length);
+        }
+        
+        this.unflushedInput = true;
+        this.dictionaryInUse = true;
+    }
+    
+    /**
+     * Write the pre-compressed form of the event. Any pending data is fully flushed first.
+     */
+    public void writeDeflated(DeflatedCharacterDataEvent event) throws IOException {
+        this.ensureOpen();
+        
+        if (this.dictionaryInUse) {
+            this.deflate(Deflater.FULL_FLUSH);
+            this.unflushedInput = false;
+            this.dictionaryInUse = false;
+        }
+        
+        event.writeDeflatedData(this.out);
+        event.updateChecksum(this.crc);
+        this.size += event.getEncodedLength();
+    }
+
+    /**
+     * Sync flushes the compressed stream and flushes the underlying stream
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!this.finished) {
+            this.ensureOpen();
+            
+            if (this.unflushedInput) {
+                this.deflate(Deflater.SYNC_FLUSH);
+                this.unflushedInput = false;
+            }
+        }
+        
+        this.out.flush();
+    }
+    
+    /**
+     * Writes the final compressed block and the GZIP trailer without closing the underlying stream
+     */
+    public void finish() throws IOException {
+        if (this.finished) {
+            return;
+        }
+        this.ensureOpen();
+        
+        try {
+            this.deflater.finish();
+            while (!this.deflater.finished()) {
+                final int length = this.deflater.deflate(this.buffer);
+                this.out.write(this.buffer, 0, length);
+            }
+            
+            writeInt((int)this.crc.getValue());
+            writeInt((int)this.size);
+        }
+        finally {
+            this.finished = true;
+            this.deflater.end();
+        }
+    }
+
+    /**
+     * Releases the deflater without writing the GZIP trailer, does nothing if the stream is already
+     * finished. The stream cannot be written to afterwards.
+     */
+    public void end() {
+        if (this.finished) {
+            return;
+        }
+        
+        this.finished = true;
+        this.deflater.end();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.finish();
+        }
+        finally {
+            this.out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.finished) {
+            throw new IOException("GZIP stream has already been finished");
+        }
+        
+        if (!this.headerWritten) {
+            this.out.write(GZIP_HEADER);
+            this.headerWritten = true;
+        }
+    }
+    
+    private void deflate(int flushMode) throws IOException {
+        int length;
+        do {
+            length = this.deflater.deflate(this.buffer, 0, this.buffer.length, flushMode);
+            this.out.write(this.buffer, 0, length);
+        } while (length == this.buffer.length);
+    }
+    
+    /**
+     * Writes an int in little-endian order as required by the GZIP trailer
+     */
+    private void writeInt(int i) throws IOException {
+        this.out.write(i & 0xff);
+        this.out.write((i >> 8) & 0xff);
+        this.out.write((i >> 16) & 0xff);
+        this.out.write((i >> 24) & 0xff);
+    }
+}
@@ -0,0 +1,423 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.rendering;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.util.EventReaderDelegate;
+
+import org.jasig.portal.character.stream.CharacterEventReader;
+import org.jasig.portal.character.stream.CharacterEventReaderDelegate;
+import org.jasig.portal.character.stream.events.CharacterDataEvent;
+import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.character.stream.events.CharacterEventTypes;
+import org.jasig.portal.utils.cache.CacheKey;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Instruments every {@link StAXPipelineComponent} and {@link CharacterPipelineComponent} bean in the
+ * context by wrapping it with a decorator that records per request timing, event count and output length,
+ * in characters, in a {@link PipelineComponentStatistics}.
+ * <p>
+ * Most components return lazy event readers so much of their work happens while downstream components
+ * read events. Time is therefore tracked per thread as a stack, time spent in a wrapped component or its
+ * event reader is subtracted from the time of the caller, giving each component its own share of the
+ * request. Statistics are recorded once a component's event reader is exhausted.
+ */
+@ManagedResource("uPortal:section=Framework,name=RenderingPipelineStatistics")
+public class RenderingPipelineStatistics implements BeanPostProcessor, RenderingPipelineStatisticsMXBean {
+    private static final ThreadLocal<TimingStack> TIMING_STACK = new ThreadLocal<TimingStack>() {
+        @Override
+        protected TimingStack initialValue() {
+            return new TimingStack();
+        }
+    };
+    
+    private final ConcurrentMap<String, PipelineComponentStatistics> componentStatistics = new ConcurrentHashMap<String, PipelineComponentStatistics>();
+    private boolean enabled = true;
+    
+    /**
+     * If pipeline components should be instrumented, defaults to true. Only has an effect when set
+     * before the pipeline component beans are created.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!this.enabled) {
+            return bean;
+        }
+        
+        if (bean instanceof StAXPipelineComponent) {
+            final StAXPipelineComponent component = (StAXPipelineComponent)bean;
+            return new InstrumentedStAXPipelineComponent(component, this.createStatistics(beanName, component));
+        }
+        if (bean instanceof CharacterPipelineComponent) {
+            final CharacterPipelineComponent component = (CharacterPipelineComponent)bean;
+            return new InstrumentedCharacterPipelineComponent(component, this.createStatistics(beanName, component));
+        }
+        
+        return bean;
+    }
+
+    @Override
+    public Map<String, PipelineComponentStatistics> getComponentStatistics() {
+        return Collections.unmodifiableMap(new TreeMap<String, PipelineComponentStatistics>(this.componentStatistics));
+    }
+
+    @Override
+    public void resetStatistics() {
+        for (final PipelineComponentStatistics statistics : this.componentStatistics.values()) {
+            statistics.reset();
+        }
+    }
+    
+    private PipelineComponentStatistics createStatistics(String beanName, PipelineComponent<?, ?> component) {
+        final PipelineComponentStatistics statistics = new PipelineComponentStatistics(beanName, component);
+        this.componentStatistics.put(beanName, statistics);
+        return statistics;
+    }
+    
+    /**
+     * Tracks the time spent in nested pipeline calls on the current thread so each level can
+     * subtract the time spent in the levels below it.
+     */
+    private static final class TimingStack {
+        private long[] childTimes = new long[16];
+        private int depth = 0;
+        
+        /**
+         * @return The start time to pass to {@link #exit(long)}
+         */
+        public long enter() {
+            if (this.depth == this.childTimes.length) {
+                this.childTimes = Arrays.copyOf(this.childTimes, this.depth * 2);
+            }
+            this.childTimes[this.depth++] = 0;
+            return System.nanoTime();
+        }
+        
+        /**
+         * @return Time spent since the matching {@link #enter()} excluding time spent in nested calls
+         */
+        public long exit(long start) {
+            final long elapsed = System.nanoTime() - start;
+            final long childTime = this.childTimes[--this.depth];
+            if (this.depth > 0) {
+                this.childTimes[this.depth - 1] += elapsed;
+            }
+            return elapsed - childTime;
+        }
+    }
+    
+    /**
+     * Per request counters, recorded when the event reader is exhausted
+     */
+    private static final class RenderTracker {
+        private final PipelineComponentStatistics statistics;
+        private long time;
+        private long events;
+        private long length;
+        private boolean recorded = false;
+        
+        public RenderTracker(PipelineComponentStatistics statistics, long time) {
+            this.statistics = statistics;
+            this.time = time;
+        }
+        
+        public void complete() {
+            if (!this.recorded) {
+                this.recorded = true;
+                this.statistics.recordRender(this.time, this.events, this.length);
+            }
+        }
+    }
+    
+    private static final class InstrumentedStAXPipelineComponent implements StAXPipelineComponent {
+        private final StAXPipelineComponent component;
+        private final PipelineComponentStatistics statistics;
+        
+        public InstrumentedStAXPipelineComponent(StAXPipelineComponent component, PipelineComponentStatistics statistics) {
+            this.component = component;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            try {
+                return this.component.getCacheKey(request, response);
+            }
+            finally {
+                this.statistics.recordCacheKey(timingStack.exit(start));
+            }
+        }
+
+        @Override
+        public PipelineEventReader<XMLEventReader, XMLEvent> getEventReader(HttpServletRequest request, HttpServletResponse response) {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            final PipelineEventReader<XMLEventReader, XMLEvent> pipelineEventReader;
+            final long time;
+            try {
+                pipelineEventReader = this.component.getEventReader(request, response);
+            }
+            finally {
+                time = timingStack.exit(start);
+            }
+            final RenderTracker tracker = new RenderTracker(this.statistics, time);
+            
+            final XMLEventReader eventReader = new InstrumentedXMLEventReader(pipelineEventReader.getEventReader(), tracker);
+            return new PipelineEventReaderImpl<XMLEventReader, XMLEvent>(eventReader, pipelineEventReader.getOutputProperties());
+        }
+        
+        @Override
+        public String toString() {
+            return this.component.toString();
+        }
+    }
+    
+    private static final class InstrumentedXMLEventReader extends EventReaderDelegate {
+        private final RenderTracker tracker;
+
+        public InstrumentedXMLEventReader(XMLEventReader reader, RenderTracker tracker) {
+            super(reader);
+            this.tracker = tracker;
+        }
+
+        @Override
+        public XMLEvent nextEvent() throws XMLStreamException {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            try {
+                final XMLEvent event = super.nextEvent();
+                this.tracker.events++;
+                return event;
+            }
+            finally {
+                this.tracker.time += timingStack.exit(start);
+            }
+        }
+
+        @Override
+        public Object next() {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            try {
+                final Object event = super.next();
+                this.tracker.events++;
+                return event;
+            }
+            finally {
+                this.tracker.time += timingStack.exit(start);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            final boolean hasNext;
+            try {
+                hasNext = super.hasNext();
+            }
+            finally {
+                this.tracker.time += timingStack.exit(start);
+            }
+            
+            if (!hasNext) {
+                this.tracker.complete();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public XMLEvent peek() throws XMLStreamException {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            try {
+                return super.peek();
+            }
+            finally {
+                this.tracker.time += timingStack.exit(start);
+            }
+        }
+
+        @Override
+        public String getElementText() throws XMLStreamException {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            try {
+                return super.getElementText();
+            }
+            finally {
+                this.tracker.time += timingStack.exit(start);
+            }
+        }
+
+        @Override
+        public XMLEvent nextTag() throws XMLStreamException {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            try {
+                final XMLEvent event = super.nextTag();
+                this.tracker.events++;
+                return event;
+            }
+            finally {
+                this.tracker.time += timingStack.exit(start);
+            }
+        }
+
+        @Override
+        public void close() throws XMLStreamException {
+            this.tracker.complete();
+            super.close();
+        }
+    }
+    
+    private static final class InstrumentedCharacterPipelineComponent implements CharacterPipelineComponent {
+        private final CharacterPipelineComponent component;
+        private final PipelineComponentStatistics statistics;
+        
+        public InstrumentedCharacterPipelineComponent(CharacterPipelineComponent component, PipelineComponentStatistics statistics) {
+            this.component = component;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            try {
+                return this.component.getCacheKey(request, response);
+            }
+            finally {
+                this.statistics.recordCacheKey(timingStack.exit(start));
+            }
+        }
+
+        @Override
+        public PipelineEventReader<CharacterEventReader, CharacterEvent> getEventReader(HttpServletRequest request, HttpServletResponse response) {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            final PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader;
+            final long time;
+            try {
+                pipelineEventReader = this.component.getEventReader(request, response);
+            }
+            finally {
+                time = timingStack.exit(start);
+            }
+            final RenderTracker tracker = new RenderTracker(this.statistics, time);
+            
+            final CharacterEventReader eventReader = new InstrumentedCharacterEventReader(pipelineEventReader.getEventReader(), tracker);
+            return new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(eventReader, pipelineEventReader.getOutputProperties());
+        }
+        
+        @Override
+        public String toString() {
+            return this.component.toString();
+        }
+    }
+    
+    private static final class InstrumentedCharacterEventReader extends CharacterEventReaderDelegate {
+        private final RenderTracker tracker;
+
+        public InstrumentedCharacterEventReader(CharacterEventReader delegate, RenderTracker tracker) {
+            super(delegate);
+            this.tracker = tracker;
+        }
+
+        @Override
+        public boolean hasNext() {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            final boolean hasNext;
+            try {
+                hasNext = super.hasNext();
+            }
+            finally {
+                this.tracker.time += timingStack.exit(start);
+            }
+            
+            if (!hasNext) {
+                this.tracker.complete();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public CharacterEvent next() {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            try {
+                final CharacterEvent event = super.next();
+                this.tracker.events++;
+                if (event.getEventType() == CharacterEventTypes.CHARACTER) {
+                    //Counted in characters for every event, only pre-encoded events know their size in bytes
+                    this.tracker.length += ((CharacterDataEvent)event).getData().length();
+                }
+                return event;
+            }
+            finally {
+                this.tracker.time += timingStack.exit(start);
+            }
+        }
+
+        @Override
+        public CharacterEvent peek() {
+            final TimingStack timingStack = TIMING_STACK.get();
+            final long start = timingStack.enter();
+            try {
+                return super.peek();
+            }
+            finally {
+                this.tracker.time += timingStack.exit(start);
+            }
+        }
+
+        @Override
+        public void close() {
+            this.tracker.complete();
+            super.close();
+        }
+    }
+}
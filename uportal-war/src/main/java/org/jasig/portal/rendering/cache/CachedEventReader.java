@@ -20,29 +20,46 @@
 package org.jasig.portal.rendering.cache;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Holder class for an event cache and output properties
+ * Holder class for an event cache and output properties. The events are stored in
+ * an array to avoid the per-node overhead of a linked list in the cache.
  */
 class CachedEventReader<E> implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     
-    private final List<E> eventCache;
+    private final Object[] eventCache;
     private final Map<String, String> outputProperties;
+    private final long estimatedSize;
 
     public CachedEventReader(List<E> eventCache, Map<String, String> outputProperties) {
-        this.eventCache = Collections.unmodifiableList(eventCache);
+        this(eventCache, outputProperties, -1);
+    }
+    
+    public CachedEventReader(List<E> eventCache, Map<String, String> outputProperties, long estimatedSize) {
+        this.eventCache = eventCache.toArray();
         this.outputProperties = Collections.unmodifiableMap(outputProperties);
+        this.estimatedSize = estimatedSize;
     }
 
+    @SuppressWarnings("unchecked")
     public List<E> getEventCache() {
-        return this.eventCache;
+        final List<?> events = Arrays.asList(this.eventCache);
+        return Collections.unmodifiableList((List<E>)events);
     }
 
     public Map<String, String> getOutputProperties() {
         return this.outputProperties;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return Estimated heap use of the cached events in bytes, -1 if unknown
+     */
+    public long getEstimatedSize() {
+        return this.estimatedSize;
+    }
+}
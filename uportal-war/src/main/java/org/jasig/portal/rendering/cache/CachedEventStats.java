@@ -0,0 +1,104 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.rendering.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the number of events and estimated heap use of the event buffers stored
+ * by a {@link CachingPipelineComponent}.
+ */
+public final class CachedEventStats {
+    private final AtomicLong cachedEntryCount = new AtomicLong();
+    private final AtomicLong sourceEventCount = new AtomicLong();
+    private final AtomicLong cachedEventCount = new AtomicLong();
+    private final AtomicLong internedEventCount = new AtomicLong();
+    private final AtomicLong cachedEntrySize = new AtomicLong();
+    private volatile long lastCachedEntrySize = 0;
+    
+    CachedEventStats() {
+    }
+    
+    void recordCachedEntry(int sourceEventCount, int cachedEventCount, long estimatedSize) {
+        this.cachedEntryCount.incrementAndGet();
+        this.sourceEventCount.addAndGet(sourceEventCount);
+        this.cachedEventCount.addAndGet(cachedEventCount);
+        this.cachedEntrySize.addAndGet(estimatedSize);
+        this.lastCachedEntrySize = estimatedSize;
+    }
+    
+    void recordInternedEvent() {
+        this.internedEventCount.incrementAndGet();
+    }
+
+    /**
+     * @return Number of event buffers that have been created for caching
+     */
+    public long getCachedEntryCount() {
+        return this.cachedEntryCount.get();
+    }
+
+    /**
+     * @return Number of events read from the wrapped component
+     */
+    public long getSourceEventCount() {
+        return this.sourceEventCount.get();
+    }
+
+    /**
+     * @return Number of events stored after merging adjacent events
+     */
+    public long getCachedEventCount() {
+        return this.cachedEventCount.get();
+    }
+
+    /**
+     * @return Number of cached events that were replaced by an identical event already held by another cache entry
+     */
+    public long getInternedEventCount() {
+        return this.internedEventCount.get();
+    }
+
+    /**
+     * @return Total estimated size in bytes of all event buffers that have been created
+     */
+    public long getTotalCachedEntrySize() {
+        return this.cachedEntrySize.get();
+    }
+
+    /**
+     * @return Estimated size in bytes of the most recently created event buffer
+     */
+    public long getLastCachedEntrySize() {
+        return this.lastCachedEntrySize;
+    }
+
+    /**
+     * @return Average estimated size in bytes of the event buffers that have been created
+     */
+    public long getAverageCachedEntrySize() {
+        final long cachedEntryCount = this.cachedEntryCount.get();
+        if (cachedEntryCount == 0) {
+            return 0;
+        }
+        return this.cachedEntrySize.get() / cachedEntryCount;
+    }
+}
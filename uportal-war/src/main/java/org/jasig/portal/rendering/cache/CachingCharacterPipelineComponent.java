@@ -19,12 +19,26 @@
 
 package org.jasig.portal.rendering.cache;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ListIterator;
 
 import org.jasig.portal.character.stream.CharacterEventBufferReader;
 import org.jasig.portal.character.stream.CharacterEventReader;
+import org.jasig.portal.character.stream.events.CharacterDataEvent;
+import org.jasig.portal.character.stream.events.CharacterDataEventImpl;
 import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.character.stream.events.CharacterEventTypes;
+import org.jasig.portal.character.stream.events.DeflatedCharacterDataEvent;
+import org.jasig.portal.character.stream.events.DeflatedCharacterDataEventImpl;
+import org.jasig.portal.character.stream.events.EncodedCharacterDataEvent;
+import org.jasig.portal.character.stream.events.EncodedCharacterDataEventImpl;
 import org.jasig.portal.rendering.CharacterPipelineComponent;
+import org.jasig.portal.rendering.DynamicRenderingPipeline;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * component that can cache character pipeline events
@@ -33,7 +47,123 @@ import org.jasig.portal.rendering.CharacterPipelineComponent;
  * @version $Revision$
  */
 public class CachingCharacterPipelineComponent extends CachingPipelineComponent<CharacterEventReader, CharacterEvent> implements CharacterPipelineComponent {
+    private boolean encodeCharacterData = false;
+    private boolean deflateCharacterData = false;
+    private String characterSet = DynamicRenderingPipeline.CHARACTER_SET;
+    
+    //Shares encoded events between cache entries, weak values so it is never the cause of object retention
+    private final Cache<String, EncodedCharacterDataEvent> encodedEventCache = CacheBuilder.newBuilder()
+            .weakValues()
+            .build();
     
+    /**
+     * If true {@link CharacterDataEvent}s are stored in the cache along with their encoded
+     * byte form so the character data does not need to be re-encoded on every request. Defaults to false.
+     */
+    @Value("${org.jasig.portal.rendering.cache.CachingCharacterPipelineComponent.encodeCharacterData:false}")
+    public void setEncodeCharacterData(boolean encodeCharacterData) {
+        this.encodeCharacterData = encodeCharacterData;
+    }
+    
+    /**
+     * If true {@link CharacterDataEvent}s are stored in the cache along with their encoded and
+     * deflated byte forms so that compressed responses only need to compress the dynamic portions
+     * of the page. Implies {@link #setEncodeCharacterData(boolean)}. Defaults to false.
+     */
+    @Value("${org.jasig.portal.rendering.cache.CachingCharacterPipelineComponent.deflateCharacterData:false}")
+    public void setDeflateCharacterData(boolean deflateCharacterData) {
+        this.deflateCharacterData = deflateCharacterData;
+        this.encodedEventCache.invalidateAll();
+    }
+
+    /**
+     * Character set to use when encoding cached character data, defaults to {@link DynamicRenderingPipeline#CHARACTER_SET}
+     */
+    public void setCharacterSet(String characterSet) {
+        this.characterSet = characterSet;
+        this.encodedEventCache.invalidateAll();
+    }
+
+    /**
+     * Merges runs of adjacent {@link CharacterDataEvent}s into a single event. Empty character
+     * events are left in place as they mark chunk points in the output.
+     */
+    @Override
+    protected List<CharacterEvent> compactEvents(List<CharacterEvent> events) {
+        final List<CharacterEvent> compactedEvents = new ArrayList<CharacterEvent>(events.size());
+        final StringBuilder characterData = new StringBuilder();
+        
+        for (final CharacterEvent event : events) {
+            if (CharacterEventTypes.CHARACTER == event.getEventType()) {
+                final String data = ((CharacterDataEvent)event).getData();
+                if (data.length() > 0) {
+                    characterData.append(data);
+                    continue;
+                }
+            }
+            
+            addCharacterData(compactedEvents, characterData);
+            compactedEvents.add(event);
+        }
+        addCharacterData(compactedEvents, characterData);
+        
+        return compactedEvents;
+    }
+    
+    private void addCharacterData(List<CharacterEvent> compactedEvents, StringBuilder characterData) {
+        if (characterData.length() > 0) {
+            compactedEvents.add(CharacterDataEventImpl.create(characterData.toString()));
+            characterData.setLength(0);
+        }
+    }
+
+    @Override
+    protected CharacterEvent prepareCachedEvent(CharacterEvent event) {
+        if ((this.encodeCharacterData || this.deflateCharacterData) && CharacterEventTypes.CHARACTER == event.getEventType()) {
+            final String data = ((CharacterDataEvent)event).getData();
+            final EncodedCharacterDataEvent encodedEvent = this.encodedEventCache.getIfPresent(data);
+            if (encodedEvent != null && (!this.deflateCharacterData || encodedEvent instanceof DeflatedCharacterDataEvent)) {
+                this.getCachedEventStats().recordInternedEvent();
+                return encodedEvent;
+            }
+            
+            final EncodedCharacterDataEvent newEncodedEvent;
+            if (this.deflateCharacterData) {
+                newEncodedEvent = DeflatedCharacterDataEventImpl.create((CharacterDataEvent)event, this.characterSet);
+                this.encodedEventCache.put(data, newEncodedEvent);
+                return newEncodedEvent;
+            }
+            
+            newEncodedEvent = EncodedCharacterDataEventImpl.create((CharacterDataEvent)event, this.characterSet);
+            final EncodedCharacterDataEvent existingEncodedEvent = this.encodedEventCache.asMap().putIfAbsent(data, newEncodedEvent);
+            if (existingEncodedEvent != null) {
+                this.getCachedEventStats().recordInternedEvent();
+                return existingEncodedEvent;
+            }
+            return newEncodedEvent;
+        }
+        
+        return event;
+    }
+
+    @Override
+    protected long estimateEventSize(CharacterEvent event) {
+        if (event instanceof DeflatedCharacterDataEvent) {
+            final DeflatedCharacterDataEvent deflatedEvent = (DeflatedCharacterDataEvent)event;
+            return OBJECT_OVERHEAD + REFERENCE_SIZE * 4 + estimateStringSize(deflatedEvent.getData().length()) 
+                    + OBJECT_OVERHEAD + deflatedEvent.getEncodedLength() + OBJECT_OVERHEAD + deflatedEvent.getDeflatedLength();
+        }
+        if (event instanceof EncodedCharacterDataEvent) {
+            final EncodedCharacterDataEvent encodedEvent = (EncodedCharacterDataEvent)event;
+            return OBJECT_OVERHEAD + REFERENCE_SIZE * 3 + estimateStringSize(encodedEvent.getData().length()) + OBJECT_OVERHEAD + encodedEvent.getEncodedLength();
+        }
+        if (CharacterEventTypes.CHARACTER == event.getEventType()) {
+            return OBJECT_OVERHEAD + REFERENCE_SIZE + estimateStringSize(((CharacterDataEvent)event).getData().length());
+        }
+        
+        return OBJECT_OVERHEAD + REFERENCE_SIZE * 2;
+    }
+
     @Override
     protected CharacterEventReader createEventReader(ListIterator<CharacterEvent> eventCache) {
         return new CharacterEventBufferReader(eventCache);
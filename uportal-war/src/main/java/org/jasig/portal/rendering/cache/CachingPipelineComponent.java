@@ -19,11 +19,15 @@
 
 package org.jasig.portal.rendering.cache;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -49,8 +53,21 @@ import org.springframework.beans.factory.annotation.Autowired;
  * @version $Revision$
  */
 public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWrapper<R, E> implements BeanNameAware {
+    /**
+     * Estimated size of an object reference
+     */
+    protected static final int REFERENCE_SIZE = 8;
+    /**
+     * Estimated size of an object header
+     */
+    protected static final int OBJECT_OVERHEAD = 16;
+    
     protected final Logger logger = LoggerFactory.getLogger(getClass());
     
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final CachedEventStats cachedEventStats = new CachedEventStats();
+    
     private ResourcesElementsProvider resourcesElementsProvider;
     private Ehcache cache;
     private String beanName;
@@ -68,6 +85,27 @@ public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWr
     public void setBeanName(String name) {
         this.beanName = name;
     }
+    
+    /**
+     * @return Number of requests served from the event cache
+     */
+    public final long getCacheHits() {
+        return this.cacheHits.get();
+    }
+    
+    /**
+     * @return Number of requests that had to call the wrapped component to populate the event cache
+     */
+    public final long getCacheMisses() {
+        return this.cacheMisses.get();
+    }
+
+    /**
+     * @return Event counts and estimated sizes of the event buffers cached by this component
+     */
+    public final CachedEventStats getCachedEventStats() {
+        return this.cachedEventStats;
+    }
 
     @Override
     public final CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
@@ -97,25 +135,42 @@ public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWr
         if (cachedEventReader == null) {
             //No cached data for key, call target component to get events and an updated cache key
             logger.debug("{} - No cached events found for key {}, calling parent", this.beanName, cacheKey);
+            this.cacheMisses.incrementAndGet();
             final PipelineEventReader<R, E> pipelineEventReader = this.wrappedComponent.getEventReader(request, response);
 
             //Copy the events from the reader into a buffer to be cached
-            final List<E> eventCache = new LinkedList<E>();
+            final List<E> eventBuffer = new ArrayList<E>();
             for (final E event : pipelineEventReader) {
-                //TODO add de-duplication logic here
-                eventCache.add(event);
+                eventBuffer.add(event);
+            }
+            
+            //Merge and de-duplicate the events to reduce the size of the cache entry
+            final List<E> eventCache = this.compactEvents(eventBuffer);
+            final Set<E> distinctEvents = Collections.newSetFromMap(new IdentityHashMap<E, Boolean>());
+            long estimatedSize = OBJECT_OVERHEAD + (long)REFERENCE_SIZE * eventCache.size();
+            for (final ListIterator<E> eventItr = eventCache.listIterator(); eventItr.hasNext(); ) {
+                final E event = this.prepareCachedEvent(eventItr.next());
+                eventItr.set(event);
+                
+                if (distinctEvents.add(event)) {
+                    estimatedSize += this.estimateEventSize(event);
+                }
             }
 
             final Map<String, String> outputProperties = pipelineEventReader.getOutputProperties();
-            cachedEventReader = new CachedEventReader<E>(eventCache, new LinkedHashMap<String, String>(outputProperties));
+            cachedEventReader = new CachedEventReader<E>(eventCache, new LinkedHashMap<String, String>(outputProperties), estimatedSize);
+            this.cachedEventStats.recordCachedEntry(eventBuffer.size(), eventCache.size(), estimatedSize);
 
             //Cache the buffer
             element = new Element(cacheKey, cachedEventReader);
             this.cache.put(element);
-            logger.debug("{} - Cached {} events for key {}", this.beanName, eventCache.size(), cacheKey);
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} - Cached {} events ({} before compaction, ~{} bytes) for key {}", new Object[] { this.beanName, eventCache.size(), eventBuffer.size(), estimatedSize, cacheKey });
+            }
         }
         else {
             logger.debug("{} - Found cached events for key {}", this.beanName, cacheKey);
+            this.cacheHits.incrementAndGet();
         }
 
         final List<E> eventCache = cachedEventReader.getEventCache();
@@ -125,6 +180,39 @@ public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWr
         return new PipelineEventReaderImpl<R, E>(eventReader, outputProperties);
     }
     
+    /**
+     * Called with the complete list of events read from the wrapped component before it is
+     * cached, allows subclasses to merge adjacent events. The returned list must be modifiable.
+     * Default implementation returns the list unmodified.
+     */
+    protected List<E> compactEvents(List<E> events) {
+        return events;
+    }
+    
+    /**
+     * Called for each event before it is added to the event cache, allows subclasses to
+     * replace the event with an interned instance or a form that is cheaper to replay.
+     * Default implementation returns the event unmodified.
+     */
+    protected E prepareCachedEvent(E event) {
+        return event;
+    }
+    
+    /**
+     * Estimate the heap used by the event in bytes, used for cache entry size reporting.
+     * Each distinct event instance in a cache entry is only counted once.
+     */
+    protected long estimateEventSize(E event) {
+        return OBJECT_OVERHEAD;
+    }
+    
+    /**
+     * Estimate the heap used by a String of the specified length
+     */
+    protected static long estimateStringSize(int length) {
+        return OBJECT_OVERHEAD * 2 + 8 + 2L * length;
+    }
+    
     //Ugly!!! Needed because XMLEventReader implements Iterator but does not parameterize it
     protected abstract R createEventReader(ListIterator<E> eventCache);
 }
@@ -21,12 +21,17 @@ package org.jasig.portal.rendering.cache;
 
 import java.util.ListIterator;
 
+import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.events.XMLEvent;
 
 import org.jasig.portal.rendering.StAXPipelineComponent;
 import org.jasig.portal.xml.stream.XMLEventBufferReader;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * component that can cache StAX pipeline events
  * 
@@ -34,6 +39,91 @@ import org.jasig.portal.xml.stream.XMLEventBufferReader;
  * @version $Revision$
  */
 public class CachingStAXPipelineComponent extends CachingPipelineComponent<XMLEventReader, XMLEvent> implements StAXPipelineComponent {
+    /*
+     * Shares identical events between cache entries, weak values so it is never the cause of object retention.
+     * Keyed on a hash of the event content so the key doesn't hold a second copy of the text, events with
+     * colliding hashes are compared by content before they are shared.
+     */
+    private final Cache<Integer, XMLEvent> internedEventCache = CacheBuilder.newBuilder()
+            .weakValues()
+            .build();
+
+    /**
+     * Replaces end element and character events with a previously cached event that
+     * has identical content, if one exists. Start elements are not shared, their in-scope
+     * namespace context can't be compared by value.
+     */
+    @Override
+    protected XMLEvent prepareCachedEvent(XMLEvent event) {
+        if (!isInternable(event)) {
+            return event;
+        }
+        
+        final XMLEvent existingEvent = this.internedEventCache.asMap().putIfAbsent(getContentHash(event), event);
+        if (existingEvent != null && isContentEqual(event, existingEvent)) {
+            this.getCachedEventStats().recordInternedEvent();
+            return existingEvent;
+        }
+        return event;
+    }
+
+    @Override
+    protected long estimateEventSize(XMLEvent event) {
+        if (event.isCharacters()) {
+            return OBJECT_OVERHEAD * 2 + estimateStringSize(event.asCharacters().getData().length());
+        }
+        
+        return OBJECT_OVERHEAD * 4;
+    }
+
+    /**
+     * @return true if the event can be shared between cache entries
+     */
+    protected boolean isInternable(XMLEvent event) {
+        switch (event.getEventType()) {
+            case XMLStreamConstants.END_ELEMENT:
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.CDATA: {
+                return true;
+            }
+            default: {
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * @return Hash of the content of an internable event
+     */
+    protected int getContentHash(XMLEvent event) {
+        final int eventType = event.getEventType();
+        if (eventType == XMLStreamConstants.END_ELEMENT) {
+            final QName name = event.asEndElement().getName();
+            return (eventType * 31 + name.hashCode()) * 31 + name.getPrefix().hashCode();
+        }
+        
+        return eventType * 31 + event.asCharacters().getData().hashCode();
+    }
+    
+    /**
+     * @return true if the two internable events have identical content
+     */
+    protected boolean isContentEqual(XMLEvent event, XMLEvent other) {
+        final int eventType = event.getEventType();
+        if (eventType != other.getEventType()) {
+            return false;
+        }
+        
+        if (eventType == XMLStreamConstants.END_ELEMENT) {
+            //QName equality ignores the prefix
+            final QName name = event.asEndElement().getName();
+            final QName otherName = other.asEndElement().getName();
+            return name.equals(otherName) && name.getPrefix().equals(otherName.getPrefix());
+        }
+        
+        return event.asCharacters().getData().equals(other.asCharacters().getData());
+    }
 
     @Override
     protected XMLEventReader createEventReader(ListIterator<XMLEvent> eventCache) {
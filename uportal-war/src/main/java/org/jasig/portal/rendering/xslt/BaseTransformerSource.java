@@ -101,7 +101,7 @@ public abstract class BaseTransformerSource implements TransformerSource, Resour
     public final Transformer getTransformer(HttpServletRequest request, HttpServletResponse response) {
         final Resource stylesheetResource = this.getStylesheetResource(request);
         try {
-            return this.xmlUtilities.getTransformer(stylesheetResource);
+            return this.xmlUtilities.borrowTransformer(stylesheetResource);
         }
         catch (TransformerConfigurationException e) {
             throw new RuntimeException("Failed to get Transformer for stylesheet: " + stylesheetResource, e);
@@ -111,6 +111,14 @@ public abstract class BaseTransformerSource implements TransformerSource, Resour
         }
     }
     
+    /* (non-Javadoc)
+     * @see org.jasig.portal.rendering.xslt.TransformerSource#releaseTransformer(javax.xml.transform.Transformer, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    public final void releaseTransformer(Transformer transformer, HttpServletRequest request, HttpServletResponse response) {
+        this.xmlUtilities.returnTransformer(transformer);
+    }
+    
     /**
      * Get the stylesheet description from the user preferences
      */
@@ -0,0 +1,118 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.rendering.xslt;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jasig.portal.layout.dao.IStylesheetDescriptorDao;
+import org.jasig.portal.layout.om.IStylesheetDescriptor;
+import org.jasig.portal.xml.XmlUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * Compiles the stylesheet of every {@link IStylesheetDescriptor} once the application context has
+ * been refreshed so that the first requests after startup don't pay the XSLT compilation cost.
+ * Failures are logged and do not prevent startup.
+ */
+public class StylesheetTemplatesWarmer implements ApplicationListener<ContextRefreshedEvent>, ResourceLoaderAware {
+    protected final Logger logger = LoggerFactory.getLogger(this.getClass());
+    
+    private final AtomicBoolean warmed = new AtomicBoolean(false);
+    private IStylesheetDescriptorDao stylesheetDescriptorDao;
+    private XmlUtilities xmlUtilities;
+    private ResourceLoader resourceLoader;
+    private boolean enabled = true;
+
+    @Autowired
+    public void setStylesheetDescriptorDao(IStylesheetDescriptorDao stylesheetDescriptorDao) {
+        this.stylesheetDescriptorDao = stylesheetDescriptorDao;
+    }
+
+    @Autowired
+    public void setXmlUtilities(XmlUtilities xmlUtilities) {
+        this.xmlUtilities = xmlUtilities;
+    }
+
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    /**
+     * If stylesheets should be compiled at startup, defaults to true
+     */
+    @Value("${org.jasig.portal.rendering.xslt.StylesheetTemplatesWarmer.enabled:true}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        //Child contexts also publish refresh events, only warm up once
+        if (!this.enabled || !this.warmed.compareAndSet(false, true)) {
+            return;
+        }
+        
+        this.warmStylesheets();
+    }
+
+    /**
+     * Compile the stylesheets of all stylesheet descriptors
+     * 
+     * @return The number of stylesheets compiled
+     */
+    public int warmStylesheets() {
+        final List<? extends IStylesheetDescriptor> stylesheetDescriptors;
+        try {
+            stylesheetDescriptors = this.stylesheetDescriptorDao.getStylesheetDescriptors();
+        }
+        catch (RuntimeException e) {
+            //Most likely the database has not been initialized yet
+            this.logger.warn("Failed to load stylesheet descriptors, stylesheets will be compiled on first use", e);
+            return 0;
+        }
+        
+        final long start = System.currentTimeMillis();
+        int compiled = 0;
+        for (final IStylesheetDescriptor stylesheetDescriptor : stylesheetDescriptors) {
+            final String stylesheetResource = stylesheetDescriptor.getStylesheetResource();
+            try {
+                final Resource resource = this.resourceLoader.getResource(stylesheetResource);
+                this.xmlUtilities.getTemplates(resource);
+                compiled++;
+            }
+            catch (Exception e) {
+                this.logger.warn("Failed to compile stylesheet " + stylesheetResource + " for stylesheet descriptor " + stylesheetDescriptor.getName(), e);
+            }
+        }
+        
+        this.logger.info("Compiled {} of {} stylesheets in {}ms", new Object[] { compiled, stylesheetDescriptors.size(), System.currentTimeMillis() - start });
+        return compiled;
+    }
+}
@@ -35,6 +35,12 @@ public interface TransformerSource {
      */
     public Transformer getTransformer(HttpServletRequest request, HttpServletResponse response);
     
+    /**
+     * Called once the Transformer returned by {@link #getTransformer(HttpServletRequest, HttpServletResponse)}
+     * is no longer in use, allowing it to be reused.
+     */
+    public void releaseTransformer(Transformer transformer, HttpServletRequest request, HttpServletResponse response);
+    
     /**
      * Gets the CacheKey for the Transformer
      */
@@ -20,7 +20,9 @@
 package  org.jasig.portal.security.mvc;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -28,12 +30,21 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.jasig.portal.layout.IUserLayoutManager;
+import org.jasig.portal.layout.node.IUserLayoutNodeDescription;
+import org.jasig.portal.layout.node.IUserLayoutNodeDescription.LayoutNodeType;
+import org.jasig.portal.portlet.rendering.IPortletExecutionManager;
 import org.jasig.portal.security.IPerson;
 import org.jasig.portal.security.IPersonManager;
 import org.jasig.portal.url.IPortalUrlBuilder;
 import org.jasig.portal.url.IPortalUrlProvider;
+import org.jasig.portal.url.IUrlNodeSyntaxHelper;
+import org.jasig.portal.url.IUrlNodeSyntaxHelperRegistry;
 import org.jasig.portal.url.UrlType;
+import org.jasig.portal.user.IUserInstance;
+import org.jasig.portal.user.IUserInstanceManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 
@@ -62,6 +73,11 @@ public class LoginController {
     
     private IPortalUrlProvider portalUrlProvider;
     private IPersonManager personManager;
+    private IUserInstanceManager userInstanceManager;
+    private IUrlNodeSyntaxHelperRegistry urlNodeSyntaxHelperRegistry;
+    private IPortletExecutionManager portletExecutionManager;
+    private boolean prefetchEnabled = false;
+    private int maxPrefetchPortlets = 20;
 
     @Autowired
     public void setPersonManager(IPersonManager personManager) {
@@ -73,6 +89,37 @@ public class LoginController {
         this.portalUrlProvider = portalUrlProvider;
     }
 
+    @Autowired
+    public void setUserInstanceManager(IUserInstanceManager userInstanceManager) {
+        this.userInstanceManager = userInstanceManager;
+    }
+
+    @Autowired
+    public void setUrlNodeSyntaxHelperRegistry(IUrlNodeSyntaxHelperRegistry urlNodeSyntaxHelperRegistry) {
+        this.urlNodeSyntaxHelperRegistry = urlNodeSyntaxHelperRegistry;
+    }
+
+    @Autowired
+    public void setPortletExecutionManager(IPortletExecutionManager portletExecutionManager) {
+        this.portletExecutionManager = portletExecutionManager;
+    }
+
+    /**
+     * @param prefetchEnabled If the portlets on the default tab should be rendered while the login redirect is followed. Defaults to false
+     */
+    @Value("${org.jasig.portal.portlet.loginPrefetch.enabled:false}")
+    public void setPrefetchEnabled(boolean prefetchEnabled) {
+        this.prefetchEnabled = prefetchEnabled;
+    }
+
+    /**
+     * @param maxPrefetchPortlets Maximum number of portlets rendered during login. Defaults to 20
+     */
+    @Value("${org.jasig.portal.portlet.loginPrefetch.maxPortlets:20}")
+    public void setMaxPrefetchPortlets(int maxPrefetchPortlets) {
+        this.maxPrefetchPortlets = maxPrefetchPortlets;
+    }
+
 
     /**
      * Process the incoming HttpServletRequest
@@ -89,6 +136,7 @@ public class LoginController {
 
         // create the redirect URL, adding fname and args parameters if necessary
         String redirectTarget = null;
+        boolean defaultTarget = false;
 
         final String refUrl = request.getParameter(REFERER_URL_PARAM);
         if (refUrl != null) {
@@ -110,6 +158,7 @@ public class LoginController {
             if (targetFname == null) {
                 final IPortalUrlBuilder defaultUrl = this.portalUrlProvider.getDefaultUrl(request);
                 redirectTarget = defaultUrl.getUrlString();
+                defaultTarget = true;
             }
             else {
                 try {
@@ -150,8 +199,72 @@ public class LoginController {
         }
 
         final String encodedRedirectURL = response.encodeRedirectURL(redirectTarget);
+        
+        final List<String> prefetchSubscribeIds;
+        if (this.prefetchEnabled && defaultTarget && person != null && person.getSecurityContext().isAuthenticated()) {
+            prefetchSubscribeIds = this.getDefaultTabPortlets(request);
+        }
+        else {
+            prefetchSubscribeIds = null;
+        }
+        
+        if (prefetchSubscribeIds != null && !prefetchSubscribeIds.isEmpty()) {
+            //Render the default tab's portlets while the browser follows the redirect, the request for the default tab picks up the output
+            try {
+                this.portletExecutionManager.startPortletPrefetch(prefetchSubscribeIds, redirectTarget, request);
+            }
+            catch (RuntimeException e) {
+                //Prefetching is an optimization, it must never prevent login
+                log.warn("Failed to start prefetching the portlets on the default tab", e);
+            }
+        }
+        
         response.sendRedirect(encodedRedirectURL);
-
+    }
+    
+    /**
+     * @return The subscribe ids of the portlets on the user's default tab, in layout order
+     */
+    protected List<String> getDefaultTabPortlets(HttpServletRequest request) {
+        final List<String> subscribeIds = new ArrayList<String>();
+        try {
+            final IUrlNodeSyntaxHelper urlNodeSyntaxHelper = this.urlNodeSyntaxHelperRegistry.getCurrentUrlNodeSyntaxHelper(request);
+            final String defaultLayoutNodeId = urlNodeSyntaxHelper.getDefaultLayoutNodeId(request);
+            if (defaultLayoutNodeId == null) {
+                return subscribeIds;
+            }
+            
+            final IUserInstance userInstance = this.userInstanceManager.getUserInstance(request);
+            final IUserLayoutManager userLayoutManager = userInstance.getPreferencesManager().getUserLayoutManager();
+            this.addLayoutPortlets(userLayoutManager, defaultLayoutNodeId, subscribeIds);
+        }
+        catch (RuntimeException e) {
+            //Prefetching is an optimization, it must never prevent login
+            log.warn("Failed to determine the portlets to prefetch for the default tab, no portlets will be prefetched", e);
+            subscribeIds.clear();
+        }
+        
+        return subscribeIds;
+    }
+    
+    private void addLayoutPortlets(IUserLayoutManager userLayoutManager, String nodeId, List<String> subscribeIds) {
+        if (subscribeIds.size() >= this.maxPrefetchPortlets) {
+            return;
+        }
+        
+        final IUserLayoutNodeDescription node = userLayoutManager.getNode(nodeId);
+        if (node == null || node.isHidden()) {
+            return;
+        }
+        
+        if (node.getType() == LayoutNodeType.PORTLET) {
+            subscribeIds.add(nodeId);
+        }
+        else if (node.getType() == LayoutNodeType.FOLDER) {
+            for (final Enumeration<String> childIds = userLayoutManager.getChildIds(nodeId); childIds.hasMoreElements();) {
+                this.addLayoutPortlets(userLayoutManager, childIds.nextElement(), subscribeIds);
+            }
+        }
     }
 
 
@@ -0,0 +1,169 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of non-negative long values using power of two buckets. Recording a value
+ * is a handful of atomic increments so it is cheap enough to be used on every request. Percentiles
+ * are approximated by the upper bound of the bucket they fall in.
+ */
+public final class Histogram {
+    private static final int BUCKETS = 64;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    /**
+     * Record a value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        
+        this.buckets.incrementAndGet(getBucket(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+        
+        long currentMax;
+        while (value > (currentMax = this.max.get())) {
+            if (this.max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Clear all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets.set(i, 0);
+        }
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+    
+    /**
+     * @return A point in time view of the histogram, values recorded while the snapshot is taken may be partially included
+     */
+    public Snapshot getSnapshot() {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+        
+        final long maxValue = this.max.get();
+        return new Snapshot(total, this.sum.get(), maxValue, 
+                getPercentile(counts, total, .5, maxValue), 
+                getPercentile(counts, total, .9, maxValue), 
+                getPercentile(counts, total, .99, maxValue));
+    }
+    
+    /**
+     * Bucket 0 holds 0, bucket n holds values in [2^(n-1), 2^n)
+     */
+    static int getBucket(long value) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+    
+    private static long getPercentile(long[] counts, long total, double percentile, long maxValue) {
+        if (total == 0) {
+            return 0;
+        }
+        
+        final long target = (long)Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                final long upperBound = i == 0 ? 0 : (1L << i) - 1;
+                return Math.min(upperBound, maxValue);
+            }
+        }
+        return maxValue;
+    }
+    
+    /**
+     * Immutable view of a {@link Histogram}
+     */
+    public static final class Snapshot {
+        private final long count;
+        private final long sum;
+        private final long max;
+        private final long median;
+        private final long percentile90;
+        private final long percentile99;
+        
+        Snapshot(long count, long sum, long max, long median, long percentile90, long percentile99) {
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+            this.median = median;
+            this.percentile90 = percentile90;
+            this.percentile99 = percentile99;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        public long getSum() {
+            return this.sum;
+        }
+
+        public long getMax() {
+            return this.max;
+        }
+
+        public long getMean() {
+            if (this.count == 0) {
+                return 0;
+            }
+            return this.sum / this.count;
+        }
+
+        public long getMedian() {
+            return this.median;
+        }
+
+        public long getPercentile90() {
+            return this.percentile90;
+        }
+
+        public long getPercentile99() {
+            return this.percentile99;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot [count=" + this.count + ", mean=" + this.getMean() + ", median=" + this.median
+                    + ", percentile90=" + this.percentile90 + ", percentile99=" + this.percentile99 + ", max=" + this.max + "]";
+        }
+    }
+}
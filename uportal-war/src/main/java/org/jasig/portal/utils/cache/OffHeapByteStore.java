@@ -0,0 +1,247 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.utils.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Byte oriented store that keeps values in direct (off-heap) memory so they do not add to the
+ * garbage collected heap. Memory is allocated lazily in slabs up to a fixed byte budget and
+ * divided into fixed size blocks, each value uses as many blocks as needed. When the budget is
+ * exhausted the least recently used values are evicted.
+ * <p>
+ * All methods are synchronized, values are copied in and out of the store so the cost of holding
+ * the lock is a memory copy.
+ */
+public class OffHeapByteStore<K> {
+    /**
+     * Default size of each block in bytes
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    
+    private static final int DEFAULT_MAX_SLAB_SIZE = 64 * 1024 * 1024;
+    
+    private final String name;
+    private final long byteBudget;
+    private final int blockSize;
+    private final int blocksPerSlab;
+    private final int totalBlocks;
+    private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+    private final LinkedHashMap<K, StoredValue> values = new LinkedHashMap<K, StoredValue>(16, .75f, true);
+    
+    private int[] freeBlocks = new int[64];
+    private int freeBlockCount = 0;
+    private int allocatedBlocks = 0;
+    private int usedBlocks = 0;
+    private long storedBytes = 0;
+    
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long putCount = 0;
+    private long evictionCount = 0;
+    private long rejectedCount = 0;
+    
+    public OffHeapByteStore(String name, long byteBudget) {
+        this(name, byteBudget, DEFAULT_BLOCK_SIZE);
+    }
+    
+    public OffHeapByteStore(String name, long byteBudget, int blockSize) {
+        this(name, byteBudget, blockSize, DEFAULT_MAX_SLAB_SIZE);
+    }
+    
+    OffHeapByteStore(String name, long byteBudget, int blockSize, int maxSlabSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be greater than 0: " + blockSize);
+        }
+        if (byteBudget < blockSize) {
+            throw new IllegalArgumentException("byteBudget must be at least blockSize (" + blockSize + "): " + byteBudget);
+        }
+        
+        this.name = name;
+        this.blockSize = blockSize;
+        this.totalBlocks = (int)Math.min(Integer.MAX_VALUE, byteBudget / blockSize);
+        this.byteBudget = (long)this.totalBlocks * blockSize;
+        this.blocksPerSlab = Math.max(1, Math.min(this.totalBlocks, maxSlabSize / blockSize));
+    }
+    
+    /**
+     * Store a copy of the data, replacing any existing value for the key. Least recently used values
+     * are evicted as needed to make room.
+     * 
+     * @return true if the data was stored, false if it is larger than the entire store
+     */
+    public synchronized boolean put(K key, byte[] data) {
+        this.remove(key);
+        
+        final int requiredBlocks = (data.length + this.blockSize - 1) / this.blockSize;
+        if (requiredBlocks > this.totalBlocks) {
+            this.rejectedCount++;
+            return false;
+        }
+        
+        //Evict least recently used values until there is room
+        final Iterator<StoredValue> valueItr = this.values.values().iterator();
+        while (this.totalBlocks - this.usedBlocks < requiredBlocks) {
+            final StoredValue evicted = valueItr.next();
+            valueItr.remove();
+            this.free(evicted);
+            this.evictionCount++;
+        }
+        
+        final int[] blocks = new int[requiredBlocks];
+        for (int i = 0; i < requiredBlocks; i++) {
+            final int block = this.allocateBlock();
+            blocks[i] = block;
+            
+            final int offset = i * this.blockSize;
+            final ByteBuffer slab = this.getSlab(block);
+            slab.position(this.getBlockOffset(block));
+            slab.put(data, offset, Math.min(this.blockSize, data.length - offset));
+        }
+        
+        this.values.put(key, new StoredValue(blocks, data.length));
+        this.usedBlocks += requiredBlocks;
+        this.storedBytes += data.length;
+        this.putCount++;
+        return true;
+    }
+    
+    /**
+     * @return A copy of the data stored for the key, null if there is no data for the key
+     */
+    public synchronized byte[] get(K key) {
+        final StoredValue storedValue = this.values.get(key);
+        if (storedValue == null) {
+            this.missCount++;
+            return null;
+        }
+        this.hitCount++;
+        
+        final byte[] data = new byte[storedValue.length];
+        for (int i = 0; i < storedValue.blocks.length; i++) {
+            final int block = storedValue.blocks[i];
+            
+            final int offset = i * this.blockSize;
+            final ByteBuffer slab = this.getSlab(block);
+            slab.position(this.getBlockOffset(block));
+            slab.get(data, offset, Math.min(this.blockSize, data.length - offset));
+        }
+        
+        return data;
+    }
+    
+    /**
+     * @return true if there was data stored for the key
+     */
+    public synchronized boolean remove(K key) {
+        final StoredValue storedValue = this.values.remove(key);
+        if (storedValue == null) {
+            return false;
+        }
+        
+        this.free(storedValue);
+        return true;
+    }
+    
+    /**
+     * Remove all data from the store, allocated memory is kept for reuse
+     */
+    public synchronized void clear() {
+        for (final StoredValue storedValue : this.values.values()) {
+            this.free(storedValue);
+        }
+        this.values.clear();
+    }
+    
+    /**
+     * @return A snapshot of the store's usage statistics
+     */
+    public synchronized OffHeapByteStoreStatistics getStatistics() {
+        return new OffHeapByteStoreStatistics(this.name, this.byteBudget, (long)this.allocatedBlocks * this.blockSize,
+                (long)this.usedBlocks * this.blockSize, this.storedBytes, this.values.size(), this.hitCount,
+                this.missCount, this.putCount, this.evictionCount, this.rejectedCount);
+    }
+    
+    /**
+     * @return The number of values in the store
+     */
+    public synchronized int size() {
+        return this.values.size();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+    
+    private void free(StoredValue storedValue) {
+        for (final int block : storedValue.blocks) {
+            if (this.freeBlockCount == this.freeBlocks.length) {
+                final int[] newFreeBlocks = new int[this.freeBlocks.length * 2];
+                System.arraycopy(this.freeBlocks, 0, newFreeBlocks, 0, this.freeBlockCount);
+                this.freeBlocks = newFreeBlocks;
+            }
+            this.freeBlocks[this.freeBlockCount++] = block;
+        }
+        
+        this.usedBlocks -= storedValue.blocks.length;
+        this.storedBytes -= storedValue.length;
+    }
+    
+    private int allocateBlock() {
+        if (this.freeBlockCount > 0) {
+            return this.freeBlocks[--this.freeBlockCount];
+        }
+        
+        //Allocate a new slab when all blocks in the existing slabs are in use
+        if (this.allocatedBlocks == this.slabs.size() * this.blocksPerSlab) {
+            final int slabBlocks = Math.min(this.blocksPerSlab, this.totalBlocks - this.allocatedBlocks);
+            this.slabs.add(ByteBuffer.allocateDirect(slabBlocks * this.blockSize));
+        }
+        
+        return this.allocatedBlocks++;
+    }
+    
+    private ByteBuffer getSlab(int block) {
+        return this.slabs.get(block / this.blocksPerSlab);
+    }
+    
+    private int getBlockOffset(int block) {
+        return (block % this.blocksPerSlab) * this.blockSize;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapByteStore [name=" + this.name + ", byteBudget=" + this.byteBudget + ", blockSize=" + this.blockSize + "]";
+    }
+
+    private static final class StoredValue {
+        private final int[] blocks;
+        private final int length;
+        
+        public StoredValue(int[] blocks, int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.utils.cache;
+
+/**
+ * Point in time usage statistics for an {@link OffHeapByteStore}
+ */
+public class OffHeapByteStoreStatistics {
+    private final String name;
+    private final long byteBudget;
+    private final long allocatedBytes;
+    private final long usedBytes;
+    private final long storedBytes;
+    private final int entryCount;
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long evictionCount;
+    private final long rejectedCount;
+    
+    public OffHeapByteStoreStatistics(String name, long byteBudget, long allocatedBytes, long usedBytes,
+            long storedBytes, int entryCount, long hitCount, long missCount, long putCount, long evictionCount,
+            long rejectedCount) {
+        this.name = name;
+        this.byteBudget = byteBudget;
+        this.allocatedBytes = allocatedBytes;
+        this.usedBytes = usedBytes;
+        this.storedBytes = storedBytes;
+        this.entryCount = entryCount;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.evictionCount = evictionCount;
+        this.rejectedCount = rejectedCount;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return Maximum number of bytes the store can allocate
+     */
+    public long getByteBudget() {
+        return this.byteBudget;
+    }
+
+    /**
+     * @return Number of bytes of direct memory allocated by the store
+     */
+    public long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    /**
+     * @return Number of bytes in blocks that are holding data
+     */
+    public long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    /**
+     * @return Number of bytes of data held by the store, the difference from {@link #getUsedBytes()} is block fragmentation
+     */
+    public long getStoredBytes() {
+        return this.storedBytes;
+    }
+
+    public int getEntryCount() {
+        return this.entryCount;
+    }
+
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    public long getMissCount() {
+        return this.missCount;
+    }
+
+    public long getPutCount() {
+        return this.putCount;
+    }
+
+    /**
+     * @return Number of values removed to make room for new values
+     */
+    public long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     * @return Number of values that were not stored because they are larger than the byte budget
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapByteStoreStatistics [name=" + this.name + ", byteBudget=" + this.byteBudget
+                + ", allocatedBytes=" + this.allocatedBytes + ", usedBytes=" + this.usedBytes + ", storedBytes="
+                + this.storedBytes + ", entryCount=" + this.entryCount + ", hitCount=" + this.hitCount
+                + ", missCount=" + this.missCount + ", putCount=" + this.putCount + ", evictionCount="
+                + this.evictionCount + ", rejectedCount=" + this.rejectedCount + "]";
+    }
+}
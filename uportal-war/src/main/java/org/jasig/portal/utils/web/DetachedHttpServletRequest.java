@@ -0,0 +1,663 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.utils.web;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.security.Principal;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.Part;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * A snapshot of a {@link HttpServletRequest} that does not reference the source request
+ * once constructed. Used for work that has to outlive the request that started it, the
+ * container is free to recycle the source request as soon as it completes.
+ * <p>
+ * Request attributes are copied by reference, the request body is not copied. Container
+ * managed roles are not available, {@link #isUserInRole(String)} always returns false.
+ * <p>
+ * A copy can also be re-targeted at another URL in the same web application, as if the client
+ * had followed a redirect to that URL. Attributes and parameters of the source request describe
+ * the source URL and are not copied to a re-targeted request.
+ */
+public class DetachedHttpServletRequest implements HttpServletRequest {
+    private static final String RFC1123_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+    
+    private final ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+    private final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+    private final Map<String, String[]> parameters;
+    private final List<Locale> locales;
+    private final Cookie[] cookies;
+    private final String authType;
+    private final String contentType;
+    private final String contextPath;
+    private final String localAddr;
+    private final String localName;
+    private final int localPort;
+    private final String method;
+    private final String pathInfo;
+    private final String pathTranslated;
+    private final String protocol;
+    private final String queryString;
+    private final String remoteAddr;
+    private final String remoteHost;
+    private final int remotePort;
+    private final String remoteUser;
+    private final String requestedSessionId;
+    private final boolean requestedSessionIdFromCookie;
+    private final boolean requestedSessionIdFromURL;
+    private final String requestURI;
+    private final String requestURL;
+    private final String scheme;
+    private final String serverName;
+    private final int serverPort;
+    private final String servletPath;
+    private final HttpSession session;
+    private final Principal userPrincipal;
+    private final boolean secure;
+    private final ServletContext servletContext;
+    private volatile String characterEncoding;
+
+    /**
+     * Create a copy of the request
+     */
+    public DetachedHttpServletRequest(HttpServletRequest request) {
+        this(request, null);
+    }
+
+    /**
+     * Create a copy of the request re-targeted at the specified URL
+     * 
+     * @param request The request to copy
+     * @param targetUrl Server relative URL, including the context path, for the copy to request. If null the copy requests the same URL as the source.
+     */
+    public DetachedHttpServletRequest(HttpServletRequest request, String targetUrl) {
+        Validate.notNull(request, "request can not be null");
+        
+        if (targetUrl == null) {
+            for (final Enumeration<String> names = request.getAttributeNames(); names.hasMoreElements();) {
+                final String name = names.nextElement();
+                final Object value = request.getAttribute(name);
+                if (value != null) {
+                    this.attributes.put(name, value);
+                }
+            }
+        }
+        else {
+            //Each request needs its own mutex, see RequestAttributeMutexListener
+            this.attributes.put(PortalWebUtils.REQUEST_MUTEX_ATTRIBUTE, new Object());
+        }
+        
+        for (final Enumeration<String> names = request.getHeaderNames(); names != null && names.hasMoreElements();) {
+            final String name = names.nextElement();
+            final List<String> values = new ArrayList<String>();
+            for (final Enumeration<String> headerValues = request.getHeaders(name); headerValues != null && headerValues.hasMoreElements();) {
+                values.add(headerValues.nextElement());
+            }
+            this.headers.put(name, Collections.unmodifiableList(values));
+        }
+        if (targetUrl != null) {
+            //The re-targeted request has no body
+            this.headers.remove("Content-Type");
+            this.headers.remove("Content-Length");
+        }
+        
+        if (targetUrl == null) {
+            final Map<String, String[]> parameterMap = new LinkedHashMap<String, String[]>();
+            for (final Map.Entry<String, String[]> parameterEntry : request.getParameterMap().entrySet()) {
+                parameterMap.put(parameterEntry.getKey(), parameterEntry.getValue().clone());
+            }
+            this.parameters = Collections.unmodifiableMap(parameterMap);
+            
+            this.contentType = request.getContentType();
+            this.method = request.getMethod();
+            this.pathInfo = request.getPathInfo();
+            this.pathTranslated = request.getPathTranslated();
+            this.queryString = request.getQueryString();
+            this.requestURI = request.getRequestURI();
+            this.requestURL = request.getRequestURL().toString();
+            this.servletPath = request.getServletPath();
+        }
+        else {
+            final int queryIndex = targetUrl.indexOf('?');
+            final String targetPath = queryIndex < 0 ? targetUrl : targetUrl.substring(0, queryIndex);
+            final String targetQuery = queryIndex < 0 ? null : targetUrl.substring(queryIndex + 1);
+            
+            final String contextPath = request.getContextPath();
+            Validate.isTrue(targetPath.startsWith(contextPath), "targetUrl must start with the context path " + contextPath + ": " + targetUrl);
+            
+            this.parameters = Collections.unmodifiableMap(parseQueryString(targetQuery));
+            this.contentType = null;
+            this.method = "GET";
+            this.pathInfo = null;
+            this.pathTranslated = null;
+            this.queryString = targetQuery;
+            this.requestURI = targetPath;
+            this.requestURL = getServerUrl(request) + targetPath;
+            this.servletPath = targetPath.substring(contextPath.length());
+        }
+        
+        final List<Locale> localeList = new ArrayList<Locale>();
+        for (final Enumeration<Locale> requestLocales = request.getLocales(); requestLocales.hasMoreElements();) {
+            localeList.add(requestLocales.nextElement());
+        }
+        this.locales = Collections.unmodifiableList(localeList);
+        
+        final Cookie[] requestCookies = request.getCookies();
+        if (requestCookies == null) {
+            this.cookies = null;
+        }
+        else {
+            this.cookies = new Cookie[requestCookies.length];
+            for (int i = 0; i < requestCookies.length; i++) {
+                this.cookies[i] = (Cookie) requestCookies[i].clone();
+            }
+        }
+        
+        this.authType = request.getAuthType();
+        this.characterEncoding = request.getCharacterEncoding();
+        this.contextPath = request.getContextPath();
+        this.localAddr = request.getLocalAddr();
+        this.localName = request.getLocalName();
+        this.localPort = request.getLocalPort();
+        this.protocol = request.getProtocol();
+        this.remoteAddr = request.getRemoteAddr();
+        this.remoteHost = request.getRemoteHost();
+        this.remotePort = request.getRemotePort();
+        this.remoteUser = request.getRemoteUser();
+        this.requestedSessionId = request.getRequestedSessionId();
+        this.requestedSessionIdFromCookie = request.isRequestedSessionIdFromCookie();
+        this.requestedSessionIdFromURL = request.isRequestedSessionIdFromURL();
+        this.scheme = request.getScheme();
+        this.serverName = request.getServerName();
+        this.serverPort = request.getServerPort();
+        this.session = request.getSession(false);
+        this.userPrincipal = request.getUserPrincipal();
+        this.secure = request.isSecure();
+        this.servletContext = request.getServletContext();
+    }
+
+    private static Map<String, String[]> parseQueryString(String queryString) {
+        final Map<String, List<String>> parameterValues = new LinkedHashMap<String, List<String>>();
+        if (queryString != null) {
+            for (final String parameter : queryString.split("&")) {
+                if (parameter.length() == 0) {
+                    continue;
+                }
+                
+                final int valueIndex = parameter.indexOf('=');
+                final String name = decode(valueIndex < 0 ? parameter : parameter.substring(0, valueIndex));
+                final String value = valueIndex < 0 ? "" : decode(parameter.substring(valueIndex + 1));
+                
+                List<String> values = parameterValues.get(name);
+                if (values == null) {
+                    values = new ArrayList<String>(1);
+                    parameterValues.put(name, values);
+                }
+                values.add(value);
+            }
+        }
+        
+        final Map<String, String[]> parameterMap = new LinkedHashMap<String, String[]>();
+        for (final Map.Entry<String, List<String>> parameterEntry : parameterValues.entrySet()) {
+            final List<String> values = parameterEntry.getValue();
+            parameterMap.put(parameterEntry.getKey(), values.toArray(new String[values.size()]));
+        }
+        return parameterMap;
+    }
+    
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 must be supported", e);
+        }
+    }
+    
+    private static String getServerUrl(HttpServletRequest request) {
+        final String scheme = request.getScheme();
+        final int port = request.getServerPort();
+        
+        final StringBuilder serverUrl = new StringBuilder();
+        serverUrl.append(scheme).append("://").append(request.getServerName());
+        if (port > 0 && !(("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443))) {
+            serverUrl.append(':').append(port);
+        }
+        return serverUrl.toString();
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return this.attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        return Collections.enumeration(new ArrayList<String>(this.attributes.keySet()));
+    }
+
+    @Override
+    public void setAttribute(String name, Object o) {
+        if (o == null) {
+            this.attributes.remove(name);
+        }
+        else {
+            this.attributes.put(name, o);
+        }
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        this.attributes.remove(name);
+    }
+
+    @Override
+    public String getHeader(String name) {
+        final List<String> values = this.headers.get(name);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return values.get(0);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        final List<String> values = this.headers.get(name);
+        if (values == null) {
+            return Collections.enumeration(Collections.<String>emptyList());
+        }
+        return Collections.enumeration(values);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        return Collections.enumeration(this.headers.keySet());
+    }
+
+    @Override
+    public int getIntHeader(String name) {
+        final String value = this.getHeader(name);
+        if (value == null) {
+            return -1;
+        }
+        return Integer.parseInt(value);
+    }
+
+    @Override
+    public long getDateHeader(String name) {
+        final String value = this.getHeader(name);
+        if (value == null) {
+            return -1;
+        }
+        
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(RFC1123_DATE_FORMAT, Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return dateFormat.parse(value).getTime();
+        }
+        catch (ParseException e) {
+            throw new IllegalArgumentException("Header '" + name + "' is not a date: " + value, e);
+        }
+    }
+
+    @Override
+    public String getParameter(String name) {
+        final String[] values = this.parameters.get(name);
+        if (values == null || values.length == 0) {
+            return null;
+        }
+        return values[0];
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        return this.parameters;
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(this.parameters.keySet());
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        final String[] values = this.parameters.get(name);
+        if (values == null) {
+            return null;
+        }
+        return values.clone();
+    }
+
+    @Override
+    public Locale getLocale() {
+        if (this.locales.isEmpty()) {
+            return Locale.getDefault();
+        }
+        return this.locales.get(0);
+    }
+
+    @Override
+    public Enumeration<Locale> getLocales() {
+        return Collections.enumeration(this.locales);
+    }
+
+    @Override
+    public Cookie[] getCookies() {
+        return this.cookies;
+    }
+
+    @Override
+    public HttpSession getSession() {
+        return this.getSession(true);
+    }
+
+    @Override
+    public HttpSession getSession(boolean create) {
+        if (create && this.session == null) {
+            throw new IllegalStateException("A session can not be created from a detached request");
+        }
+        return this.session;
+    }
+
+    @Override
+    public String getRequestedSessionId() {
+        return this.requestedSessionId;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromCookie() {
+        return this.requestedSessionIdFromCookie;
+    }
+
+    /**
+     * @see HttpServletRequest#isRequestedSessionIdFromUrl()
+     */
+    @Override
+    public boolean isRequestedSessionIdFromUrl() {
+        return this.isRequestedSessionIdFromURL();
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromURL() {
+        return this.requestedSessionIdFromURL;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdValid() {
+        return this.session != null && this.session.getId().equals(this.requestedSessionId);
+    }
+
+    @Override
+    public String getAuthType() {
+        return this.authType;
+    }
+
+    @Override
+    public String getRemoteUser() {
+        return this.remoteUser;
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        return this.userPrincipal;
+    }
+
+    @Override
+    public boolean isUserInRole(String role) {
+        return false;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return this.characterEncoding;
+    }
+
+    @Override
+    public void setCharacterEncoding(String env) throws UnsupportedEncodingException {
+        this.characterEncoding = env;
+    }
+
+    @Override
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    @Override
+    public int getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        final InputStream emptyStream = new ByteArrayInputStream(new byte[0]);
+        return new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return emptyStream.read();
+            }
+        };
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        return new BufferedReader(new StringReader(""));
+    }
+
+    @Override
+    public String getContextPath() {
+        return this.contextPath;
+    }
+
+    @Override
+    public String getMethod() {
+        return this.method;
+    }
+
+    @Override
+    public String getPathInfo() {
+        return this.pathInfo;
+    }
+
+    @Override
+    public String getPathTranslated() {
+        return this.pathTranslated;
+    }
+
+    @Override
+    public String getProtocol() {
+        return this.protocol;
+    }
+
+    @Override
+    public String getQueryString() {
+        return this.queryString;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return this.requestURI;
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        return new StringBuffer(this.requestURL);
+    }
+
+    @Override
+    public String getScheme() {
+        return this.scheme;
+    }
+
+    @Override
+    public String getServerName() {
+        return this.serverName;
+    }
+
+    @Override
+    public int getServerPort() {
+        return this.serverPort;
+    }
+
+    @Override
+    public String getServletPath() {
+        return this.servletPath;
+    }
+
+    @Override
+    public boolean isSecure() {
+        return this.secure;
+    }
+
+    @Override
+    public String getLocalAddr() {
+        return this.localAddr;
+    }
+
+    @Override
+    public String getLocalName() {
+        return this.localName;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return this.localPort;
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        return this.remoteAddr;
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return this.remoteHost;
+    }
+
+    @Override
+    public int getRemotePort() {
+        return this.remotePort;
+    }
+
+    @Override
+    public RequestDispatcher getRequestDispatcher(String path) {
+        return this.servletContext.getRequestDispatcher(path);
+    }
+
+    /**
+     * @see ServletRequest#getRealPath(String)
+     */
+    @Override
+    public String getRealPath(String path) {
+        return this.servletContext.getRealPath(path);
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        return this.servletContext;
+    }
+
+    @Override
+    public DispatcherType getDispatcherType() {
+        return DispatcherType.REQUEST;
+    }
+
+    @Override
+    public AsyncContext getAsyncContext() {
+        throw new IllegalStateException("Async processing is not supported by a detached request");
+    }
+
+    @Override
+    public boolean isAsyncStarted() {
+        return false;
+    }
+
+    @Override
+    public boolean isAsyncSupported() {
+        return false;
+    }
+
+    @Override
+    public AsyncContext startAsync() throws IllegalStateException {
+        throw new IllegalStateException("Async processing is not supported by a detached request");
+    }
+
+    @Override
+    public AsyncContext startAsync(ServletRequest request, ServletResponse response) throws IllegalStateException {
+        throw new IllegalStateException("Async processing is not supported by a detached request");
+    }
+
+    @Override
+    public boolean authenticate(HttpServletResponse response) throws IOException, ServletException {
+        return this.userPrincipal != null;
+    }
+
+    @Override
+    public Part getPart(String name) throws IOException, ServletException {
+        return null;
+    }
+
+    @Override
+    public Collection<Part> getParts() throws IOException, ServletException {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void login(String uid, String password) throws ServletException {
+        throw new ServletException("Login is not supported by a detached request");
+    }
+
+    @Override
+    public void logout() throws ServletException {
+        throw new ServletException("Logout is not supported by a detached request");
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.portal.utils.web;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.output.NullWriter;
+
+/**
+ * A response that is not bound to a client connection, for use with a {@link DetachedHttpServletRequest}.
+ * Status, headers and cookies are recorded but never sent anywhere and all body output is discarded.
+ * URLs are not encoded, session tracking via URL rewriting is not applied.
+ */
+public class DetachedHttpServletResponse implements HttpServletResponse {
+    private final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+    private final List<Cookie> cookies = new ArrayList<Cookie>();
+    private int status = SC_OK;
+    private String characterEncoding = "ISO-8859-1";
+    private String contentType;
+    private Locale locale = Locale.getDefault();
+    private int bufferSize = 0;
+
+    public synchronized List<Cookie> getCookies() {
+        return new ArrayList<Cookie>(this.cookies);
+    }
+
+    @Override
+    public synchronized void addCookie(Cookie cookie) {
+        this.cookies.add(cookie);
+    }
+
+    @Override
+    public synchronized boolean containsHeader(String name) {
+        return this.headers.containsKey(name);
+    }
+
+    @Override
+    public synchronized String getHeader(String name) {
+        final List<String> values = this.headers.get(name);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return values.get(0);
+    }
+
+    @Override
+    public synchronized Collection<String> getHeaders(String name) {
+        final List<String> values = this.headers.get(name);
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<String>(values);
+    }
+
+    @Override
+    public synchronized Collection<String> getHeaderNames() {
+        return new ArrayList<String>(this.headers.keySet());
+    }
+
+    @Override
+    public synchronized void setHeader(String name, String value) {
+        final List<String> values = new ArrayList<String>(1);
+        values.add(value);
+        this.headers.put(name, values);
+    }
+
+    @Override
+    public synchronized void addHeader(String name, String value) {
+        List<String> values = this.headers.get(name);
+        if (values == null) {
+            values = new ArrayList<String>(1);
+            this.headers.put(name, values);
+        }
+        values.add(value);
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        this.setHeader(name, Long.toString(date));
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        this.addHeader(name, Long.toString(date));
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        this.setHeader(name, Integer.toString(value));
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        this.addHeader(name, Integer.toString(value));
+    }
+
+    @Override
+    public String encodeURL(String url) {
+        return url;
+    }
+
+    @Override
+    public String encodeRedirectURL(String url) {
+        return url;
+    }
+
+    /**
+     * @see HttpServletResponse#encodeUrl(String)
+     */
+    @Override
+    public String encodeUrl(String url) {
+        return this.encodeURL(url);
+    }
+
+    /**
+     * @see HttpServletResponse#encodeRedirectUrl(String)
+     */
+    @Override
+    public String encodeRedirectUrl(String url) {
+        return this.encodeRedirectURL(url);
+    }
+
+    @Override
+    public synchronized int getStatus() {
+        return this.status;
+    }
+
+    @Override
+    public synchronized void setStatus(int sc) {
+        this.status = sc;
+    }
+
+    /**
+     * @see HttpServletResponse#setStatus(int, String)
+     */
+    @Override
+    public void setStatus(int sc, String sm) {
+        this.setStatus(sc);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        this.setStatus(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        this.setStatus(sc);
+    }
+
+    @Override
+    public synchronized void sendRedirect(String location) throws IOException {
+        this.status = SC_FOUND;
+        this.setHeader("Location", location);
+    }
+
+    @Override
+    public synchronized String getCharacterEncoding() {
+        return this.characterEncoding;
+    }
+
+    @Override
+    public synchronized void setCharacterEncoding(String charset) {
+        this.characterEncoding = charset;
+    }
+
+    @Override
+    public synchronized String getContentType() {
+        return this.contentType;
+    }
+
+    @Override
+    public synchronized void setContentType(String type) {
+        this.contentType = type;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        return new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+            }
+        };
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        return new PrintWriter(new NullWriter());
+    }
+
+    @Override
+    public synchronized int getBufferSize() {
+        return this.bufferSize;
+    }
+
+    @Override
+    public synchronized void setBufferSize(int size) {
+        this.bufferSize = size;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+    }
+
+    @Override
+    public void resetBuffer() {
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return false;
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.headers.clear();
+        this.cookies.clear();
+        this.status = SC_OK;
+    }
+
+    @Override
+    public synchronized Locale getLocale() {
+        return this.locale;
+    }
+
+    @Override
+    public synchronized void setLocale(Locale loc) {
+        this.locale = loc;
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.web;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewFilter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * {@link OpenEntityManagerInViewFilter} that can hand the request's EntityManager over to the thread that
+ * completes an asynchronous request. The Spring 3.1 filter closes the EntityManager as soon as the request
+ * thread returns, which breaks lazy loading for anything that runs after {@link HttpServletRequest#startAsync()}.
+ * <p>
+ * Code that puts the request into asynchronous mode calls {@link EntityManagerHandoff#startAsync()} first, the
+ * filter then leaves the EntityManager open when the request thread returns. The asynchronous thread binds it
+ * with {@link EntityManagerHandoff#bind(long)} and must call {@link EntityManagerHandoff#release()} once done.
+ */
+public class AsyncOpenEntityManagerInViewFilter extends OpenEntityManagerInViewFilter {
+    private static final String ENTITY_MANAGER_HANDOFF_ATTRIBUTE = AsyncOpenEntityManagerInViewFilter.class.getName() + ".ENTITY_MANAGER_HANDOFF";
+    
+    /**
+     * @return The handoff for the request's EntityManager, null if the request is not handled by this filter
+     */
+    public static EntityManagerHandoff getEntityManagerHandoff(HttpServletRequest request) {
+        return (EntityManagerHandoff) request.getAttribute(ENTITY_MANAGER_HANDOFF_ATTRIBUTE);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        
+        final EntityManagerFactory emf = this.lookupEntityManagerFactory(request);
+        
+        //Participate in an existing EntityManager
+        if (TransactionSynchronizationManager.hasResource(emf)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        
+        logger.debug("Opening JPA EntityManager in AsyncOpenEntityManagerInViewFilter");
+        final EntityManagerHolder entityManagerHolder = new EntityManagerHolder(this.createEntityManager(emf));
+        final EntityManagerHandoff entityManagerHandoff = new EntityManagerHandoff(emf, entityManagerHolder);
+        request.setAttribute(ENTITY_MANAGER_HANDOFF_ATTRIBUTE, entityManagerHandoff);
+        TransactionSynchronizationManager.bindResource(emf, entityManagerHolder);
+        try {
+            filterChain.doFilter(request, response);
+        }
+        finally {
+            TransactionSynchronizationManager.unbindResource(emf);
+            entityManagerHandoff.requestThreadComplete();
+        }
+    }
+    
+    /**
+     * Moves ownership of the request's EntityManager from the request thread to the thread that completes
+     * the asynchronous request.
+     */
+    public static final class EntityManagerHandoff {
+        private final EntityManagerFactory entityManagerFactory;
+        private final EntityManagerHolder entityManagerHolder;
+        private final CountDownLatch requestThreadReleased = new CountDownLatch(1);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private boolean async = false;
+        
+        EntityManagerHandoff(EntityManagerFactory entityManagerFactory, EntityManagerHolder entityManagerHolder) {
+            this.entityManagerFactory = entityManagerFactory;
+            this.entityManagerHolder = entityManagerHolder;
+        }
+        
+        /**
+         * Keep the EntityManager open when the request thread returns, must be called on the request thread
+         * before the request is put into asynchronous mode.
+         */
+        public synchronized void startAsync() {
+            this.async = true;
+        }
+        
+        /**
+         * Undo {@link #startAsync()} if the request could not be put into asynchronous mode
+         */
+        public synchronized void cancelAsync() {
+            this.async = false;
+        }
+        
+        /**
+         * Bind the EntityManager to the current thread, waits for the request thread to release it first.
+         * 
+         * @return false if the request thread did not release the EntityManager within the timeout
+         */
+        public boolean bind(long timeout) throws InterruptedException {
+            if (!this.requestThreadReleased.await(timeout, TimeUnit.MILLISECONDS) || this.closed.get()) {
+                return false;
+            }
+            
+            TransactionSynchronizationManager.bindResource(this.entityManagerFactory, this.entityManagerHolder);
+            return true;
+        }
+        
+        /**
+         * Unbind the EntityManager from the current thread if bound and close it. Safe to call more than once
+         * and from any thread, the EntityManager is only closed once the request thread has released it.
+         */
+        public void release() {
+            if (TransactionSynchronizationManager.getResource(this.entityManagerFactory) == this.entityManagerHolder) {
+                TransactionSynchronizationManager.unbindResource(this.entityManagerFactory);
+            }
+            
+            synchronized (this) {
+                if (this.requestThreadReleased.getCount() > 0) {
+                    //Still in use by the request thread, it closes the EntityManager when it returns
+                    this.async = false;
+                    return;
+                }
+            }
+            this.close();
+        }
+        
+        void requestThreadComplete() {
+            synchronized (this) {
+                this.requestThreadReleased.countDown();
+                if (this.async) {
+                    return;
+                }
+            }
+            this.close();
+        }
+        
+        private void close() {
+            if (this.closed.compareAndSet(false, true)) {
+                EntityManagerFactoryUtils.closeEntityManager(this.entityManagerHolder.getEntityManager());
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.xml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Bounded per-thread pool of {@link Transformer}s. Each thread keeps at most one idle
+ * Transformer per {@link Templates} and at most {@link #setMaxIdle(int)} idle Transformers
+ * in total, least recently used Transformers are discarded first. Since {@link Templates}
+ * are replaced when their stylesheet changes Transformers for stale stylesheets simply age
+ * out of the pool.
+ * <p>
+ * Borrowed Transformers are tracked with weak keys so a Transformer that is never returned
+ * does not stay referenced by the pool. Only JDK map types are stored in the {@link ThreadLocal},
+ * {@link #clear()} empties the maps of every thread so that container threads do not keep
+ * Transformers, and through them the webapp classloader, referenced after shutdown.
+ */
+class ThreadLocalTransformerPool {
+    private final ThreadLocal<LinkedHashMap<Templates, Transformer>> idleTransformers = new ThreadLocal<LinkedHashMap<Templates, Transformer>>() {
+        @Override
+        protected LinkedHashMap<Templates, Transformer> initialValue() {
+            final LinkedHashMap<Templates, Transformer> idle = new LinkedHashMap<Templates, Transformer>(16, .75f, true);
+            threadIdleTransformers.put(Thread.currentThread(), idle);
+            return idle;
+        }
+    };
+    
+    // Idle maps of every thread that used the pool, used by clear()
+    private final Map<Thread, LinkedHashMap<Templates, Transformer>> threadIdleTransformers = 
+            Collections.synchronizedMap(new WeakHashMap<Thread, LinkedHashMap<Templates, Transformer>>());
+    
+    // Transformer -> Templates it was created from, weak keys compare by identity
+    private final ConcurrentMap<Transformer, Templates> borrowed = new MapMaker().weakKeys().makeMap();
+    
+    private volatile int maxIdle = 8;
+    private volatile boolean cleared = false;
+    
+    /**
+     * Maximum number of idle Transformers to keep per thread, 0 disables pooling
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Get a Transformer for the Templates, the Transformer should be returned to the pool
+     * via {@link #returnTransformer(Transformer)} by the same thread.
+     */
+    public Transformer borrowTransformer(Templates templates) throws TransformerConfigurationException {
+        if (this.maxIdle <= 0 || this.cleared) {
+            return templates.newTransformer();
+        }
+        
+        final LinkedHashMap<Templates, Transformer> idle = this.idleTransformers.get();
+        Transformer transformer;
+        synchronized (idle) {
+            transformer = idle.remove(templates);
+        }
+        if (transformer == null) {
+            transformer = templates.newTransformer();
+        }
+        this.borrowed.put(transformer, templates);
+        return transformer;
+    }
+    
+    /**
+     * Return a Transformer to the pool. Transformers that were not borrowed from the pool
+     * are ignored.
+     */
+    public void returnTransformer(Transformer transformer) {
+        if (transformer == null) {
+            return;
+        }
+        
+        final Templates templates = this.borrowed.remove(transformer);
+        if (templates == null || this.maxIdle <= 0 || this.cleared) {
+            return;
+        }
+        
+        //Not all implementations clear parameters on reset, stale parameters must never leak between uses
+        transformer.clearParameters();
+        try {
+            transformer.reset();
+        }
+        catch (UnsupportedOperationException e) {
+            //Transformer can't be reused
+            return;
+        }
+        
+        final LinkedHashMap<Templates, Transformer> idle = this.idleTransformers.get();
+        synchronized (idle) {
+            idle.put(templates, transformer);
+            
+            //Discard least recently used Transformers
+            for (final Iterator<Transformer> idleItr = idle.values().iterator(); idle.size() > this.maxIdle && idleItr.hasNext(); ) {
+                idleItr.next();
+                idleItr.remove();
+            }
+        }
+    }
+    
+    /**
+     * Discard all pooled Transformers for every thread, after this call Transformers are
+     * no longer pooled.
+     */
+    public void clear() {
+        this.cleared = true;
+        
+        final List<LinkedHashMap<Templates, Transformer>> idleMaps;
+        synchronized (this.threadIdleTransformers) {
+            idleMaps = new ArrayList<LinkedHashMap<Templates, Transformer>>(this.threadIdleTransformers.values());
+            this.threadIdleTransformers.clear();
+        }
+        for (final LinkedHashMap<Templates, Transformer> idle : idleMaps) {
+            synchronized (idle) {
+                idle.clear();
+            }
+        }
+        
+        this.borrowed.clear();
+        this.idleTransformers.remove();
+    }
+    
+    /**
+     * @return Number of idle Transformers pooled for the current thread
+     */
+    int getIdleCount() {
+        final LinkedHashMap<Templates, Transformer> idle = this.idleTransformers.get();
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+    
+    /**
+     * @return Number of Transformers borrowed and not yet returned
+     */
+    int getBorrowedCount() {
+        return this.borrowed.size();
+    }
+}
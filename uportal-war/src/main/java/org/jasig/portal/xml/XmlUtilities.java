@@ -52,6 +52,18 @@ public interface XmlUtilities {
      */
     public Transformer getTransformer(Resource stylesheet) throws TransformerConfigurationException, IOException;
     
+    /**
+     * Borrow a {@link Transformer} for the specified stylesheet resource from a per-thread pool. The
+     * Transformer must be passed to {@link #returnTransformer(Transformer)} by the same thread once
+     * the transformation is complete and must not be used after that.
+     */
+    public Transformer borrowTransformer(Resource stylesheet) throws TransformerConfigurationException, IOException;
+    
+    /**
+     * Return a {@link Transformer} obtained from {@link #borrowTransformer(Resource)} to the pool.
+     */
+    public void returnTransformer(Transformer transformer);
+    
     /**
      * @return The identity transformer
      */
@@ -46,7 +46,9 @@ import org.jasig.portal.utils.cache.resource.CachingResourceLoader;
 import org.jasig.portal.utils.cache.resource.TemplatesBuilder;
 import org.jasig.portal.xml.stream.FilteringXMLEventReader;
 import org.jasig.portal.xml.stream.IndentingXMLEventWriter;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Element;
@@ -62,12 +64,13 @@ import com.ctc.wstx.api.WstxOutputProperties;
  * @version $Revision$
  */
 @Service
-public class XmlUtilitiesImpl implements XmlUtilities {
+public class XmlUtilitiesImpl implements XmlUtilities, DisposableBean {
     private static final TransformerFactory transformerFactory = TransformerFactory.newInstance();
 
     private final XMLOutputFactory xmlOutputFactory;
     private final XMLOutputFactory htmlOutputFactory;
     private final XMLInputFactory xmlInputFactory;
+    private final ThreadLocalTransformerPool transformerPool = new ThreadLocalTransformerPool();
     private TemplatesBuilder templatesBuilder;
     
     private CachingResourceLoader cachingResourceLoader;
@@ -86,6 +89,24 @@ public class XmlUtilitiesImpl implements XmlUtilities {
         this.cachingResourceLoader = cachingResourceLoader;
     }
 
+    /**
+     * Maximum number of idle {@link Transformer}s pooled per thread by {@link #borrowTransformer(Resource)},
+     * 0 disables pooling. Defaults to 8.
+     */
+    @Value("${org.jasig.portal.xml.XmlUtilitiesImpl.transformerPoolSize:8}")
+    public void setTransformerPoolSize(int transformerPoolSize) {
+        this.transformerPool.setMaxIdle(transformerPoolSize);
+    }
+
+    /**
+     * Discard the pooled {@link Transformer}s of all threads so container threads don't keep
+     * the webapp classloader referenced after the context is closed
+     */
+    @Override
+    public void destroy() {
+        this.transformerPool.clear();
+    }
+
     @Autowired
     public void setTemplatesBuilder(TemplatesBuilder templatesBuilder) {
         this.templatesBuilder = templatesBuilder;
@@ -102,6 +123,17 @@ public class XmlUtilitiesImpl implements XmlUtilities {
         final Templates templates = this.getTemplates(stylesheet);
         return templates.newTransformer();
     }
+
+    @Override
+    public Transformer borrowTransformer(Resource stylesheet) throws TransformerConfigurationException, IOException {
+        final Templates templates = this.getTemplates(stylesheet);
+        return this.transformerPool.borrowTransformer(templates);
+    }
+
+    @Override
+    public void returnTransformer(Transformer transformer) {
+        this.transformerPool.returnTransformer(transformer);
+    }
     
     @Override
     public Transformer getIdentityTransformer() throws TransformerConfigurationException, IOException {
@@ -746,6 +746,7 @@
 
             <xsl:call-template name="page.dialogs" />
 
+            <deferred-portlet-content/> <!-- Out-of-order rendering, see DeferredPortletContentPlaceholderEventSource -->
             <script type="text/javascript">
                 up.analytics = up.analytics || {};
                 up.analytics.host = '<xsl:value-of select="$HOST_NAME" />';
@@ -177,6 +177,7 @@
             </xsl:choose>
           </div>
         </div>
+        <deferred-portlet-content/> <!-- Out-of-order rendering, see DeferredPortletContentPlaceholderEventSource -->
         <script type="text/javascript">
             up.analytics = up.analytics || {};
             up.analytics.host = '<xsl:value-of select="$HOST_NAME" />';
@@ -19,9 +19,13 @@
 
 package org.jasig.portal.events;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
 import java.io.StringReader;
 import java.util.Collections;
 import java.util.HashMap;
@@ -34,6 +38,7 @@ import javax.portlet.PortletMode;
 import javax.portlet.WindowState;
 import javax.xml.namespace.QName;
 
+import org.jasig.portal.events.handlers.db.PortalEventDataCodec;
 import org.jasig.portal.mock.portlet.om.MockPortletWindowId;
 import org.jasig.portal.portlet.rendering.worker.IPortletExecutionWorker;
 import org.jasig.portal.security.SystemPerson;
@@ -186,6 +191,39 @@ public class JacksonPortalEventTest {
 
     }
     
+    @Test
+    public void testEncodedEventData() throws Exception {
+        final PortalEventDataCodec eventDataCodec = new PortalEventDataCodec(mapper);
+        final String sessionId = "1234567890123_system_AAAAAAAAAAA";
+        final PortalEvent.PortalEventBuilder eventBuilder = new PortalEvent.PortalEventBuilder(this, "example.com", sessionId, SystemPerson.INSTANCE, null);
+        final PortletExecutionEvent.PortletExecutionEventBuilder portletExecutionEventBuilder = new PortletExecutionEvent.PortletExecutionEventBuilder(eventBuilder, new MockPortletWindowId("pw1"), "fname", 12345, Collections.EMPTY_MAP, WindowState.NORMAL, PortletMode.VIEW);
+        
+        final Set<String> groups = ImmutableSet.of("Student", "Employee");
+        final Map<String, List<String>> attributes = ImmutableMap.of("username", (List<String>)ImmutableList.of("system"), "roles", (List<String>)ImmutableList.of("student", "employee", "student"));
+        
+        final List<PortalEvent> events = ImmutableList.of(
+                new LoginEvent(eventBuilder, groups, attributes),
+                new PortalRenderEvent(eventBuilder, "requestPathInfo", 12345, UrlState.NORMAL, UrlType.RENDER, Collections.EMPTY_MAP, "targetedLayoutNodeId"),
+                new PortletRenderExecutionEvent(portletExecutionEventBuilder, true, false),
+                new PortletEventExecutionEvent(portletExecutionEventBuilder, new QName("http://example.com/uri", "EventName")));
+        
+        for (final PortalEvent event : events) {
+            final String json = mapper.writeValueAsString(event);
+            final String eventData = eventDataCodec.encode(event);
+            assertTrue(PortalEventDataCodec.isEncoded(eventData));
+            assertFalse(PortalEventDataCodec.isEncoded(json));
+            assertTrue(eventData + " is not shorter than " + json, eventData.length() < json.length());
+            
+            final PortalEvent decodedEvent = eventDataCodec.decode(eventData, event.getClass());
+            assertEquals(json, mapper.writeValueAsString(decodedEvent));
+        }
+    }
+    
+    @Test(expected=IOException.class)
+    public void testUnsupportedEventDataVersion() throws Exception {
+        new PortalEventDataCodec(mapper).decode(PortalEventDataCodec.ENCODED_PREFIX + "99:AA==", LoginEvent.class);
+    }
+    
     private static final Pattern TIMESTAMP_SPLIT = Pattern.compile("(?<=\"timestamp\":)\\d+");
     private static final String TEST_NOW = "1371745598080";
     
@@ -19,11 +19,13 @@
 
 package org.jasig.portal.events;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.jasig.portal.events.PortalEvent.PortalEventBuilder;
+import org.jasig.portal.events.PortletExecutionEvent.PortletExecutionEventBuilder;
 import org.jasig.portal.security.IPerson;
 
 /**
@@ -46,4 +48,24 @@ public final class TestEventFactory {
         return new LoginEvent(portalEventBuilder, groups, attributes);
     }
     
+    public static PortletRenderExecutionEvent newPortletRenderExecutionEvent(Object source, String serverName, String eventSessionId, 
+            IPerson person, String fname, long executionTimeNano) {
+        
+        return new PortletRenderExecutionEvent(newPortletExecutionEventBuilder(source, serverName, eventSessionId, person, fname, executionTimeNano), false, false);
+    }
+    
+    public static PortletActionExecutionEvent newPortletActionExecutionEvent(Object source, String serverName, String eventSessionId, 
+            IPerson person, String fname, long executionTimeNano) {
+        
+        return new PortletActionExecutionEvent(newPortletExecutionEventBuilder(source, serverName, eventSessionId, person, fname, executionTimeNano));
+    }
+    
+    private static PortletExecutionEventBuilder newPortletExecutionEventBuilder(Object source, String serverName, String eventSessionId, 
+            IPerson person, String fname, long executionTimeNano) {
+        
+        final PortalEventBuilder portalEventBuilder = new PortalEventBuilder(source, serverName, eventSessionId, person, null);
+        return new PortletExecutionEventBuilder(portalEventBuilder, null, fname, executionTimeNano, 
+                Collections.<String, List<String>>emptyMap(), null, null);
+    }
+    
 }
@@ -0,0 +1,277 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.events.handlers;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jasig.portal.events.LoginEvent;
+import org.jasig.portal.events.PortletActionExecutionEvent;
+import org.jasig.portal.events.PortletRenderExecutionEvent;
+import org.jasig.portal.events.TestEventFactory;
+import org.jasig.portal.events.aggr.AggregationInterval;
+import org.jasig.portal.events.aggr.portletexec.PortletExecutionAggregationKey.ExecutionType;
+import org.jasig.portal.events.handlers.PartialEventAggregation.AggregationType;
+import org.jasig.portal.security.IPerson;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingPortalEventAggregatorTest {
+    private StreamingPortalEventAggregator aggregator;
+    private IPerson person;
+    
+    @Before
+    public void setup() {
+        this.aggregator = new StreamingPortalEventAggregator();
+        this.aggregator.setEnabled(true);
+        
+        this.person = mock(IPerson.class);
+        when(this.person.getUserName()).thenReturn("user");
+    }
+    
+    @Test
+    public void testDisabled() {
+        this.aggregator.setEnabled(false);
+        this.aggregator.onFilteredApplicationEvent(this.newLoginEvent());
+        
+        assertTrue(this.aggregator.getOpenAggregations().isEmpty());
+    }
+    
+    @Test
+    public void testIntervalKeying() {
+        this.aggregator.setIntervals("MINUTE, HOUR");
+        
+        final LoginEvent loginEvent = this.newLoginEvent();
+        this.aggregator.onFilteredApplicationEvent(loginEvent);
+        this.aggregator.onFilteredApplicationEvent(loginEvent);
+        
+        //One aggregation per interval, events in the same interval share it
+        final List<PartialEventAggregation> openAggregations = this.aggregator.getOpenAggregations();
+        assertEquals(2, openAggregations.size());
+        
+        final Set<AggregationInterval> intervals = EnumSet.noneOf(AggregationInterval.class);
+        for (final PartialEventAggregation aggregation : openAggregations) {
+            final AggregationInterval interval = aggregation.getInterval();
+            intervals.add(interval);
+            
+            final DateTime start = interval.determineStart(loginEvent.getTimestampAsDate());
+            assertEquals(start.toDate(), aggregation.getStart());
+            assertEquals(interval.determineEnd(start).toDate(), aggregation.getEnd());
+            assertEquals(2, aggregation.getCount());
+            assertEquals(AggregationType.LOGIN, aggregation.getAggregationType());
+            assertNull(aggregation.getExecutionType());
+            assertNull(aggregation.getFname());
+            assertEquals(0, aggregation.getTotalTimeNano());
+        }
+        assertEquals(EnumSet.of(AggregationInterval.MINUTE, AggregationInterval.HOUR), intervals);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnsupportedInterval() {
+        this.aggregator.setIntervals("MINUTE, ACADEMIC_TERM");
+    }
+    
+    @Test
+    public void testExecutionTypeFanOut() {
+        this.aggregator.setIntervals("HOUR");
+        
+        this.aggregator.onFilteredApplicationEvent(this.newRenderEvent("portlet-a", 10));
+        this.aggregator.onFilteredApplicationEvent(this.newRenderEvent("portlet-a", 30));
+        this.aggregator.onFilteredApplicationEvent(this.newActionEvent("portlet-a", 20));
+        this.aggregator.onFilteredApplicationEvent(this.newRenderEvent("portlet-b", 40));
+        
+        final Map<String, PartialEventAggregation> aggregations = new HashMap<String, PartialEventAggregation>();
+        for (final PartialEventAggregation aggregation : this.aggregator.getOpenAggregations()) {
+            assertEquals(AggregationType.PORTLET_EXECUTION, aggregation.getAggregationType());
+            aggregations.put(aggregation.getFname() + "/" + aggregation.getExecutionType(), aggregation);
+        }
+        
+        //Each execution is counted for ALL and for its own type
+        assertEquals(5, aggregations.size());
+        
+        final PartialEventAggregation allA = aggregations.get("portlet-a/" + ExecutionType.ALL);
+        assertEquals(3, allA.getCount());
+        assertEquals(60, allA.getTotalTimeNano());
+        assertEquals(10, allA.getMinTimeNano());
+        assertEquals(30, allA.getMaxTimeNano());
+        
+        final PartialEventAggregation renderA = aggregations.get("portlet-a/" + ExecutionType.RENDER);
+        assertEquals(2, renderA.getCount());
+        assertEquals(20.0, renderA.getMeanTimeNano(), 0);
+        
+        assertEquals(1, aggregations.get("portlet-a/" + ExecutionType.ACTION).getCount());
+        assertEquals(1, aggregations.get("portlet-b/" + ExecutionType.ALL).getCount());
+        assertEquals(1, aggregations.get("portlet-b/" + ExecutionType.RENDER).getCount());
+    }
+    
+    @Test
+    public void testFlushCompletedAggregations() {
+        this.aggregator.setIntervals("MINUTE, HOUR");
+        
+        final LoginEvent loginEvent = this.newLoginEvent();
+        this.aggregator.onFilteredApplicationEvent(loginEvent);
+        
+        final DateTime timestamp = loginEvent.getTimestampAsDate();
+        final DateTime minuteEnd = AggregationInterval.MINUTE.determineEnd(AggregationInterval.MINUTE.determineStart(timestamp));
+        assumeTrue(AggregationInterval.HOUR.determineEnd(AggregationInterval.HOUR.determineStart(timestamp)).isAfter(minuteEnd));
+        
+        //Nothing has ended yet
+        this.aggregator.flushCompletedAggregations(timestamp);
+        assertTrue(this.aggregator.getFlushedAggregations().isEmpty());
+        
+        //Only the minute has ended
+        this.aggregator.flushCompletedAggregations(minuteEnd);
+        
+        final List<PartialEventAggregation> flushedAggregations = this.aggregator.getFlushedAggregations();
+        assertEquals(1, flushedAggregations.size());
+        assertEquals(AggregationInterval.MINUTE, flushedAggregations.get(0).getInterval());
+        assertEquals(1, this.aggregator.getOpenAggregations().size());
+        assertEquals(AggregationInterval.HOUR, this.aggregator.getOpenAggregations().get(0).getInterval());
+        
+        //A late event for the flushed minute starts a new partial aggregation
+        final PartialEventAggregation flushed = flushedAggregations.get(0);
+        assertFalse(flushed.add(-1));
+        this.aggregator.onFilteredApplicationEvent(loginEvent);
+        assertEquals(2, this.aggregator.getOpenAggregations().size());
+        assertEquals(1, flushed.getCount());
+        
+        this.aggregator.flushCompletedAggregations(minuteEnd);
+        assertEquals(2, this.aggregator.getFlushedAggregations().size());
+    }
+    
+    @Test
+    public void testFlushedAggregationsBounded() {
+        this.aggregator.setIntervals("MINUTE");
+        this.aggregator.setFlushedAggregationsSize(2);
+        
+        for (final String fname : new String[] { "portlet-a", "portlet-b", "portlet-c" }) {
+            this.aggregator.onFilteredApplicationEvent(this.newActionEvent(fname, 1));
+        }
+        assertEquals(6, this.aggregator.getOpenAggregations().size());
+        
+        this.aggregator.flushCompletedAggregations(DateTime.now().plusMinutes(2));
+        assertTrue(this.aggregator.getOpenAggregations().isEmpty());
+        assertEquals(2, this.aggregator.getFlushedAggregations().size());
+        
+        //The oldest flushed aggregations are dropped first
+        this.aggregator.onFilteredApplicationEvent(this.newLoginEvent());
+        this.aggregator.flushCompletedAggregations(DateTime.now().plusMinutes(2));
+        final List<PartialEventAggregation> flushedAggregations = this.aggregator.getFlushedAggregations();
+        assertEquals(2, flushedAggregations.size());
+        assertEquals(AggregationType.LOGIN, flushedAggregations.get(1).getAggregationType());
+    }
+    
+    @Test
+    public void testConcurrentFlush() throws Exception {
+        this.aggregator.setIntervals("MINUTE");
+        this.aggregator.setFlushedAggregationsSize(Integer.MAX_VALUE);
+        
+        final int threads = 4;
+        final int eventsPerThread = 5000;
+        final LoginEvent loginEvent = this.newLoginEvent();
+        final DateTime flushTime = DateTime.now().plusMinutes(2);
+        
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads + 1);
+        try {
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            final AtomicBoolean aggregating = new AtomicBoolean(true);
+            
+            //Flush continuously so aggregations are closed while events are being added to them
+            final Future<?> flusher = executorService.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    startLatch.await();
+                    while (aggregating.get()) {
+                        aggregator.flushCompletedAggregations(flushTime);
+                    }
+                    return null;
+                }
+            });
+            
+            final List<Future<?>> aggregators = new ArrayList<Future<?>>();
+            for (int i = 0; i < threads; i++) {
+                aggregators.add(executorService.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        startLatch.await();
+                        for (int e = 0; e < eventsPerThread; e++) {
+                            aggregator.onFilteredApplicationEvent(loginEvent);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            
+            startLatch.countDown();
+            for (final Future<?> future : aggregators) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            aggregating.set(false);
+            flusher.get(1, TimeUnit.MINUTES);
+        }
+        finally {
+            executorService.shutdownNow();
+        }
+        
+        this.aggregator.flushCompletedAggregations(flushTime);
+        assertTrue(this.aggregator.getOpenAggregations().isEmpty());
+        
+        //Events that raced a flush were retried into a new aggregation instead of being lost
+        long count = 0;
+        for (final PartialEventAggregation aggregation : this.aggregator.getFlushedAggregations()) {
+            count += aggregation.getCount();
+        }
+        assertEquals(threads * eventsPerThread, count);
+    }
+    
+    private LoginEvent newLoginEvent() {
+        return TestEventFactory.newLoginEvent(this, "server", "session", this.person, 
+                Collections.<String>emptySet(), Collections.<String, List<String>>emptyMap());
+    }
+    
+    private PortletRenderExecutionEvent newRenderEvent(String fname, long executionTimeNano) {
+        return TestEventFactory.newPortletRenderExecutionEvent(this, "server", "session", this.person, fname, executionTimeNano);
+    }
+    
+    private PortletActionExecutionEvent newActionEvent(String fname, long executionTimeNano) {
+        return TestEventFactory.newPortletActionExecutionEvent(this, "server", "session", this.person, fname, executionTimeNano);
+    }
+}
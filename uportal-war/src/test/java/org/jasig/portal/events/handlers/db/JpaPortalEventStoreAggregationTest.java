@@ -0,0 +1,208 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.events.handlers.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.persistence.TypedQuery;
+
+import org.jasig.portal.concurrency.CallableWithoutResult;
+import org.jasig.portal.events.PortalEvent;
+import org.jasig.portal.events.TestEventFactory;
+import org.jasig.portal.security.SystemPerson;
+import org.jasig.portal.test.BaseRawEventsJpaDaoTest;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.google.common.base.Function;
+
+/**
+ * Tests the batched, parallel decoding done by {@link JpaPortalEventStore#aggregatePortalEvents(DateTime, DateTime, int, Function)}
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:jpaRawEventsTestApplicationContext.xml")
+public class JpaPortalEventStoreAggregationTest extends BaseRawEventsJpaDaoTest {
+    //More than two decode batches
+    private static final int EVENT_COUNT = 600;
+    
+    @Autowired
+    private IPortalEventDao portalEventDao;
+    
+    private final DateTime startDate = DateTime.now().minusDays(1);
+    private final DateTime endDate = DateTime.now().plusDays(1);
+    
+    @After
+    public void resetDecodeThreads() throws Exception {
+        this.getPortalEventStore().setAggregationDecodeThreads(0);
+    }
+    
+    @Test
+    public void testAggregationOrderSerialDecode() throws Exception {
+        this.getPortalEventStore().setAggregationDecodeThreads(1);
+        this.verifyAggregationOrder();
+    }
+    
+    @Test
+    public void testAggregationOrderParallelDecode() throws Exception {
+        this.getPortalEventStore().setAggregationDecodeThreads(4);
+        this.verifyAggregationOrder();
+    }
+    
+    @Test
+    public void testDecodeFailure() throws Exception {
+        this.getPortalEventStore().setAggregationDecodeThreads(4);
+        
+        final List<PortalEvent> originalEvents = this.storeEvents();
+        
+        //Store an event with broken data in the middle of the first batch
+        final PortalEvent brokenEvent = originalEvents.get(100);
+        executeInTransaction(new CallableWithoutResult() {
+            @Override
+            protected void callWithoutResult() {
+                getEntityManager().persist(new PersistentPortalEvent(brokenEvent, "{\"broken"));
+            }
+        });
+        
+        //Every other event is still handled, in order
+        assertTrue(this.aggregateEvents(-1, originalEvents, Integer.MAX_VALUE));
+        
+        execute(new CallableWithoutResult() {
+            @Override
+            protected void callWithoutResult() {
+                final TypedQuery<PersistentPortalEvent> query = getEntityManager().createQuery(
+                        "SELECT e FROM " + PersistentPortalEvent.class.getName() + " e", PersistentPortalEvent.class);
+                
+                int errorCount = 0;
+                for (final PersistentPortalEvent persistentPortalEvent : query.getResultList()) {
+                    if (persistentPortalEvent.isErrorAggregating()) {
+                        errorCount++;
+                        assertEquals("{\"broken", persistentPortalEvent.getEventData());
+                        assertFalse(persistentPortalEvent.isAggregated());
+                    }
+                    else {
+                        assertTrue(persistentPortalEvent.isAggregated());
+                    }
+                }
+                assertEquals(1, errorCount);
+            }
+        });
+        
+        //The broken event is not tried again
+        assertTrue(this.aggregateEvents(-1, Collections.<PortalEvent>emptyList(), Integer.MAX_VALUE));
+    }
+    
+    @Test
+    public void testStopPartwayThroughBatch() throws Exception {
+        this.getPortalEventStore().setAggregationDecodeThreads(4);
+        
+        final List<PortalEvent> originalEvents = this.storeEvents();
+        
+        //Stop in the middle of the second batch
+        final int stopIndex = 300;
+        assertFalse(this.aggregateEvents(-1, originalEvents.subList(0, stopIndex), stopIndex));
+        
+        //The event the stop was requested on and everything after it is aggregated by the next call
+        assertTrue(this.aggregateEvents(-1, originalEvents.subList(stopIndex, EVENT_COUNT), Integer.MAX_VALUE));
+        assertTrue(this.aggregateEvents(-1, Collections.<PortalEvent>emptyList(), Integer.MAX_VALUE));
+    }
+    
+    private void verifyAggregationOrder() throws Exception {
+        final List<PortalEvent> originalEvents = this.storeEvents();
+        
+        //Limit to a partial batch
+        assertTrue(this.aggregateEvents(EVENT_COUNT - 10, originalEvents.subList(0, EVENT_COUNT - 10), Integer.MAX_VALUE));
+        assertTrue(this.aggregateEvents(-1, originalEvents.subList(EVENT_COUNT - 10, EVENT_COUNT), Integer.MAX_VALUE));
+        assertTrue(this.aggregateEvents(-1, Collections.<PortalEvent>emptyList(), Integer.MAX_VALUE));
+    }
+    
+    /**
+     * Aggregate events, verifying the handler sees the expected events in order
+     * 
+     * @param stopAfter Number of events to handle before requesting aggregation stop
+     * @return The result of aggregatePortalEvents
+     */
+    private boolean aggregateEvents(final int maxEvents, final List<PortalEvent> expectedEvents, final int stopAfter) {
+        final List<PortalEvent> portalEvents = new ArrayList<PortalEvent>();
+        final boolean complete = execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return portalEventDao.aggregatePortalEvents(startDate, endDate, maxEvents, new Function<PortalEvent, Boolean>() {
+                    @Override
+                    public Boolean apply(PortalEvent input) {
+                        if (portalEvents.size() == stopAfter) {
+                            return false;
+                        }
+                        portalEvents.add(input);
+                        return true;
+                    }
+                });
+            }
+        });
+        
+        assertEquals(expectedEvents.size(), portalEvents.size());
+        for (int i = 0; i < expectedEvents.size(); i++) {
+            assertEquals(expectedEvents.get(i).getEventSessionId(), portalEvents.get(i).getEventSessionId());
+            assertEquals(expectedEvents.get(i).getTimestamp(), portalEvents.get(i).getTimestamp());
+        }
+        
+        return complete;
+    }
+    
+    private List<PortalEvent> storeEvents() throws Exception {
+        final List<PortalEvent> originalEvents = new ArrayList<PortalEvent>(EVENT_COUNT);
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            originalEvents.add(TestEventFactory.newLoginEvent(this, "example.com", "session-" + i, SystemPerson.INSTANCE, 
+                    Collections.<String>emptySet(), Collections.<String, List<String>>emptyMap()));
+            
+            //Distinct timestamps so the aggregation order is well defined
+            Thread.sleep(1);
+        }
+        
+        execute(new CallableWithoutResult() {
+            @Override
+            protected void callWithoutResult() {
+                portalEventDao.storePortalEvents(originalEvents);
+            }
+        });
+        
+        return originalEvents;
+    }
+    
+    private JpaPortalEventStore getPortalEventStore() throws Exception {
+        Object target = this.portalEventDao;
+        while (target instanceof Advised) {
+            target = ((Advised) target).getTargetSource().getTarget();
+        }
+        return (JpaPortalEventStore) target;
+    }
+}
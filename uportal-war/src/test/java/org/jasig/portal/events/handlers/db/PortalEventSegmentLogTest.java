@@ -0,0 +1,144 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.events.handlers.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link PortalEventSegmentLog}.
+ */
+public class PortalEventSegmentLogTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+    
+    @Test
+    public void testAppendAndRotate() throws Exception {
+        final File directory = tempFolder.newFolder("events");
+        final PortalEventSegmentLog segmentLog = new PortalEventSegmentLog(directory, 64, Long.MAX_VALUE);
+        
+        final byte[] first = "first event".getBytes("UTF-8");
+        final byte[] second = "second event".getBytes("UTF-8");
+        final byte[] third = "third event that is larger than a segment by itself".getBytes("UTF-8");
+        segmentLog.append(Arrays.asList(first, second));
+        
+        //The active segment isn't sealed yet
+        assertTrue(segmentLog.getSealedSegments().isEmpty());
+        
+        segmentLog.append(Collections.singletonList(third));
+        
+        final List<File> sealedSegments = segmentLog.getSealedSegments();
+        assertEquals(1, sealedSegments.size());
+        
+        final List<byte[]> records = segmentLog.readSegment(sealedSegments.get(0));
+        assertEquals(2, records.size());
+        assertArrayEquals(first, records.get(0));
+        assertArrayEquals(second, records.get(1));
+        
+        segmentLog.deleteSegment(sealedSegments.get(0));
+        assertTrue(segmentLog.getSealedSegments().isEmpty());
+    }
+    
+    @Test
+    public void testSealExpiredSegment() throws Exception {
+        final File directory = tempFolder.newFolder("events");
+        final PortalEventSegmentLog segmentLog = new PortalEventSegmentLog(directory, 1024, 0);
+        
+        segmentLog.append(Collections.singletonList("event".getBytes("UTF-8")));
+        segmentLog.sealExpiredSegment();
+        
+        assertEquals(1, segmentLog.getSealedSegments().size());
+    }
+    
+    @Test
+    public void testRecoverAfterRestart() throws Exception {
+        final File directory = tempFolder.newFolder("events");
+        PortalEventSegmentLog segmentLog = new PortalEventSegmentLog(directory, 1024, Long.MAX_VALUE);
+        
+        final byte[] first = "first event".getBytes("UTF-8");
+        final byte[] second = "second event".getBytes("UTF-8");
+        segmentLog.append(Arrays.asList(first, second));
+        
+        //Corrupt the last byte of the second record to simulate a torn write
+        final File segment = directory.listFiles()[0];
+        final RandomAccessFile segmentFile = new RandomAccessFile(segment, "rw");
+        try {
+            final long lastByte = 4 + 8 + first.length + 8 + second.length - 1;
+            segmentFile.seek(lastByte);
+            segmentFile.write(0);
+        }
+        finally {
+            segmentFile.close();
+        }
+        
+        //Segments from the previous run are sealed and readable up to the torn record
+        segmentLog = new PortalEventSegmentLog(directory, 1024, Long.MAX_VALUE);
+        final List<File> sealedSegments = segmentLog.getSealedSegments();
+        assertEquals(1, sealedSegments.size());
+        
+        final List<byte[]> records = segmentLog.readSegment(sealedSegments.get(0));
+        assertEquals(1, records.size());
+        assertArrayEquals(first, records.get(0));
+        
+        //New records go to a new segment
+        segmentLog.append(Collections.singletonList(second));
+        assertEquals(1, segmentLog.getSealedSegments().size());
+        assertEquals(2, directory.listFiles().length);
+    }
+    
+    @Test
+    public void testDeadLetter() throws Exception {
+        final File directory = tempFolder.newFolder("events");
+        final PortalEventSegmentLog segmentLog = new PortalEventSegmentLog(directory, 1024, 0);
+        
+        final byte[] first = "first event".getBytes("UTF-8");
+        final byte[] second = "second event".getBytes("UTF-8");
+        segmentLog.append(Arrays.asList(first, second));
+        segmentLog.sealExpiredSegment();
+        final File segment = segmentLog.getSealedSegments().get(0);
+        
+        //Dead letter files are readable but never shipped
+        final File deadLetter = segmentLog.writeDeadLetter(segment, Collections.singletonList(second));
+        segmentLog.deleteSegment(segment);
+        assertTrue(segmentLog.getSealedSegments().isEmpty());
+        
+        final List<byte[]> records = segmentLog.readSegment(deadLetter);
+        assertEquals(1, records.size());
+        assertArrayEquals(second, records.get(0));
+        
+        segmentLog.append(Collections.singletonList(first));
+        segmentLog.sealExpiredSegment();
+        final File quarantined = segmentLog.quarantineSegment(segmentLog.getSealedSegments().get(0));
+        assertTrue(segmentLog.getSealedSegments().isEmpty());
+        assertEquals(1, segmentLog.readSegment(quarantined).size());
+    }
+}
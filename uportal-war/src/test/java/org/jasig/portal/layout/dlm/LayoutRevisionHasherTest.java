@@ -0,0 +1,78 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.layout.dlm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.StringReader;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+public class LayoutRevisionHasherTest {
+    private static final String LAYOUT = 
+            "<layout xmlns:dlm=\"http://www.uportal.org/layout/dlm\">" +
+            "<folder ID=\"s1\" type=\"root\" hidden=\"false\">" +
+            "<folder ID=\"u12l1s2\" dlm:fragment=\"0\" type=\"regular\" name=\"Welcome\">" +
+            "<channel ID=\"u12l1n3\" fname=\"calendar\" chanID=\"5\"><parameter name=\"showTitle\" value=\"true\"/></channel>" +
+            "</folder>" +
+            "</folder>" +
+            "</layout>";
+    
+    @Test
+    public void testSameContentSameHash() throws Exception {
+        final Document layout1 = parse(LAYOUT);
+        final Document layout2 = parse(LAYOUT.replace("type=\"regular\" name=\"Welcome\"", "name=\"Welcome\" type=\"regular\""));
+        
+        assertEquals(LayoutRevisionHasher.hash(layout1), LayoutRevisionHasher.hash(layout2));
+    }
+    
+    @Test
+    public void testModifiedContentChangesHash() throws Exception {
+        final Document layout = parse(LAYOUT);
+        final String originalHash = LayoutRevisionHasher.hash(layout);
+        
+        final Element channel = (Element) layout.getElementsByTagName("channel").item(0);
+        channel.setAttribute("hidden", "true");
+        assertFalse(originalHash.equals(LayoutRevisionHasher.hash(layout)));
+        
+        channel.removeAttribute("hidden");
+        assertEquals(originalHash, LayoutRevisionHasher.hash(layout));
+    }
+    
+    @Test
+    public void testStructureChangesHash() throws Exception {
+        final String nested = LayoutRevisionHasher.hash(parse("<layout><folder ID=\"a\"><folder ID=\"b\"/></folder></layout>"));
+        final String siblings = LayoutRevisionHasher.hash(parse("<layout><folder ID=\"a\"/><folder ID=\"b\"/></layout>"));
+        
+        assertFalse(nested.equals(siblings));
+    }
+    
+    private Document parse(String xml) throws Exception {
+        final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        return documentBuilderFactory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+}
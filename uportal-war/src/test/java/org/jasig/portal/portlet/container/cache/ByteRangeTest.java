@@ -0,0 +1,84 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.portlet.container.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ByteRange}.
+ */
+public class ByteRangeTest {
+    @Test
+    public void testClosedRange() {
+        final ByteRange byteRange = ByteRange.parse("bytes=10-19", 100);
+        assertEquals(10, byteRange.getStart());
+        assertEquals(19, byteRange.getEnd());
+        assertEquals(10, byteRange.getLength());
+        assertEquals("bytes 10-19/100", byteRange.getContentRange(100));
+    }
+    
+    @Test
+    public void testRangePastEnd() {
+        final ByteRange byteRange = ByteRange.parse("bytes=90-199", 100);
+        assertEquals(90, byteRange.getStart());
+        assertEquals(99, byteRange.getEnd());
+    }
+    
+    @Test
+    public void testOpenRange() {
+        final ByteRange byteRange = ByteRange.parse("bytes=50-", 100);
+        assertEquals(50, byteRange.getStart());
+        assertEquals(99, byteRange.getEnd());
+        assertEquals(50, byteRange.getLength());
+    }
+    
+    @Test
+    public void testSuffixRange() {
+        ByteRange byteRange = ByteRange.parse("bytes=-10", 100);
+        assertEquals(90, byteRange.getStart());
+        assertEquals(99, byteRange.getEnd());
+        
+        byteRange = ByteRange.parse("bytes=-500", 100);
+        assertEquals(0, byteRange.getStart());
+        assertEquals(99, byteRange.getEnd());
+    }
+    
+    @Test
+    public void testUnsatisfiableRange() {
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=100-", 100));
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 100));
+        assertEquals("bytes */100", ByteRange.UNSATISFIABLE.getContentRange(100));
+    }
+    
+    @Test
+    public void testFullContentRanges() {
+        assertNull(ByteRange.parse(null, 100));
+        assertNull(ByteRange.parse("bytes=0-9,20-29", 100));
+        assertNull(ByteRange.parse("items=0-9", 100));
+        assertNull(ByteRange.parse("bytes=20-10", 100));
+        assertNull(ByteRange.parse("bytes=a-b", 100));
+        assertNull(ByteRange.parse("bytes=-", 100));
+    }
+}
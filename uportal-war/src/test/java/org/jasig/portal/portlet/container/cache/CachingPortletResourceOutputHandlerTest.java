@@ -18,9 +18,18 @@
  */
 package org.jasig.portal.portlet.container.cache;
 
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+
+import org.apache.commons.io.FileUtils;
 import org.jasig.portal.portlet.rendering.PortletResourceOutputHandler;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -53,4 +62,94 @@ public class CachingPortletResourceOutputHandlerTest {
         final CachedPortletResourceData<Long> cachedPortletResourceData = cachingOutputHandler.getCachedPortletResourceData(1l, new CacheControlImpl());
         assertNull(cachedPortletResourceData);
     }
+    
+    @Test
+    public void testSpooledCaching() throws Exception {
+        final File directory = new File(FileUtils.getTempDirectory(), "CachingPortletResourceOutputHandlerTest-" + System.nanoTime());
+        try {
+            final PortletResourceFileCache portletResourceFileCache = new PortletResourceFileCache(directory, 1000);
+            final ByteArrayOutputStream responseStream = new ByteArrayOutputStream();
+            when(portletResourceOutputHandler.getOutputStream()).thenReturn(responseStream);
+            
+            final CachingPortletResourceOutputHandler cachingOutputHandler = new CachingPortletResourceOutputHandler(portletResourceOutputHandler, 10, portletResourceFileCache);
+            final OutputStream outputStream = cachingOutputHandler.getOutputStream();
+            outputStream.write(new byte[100]);
+            
+            final CachedPortletResourceData<Long> cachedPortletResourceData = cachingOutputHandler.getCachedPortletResourceData(1l, new CacheControlImpl());
+            cachingOutputHandler.discardSpoolFile();
+            
+            assertEquals(100, responseStream.size());
+            final FileCachedPortletData<Long> cachedPortletData = (FileCachedPortletData<Long>) cachedPortletResourceData.getCachedPortletData();
+            assertEquals(100, cachedPortletData.getLength());
+            assertTrue(cachedPortletData.getFile().exists());
+        }
+        finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+    
+    @Test
+    public void testSpoolLimit() throws Exception {
+        final File directory = new File(FileUtils.getTempDirectory(), "CachingPortletResourceOutputHandlerTest-" + System.nanoTime());
+        try {
+            final PortletResourceFileCache portletResourceFileCache = new PortletResourceFileCache(directory, 50);
+            when(portletResourceOutputHandler.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+            
+            final CachingPortletResourceOutputHandler cachingOutputHandler = new CachingPortletResourceOutputHandler(portletResourceOutputHandler, 10, portletResourceFileCache);
+            cachingOutputHandler.getOutputStream().write(new byte[100]);
+            
+            assertNull(cachingOutputHandler.getCachedPortletResourceData(1l, new CacheControlImpl()));
+            cachingOutputHandler.discardSpoolFile();
+            assertFalse(directory.list().length > 0);
+        }
+        finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+    
+    @Test
+    public void testNoSpoolingUncacheable() throws Exception {
+        final File directory = new File(FileUtils.getTempDirectory(), "CachingPortletResourceOutputHandlerTest-" + System.nanoTime());
+        try {
+            final PortletResourceFileCache portletResourceFileCache = new PortletResourceFileCache(directory, 1000);
+            when(portletResourceOutputHandler.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+            
+            final CacheControlImpl cacheControl = new CacheControlImpl();
+            cacheControl.setExpirationTime(0);
+            
+            final CachingPortletResourceOutputHandler cachingOutputHandler = new CachingPortletResourceOutputHandler(portletResourceOutputHandler, 10, portletResourceFileCache, cacheControl);
+            cachingOutputHandler.getOutputStream().write(new byte[100]);
+            
+            assertEquals(0, directory.list().length);
+            cachingOutputHandler.discardSpoolFile();
+        }
+        finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+    
+    @Test
+    public void testRemovedFileKeptForReader() throws Exception {
+        final File directory = new File(FileUtils.getTempDirectory(), "CachingPortletResourceOutputHandlerTest-" + System.nanoTime());
+        try {
+            final PortletResourceFileCache portletResourceFileCache = new PortletResourceFileCache(directory, 1000, 0);
+            final File file = new File(directory, "resource-test.spool");
+            FileUtils.writeByteArrayToFile(file, new byte[100]);
+            
+            assertTrue(portletResourceFileCache.store("cache", 1l, file));
+            assertTrue(portletResourceFileCache.acquire(file));
+            
+            portletResourceFileCache.remove("cache", 1l);
+            assertTrue(file.exists());
+            assertEquals(1, portletResourceFileCache.getRetiredFileCount());
+            
+            portletResourceFileCache.release(file);
+            assertFalse(file.exists());
+            assertEquals(0, portletResourceFileCache.getRetiredFileCount());
+            assertFalse(portletResourceFileCache.acquire(file));
+        }
+        finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
 }
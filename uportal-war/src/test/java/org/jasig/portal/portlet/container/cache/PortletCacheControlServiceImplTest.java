@@ -26,6 +26,11 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.portlet.CacheControl;
 import javax.portlet.MimeResponse;
@@ -38,6 +43,8 @@ import net.sf.ehcache.CacheManager;
 import org.apache.pluto.container.om.portlet.PortletDefinition;
 import org.jasig.portal.mock.portlet.om.MockPortletDefinitionId;
 import org.jasig.portal.mock.portlet.om.MockPortletWindowId;
+import org.jasig.portal.portlet.om.IPortletDefinition;
+import org.jasig.portal.portlet.om.IPortletDefinitionParameter;
 import org.jasig.portal.portlet.om.IPortletEntity;
 import org.jasig.portal.portlet.om.IPortletWindow;
 import org.jasig.portal.portlet.registry.IPortletDefinitionRegistry;
@@ -298,6 +305,110 @@ public class PortletCacheControlServiceImplTest {
         assertNotNull(actualCachedPortletData);
     }
     
+    @Test
+    public void testCoalescePublicRender() throws Exception {
+        final MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        final MockPortletWindowId portletWindowId = new MockPortletWindowId("123");
+        final MockPortletDefinitionId portletDefinitionId = new MockPortletDefinitionId(789);
+        cacheControlService.setCoalescePublicRenders(true);
+        
+        when(portletDescriptor.getCacheScope()).thenReturn(MimeResponse.PUBLIC_SCOPE);
+        when(portletDescriptor.getExpirationCache()).thenReturn(300);
+        
+        when(portletWindowRegistry.getPortletWindow(httpRequest, portletWindowId)).thenReturn(portletWindow);
+        when(portletWindow.getPortletWindowId()).thenReturn(portletWindowId);
+        when(portletWindow.getPortletEntity()).thenReturn(portletEntity);
+        when(portletWindow.getWindowState()).thenReturn(WindowState.NORMAL);
+        when(portletWindow.getPortletMode()).thenReturn(PortletMode.VIEW);
+        when(portletEntity.getPortletDefinitionId()).thenReturn(portletDefinitionId);
+        when(portletDefinitionRegistry.getParentPortletDescriptor(portletDefinitionId)).thenReturn(portletDescriptor);
+        when(urlSyntaxProvider.getPortalRequestInfo(httpRequest)).thenReturn(portalRequestInfo);
+        when(portalRequestInfo.getPortletRequestInfoMap()).thenReturn(Collections.EMPTY_MAP);
+        
+        //First request claims the public cache load
+        final CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult> firstCacheState = cacheControlService.getPortletRenderState(httpRequest, portletWindowId);
+        assertFalse(firstCacheState.isUseCachedData());
+        assertTrue(firstCacheState.getCacheControl().isPublicScope());
+        
+        //Second request waits for the first to populate the cache
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            final Future<CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult>> secondCacheStateFuture = executorService.submit(
+                    new Callable<CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult>>() {
+                @Override
+                public CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult> call() throws Exception {
+                    return cacheControlService.getPortletRenderState(httpRequest, portletWindowId);
+                }
+            });
+            
+            Thread.sleep(100);
+            assertFalse(secondCacheStateFuture.isDone());
+            
+            final CacheControl cacheControl = firstCacheState.getCacheControl();
+            final PortletRenderResult renderResult = new PortletRenderResult("title", null, 0, 1000l);
+            final CachedPortletData<PortletRenderResult> cachedPortletData = new CachedPortletData<PortletRenderResult>(
+                    renderResult, "<p>Public content</p>", null, null, true, cacheControl.getETag(), cacheControl.getExpirationTime());
+            cacheControlService.cachePortletRenderOutput(portletWindowId, httpRequest, firstCacheState, cachedPortletData);
+            cacheControlService.releasePublicCacheLoad(firstCacheState);
+            
+            final CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult> secondCacheState = secondCacheStateFuture.get(5, TimeUnit.SECONDS);
+            assertTrue(secondCacheState.isUseCachedData());
+            assertNotNull(secondCacheState.getCachedPortletData());
+        }
+        finally {
+            executorService.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testStaleWhileRevalidate() {
+        final MockHttpSession session = new MockHttpSession();
+        final MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        httpRequest.setSession(session);
+        final MockHttpServletRequest nextHttpRequest = new MockHttpServletRequest();
+        nextHttpRequest.setSession(session);
+        final MockPortletWindowId portletWindowId = new MockPortletWindowId("123");
+        final MockPortletDefinitionId portletDefinitionId = new MockPortletDefinitionId(789);
+        final IPortletDefinition portletDefinition = mock(IPortletDefinition.class);
+        final IPortletDefinitionParameter staleWhileRevalidate = mock(IPortletDefinitionParameter.class);
+        
+        when(portletDescriptor.getCacheScope()).thenReturn("private");
+        when(portletDescriptor.getExpirationCache()).thenReturn(300);
+        
+        when(portletWindowRegistry.getPortletWindow(httpRequest, portletWindowId)).thenReturn(portletWindow);
+        when(portletWindowRegistry.getPortletWindow(nextHttpRequest, portletWindowId)).thenReturn(portletWindow);
+        when(portletWindow.getPortletWindowId()).thenReturn(portletWindowId);
+        when(portletWindow.getPortletEntity()).thenReturn(portletEntity);
+        when(portletWindow.getWindowState()).thenReturn(WindowState.NORMAL);
+        when(portletWindow.getPortletMode()).thenReturn(PortletMode.VIEW);
+        when(portletEntity.getPortletDefinitionId()).thenReturn(portletDefinitionId);
+        when(portletEntity.getPortletDefinition()).thenReturn(portletDefinition);
+        when(portletDefinition.getParameter(PortletCacheControlServiceImpl.STALE_WHILE_REVALIDATE_PARAMETER)).thenReturn(staleWhileRevalidate);
+        when(staleWhileRevalidate.getValue()).thenReturn("60");
+        when(portletDefinitionRegistry.getParentPortletDescriptor(portletDefinitionId)).thenReturn(portletDescriptor);
+        when(urlSyntaxProvider.getPortalRequestInfo(httpRequest)).thenReturn(portalRequestInfo);
+        when(urlSyntaxProvider.getPortalRequestInfo(nextHttpRequest)).thenReturn(portalRequestInfo);
+        
+        final CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult> cacheState = cacheControlService.getPortletRenderState(httpRequest, portletWindowId);
+        
+        //Cache output that expired two seconds ago
+        final PortletRenderResult portletResult = new PortletRenderResult("title", null, 0, 1);
+        final CachedPortletData<PortletRenderResult> cachedPortletData = new CachedPortletData<PortletRenderResult>(
+                portletResult, "<p>Stale content</p>", null, null, false, null, -2);
+        cacheControlService.cachePortletRenderOutput(portletWindowId, httpRequest, cacheState, cachedPortletData);
+        
+        //Stale output is replayed and a single revalidation can be claimed
+        final CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult> staleCacheState = cacheControlService.getPortletRenderState(nextHttpRequest, portletWindowId);
+        assertTrue(staleCacheState.isUseCachedData());
+        assertTrue(cacheControlService.claimPortletRevalidation(nextHttpRequest, portletWindowId, false));
+        assertFalse(cacheControlService.claimPortletRevalidation(nextHttpRequest, portletWindowId, false));
+        assertFalse(cacheControlService.claimPortletRevalidation(nextHttpRequest, portletWindowId, true));
+        
+        //The revalidating render does not replay the stale output
+        final CacheState<CachedPortletData<PortletRenderResult>, PortletRenderResult> revalidateCacheState = cacheControlService.getPortletRenderState(nextHttpRequest, portletWindowId);
+        assertFalse(revalidateCacheState.isUseCachedData());
+    }
+    
     @Test
     public void testCachePrivateResourceRoundTrip() {
         MockHttpServletRequest httpRequest = new MockHttpServletRequest();
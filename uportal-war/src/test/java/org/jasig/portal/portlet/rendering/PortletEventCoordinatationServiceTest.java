@@ -24,6 +24,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -31,6 +32,7 @@ import java.util.Collections;
 import java.util.List;
 
 import javax.portlet.Event;
+import javax.xml.bind.JAXBContext;
 import javax.xml.namespace.QName;
 
 import net.sf.ehcache.Ehcache;
@@ -101,4 +103,10 @@ public class PortletEventCoordinatationServiceTest {
         final boolean supportsEvent = portletEventCoordinatationService.supportsEvent(event, portletDefinitionId);
         assertTrue(supportsEvent);
     }
+    
+    @Test
+    public void testJAXBContextReused() throws Exception {
+        final JAXBContext jaxbContext = portletEventCoordinatationService.getJAXBContext(String.class);
+        assertSame(jaxbContext, portletEventCoordinatationService.getJAXBContext(String.class));
+    }
 }
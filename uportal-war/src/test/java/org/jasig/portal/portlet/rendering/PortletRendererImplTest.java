@@ -143,6 +143,7 @@ public class PortletRendererImplTest {
 		
 		verify(portletContainer, times(2)).doRender(eq(plutoPortletWindow), isA(PortletHttpServletRequestWrapper.class), isA(PortletHttpServletResponseWrapper.class));
 		verify(portletCacheControlService, times(2)).getPortletRenderState(request, portletWindowId);
+		verify(portletCacheControlService, times(2)).releasePublicCacheLoad(cacheState);
 		verify(portletCacheControlService, times(2)).getCacheSizeThreshold();
 		verify(portletCacheControlService, times(2)).shouldOutputBeCached(cacheControl);
 		
@@ -178,6 +179,7 @@ public class PortletRendererImplTest {
 		
 		verify(portletContainer, times(1)).doRender(eq(plutoPortletWindow), isA(PortletHttpServletRequestWrapper.class), isA(PortletHttpServletResponseWrapper.class));
         verify(portletCacheControlService, times(1)).getPortletRenderState(request, portletWindowId);
+        verify(portletCacheControlService, times(1)).releasePublicCacheLoad(cacheState);
         verify(portletCacheControlService, times(1)).getCacheSizeThreshold();
         verify(portletCacheControlService, times(1)).shouldOutputBeCached(cacheControl);
         verify(portletCacheControlService, times(1)).cachePortletRenderOutput(eq(portletWindowId), isA(PortletHttpServletRequestWrapper.class), eq(cacheState), isA(CachedPortletData.class));
@@ -216,6 +218,7 @@ public class PortletRendererImplTest {
         
         verify(portletContainer, times(1)).doRender(eq(plutoPortletWindow), isA(PortletHttpServletRequestWrapper.class), isA(PortletHttpServletResponseWrapper.class));
         verify(portletCacheControlService, times(1)).getPortletRenderState(request, portletWindowId);
+        verify(portletCacheControlService, times(1)).releasePublicCacheLoad(cacheState);
         verify(portletCacheControlService, times(1)).getCacheSizeThreshold();
         verify(portletCacheControlService, times(1)).shouldOutputBeCached(cacheControl);
         verify(portletCacheControlService, times(1)).cachePortletRenderOutput(eq(portletWindowId), isA(PortletHttpServletRequestWrapper.class), eq(cacheState), isA(CachedPortletData.class));
@@ -254,6 +257,7 @@ public class PortletRendererImplTest {
 		Assert.assertEquals(output, handler.getOutput());
 		
 		verify(portletCacheControlService, times(1)).getPortletRenderState(request, portletWindowId);
+		verify(portletCacheControlService, times(1)).releasePublicCacheLoad(cacheState);
         
         verifyNoMoreInteractions(portletContainer, portletCacheControlService);
 	}
@@ -290,6 +294,7 @@ public class PortletRendererImplTest {
         Assert.assertEquals(output, handler.getOutput());
         
         verify(portletCacheControlService, times(1)).getPortletRenderState(request, portletWindowId);
+        verify(portletCacheControlService, times(1)).releasePublicCacheLoad(cacheState);
         
         verifyNoMoreInteractions(portletContainer, portletCacheControlService);
 	}
@@ -334,6 +339,7 @@ public class PortletRendererImplTest {
 		Assert.assertNotSame(expTime, cachedPortletData.getTimeStored());
 
 		verify(portletCacheControlService, times(1)).getPortletRenderState(request, portletWindowId);
+		verify(portletCacheControlService, times(1)).releasePublicCacheLoad(cacheState);
 		verify(portletCacheControlService, times(1)).getCacheSizeThreshold();
 		verify(portletContainer, times(1)).doRender(eq(plutoPortletWindow), isA(PortletHttpServletRequestWrapper.class), isA(PortletHttpServletResponseWrapper.class));
 		verify(portletCacheControlService, times(1)).cachePortletRenderOutput(eq(portletWindowId), isA(PortletHttpServletRequestWrapper.class), eq(cacheState), isA(CachedPortletData.class));
@@ -0,0 +1,72 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.portlet.rendering.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimitTest {
+    @Test
+    public void testRejectOverLimit() {
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 2, .5);
+        
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+        assertEquals(2, limit.getInFlight());
+        assertEquals(1, limit.getRejectedCount());
+        
+        limit.release(System.currentTimeMillis(), false);
+        assertTrue(limit.tryAcquire());
+    }
+    
+    @Test
+    public void testMultiplicativeDecreaseAdditiveIncrease() {
+        final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 8, .5);
+        assertEquals(8, limit.getLimit());
+        
+        final long started = System.currentTimeMillis();
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        
+        //Only the first of the executions running at the time of the decrease lowers the limit
+        limit.release(started, true);
+        assertEquals(4, limit.getLimit());
+        limit.release(started - 1, true);
+        assertEquals(4, limit.getLimit());
+        assertEquals(2, limit.getCongestedCount());
+        
+        //Never drops below the minimum
+        limit.congested(System.currentTimeMillis());
+        limit.congested(System.currentTimeMillis());
+        assertEquals(2, limit.getLimit());
+        
+        //Roughly one increase per limit's worth of successful executions
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.release(System.currentTimeMillis(), false);
+        }
+        assertEquals(3, limit.getLimit());
+        assertEquals(0, limit.getInFlight());
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.portlet.rendering.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jasig.portal.portlet.om.IPortletWindow;
+import org.jasig.portal.portlet.om.IPortletWindowId;
+import org.jasig.portal.portlet.registry.IPortletWindowRegistry;
+import org.jasig.portal.portlet.rendering.worker.IPortletExecutionContext.ExecutionType;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class PortletCircuitBreakerTest {
+    private static final String FNAME = "portlet";
+    
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final IPortletWindowId portletWindowId = mock(IPortletWindowId.class);
+    private PortletCircuitBreaker portletCircuitBreaker;
+    
+    @Before
+    public void setup() {
+        final IPortletWindow portletWindow = mock(IPortletWindow.class, RETURNS_DEEP_STUBS);
+        when(portletWindow.getPortletEntity().getPortletDefinition().getFName()).thenReturn(FNAME);
+        
+        final IPortletWindowRegistry portletWindowRegistry = mock(IPortletWindowRegistry.class);
+        when(portletWindowRegistry.getPortletWindow(this.request, this.portletWindowId)).thenReturn(portletWindow);
+        
+        this.portletCircuitBreaker = new PortletCircuitBreaker();
+        this.portletCircuitBreaker.setPortletWindowRegistry(portletWindowRegistry);
+        this.portletCircuitBreaker.setEnabled(true);
+        this.portletCircuitBreaker.setFailureThreshold(2);
+        this.portletCircuitBreaker.setOpenTime(60000);
+    }
+    
+    @Test
+    public void testDenialsNotCounted() {
+        for (int i = 0; i < 5; i++) {
+            this.submitFailure(new ExecutionException(new PortletExecutionDeniedException("over concurrency limit")));
+            this.submitFailure(new ExecutionException(new RejectedExecutionException("pool saturated")));
+        }
+        
+        assertTrue(this.portletCircuitBreaker.getPortletCircuits().isEmpty());
+        this.portletCircuitBreaker.preSubmit(this.request, this.response, this.createContext(ExecutionType.RENDER));
+    }
+    
+    @Test
+    public void testPortletFailuresOpenCircuit() {
+        this.submitFailure(new ExecutionException(new RuntimeException("portlet failed")));
+        this.submitFailure(new ExecutionException(new RuntimeException("portlet failed")));
+        assertEquals(1, this.portletCircuitBreaker.getPortletCircuits().size());
+        
+        try {
+            this.portletCircuitBreaker.preSubmit(this.request, this.response, this.createContext(ExecutionType.RENDER));
+            fail("Circuit should be open");
+        }
+        catch (PortletCircuitOpenException e) {
+            //Expected, and the denial itself is not counted as another failure
+            this.submitFailure(new ExecutionException(e));
+        }
+    }
+    
+    private void submitFailure(Exception cause) {
+        final IPortletFailureExecutionWorker failureWorker = mock(IPortletFailureExecutionWorker.class);
+        when(failureWorker.getExecutionType()).thenReturn(ExecutionType.FAILURE);
+        when(failureWorker.getPortletWindowId()).thenReturn(this.portletWindowId);
+        when(failureWorker.getPortletFname()).thenReturn(FNAME);
+        when(failureWorker.getCause()).thenReturn(cause);
+        
+        this.portletCircuitBreaker.preSubmit(this.request, this.response, failureWorker);
+    }
+    
+    private IPortletExecutionContext createContext(ExecutionType executionType) {
+        final IPortletExecutionContext context = mock(IPortletExecutionContext.class);
+        when(context.getExecutionType()).thenReturn(executionType);
+        when(context.getPortletWindowId()).thenReturn(this.portletWindowId);
+        when(context.getPortletFname()).thenReturn(FNAME);
+        return context;
+    }
+}
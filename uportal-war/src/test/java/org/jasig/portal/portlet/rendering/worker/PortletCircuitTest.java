@@ -0,0 +1,77 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.portlet.rendering.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PortletCircuitTest {
+    @Test
+    public void testOpenAfterConsecutiveFailures() {
+        final PortletCircuit circuit = new PortletCircuit(3, 60000);
+        
+        assertFalse(circuit.recordFailure());
+        assertFalse(circuit.recordFailure());
+        
+        //A success resets the consecutive failure count
+        circuit.recordSuccess(System.currentTimeMillis());
+        assertFalse(circuit.recordFailure());
+        assertFalse(circuit.recordFailure());
+        assertTrue(circuit.allowExecution());
+        
+        assertTrue(circuit.recordFailure());
+        assertEquals("OPEN", circuit.getState());
+        assertFalse(circuit.allowExecution());
+        assertEquals(1, circuit.getRejectedCount());
+        assertEquals(1, circuit.getOpenCount());
+    }
+    
+    @Test
+    public void testHalfOpenProbe() {
+        final PortletCircuit circuit = new PortletCircuit(1, 0);
+        final long startedBeforeOpen = System.currentTimeMillis() - 1;
+        
+        assertTrue(circuit.recordFailure());
+        assertEquals("OPEN", circuit.getState());
+        
+        //Open time has passed, a probe is let through
+        assertTrue(circuit.allowExecution());
+        assertEquals("HALF_OPEN", circuit.getState());
+        
+        //Probe failure re-opens the circuit
+        assertTrue(circuit.recordFailure());
+        assertEquals("OPEN", circuit.getState());
+        
+        assertTrue(circuit.allowExecution());
+        final long probeStarted = System.currentTimeMillis();
+        
+        //Executions started before the probe do not close the circuit
+        circuit.recordSuccess(startedBeforeOpen);
+        assertEquals("HALF_OPEN", circuit.getState());
+        
+        circuit.recordSuccess(probeStarted);
+        assertEquals("CLOSED", circuit.getState());
+        assertEquals(0, circuit.getConsecutiveFailures());
+        assertEquals(2, circuit.getOpenCount());
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.portlet.rendering.worker;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PortletWorkerFactoryImplTest {
+    @Mock private ExecutorService portletThreadPool;
+    @Mock private ExecutorService virtualThreadExecutor;
+    
+    @Test
+    public void testVirtualThreadsNotSupported() {
+        //Pre Java 21 JVMs have no newVirtualThreadPerTaskExecutor method
+        assertNull(PortletWorkerFactoryImpl.createVirtualThreadExecutor(Object.class));
+    }
+    
+    @Test
+    public void testVirtualThreadsSupported() {
+        final ExecutorService executor = PortletWorkerFactoryImpl.createVirtualThreadExecutor(SupportedExecutors.class);
+        assertNotNull(executor);
+        executor.shutdownNow();
+    }
+    
+    @Test(expected=IllegalStateException.class)
+    public void testVirtualThreadExecutorFailure() {
+        PortletWorkerFactoryImpl.createVirtualThreadExecutor(FailingExecutors.class);
+    }
+    
+    @Test
+    public void testRunningJvm() throws Exception {
+        boolean supported;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            supported = true;
+        }
+        catch (NoSuchMethodException e) {
+            supported = false;
+        }
+        
+        final ExecutorService executor = PortletWorkerFactoryImpl.createVirtualThreadExecutor(Executors.class);
+        if (!supported) {
+            assertNull(executor);
+            return;
+        }
+        
+        try {
+            final Boolean virtual = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertTrue(virtual);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testVirtualThreadsDisabled() throws Exception {
+        final PortletWorkerFactoryImpl portletWorkerFactory = this.createPortletWorkerFactory(virtualThreadExecutor);
+        portletWorkerFactory.setUseVirtualThreads(false);
+        portletWorkerFactory.afterPropertiesSet();
+        
+        assertSame(portletThreadPool, portletWorkerFactory.getWorkerExecutor());
+        
+        portletWorkerFactory.destroy();
+        verifyZeroInteractions(virtualThreadExecutor);
+    }
+    
+    @Test
+    public void testVirtualThreadsFallback() throws Exception {
+        final PortletWorkerFactoryImpl portletWorkerFactory = this.createPortletWorkerFactory(null);
+        portletWorkerFactory.setUseVirtualThreads(true);
+        portletWorkerFactory.afterPropertiesSet();
+        
+        assertSame(portletThreadPool, portletWorkerFactory.getWorkerExecutor());
+        
+        portletWorkerFactory.destroy();
+        verifyZeroInteractions(portletThreadPool);
+    }
+    
+    @Test
+    public void testVirtualThreadsEnabled() throws Exception {
+        final PortletWorkerFactoryImpl portletWorkerFactory = this.createPortletWorkerFactory(virtualThreadExecutor);
+        portletWorkerFactory.setUseVirtualThreads(true);
+        portletWorkerFactory.afterPropertiesSet();
+        
+        assertSame(virtualThreadExecutor, portletWorkerFactory.getWorkerExecutor());
+        
+        //The virtual thread executor is owned by the factory, the shared pool is not
+        portletWorkerFactory.destroy();
+        verify(virtualThreadExecutor).shutdownNow();
+        verifyZeroInteractions(portletThreadPool);
+    }
+    
+    private PortletWorkerFactoryImpl createPortletWorkerFactory(final ExecutorService virtualThreadExecutor) {
+        final PortletWorkerFactoryImpl portletWorkerFactory = new PortletWorkerFactoryImpl() {
+            @Override
+            protected ExecutorService createVirtualThreadExecutor() {
+                return virtualThreadExecutor;
+            }
+        };
+        portletWorkerFactory.setPortletThreadPool(portletThreadPool);
+        return portletWorkerFactory;
+    }
+    
+    public static class SupportedExecutors {
+        public static ExecutorService newVirtualThreadPerTaskExecutor() {
+            return Executors.newSingleThreadExecutor();
+        }
+    }
+    
+    public static class FailingExecutors {
+        public static ExecutorService newVirtualThreadPerTaskExecutor() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.servlet.AsyncContext;
+
+import org.jasig.portal.portlet.rendering.IPortletExecutionManager;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PortletRenderCompletionMonitorTest {
+    @InjectMocks private PortletRenderCompletionMonitor portletRenderCompletionMonitor = new PortletRenderCompletionMonitor();
+    @Mock private IPortletExecutionManager portletExecutionManager;
+    @Mock private AsyncContext asyncContext;
+    
+    @After
+    public void tearDown() throws Exception {
+        this.portletRenderCompletionMonitor.destroy();
+    }
+    
+    @Test
+    public void testResumeOnCompletion() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final Runnable task = mock(Runnable.class);
+        
+        //Large interval so only the explicit checks below run
+        this.portletRenderCompletionMonitor.setPollInterval(60000);
+        this.portletRenderCompletionMonitor.resumeOnCompletion(request, response, asyncContext, task);
+        assertEquals(1, this.portletRenderCompletionMonitor.getPendingRenderCount());
+        
+        when(this.portletExecutionManager.isPortletRenderingComplete(request, response)).thenReturn(false);
+        this.portletRenderCompletionMonitor.checkPendingRenders();
+        verify(this.asyncContext, never()).start(task);
+        assertEquals(1, this.portletRenderCompletionMonitor.getPendingRenderCount());
+        
+        when(this.portletExecutionManager.isPortletRenderingComplete(request, response)).thenReturn(true);
+        this.portletRenderCompletionMonitor.checkPendingRenders();
+        verify(this.asyncContext).start(task);
+        assertEquals(0, this.portletRenderCompletionMonitor.getPendingRenderCount());
+    }
+    
+    @Test
+    public void testCancel() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final Runnable task = mock(Runnable.class);
+        
+        this.portletRenderCompletionMonitor.setPollInterval(60000);
+        this.portletRenderCompletionMonitor.resumeOnCompletion(request, response, asyncContext, task);
+        this.portletRenderCompletionMonitor.cancel(asyncContext);
+        assertEquals(0, this.portletRenderCompletionMonitor.getPendingRenderCount());
+        
+        //A cancelled request is never resumed
+        this.portletRenderCompletionMonitor.checkPendingRenders();
+        verify(this.asyncContext, never()).start(task);
+    }
+}
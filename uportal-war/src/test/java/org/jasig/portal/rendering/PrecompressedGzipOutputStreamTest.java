@@ -0,0 +1,131 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.jasig.portal.character.stream.events.DeflatedCharacterDataEvent;
+import org.jasig.portal.character.stream.events.DeflatedCharacterDataEventImpl;
+import org.junit.Test;
+
+public class PrecompressedGzipOutputStreamTest {
+    private static final String CHARACTER_SET = "UTF-8";
+    
+    @Test
+    public void testMixedContent() throws Exception {
+        final DeflatedCharacterDataEvent header = DeflatedCharacterDataEventImpl.create("<html><head><title>Portal \u00e9</title></head><body><div class=\"portlet\">", CHARACTER_SET);
+        final DeflatedCharacterDataEvent separator = DeflatedCharacterDataEventImpl.create("</div><div class=\"portlet\">", CHARACTER_SET);
+        final DeflatedCharacterDataEvent footer = DeflatedCharacterDataEventImpl.create("</div></body></html>", CHARACTER_SET);
+        
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrecompressedGzipOutputStream outputStream = new PrecompressedGzipOutputStream(buffer);
+        final StringBuilder expected = new StringBuilder();
+        
+        outputStream.writeDeflated(header);
+        expected.append(header.getData());
+        
+        //Dynamic content that repeats the static content, must not reference it once decompressed
+        final String portlet = "<p>Portlet content</p></div><div class=\"portlet\"><p>Portlet content</p>";
+        outputStream.write(portlet.getBytes(CHARACTER_SET));
+        expected.append(portlet);
+        
+        outputStream.flush();
+        outputStream.flush();
+        
+        outputStream.writeDeflated(separator);
+        outputStream.writeDeflated(separator);
+        expected.append(separator.getData()).append(separator.getData());
+        
+        outputStream.write('x');
+        expected.append('x');
+        
+        outputStream.writeDeflated(footer);
+        expected.append(footer.getData());
+        
+        outputStream.finish();
+        
+        assertEquals(expected.toString(), gunzip(buffer.toByteArray()));
+    }
+    
+    @Test
+    public void testOnlyDynamicContent() throws Exception {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrecompressedGzipOutputStream outputStream = new PrecompressedGzipOutputStream(buffer);
+        
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            expected.append("line ").append(i).append('\n');
+        }
+        outputStream.write(expected.toString().getBytes(CHARACTER_SET));
+        outputStream.close();
+        
+        assertEquals(expected.toString(), gunzip(buffer.toByteArray()));
+    }
+    
+    @Test
+    public void testEmptyStream() throws Exception {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrecompressedGzipOutputStream outputStream = new PrecompressedGzipOutputStream(buffer);
+        outputStream.finish();
+        
+        assertEquals("", gunzip(buffer.toByteArray()));
+    }
+    
+    @Test
+    public void testEndBeforeFinish() throws Exception {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrecompressedGzipOutputStream outputStream = new PrecompressedGzipOutputStream(buffer);
+        outputStream.write("partial page".getBytes(CHARACTER_SET));
+        
+        outputStream.end();
+        outputStream.end();
+        outputStream.finish();
+        
+        try {
+            outputStream.write('x');
+            fail("write after end should fail");
+        }
+        catch (IOException e) {
+            //expected
+        }
+    }
+    
+    private String gunzip(byte[] data) throws IOException {
+        final InputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(CHARACTER_SET);
+        }
+        finally {
+            in.close();
+        }
+    }
+}
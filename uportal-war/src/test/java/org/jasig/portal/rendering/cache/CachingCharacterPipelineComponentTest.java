@@ -19,6 +19,7 @@
 
 package org.jasig.portal.rendering.cache;
 
+import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
@@ -26,6 +27,7 @@ import static org.easymock.EasyMock.notNull;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -34,7 +36,10 @@ import net.sf.ehcache.Element;
 
 import org.jasig.portal.character.stream.CharacterEventBufferReader;
 import org.jasig.portal.character.stream.CharacterEventReader;
+import org.easymock.Capture;
+import org.jasig.portal.character.stream.events.CharacterDataEventImpl;
 import org.jasig.portal.character.stream.events.CharacterEvent;
+import org.jasig.portal.character.stream.events.EncodedCharacterDataEvent;
 import org.jasig.portal.rendering.CharacterPipelineComponent;
 import org.jasig.portal.rendering.PipelineEventReader;
 import org.jasig.portal.rendering.PipelineEventReaderImpl;
@@ -117,4 +122,85 @@ public class CachingCharacterPipelineComponentTest {
         
         verify(cache, targetComponent, elementsProvider);
     }
+    
+    @Test
+    public void testCacheMissEncodeCharacterData() {
+        final MockHttpServletRequest mockReq = new MockHttpServletRequest();
+        final MockHttpServletResponse mockRes = new MockHttpServletResponse();
+        final CacheKey cacheKey = CacheKey.build("testCacheKey");
+        final List<CharacterEvent> eventBuffer = Arrays.<CharacterEvent>asList(CharacterDataEventImpl.create("<html>\u00e9"));
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> eventReader = new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(new CharacterEventBufferReader(eventBuffer.listIterator()));
+        final Capture<Element> cachedElement = new Capture<Element>();
+        
+        final Ehcache cache = createMock(Ehcache.class);
+        final CharacterPipelineComponent targetComponent = createMock(CharacterPipelineComponent.class);
+        final ResourcesElementsProvider elementsProvider = createMock(ResourcesElementsProvider.class);
+        
+        expect(elementsProvider.getDefaultIncludedType()).andReturn(Included.AGGREGATED);
+        expect(targetComponent.getCacheKey(mockReq, mockRes)).andReturn(cacheKey);
+        expect(cache.get(cacheKey)).andReturn(null);
+        expect(targetComponent.getEventReader(mockReq, mockRes)).andReturn(eventReader);
+        cache.put(capture(cachedElement));
+        expectLastCall();
+        
+        replay(cache, targetComponent, elementsProvider);
+        
+        final CachingCharacterPipelineComponent cachingComponent = new CachingCharacterPipelineComponent();
+        cachingComponent.setCache(cache);
+        cachingComponent.setWrappedComponent(targetComponent);
+        cachingComponent.setResourcesElementsProvider(elementsProvider);
+        cachingComponent.setEncodeCharacterData(true);
+        
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> actualEventReader = cachingComponent.getEventReader(mockReq, mockRes);
+
+        Assert.assertNotNull(actualEventReader);
+        final CharacterEvent event = actualEventReader.getEventReader().next();
+        Assert.assertTrue(event instanceof EncodedCharacterDataEvent);
+        Assert.assertEquals(eventBuffer.get(0), event);
+        Assert.assertEquals(8, ((EncodedCharacterDataEvent) event).getEncodedLength());
+        Assert.assertFalse(actualEventReader.getEventReader().hasNext());
+        Assert.assertNotNull(cachedElement.getValue());
+        
+        verify(cache, targetComponent, elementsProvider);
+    }
+    
+    @Test
+    public void testCacheMissCompactsEvents() {
+        final MockHttpServletRequest mockReq = new MockHttpServletRequest();
+        final MockHttpServletResponse mockRes = new MockHttpServletResponse();
+        final CacheKey cacheKey = CacheKey.build("testCacheKey");
+        final List<CharacterEvent> eventBuffer = Arrays.<CharacterEvent>asList(
+                CharacterDataEventImpl.create("<html>"), 
+                CharacterDataEventImpl.create("<body>"),
+                CharacterDataEventImpl.EMPTY_CHARACTER_DATA,
+                CharacterDataEventImpl.create("</body></html>"));
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> eventReader = new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(new CharacterEventBufferReader(eventBuffer.listIterator()));
+        
+        final Ehcache cache = createMock(Ehcache.class);
+        final CharacterPipelineComponent targetComponent = createMock(CharacterPipelineComponent.class);
+        final ResourcesElementsProvider elementsProvider = createMock(ResourcesElementsProvider.class);
+        
+        expect(elementsProvider.getDefaultIncludedType()).andReturn(Included.AGGREGATED);
+        expect(targetComponent.getCacheKey(mockReq, mockRes)).andReturn(cacheKey);
+        expect(cache.get(cacheKey)).andReturn(null);
+        expect(targetComponent.getEventReader(mockReq, mockRes)).andReturn(eventReader);
+        cache.put((Element)notNull());
+        expectLastCall();
+        
+        replay(cache, targetComponent, elementsProvider);
+        
+        final CachingCharacterPipelineComponent cachingComponent = new CachingCharacterPipelineComponent();
+        cachingComponent.setCache(cache);
+        cachingComponent.setWrappedComponent(targetComponent);
+        cachingComponent.setResourcesElementsProvider(elementsProvider);
+        
+        final CharacterEventReader actualEventReader = cachingComponent.getEventReader(mockReq, mockRes).getEventReader();
+
+        Assert.assertEquals(CharacterDataEventImpl.create("<html><body>"), actualEventReader.next());
+        Assert.assertSame(CharacterDataEventImpl.EMPTY_CHARACTER_DATA, actualEventReader.next());
+        Assert.assertEquals(CharacterDataEventImpl.create("</body></html>"), actualEventReader.next());
+        Assert.assertFalse(actualEventReader.hasNext());
+        
+        verify(cache, targetComponent, elementsProvider);
+    }
 }
@@ -27,8 +27,11 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLEventFactory;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.events.XMLEvent;
 
@@ -46,6 +49,7 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.xml.SimpleNamespaceContext;
 
 /**
  * @author Eric Dalquist
@@ -118,4 +122,36 @@ public class CachingStAXPipelineComponentTest {
         
         verify(cache, targetComponent, elementsProvider);
     }
+    
+    @Test
+    public void testInternEvents() {
+        final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+        final NamespaceContext namespaceContext = new SimpleNamespaceContext();
+        final Iterator<?> none = Collections.emptyList().iterator();
+        
+        final CachingStAXPipelineComponent cachingComponent = new CachingStAXPipelineComponent();
+        
+        //Start elements are never shared, their namespace context can't be compared
+        final XMLEvent start = eventFactory.createStartElement("", "", "div", none, none, namespaceContext);
+        final XMLEvent startCopy = eventFactory.createStartElement("", "", "div", none, none, namespaceContext);
+        Assert.assertSame(start, cachingComponent.prepareCachedEvent(start));
+        Assert.assertSame(startCopy, cachingComponent.prepareCachedEvent(startCopy));
+        
+        final XMLEvent text = eventFactory.createCharacters("some text");
+        Assert.assertSame(text, cachingComponent.prepareCachedEvent(text));
+        Assert.assertSame(text, cachingComponent.prepareCachedEvent(eventFactory.createCharacters("some text")));
+        
+        //Same content as a different event type must not be shared
+        final XMLEvent cdata = eventFactory.createCData("some text");
+        Assert.assertSame(cdata, cachingComponent.prepareCachedEvent(cdata));
+        
+        final XMLEvent end = eventFactory.createEndElement("", "", "div");
+        Assert.assertSame(end, cachingComponent.prepareCachedEvent(end));
+        Assert.assertSame(end, cachingComponent.prepareCachedEvent(eventFactory.createEndElement("", "", "div")));
+        
+        final XMLEvent prefixedEnd = eventFactory.createEndElement("h", "", "div");
+        Assert.assertSame(prefixedEnd, cachingComponent.prepareCachedEvent(prefixedEnd));
+        
+        Assert.assertEquals(2, cachingComponent.getCachedEventStats().getInternedEventCount());
+    }
 }
@@ -83,6 +83,8 @@ public class XSLTComponentTest {
         
         EasyMock.expect(targetComponent.getEventReader(mockReq, mockRes)).andReturn(cacheableEventReader);
         EasyMock.expect(transformerSource.getTransformer(mockReq, mockRes)).andReturn(transformer);
+        transformerSource.releaseTransformer(transformer, mockReq, mockRes);
+        EasyMock.expectLastCall();
         
         EasyMock.replay(targetComponent, transformerSource);
         
@@ -0,0 +1,127 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.utils.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OffHeapByteStoreTest {
+    @Test
+    public void testPutGetRemove() {
+        final OffHeapByteStore<String> store = new OffHeapByteStore<String>("test", 1024, 64);
+        
+        final byte[] data = createData(200, 1);
+        assertTrue(store.put("a", data));
+        assertArrayEquals(data, store.get("a"));
+        assertNull(store.get("b"));
+        
+        OffHeapByteStoreStatistics statistics = store.getStatistics();
+        assertEquals(1024, statistics.getByteBudget());
+        assertEquals(256, statistics.getUsedBytes());
+        assertEquals(200, statistics.getStoredBytes());
+        assertEquals(1, statistics.getEntryCount());
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        
+        //Replacing the value reuses the freed blocks
+        final byte[] replacement = createData(64, 2);
+        assertTrue(store.put("a", replacement));
+        assertArrayEquals(replacement, store.get("a"));
+        statistics = store.getStatistics();
+        assertEquals(64, statistics.getUsedBytes());
+        assertEquals(256, statistics.getAllocatedBytes());
+        
+        assertTrue(store.remove("a"));
+        assertFalse(store.remove("a"));
+        assertNull(store.get("a"));
+        assertEquals(0, store.getStatistics().getUsedBytes());
+        
+        //Empty values are allowed
+        assertTrue(store.put("empty", new byte[0]));
+        assertArrayEquals(new byte[0], store.get("empty"));
+    }
+    
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        final OffHeapByteStore<String> store = new OffHeapByteStore<String>("test", 1024, 64);
+        
+        final byte[] a = createData(400, 1);
+        final byte[] b = createData(400, 2);
+        final byte[] c = createData(400, 3);
+        assertTrue(store.put("a", a));
+        assertTrue(store.put("b", b));
+        
+        //Touch a so b is the least recently used
+        assertArrayEquals(a, store.get("a"));
+        
+        assertTrue(store.put("c", c));
+        assertNull(store.get("b"));
+        assertArrayEquals(a, store.get("a"));
+        assertArrayEquals(c, store.get("c"));
+        
+        final OffHeapByteStoreStatistics statistics = store.getStatistics();
+        assertEquals(1, statistics.getEvictionCount());
+        assertEquals(2, statistics.getEntryCount());
+        
+        //Blocks freed by the eviction are reused before new blocks are allocated
+        assertEquals(896, statistics.getAllocatedBytes());
+    }
+    
+    @Test
+    public void testRejectOversized() {
+        final OffHeapByteStore<String> store = new OffHeapByteStore<String>("test", 1024, 64);
+        
+        assertTrue(store.put("a", createData(100, 1)));
+        assertFalse(store.put("b", createData(1025, 2)));
+        assertNull(store.get("b"));
+        
+        final OffHeapByteStoreStatistics statistics = store.getStatistics();
+        assertEquals(1, statistics.getRejectedCount());
+        assertEquals(1, statistics.getEntryCount());
+    }
+    
+    @Test
+    public void testMultipleSlabs() {
+        //Three blocks per slab
+        final OffHeapByteStore<String> store = new OffHeapByteStore<String>("test", 640, 64, 192);
+        
+        final byte[] data = createData(600, 7);
+        assertTrue(store.put("a", data));
+        assertArrayEquals(data, store.get("a"));
+        assertEquals(640, store.getStatistics().getAllocatedBytes());
+        
+        store.clear();
+        assertNull(store.get("a"));
+        assertEquals(0, store.getStatistics().getStoredBytes());
+    }
+    
+    private static byte[] createData(int length, int seed) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+}
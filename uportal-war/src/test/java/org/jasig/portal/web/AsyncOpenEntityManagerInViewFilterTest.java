@@ -0,0 +1,101 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.jasig.portal.web;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.jasig.portal.web.AsyncOpenEntityManagerInViewFilter.EntityManagerHandoff;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class AsyncOpenEntityManagerInViewFilterTest {
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager entityManager;
+    private EntityManagerHolder entityManagerHolder;
+    private EntityManagerHandoff entityManagerHandoff;
+    
+    @Before
+    public void setup() {
+        this.entityManagerFactory = mock(EntityManagerFactory.class);
+        this.entityManager = mock(EntityManager.class);
+        when(this.entityManager.isOpen()).thenReturn(true);
+        this.entityManagerHolder = new EntityManagerHolder(this.entityManager);
+        this.entityManagerHandoff = new EntityManagerHandoff(this.entityManagerFactory, this.entityManagerHolder);
+    }
+    
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.hasResource(this.entityManagerFactory)) {
+            TransactionSynchronizationManager.unbindResource(this.entityManagerFactory);
+        }
+    }
+    
+    @Test
+    public void testSynchronousRequestCloses() {
+        this.entityManagerHandoff.requestThreadComplete();
+        verify(this.entityManager).close();
+    }
+    
+    @Test
+    public void testAsyncHandoff() throws Exception {
+        this.entityManagerHandoff.startAsync();
+        
+        //Not bound until the request thread has released it
+        assertFalse(this.entityManagerHandoff.bind(1));
+        
+        this.entityManagerHandoff.requestThreadComplete();
+        verify(this.entityManager, never()).close();
+        
+        assertTrue(this.entityManagerHandoff.bind(1));
+        assertSame(this.entityManagerHolder, TransactionSynchronizationManager.getResource(this.entityManagerFactory));
+        
+        this.entityManagerHandoff.release();
+        assertFalse(TransactionSynchronizationManager.hasResource(this.entityManagerFactory));
+        
+        //Release may be called again from the AsyncListener
+        this.entityManagerHandoff.release();
+        verify(this.entityManager).close();
+    }
+    
+    @Test
+    public void testReleaseBeforeRequestThreadComplete() {
+        this.entityManagerHandoff.startAsync();
+        
+        //Async request failed before the request thread returned, the request thread closes
+        this.entityManagerHandoff.release();
+        verify(this.entityManager, never()).close();
+        
+        this.entityManagerHandoff.requestThreadComplete();
+        verify(this.entityManager).close();
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Licensed to Jasig under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Jasig licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.jasig.portal.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThreadLocalTransformerPoolTest {
+    private static final String STYLESHEET = 
+            "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+            "<xsl:template match=\"/\"><xsl:copy-of select=\".\"/></xsl:template>" +
+            "</xsl:stylesheet>";
+    
+    private TransformerFactory transformerFactory;
+    
+    @Before
+    public void setup() {
+        this.transformerFactory = TransformerFactory.newInstance();
+    }
+    
+    @Test
+    public void testTransformerReused() throws Exception {
+        final ThreadLocalTransformerPool pool = new ThreadLocalTransformerPool();
+        final Templates templates = this.newTemplates();
+        
+        final Transformer transformer = pool.borrowTransformer(templates);
+        transformer.setParameter("foo", "bar");
+        
+        //Nested borrow while the first is in use must get a different instance
+        final Transformer nestedTransformer = pool.borrowTransformer(templates);
+        assertNotSame(transformer, nestedTransformer);
+        pool.returnTransformer(nestedTransformer);
+        pool.returnTransformer(transformer);
+        assertEquals(1, pool.getIdleCount());
+        
+        final Transformer reusedTransformer = pool.borrowTransformer(templates);
+        assertSame(transformer, reusedTransformer);
+        assertNull(reusedTransformer.getParameter("foo"));
+        assertEquals(0, pool.getIdleCount());
+    }
+    
+    @Test
+    public void testPoolBounded() throws Exception {
+        final ThreadLocalTransformerPool pool = new ThreadLocalTransformerPool();
+        pool.setMaxIdle(2);
+        
+        final Templates templates1 = this.newTemplates();
+        final Templates templates2 = this.newTemplates();
+        final Templates templates3 = this.newTemplates();
+        
+        final Transformer transformer1 = pool.borrowTransformer(templates1);
+        pool.returnTransformer(transformer1);
+        pool.returnTransformer(pool.borrowTransformer(templates2));
+        pool.returnTransformer(pool.borrowTransformer(templates3));
+        assertEquals(2, pool.getIdleCount());
+        
+        //Least recently used transformer was discarded
+        assertNotSame(transformer1, pool.borrowTransformer(templates1));
+    }
+    
+    @Test
+    public void testUnknownTransformerIgnored() throws Exception {
+        final ThreadLocalTransformerPool pool = new ThreadLocalTransformerPool();
+        
+        pool.returnTransformer(this.newTemplates().newTransformer());
+        assertEquals(0, pool.getIdleCount());
+    }
+    
+    @Test
+    public void testClearDiscardsAllThreads() throws Exception {
+        final ThreadLocalTransformerPool pool = new ThreadLocalTransformerPool();
+        final Templates templates = this.newTemplates();
+        
+        final Transformer transformer = pool.borrowTransformer(templates);
+        pool.returnTransformer(transformer);
+        
+        final Transformer[] otherThreadTransformer = new Transformer[1];
+        final Thread otherThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    otherThreadTransformer[0] = pool.borrowTransformer(templates);
+                    pool.returnTransformer(otherThreadTransformer[0]);
+                }
+                catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        otherThread.start();
+        otherThread.join();
+        
+        final Transformer borrowedTransformer = pool.borrowTransformer(templates);
+        assertEquals(1, pool.getBorrowedCount());
+        
+        pool.clear();
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(0, pool.getBorrowedCount());
+        
+        //Transformers are no longer pooled once cleared
+        pool.returnTransformer(borrowedTransformer);
+        assertEquals(0, pool.getIdleCount());
+        assertNotSame(borrowedTransformer, pool.borrowTransformer(templates));
+        assertEquals(0, pool.getBorrowedCount());
+    }
+    
+    private Templates newTemplates() throws Exception {
+        return this.transformerFactory.newTemplates(new StreamSource(new StringReader(STYLESHEET)));
+    }
+}